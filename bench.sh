@@ -0,0 +1,4 @@
+#!/bin/bash
+javac -cp rars.jar test/Benchmark.java
+java -cp test:rars.jar Benchmark "$@"
+rm test/Benchmark*.class
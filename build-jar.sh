@@ -9,6 +9,9 @@ if git submodule status | grep \( > /dev/null ; then
     fi
     cp -rf build/src/* build
     rm -r build/src
+    # List the instruction, syscall, dump format and tool classes so they are not searched for at startup
+    (cd build && find rars/riscv/instructions rars/riscv/syscalls rars/riscv/dump rars/tools -maxdepth 1 \
+        -name "*.class" -not -name '*$*' | sort > Components.txt)
     cp README.md License.txt build
     cd build
     jar cfm ../rars.jar ./META-INF/MANIFEST.MF *
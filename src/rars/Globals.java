@@ -4,6 +4,7 @@ import rars.assembler.SymbolTable;
 import rars.riscv.hardware.Memory;
 import rars.riscv.InstructionSet;
 import rars.riscv.SyscallNumberOverride;
+import rars.util.Metrics;
 import rars.util.PropertiesFile;
 import rars.venus.VenusUI;
 
@@ -71,7 +72,7 @@ public class Globals {
     /**
      * Lock variable used at head of synchronized block to guard memory and registers
      **/
-    public static final ReentrantLock memoryAndRegistersLock = new ReentrantLock();
+    public static final ReentrantLock memoryAndRegistersLock = new Metrics.ContentionCountingLock();
     /**
      * Flag to determine whether or not to produce internal debugging information.
      **/
@@ -109,6 +110,10 @@ public class Globals {
      * Maximum length of scrolled message window (RARS Messages and Run I/O)
      */
     public static final int maximumMessageCharacters = getMessageLimit();
+    /**
+     * Whether Run I/O text beyond maximumMessageCharacters goes to a temporary file rather than being dropped
+     */
+    public static final boolean runIOHistoryFile = getRunIOHistoryFile();
     /**
      * Maximum number of assembler errors produced by one assemble operation
      */
@@ -182,6 +187,12 @@ public class Globals {
         return getIntegerProperty(configPropertiesFile, "MessageLimit", 1000000);
     }
 
+    // Read whether to keep old Run I/O text in a temporary file.
+    private static boolean getRunIOHistoryFile() {
+        String value = getPropertyEntry(configPropertiesFile, "RunIOHistoryFile");
+        return value == null || Boolean.parseBoolean(value.trim());
+    }
+
     // Read limit on number of error messages produced by one assemble operation.
     private static int getErrorLimit() {
         return getIntegerProperty(configPropertiesFile, "ErrorLimit", 200);
@@ -1,6 +1,7 @@
 package rars;
 
 import rars.api.Program;
+import rars.api.Server;
 import rars.riscv.InstructionSet;
 import rars.riscv.dump.DumpFormat;
 import rars.riscv.dump.DumpFormatLoader;
@@ -10,6 +11,9 @@ import rars.simulator.Simulator;
 import rars.util.Binary;
 import rars.util.FilenameFinder;
 import rars.util.MemoryDump;
+import rars.util.MemoryProfile;
+import rars.util.Metrics;
+import rars.util.SystemIO;
 import rars.venus.VenusUI;
 import rars.api.Options;
 
@@ -86,13 +90,19 @@ public class Launch {
      * for the RARS default 32-bit address space, <tt>CompactDataAtZero</tt> for<br>
      * a 32KB address space with data segment at address 0, or <tt>CompactTextAtZero</tt><br>
      * for a 32KB address space with text segment at address 0.<br>
+     * lc  -- Library Count - memory and string syscalls count the instructions of the equivalent loop, as reported by ic.<br>
      * me  -- display RARS messages to standard err instead of standard out. Can separate via redirection.</br>
+     * memprofile &lt;file&gt;  -- count memory reads and writes per 64 byte line, written to &lt;file&gt;.csv and &lt;file&gt;.png.<br>
+     * memdecay<n>  -- with memprofile, halve all counts every <n> accesses.<br>
      * nc  -- do not display copyright notice (for cleaner redirected/piped output).</br>
      * np  -- No Pseudo-instructions allowed ("ne" will work also).<br>
+     * ob &lt;policy&gt;  -- buffering of program output: none, line or full.  Default line on a terminal, else full.<br>
      * p  -- Project mode - assemble all files in the same directory as given file.<br>
      * se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.<br>
      * sm  -- Start execution at Main - Execution will start at program statement globally labeled main.<br>
      * smc  -- Self Modifying Code - Program can write and branch to either text or data segment<br>
+     * metrics  -- display counts and timings of the simulator and assembler at end of run.<br>
+     * server [&lt;port&gt;]  -- run jobs given as JSON lines on standard input, or on a loopback TCP port.<br>
      * we  -- assembler Warnings will be considered Errors<br>
      * <n>  -- where <n> is an integer maximum count of steps to simulate.<br>
      * If 0, negative or not specified, there is no maximum.<br>
@@ -117,6 +127,13 @@ public class Launch {
     private boolean verbose;  // display register name or address along with contents
     private boolean assembleProject; // assemble only the given file or all files in its directory
     private boolean countInstructions; // Whether to count and report number of instructions executed
+    private boolean server; // Whether to run jobs for other programs (see rars.api.Server)
+    private int serverPort = -1; // TCP port for server mode, or -1 for standard input
+    private boolean metrics; // Whether to report Metrics at the end of the run
+    private String memoryProfileName; // Where to write a MemoryProfile at the end of the run, without extension
+    private long memoryProfileDecay; // see MemoryProfile
+    private MemoryProfile memoryProfile;
+    private SystemIO.Buffering outputBuffering = null; // console output policy, null for the default
     private static final String rangeSeparator = "-";
     private static final int memoryWordsPerLine = 4; // display 4 memory words, tab separated, per line
     private static final int DECIMAL = 0; // memory and register display format
@@ -163,12 +180,44 @@ public class Launch {
         } else { // running from command line.
             // assure command mode works in headless environment (generates exception if not)
             System.setProperty("java.awt.headless", "true");
-            
-            dumpSegments(runCommand());
+
+            if (server) {
+                Metrics.registerMBean();
+                runServer();
+                System.exit(Globals.exitCode);
+            }
+            if (outputBuffering == null) {
+                // A terminal shows each line as it comes; anything else gets big writes
+                outputBuffering = (System.console() != null) ? SystemIO.Buffering.LINE : SystemIO.Buffering.FULL;
+            }
+            SystemIO.setBuffering(outputBuffering);
+            Program program = runCommand();
+            dumpSegments(program);
+            writeMemoryProfile(program);
+            if (metrics) {
+                out.print(Metrics.report());
+            }
             System.exit(Globals.exitCode);
         }
     }
 
+    /////////////////////////////////////////////////////////////
+    // Run jobs from standard input or a TCP port until there are
+    // no more.  See "server" option and rars.api.Server.
+
+    private void runServer() {
+        try {
+            if (serverPort > 0) {
+                new Server().listen(serverPort);
+            } else {
+                new Server().serve(System.in, System.out);
+            }
+        } catch (IOException e) {
+            System.err.println("Server stopped: " + e.getMessage());
+            Globals.exitCode = 1;
+        }
+    }
+
     private void displayAllPostMortem(Program program) {
         displayMiscellaneousPostMortem(program);
         displayRegistersPostMortem(program);
@@ -225,6 +274,25 @@ public class Launch {
     }
 
 
+    /////////////////////////////////////////////////////////////
+    // Write the counts of memory accesses, as CSV and a PNG heat map.
+    // See "memprofile" option.
+
+    private void writeMemoryProfile(Program program) {
+        if (memoryProfile == null || program == null) {
+            return;
+        }
+        File csv = new File(memoryProfileName + ".csv");
+        File png = new File(memoryProfileName + ".png");
+        try {
+            memoryProfile.writeCsv(csv);
+            memoryProfile.writePng(png);
+        } catch (IOException e) {
+            out.println("Error while attempting to save memory profile " + memoryProfileName + ": " + e.getMessage());
+        }
+    }
+
+
     /////////////////////////////////////////////////////////////////
     // There are no command arguments, so run in interactive mode by
     // launching the GUI-fronted integrated development environment.
@@ -239,6 +307,8 @@ public class Launch {
                         new VenusUI("RARS " + Globals.version, filenameList);
                     }
                 });
+        // The main thread has nothing else to do, so the GUI does not wait for this
+        Metrics.registerMBean();
     }
 
 
@@ -313,6 +383,33 @@ public class Launch {
                 }
                 continue;
             }
+            if (args[i].toLowerCase().equals("memprofile")) {
+                if (args.length <= (i + 1)) {
+                    out.println("Memprofile command line argument requires a file name.");
+                    argsOK = false;
+                } else {
+                    memoryProfileName = args[++i];
+                }
+                continue;
+            }
+            if (args[i].toLowerCase().indexOf("memdecay") == 0) {
+                try {
+                    memoryProfileDecay = Long.decode(args[i].substring(8));
+                    continue;
+                } catch (NumberFormatException nfe) {
+                    // Let it fall thru and get handled by catch-all
+                }
+            }
+            if (args[i].toLowerCase().equals("ob")) {
+                String policy = (i + 1 < args.length) ? args[++i] : "";
+                try {
+                    outputBuffering = SystemIO.Buffering.valueOf(policy.toUpperCase());
+                } catch (IllegalArgumentException iae) {
+                    out.println("Invalid output buffering: " + policy);
+                    argsOK = false;
+                }
+                continue;
+            }
             // Set RARS exit code for assemble error
             if (args[i].toLowerCase().indexOf("ae") == 0) {
                 String s = args[i].substring(2);
@@ -387,6 +484,10 @@ public class Launch {
                 options.selfModifyingCode = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("lc")) {
+                options.libraryCallInstructions = true;
+                continue;
+            }
             if (args[i].toLowerCase().equals("rv64")) {
                 rv64 = true;
                 continue;
@@ -395,6 +496,22 @@ public class Launch {
                 countInstructions = true;
                 continue;
             }
+            if (args[i].toLowerCase().equals("metrics")) {
+                metrics = true;
+                continue;
+            }
+            if (args[i].toLowerCase().equals("server")) {
+                server = true;
+                if (i + 1 < args.length) {
+                    try {
+                        serverPort = Integer.parseInt(args[i + 1]);
+                        i++;
+                    } catch (NumberFormatException nfe) {
+                        // no port; serve standard input
+                    }
+                }
+                continue;
+            }
             
             if (new File(args[i]).exists()) {  // is it a file name?
                 filenameList.add(args[i]);
@@ -498,6 +615,11 @@ public class Launch {
         }
         // Setup for program simulation even if just assembling to prepare memory dumps
         program.setup(programArgumentList,null);
+        if (memoryProfileName != null) {
+            memoryProfile = new MemoryProfile(memoryProfileDecay);
+            memoryProfile.setLabels(program.getDataSymbols());
+            program.getMemory().setProfile(memoryProfile);
+        }
         if (simulate) {
             if (Globals.debug) {
                 out.println("--------  SIMULATION BEGINS  -----------");
@@ -684,7 +806,8 @@ public class Launch {
 
     private void displayCopyright(String[] args, String noCopyrightSwitch) {
         for (String arg : args) {
-            if (arg.toLowerCase().equals(noCopyrightSwitch)) {
+            // standard output carries the server's responses
+            if (arg.toLowerCase().equals(noCopyrightSwitch) || arg.toLowerCase().equals("server")) {
                 return;
             }
         }
@@ -735,14 +858,28 @@ public class Launch {
         out.println("            32-bit address space, CompactDataAtZero for a 32KB memory with");
         out.println("            data segment at address 0, or CompactTextAtZero for a 32KB");
         out.println("            memory with text segment at address 0.");
+        out.println("     lc  -- Library Count - the memory and string syscalls (Memcpy, Strlen, ...) add");
+        out.println("            the instructions the equivalent RISC-V loop would take to cycle and instret");
         out.println("     me  -- display RARS messages to standard err instead of standard out. ");
         out.println("            Can separate messages from program output using redirection");
+        out.println(" memprofile <file> -- count the reads and writes of each 64 byte line of memory");
+        out.println("            and write them, with the data labels, to <file>.csv and as a heat map");
+        out.println("            to <file>.png at the end of the run.");
+        out.println("memdecay<n> -- with memprofile, halve all counts every <n> accesses, so the");
+        out.println("            results show mostly what the program did last.");
         out.println("     nc  -- do not display copyright notice (for cleaner redirected/piped output).");
         out.println("     np  -- use of pseudo instructions and formats not permitted");
+        out.println("     ob <policy> -- buffering of program output: none (write every syscall), line");
+        out.println("            (write at newlines) or full (write when needed).  Output is always written");
+        out.println("            before input is read and at exit.  Default line on a terminal, else full.");
         out.println("      p  -- Project mode - assemble all files in the same directory as given file.");
         out.println("  se<n>  -- terminate RARS with integer exit code <n> if a simulation (run) error occurs.");
         out.println("     sm  -- start execution at statement with global label main, if defined");
         out.println("    smc  -- Self Modifying Code - Program can write and branch to either text or data segment");
+        out.println("metrics  -- display counts and timings of the simulator and assembler at end of run.");
+        out.println(" server [<port>] -- run jobs given as JSON lines on standard input, or on a TCP");
+        out.println("            port of the loopback address, and answer each with a JSON line.");
+        out.println("            No filename is needed; see rars.api.Server for the job format.");
         out.println("    rv64 -- Enables 64 bit assembly and executables (Not fully compatible with rv32)");
         out.println("    <n>  -- where <n> is an integer maximum count of steps to simulate.");
         out.println("            If 0, negative or not specified, there is no maximum.");
@@ -15,6 +15,7 @@ import rars.util.Binary;
 import rars.venus.NumberDisplayBaseChooser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -56,7 +57,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class ProgramStatement implements Comparable<ProgramStatement> {
     private RISCVprogram sourceProgram;
-    private String source, basicAssemblyStatement, machineStatement;
+    private String source, basicAssemblyStatement;
     private TokenList originalTokenList, strippedTokenList;
     private BasicStatementList basicStatementList;
     private int[] operands;
@@ -67,6 +68,15 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     private int binaryStatement;
     private boolean altered;
     private static final String invalidOperator = "<INVALID>";
+    // Shared basic statement elements, so large programs do not hold a copy per statement.
+    private static final String[] INTEGER_REGISTER_NAMES = new String[32], FLOATING_REGISTER_NAMES = new String[32];
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            INTEGER_REGISTER_NAMES[i] = "x" + i;
+            FLOATING_REGISTER_NAMES[i] = "f" + i;
+        }
+    }
 
     //////////////////////////////////////////////////////////////////////////////////
 
@@ -95,7 +105,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         this.sourceLine = sourceLine;
         this.basicAssemblyStatement = null;
         this.basicStatementList = new BasicStatementList();
-        this.machineStatement = null;
         this.binaryStatement = 0;  // nop, or sll $0, $0, 0  (32 bits of 0's)
         this.altered = false;
     }
@@ -120,7 +129,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         this.textAddress = textAddress;
         this.originalTokenList = this.strippedTokenList = null;
         this.source = "";
-        this.machineStatement = this.basicAssemblyStatement = null;
+        this.basicAssemblyStatement = null;
         BasicInstruction instr = Globals.instructionSet.findByBinaryCode(binaryStatement);
         if (instr == null) {
             this.operands = null;
@@ -130,28 +139,29 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
             this.operands = new int[5];
             this.numOperands = 0;
             this.instruction = instr;
-            String mask = instr.getOperationMask();
             BasicInstructionFormat format = instr.getInstructionFormat();
             if (format == BasicInstructionFormat.J_FORMAT) {
-                this.operands[0] = this.readBinaryCode(mask, Instruction.operandMask[0], binaryStatement);
-                this.operands[1] = fromJumpImmediate(this.readBinaryCode(mask, Instruction.operandMask[1], binaryStatement));
+                this.operands[0] = instr.extractOperand(0, binaryStatement);
+                this.operands[1] = fromJumpImmediate(instr.extractOperand(1, binaryStatement));
                 this.numOperands = 2;
             } else if (format == BasicInstructionFormat.B_FORMAT) {
-                this.operands[0] = this.readBinaryCode(mask, Instruction.operandMask[0], binaryStatement);
-                this.operands[1] = this.readBinaryCode(mask, Instruction.operandMask[1], binaryStatement);
-                this.operands[2] = fromBranchImmediate(this.readBinaryCode(mask, Instruction.operandMask[2], binaryStatement));
+                this.operands[0] = instr.extractOperand(0, binaryStatement);
+                this.operands[1] = instr.extractOperand(1, binaryStatement);
+                this.operands[2] = fromBranchImmediate(instr.extractOperand(2, binaryStatement));
                 this.numOperands = 3;
             } else {  // Everything else is normal
                 for (int i = 0; i < 5; i++) {
-                    if (mask.indexOf(Instruction.operandMask[i]) != -1) {
-                        this.operands[i] = this.readBinaryCode(mask, Instruction.operandMask[i], binaryStatement);
+                    if (instr.hasOperand(i)) {
+                        this.operands[i] = instr.extractOperand(i, binaryStatement);
                         this.numOperands++;
                     }
                 }
             }
         }
         this.altered = false;
-        this.basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement, instr, operands, numOperands);
+        // The printable form is only needed for display, so it is built on first use
+        // (see getPrintableBasicAssemblyStatement) rather than on every decode.
+        this.basicStatementList = null;
     }
 
     public int compareTo(ProgramStatement obj1) {
@@ -170,22 +180,35 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      * @param errors The list of assembly errors encountered so far.  May add to it here.
      **/
     public void buildBasicStatementFromBasicInstruction(ErrorList errors) {
+        buildBasicStatementFromBasicInstruction(errors, false);
+    }
+
+    /**
+     * Given specification of BasicInstruction for this operator, build the
+     * corresponding assembly statement in basic assembly format, optionally keeping
+     * the tokens needed to build it again once the addresses of labels have changed.
+     *
+     * @param errors     The list of assembly errors encountered so far.  May add to it here.
+     * @param keepTokens true if this statement may be built again
+     **/
+    public void buildBasicStatementFromBasicInstruction(ErrorList errors, boolean keepTokens) {
+        this.basicStatementList = new BasicStatementList();
+        this.numOperands = 0;
         Token token = strippedTokenList.get(0);
-        String basicStatementElement = token.getValue() + " ";
+        // Token values are made on request, so the elements kept here are interned rather
+        // than held once per statement.
+        String basicStatementElement = (token.getValue() + " ").intern();
 
-        String basic = basicStatementElement;
         basicStatementList.addString(basicStatementElement); // the operator
         TokenTypes tokenType, nextTokenType;
         String tokenValue;
         int registerNumber;
-        this.numOperands = 0;
         for (int i = 1; i < strippedTokenList.size(); i++) {
             token = strippedTokenList.get(i);
             tokenType = token.getType();
             tokenValue = token.getValue();
             if (tokenType == TokenTypes.REGISTER_NUMBER) {
-                basicStatementElement = tokenValue;
-                basic += basicStatementElement;
+                basicStatementElement = tokenValue.intern();
                 basicStatementList.addString(basicStatementElement);
                 try {
                     registerNumber = RegisterFile.getRegister(tokenValue).getNumber();
@@ -197,8 +220,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 this.operands[this.numOperands++] = registerNumber;
             } else if (tokenType == TokenTypes.REGISTER_NAME) {
                 registerNumber = RegisterFile.getRegister(tokenValue).getNumber();
-                basicStatementElement = "x" + registerNumber;
-                basic += basicStatementElement;
+                basicStatementElement = (registerNumber < 0) ? "x" + registerNumber : INTEGER_REGISTER_NAMES[registerNumber];
                 basicStatementList.addString(basicStatementElement);
                 if (registerNumber < 0) {
                     // should never happen; should be caught before now...
@@ -221,13 +243,11 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid CSR name"));
                     return;
                 }
-                basic += registerNumber;
                 basicStatementList.addString(""+registerNumber);
                 this.operands[this.numOperands++] = registerNumber;
             } else if (tokenType == TokenTypes.FP_REGISTER_NAME) {
                 registerNumber = FloatingPointRegisterFile.getRegister(tokenValue).getNumber();
-                basicStatementElement = "f" + registerNumber;
-                basic += basicStatementElement;
+                basicStatementElement = (registerNumber < 0) ? "f" + registerNumber : FLOATING_REGISTER_NAMES[registerNumber];
                 basicStatementList.addString(basicStatementElement);
                 if (registerNumber < 0) {
                     // should never happen; should be caught before now...
@@ -254,8 +274,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     errors.add(new ErrorMessage(this.sourceProgram, token.getSourceLine(), token.getStartPos(), "invalid rounding mode"));
                     return;
                 }
-                basic += tokenValue;
-                basicStatementList.addString(tokenValue);
+                basicStatementList.addString(tokenValue.intern());
                 this.operands[this.numOperands++] = rounding_mode;
             } else if (tokenType == TokenTypes.IDENTIFIER) {
 
@@ -289,7 +308,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                     }
                 }
                 //////////////////////////////////////////////////////////////////////
-                basic += address;
                 if (absoluteAddress) { // record as address if absolute, value if relative
                     basicStatementList.addAddress(address);
                 } else {
@@ -341,8 +359,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                  *           }
                  *        }
                  **************************  END DPS 3-July-2008 COMMENTS *******************************/
-
-                basic += tempNumeric;
                 if (tokenType == TokenTypes.INTEGER_5) {
                     basicStatementList.addShortValue(tempNumeric);
                 } else {
@@ -351,8 +367,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 this.operands[this.numOperands++] = tempNumeric;
                 ///// End modification 1/7/05 KENV   ///////////////////////////////////////////
             } else {
-                basicStatementElement = tokenValue;
-                basic += basicStatementElement;
+                basicStatementElement = tokenValue.intern();
                 basicStatementList.addString(basicStatementElement);
             }
             // add separator if not at end of token list AND neither current nor 
@@ -361,13 +376,15 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 nextTokenType = strippedTokenList.get(i + 1).getType();
                 if (tokenType != TokenTypes.LEFT_PAREN && tokenType != TokenTypes.RIGHT_PAREN &&
                         nextTokenType != TokenTypes.LEFT_PAREN && nextTokenType != TokenTypes.RIGHT_PAREN) {
-                    basicStatementElement = ",";
-                    basic += basicStatementElement;
-                    basicStatementList.addString(basicStatementElement);
+                    basicStatementList.addString(",");
                 }
             }
         }
-        this.basicAssemblyStatement = basic;
+        // Unless it is to be built again, the token lists are no longer needed to describe
+        // this statement, and the basic assembly String is built from basicStatementList on request.
+        if (!keepTokens) {
+            this.strippedTokenList = null;
+        }
     } //buildBasicStatementFromBasicInstruction()
 
 
@@ -390,21 +407,21 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         }
 
         //mask indicates bit positions for 'f'irst, 's'econd, 't'hird operand
-        this.machineStatement = ((BasicInstruction) instruction).getOperationMask();
+        StringBuilder machineStatement = new StringBuilder(((BasicInstruction) instruction).getOperationMask());
         BasicInstructionFormat format = ((BasicInstruction) instruction).getInstructionFormat();
 
         if (format == BasicInstructionFormat.J_FORMAT) {
-            this.insertBinaryCode(this.operands[0], Instruction.operandMask[0], errors);
-            this.insertBinaryCode(toJumpImmediate(this.operands[1]), Instruction.operandMask[1], errors);
+            this.insertBinaryCode(machineStatement, this.operands[0], Instruction.operandMask[0], errors);
+            this.insertBinaryCode(machineStatement, toJumpImmediate(this.operands[1]), Instruction.operandMask[1], errors);
         } else if (format == BasicInstructionFormat.B_FORMAT) {
-            this.insertBinaryCode(this.operands[0], Instruction.operandMask[0], errors);
-            this.insertBinaryCode(this.operands[1], Instruction.operandMask[1], errors);
-            this.insertBinaryCode(toBranchImmediate(this.operands[2]), Instruction.operandMask[2], errors);
+            this.insertBinaryCode(machineStatement, this.operands[0], Instruction.operandMask[0], errors);
+            this.insertBinaryCode(machineStatement, this.operands[1], Instruction.operandMask[1], errors);
+            this.insertBinaryCode(machineStatement, toBranchImmediate(this.operands[2]), Instruction.operandMask[2], errors);
         } else {  // Everything else is normal
             for (int i = 0; i < this.numOperands; i++)
-                this.insertBinaryCode(this.operands[i], Instruction.operandMask[i], errors);
+                this.insertBinaryCode(machineStatement, this.operands[i], Instruction.operandMask[i], errors);
         }
-        this.binaryStatement = Binary.binaryStringToInt(this.machineStatement);
+        this.binaryStatement = Binary.binaryStringToInt(machineStatement.toString());
     }
 
 
@@ -452,10 +469,11 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         // a crude attempt at string formatting.  Where's C when you need it?
         String blanks = "                               ";
         String result = "[" + this.textAddress + "]";
-        if (this.basicAssemblyStatement != null) {
-            int firstSpace = this.basicAssemblyStatement.indexOf(" ");
-            result += blanks.substring(0, 16 - result.length()) + this.basicAssemblyStatement.substring(0, firstSpace);
-            result += blanks.substring(0, 24 - result.length()) + this.basicAssemblyStatement.substring(firstSpace + 1);
+        String basicAssemblyStatement = getBasicAssemblyStatement();
+        if (basicAssemblyStatement != null) {
+            int firstSpace = basicAssemblyStatement.indexOf(" ");
+            result += blanks.substring(0, 16 - result.length()) + basicAssemblyStatement.substring(0, firstSpace);
+            result += blanks.substring(0, 24 - result.length()) + basicAssemblyStatement.substring(firstSpace + 1);
         } else {
             result += blanks.substring(0, 16 - result.length()) + "0x" + Integer.toString(this.binaryStatement, 16);
         }
@@ -465,11 +483,12 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 // result += operands[i] + " ";
                 result += Integer.toString(operands[i], 16) + " ";
         }
-        if (this.machineStatement != null) {
-            result += "[" + Binary.binaryStringToHexString(this.machineStatement) + "]";
-            result += "  " + this.machineStatement.substring(0, 6) + "|" + this.machineStatement.substring(6, 11) + "|" +
-                    this.machineStatement.substring(11, 16) + "|" + this.machineStatement.substring(16, 21) + "|" +
-                    this.machineStatement.substring(21, 26) + "|" + this.machineStatement.substring(26, 32);
+        if (this.instruction instanceof BasicInstruction) {
+            String machineStatement = getMachineStatement();
+            result += "[" + Binary.binaryStringToHexString(machineStatement) + "]";
+            result += "  " + machineStatement.substring(0, 6) + "|" + machineStatement.substring(6, 11) + "|" +
+                    machineStatement.substring(11, 16) + "|" + machineStatement.substring(16, 21) + "|" +
+                    machineStatement.substring(21, 26) + "|" + machineStatement.substring(26, 32);
         }
         return result;
     } // toString()
@@ -492,7 +511,7 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      **/
 
     public void setMachineStatement(String statement) {
-        machineStatement = statement;
+        binaryStatement = Binary.binaryStringToInt(statement);
     }
 
     /**
@@ -565,6 +584,10 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      **/
 
     public String getBasicAssemblyStatement() {
+        // Statements decoded from binary code have no basic assembly statement.
+        if (basicAssemblyStatement == null && originalTokenList != null && basicStatementList != null) {
+            return basicStatementList.toBasicString();
+        }
         return basicAssemblyStatement;
     }
 
@@ -577,17 +600,22 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
      * @return The Basic Assembly statement.
      **/
     public String getPrintableBasicAssemblyStatement() {
+        if (basicStatementList == null) {
+            basicStatementList = buildBasicStatementListFromBinaryCode(binaryStatement,
+                    (BasicInstruction) instruction, operands, numOperands);
+        }
         return basicStatementList.toString();
     }
 
     /**
      * Produces binary machine statement as 32 character string, all '0' and '1' chars.
+     * It is built from the binary machine code each time.
      *
      * @return The String version of 32-bit binary machine code.
      **/
 
     public String getMachineStatement() {
-        return machineStatement;
+        return Binary.intToBinaryString(binaryStatement);
     }
 
     /**
@@ -659,40 +687,16 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
         }
     }
 
-    /**
-     * Reads an operand from a binary statement according to a mask and format
-     * <p>
-     * i.e.
-     * <pre>
-     * 0b01001 == readBinaryCode("ttttttttttttttsssss010fffff1101001",'f',
-     *                          0b0101000001000001000010010011101001)</pre>
-     *
-     * @param format          the format of the full binary statement (all operands present)
-     * @param mask            the value (f,s, or t) to mask out
-     * @param binaryStatement the binary statement to read from
-     * @return the bits read pushed to the right
-     */
-    private int readBinaryCode(String format, char mask, int binaryStatement) {
-        int out = 0;
-        for (int i = 0; i < 32; i++) {
-            if (format.charAt(i) == mask) {
-                // if the mask says to read, shift the output left and add substitute bit i
-                out = (out << 1) | ((binaryStatement >> (31 - i)) & 1);
-            }
-        }
-        return out;
-    }
-
     /**
      * Given operand (register or integer) and mask character ('f', 's', or 't'),
      * generate the correct sequence of bits and replace the mask with them.
      *
+     * @param state  the machine statement being built, as '0', '1' and mask characters
      * @param value  the value to be masked in (will be converted to binary)
      * @param mask   the value (f,s, or t) to mask out
      * @param errors error list to append errors to in the event of unrecoverable errors
      */
-    private void insertBinaryCode(int value, char mask, ErrorList errors) {
-        StringBuilder state = new StringBuilder(this.machineStatement);
+    private void insertBinaryCode(StringBuilder state, int value, char mask, ErrorList errors) {
 
 
         // Just counts the number of occurrences of the mask in machineStatement.
@@ -721,8 +725,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
                 valueIndex++;
             }
         }
-
-        this.machineStatement = state.toString();
     }
 
 
@@ -808,27 +810,62 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
     //
     //  DPS 29-July-2010
 
-    private class BasicStatementList {
+    //  The elements are kept in parallel arrays rather than as one object each, since
+    //  there are several per statement.
 
-        private ArrayList<ListElement> list;
+    private static class BasicStatementList {
+        private static final byte STRING = 0, ADDRESS = 1, VALUE = 2, SHORT_VALUE = 3;
+
+        private byte[] types;
+        private String[] strings;
+        private int[] values;
+        private int size;
 
         BasicStatementList() {
-            list = new ArrayList<>();
+            types = new byte[6];
+            strings = new String[6];
+            values = new int[6];
+        }
+
+        private void add(byte type, String string, int value) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                strings = Arrays.copyOf(strings, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            types[size] = type;
+            strings[size] = string;
+            values[size] = value;
+            size++;
         }
 
         void addString(String string) {
-            list.add(new ListElement(0, string, 0));
+            add(STRING, string, 0);
         }
 
         void addAddress(int address) {
-            list.add(new ListElement(1, null, address));
+            add(ADDRESS, null, address);
         }
 
         void addValue(int value) {
-            list.add(new ListElement(2, null, value));
+            add(VALUE, null, value);
         }
+
         void addShortValue(int value) {
-            list.add(new ListElement(3, null, value));
+            add(SHORT_VALUE, null, value);
+        }
+
+        // The basic assembly statement, with all numbers in decimal.
+        String toBasicString() {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                if (types[i] == STRING) {
+                    result.append(strings[i]);
+                } else {
+                    result.append(values[i]);
+                }
+            }
+            return result.toString();
         }
 
         public String toString() {
@@ -836,23 +873,23 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
             int valueBase = (Globals.getSettings().getBooleanSetting(Settings.Bool.DISPLAY_VALUES_IN_HEX)) ? NumberDisplayBaseChooser.HEXADECIMAL : NumberDisplayBaseChooser.DECIMAL;
 
             StringBuffer result = new StringBuffer();
-            for (ListElement e : list) {
-                switch (e.type) {
-                    case 0:
-                        result.append(e.sValue);
+            for (int i = 0; i < size; i++) {
+                switch (types[i]) {
+                    case STRING:
+                        result.append(strings[i]);
                         break;
-                    case 1:
-                        result.append(NumberDisplayBaseChooser.formatNumber(e.iValue, addressBase));
+                    case ADDRESS:
+                        result.append(NumberDisplayBaseChooser.formatNumber(values[i], addressBase));
                         break;
-                    case 2:
+                    case VALUE:
                         if (valueBase == NumberDisplayBaseChooser.HEXADECIMAL) {
-                            result.append(rars.util.Binary.intToHexString(e.iValue)); // 13-July-2011, was: intToHalfHexString()
+                            result.append(rars.util.Binary.intToHexString(values[i])); // 13-July-2011, was: intToHalfHexString()
                         } else {
-                            result.append(NumberDisplayBaseChooser.formatNumber(e.iValue, valueBase));
+                            result.append(NumberDisplayBaseChooser.formatNumber(values[i], valueBase));
                         }
                         break;
-                    case 3:
-                        result.append(e.iValue);
+                    case SHORT_VALUE:
+                        result.append(values[i]);
                         break;
                     default:
                         break;
@@ -860,18 +897,6 @@ public class ProgramStatement implements Comparable<ProgramStatement> {
             }
             return result.toString();
         }
-
-        private class ListElement {
-            int type;
-            String sValue;
-            int iValue;
-
-            ListElement(int type, String sValue, int iValue) {
-                this.type = type;
-                this.sValue = sValue;
-                this.iValue = iValue;
-            }
-        }
     }
 
 }
@@ -4,11 +4,14 @@ import rars.assembler.*;
 import rars.riscv.hardware.RegisterFile;
 import rars.simulator.BackStepper;
 import rars.simulator.Simulator;
+import rars.util.Metrics;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -177,6 +180,15 @@ public class RISCVprogram {
         return backStepper;
     }
 
+    /**
+     * Discards any execution history held by the BackStepper, as a fresh assemble does.
+     * Used when an assembled program is brought up to date without assembling it again.
+     **/
+
+    public void resetBackStepper() {
+        this.backStepper = new BackStepper();
+    }
+
     /**
      * Returns SymbolTable associated with this program.  It is created at assembly time,
      * and stores local labels (those not declared using .globl directive).
@@ -258,8 +270,10 @@ public class RISCVprogram {
      **/
 
     public void tokenize() throws AssemblyException {
+        long start = System.nanoTime();
         this.tokenizer = new Tokenizer();
         this.tokenList = tokenizer.tokenize(this);
+        Metrics.assemblerPhase(Metrics.Phase.TOKENIZE, System.nanoTime() - start);
         this.localSymbolTable = new SymbolTable(this.filename); // prepare for assembly
     }
 
@@ -286,10 +300,29 @@ public class RISCVprogram {
             filenames.add(0, exceptionHandler);
             leadFilePosition = 1;
         }
+        // Reading and tokenizing one file does not depend on any other, so the files are
+        // prepared in parallel.  Failures are reported for the first failing file in list order.
+        ArrayList<RISCVprogram> preparees = new ArrayList<>();
+        ArrayList<ForkJoinTask<AssemblyException>> tasks = new ArrayList<>();
         for (String filename : filenames) {
             RISCVprogram preparee = (filename.equals(leadFilename)) ? this : new RISCVprogram();
-            preparee.readSource(filename);
-            preparee.tokenize();
+            preparees.add(preparee);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    preparee.readSource(filename);
+                    preparee.tokenize();
+                    return null;
+                } catch (AssemblyException e) {
+                    return e;
+                }
+            }));
+        }
+        for (int i = 0; i < preparees.size(); i++) {
+            AssemblyException failure = tasks.get(i).join();
+            if (failure != null) {
+                throw failure;
+            }
+            RISCVprogram preparee = preparees.get(i);
             // I want "this" RISCVprogram to be the first in the list...except for exception handler
             if (preparee == this && programsToAssemble.size() > 0) {
                 programsToAssemble.add(leadFilePosition, preparee);
@@ -331,8 +364,26 @@ public class RISCVprogram {
 
     public ErrorList assemble(ArrayList<RISCVprogram> programsToAssemble, boolean extendedAssemblerEnabled,
                               boolean warningsAreErrors) throws AssemblyException {
+        return assemble(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors, new Assembler());
+    }
+
+    /**
+     * Assembles the RISCV source program with the given Assembler, which may keep results
+     * from one assemble to the next. All files comprising the program must have already
+     * been tokenized.
+     *
+     * @param programsToAssemble       ArrayList of RISCVprogram objects, each representing a tokenized source file.
+     * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+     *                                 are permitted in source code and false means they are to be flagged as errors
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be considered errors and terminate
+     *                                 the assemble; false means the assembler will produce warning message but otherwise ignore warnings.
+     * @param asm                      the Assembler to use
+     * @return ErrorList containing nothing or only warnings (otherwise would have thrown exception).
+     * @throws AssemblyException Will throw exception if errors occurred while assembling.
+     **/
+    public ErrorList assemble(ArrayList<RISCVprogram> programsToAssemble, boolean extendedAssemblerEnabled,
+                              boolean warningsAreErrors, Assembler asm) throws AssemblyException {
         this.backStepper = null;
-        Assembler asm = new Assembler();
         this.machineList = asm.assemble(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors);
         this.backStepper = new BackStepper();
         return asm.getErrorList();
@@ -154,6 +154,11 @@ public class Settings extends Observable {
          * Flag to determine whether a program uses rv64i instead of rv32i
          */
         RV64_ENABLED("rv64Enabled", false),
+        /**
+         * Flag to determine whether the memory and string syscalls (Memcpy, Strlen, ...) add to the
+         * cycle and instret counters the instructions that the equivalent RISC-V loop would have taken.
+         */
+        LIBRARY_CALL_INSTRUCTIONS("LibraryCallInstructions", false),
         /**
          * Flag to determine whether to calculate relative paths from the current working directory
          * or from the RARS executable path.
@@ -469,6 +474,7 @@ public class Settings extends Observable {
 
 
     public void setEditorSyntaxStyleByPosition(int index, SyntaxStyle syntaxStyle) {
+        loadEditorSyntaxStyles();
         syntaxStyleColorSettingsValues[index] = syntaxStyle.getColorAsHexString();
         syntaxStyleItalicSettingsValues[index] = syntaxStyle.isItalic();
         syntaxStyleBoldSettingsValues[index] = syntaxStyle.isBold();
@@ -476,12 +482,14 @@ public class Settings extends Observable {
     }
 
     public SyntaxStyle getEditorSyntaxStyleByPosition(int index) {
+        loadEditorSyntaxStyles();
         return new SyntaxStyle(getColorValueByPosition(index, syntaxStyleColorSettingsValues, defaultSyntaxStyleColorSettingsValues, null),
                 syntaxStyleItalicSettingsValues[index],
                 syntaxStyleBoldSettingsValues[index]);
     }
 
     public SyntaxStyle getDefaultEditorSyntaxStyleByPosition(int index) {
+        loadEditorSyntaxStyles();
         return new SyntaxStyle(getColorValueByPosition(index, defaultSyntaxStyleColorSettingsValues, null, null),
                 defaultSyntaxStyleItalicSettingsValues[index],
                 defaultSyntaxStyleBoldSettingsValues[index]);
@@ -508,6 +516,15 @@ public class Settings extends Observable {
     // On othe other hand, the first statement of this method causes Color objects
     // to be created!  It is possible but a real pain in the rear to avoid using
     // Color objects totally.  Requires new methods for the SyntaxUtilities class.
+    // So the styles are set up on first use, which only the editor and the settings
+    // dialog make: command mode and the API never load the AWT classes involved.
+    private void loadEditorSyntaxStyles() {
+        if (syntaxStyleColorSettingsValues == null) {
+            initializeEditorSyntaxStyles();
+            getEditorSyntaxStyleSettingsFromPreferences();
+        }
+    }
+
     private void initializeEditorSyntaxStyles() {
         SyntaxStyle syntaxStyle[] = SyntaxUtilities.getDefaultSyntaxStyles();
         int tokens = syntaxStyle.length;
@@ -996,7 +1013,7 @@ public class Settings extends Observable {
         for (int i = 0; i < colorSettingsValues.length; i++) {
             colorSettingsValues[i] = getDefaultColorMode().modeKey;
         }
-        initializeEditorSyntaxStyles();
+        syntaxStyleColorSettingsValues = null; // back to defaults when next used
     }
 
     /** Takes a color from the LookAndFeel */
@@ -1225,7 +1242,6 @@ public class Settings extends Observable {
         for (int i = 0; i < colorSettingsKeys.length; i++) {
             colorSettingsValues[i] = preferences.get(colorSettingsKeys[i], colorSettingsValues[i]);
         }
-        getEditorSyntaxStyleSettingsFromPreferences();
     }
 
 
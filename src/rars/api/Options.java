@@ -5,12 +5,14 @@ public class Options {
     public boolean warningsAreErrors; // Whether assembler warnings should be considered errors.
     public boolean startAtMain;       // Whether to start execution at statement labeled 'main'
     public boolean selfModifyingCode; // Whether to allow self-modifying code (e.g. write to text segment)
+    public boolean libraryCallInstructions; // Whether memory and string syscalls count the instructions of the equivalent loop
     public int maxSteps;
     public Options(){
         pseudo = true;
         warningsAreErrors = false;
         startAtMain = false;
         selfModifyingCode = false;
+        libraryCallInstructions = false;
         maxSteps = -1;
     }
 }
@@ -1,6 +1,7 @@
 package rars.api;
 
 import rars.*;
+import rars.assembler.Symbol;
 import rars.riscv.hardware.*;
 import rars.simulator.ProgramArgumentList;
 import rars.simulator.Simulator;
@@ -43,6 +44,7 @@ public class Program {
 
     private Options set;
     private RISCVprogram code;
+    private ArrayList<RISCVprogram> programs;
     private SystemIO.Data fds;
     private ByteArrayOutputStream stdout, stderr;
     private Memory assembled, simulation;
@@ -104,6 +106,7 @@ public class Program {
     }
 
     private ErrorList assemble(ArrayList<RISCVprogram> programs) throws AssemblyException {
+        this.programs = programs;
         Memory temp = Memory.swapInstance(assembled); // Assembling changes memory so we need to swap to capture that.
         ErrorList warnings = null;
         AssemblyException e = null;
@@ -173,6 +176,8 @@ public class Program {
         // Swap out global state for local state.
         boolean selfMod = Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED);
         Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, set.selfModifyingCode);
+        boolean libraryCalls = Globals.getSettings().getBooleanSetting(Settings.Bool.LIBRARY_CALL_INSTRUCTIONS);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.LIBRARY_CALL_INSTRUCTIONS, set.libraryCallInstructions);
         SystemIO.Data tmpFiles = SystemIO.swapData(fds);
         Memory tmpMem = Memory.swapInstance(simulation);
 
@@ -184,6 +189,7 @@ public class Program {
         exitCode = Globals.exitCode;
 
         Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, selfMod);
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.LIBRARY_CALL_INSTRUCTIONS, libraryCalls);
         SystemIO.swapData(tmpFiles);
         Memory.swapInstance(tmpMem);
 
@@ -250,6 +256,19 @@ public class Program {
         return exitCode;
     }
 
+    /**
+     * @return the data labels of the assembled program: the global ones, then those local to each file
+     */
+    public ArrayList<Symbol> getDataSymbols() {
+        ArrayList<Symbol> symbols = new ArrayList<>(Globals.symbolTable.getDataSymbols());
+        if (programs != null) {
+            for (RISCVprogram program : programs) {
+                symbols.addAll(program.getLocalSymbolTable().getDataSymbols());
+            }
+        }
+        return symbols;
+    }
+
     /**
      * Gets the instance of memory the program is using.
      *
@@ -0,0 +1,347 @@
+package rars.api;
+
+import rars.*;
+import rars.riscv.InstructionSet;
+import rars.riscv.hardware.*;
+import rars.simulator.Simulator;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Runs jobs for other programs, such as autograders, so that many programs can be
+ * assembled and simulated by one long-lived JVM rather than starting RARS for each.
+ * Jobs come either on standard input or over TCP connections to the loopback address,
+ * one JSON object per line, and each gets one JSON line in response.
+ * </p>
+ *
+ * <p>
+ * A job may have these members; only one of "source" and "files" is required.
+ * </p>
+ * <ul>
+ * <li> "id": anything, copied into the response
+ * <li> "source": the program as one string
+ * <li> "files": array of file names to assemble; "main" names the main one (default first)
+ * <li> "stdin": text given to the program as standard input (default empty)
+ * <li> "args": array of program arguments
+ * <li> "maxSteps": step limit, 0 or negative for none (default {@value #DEFAULT_MAX_STEPS})
+ * <li> "timeoutMillis": wall clock limit in milliseconds, 0 or negative for the default
+ * ({@value #DEFAULT_TIMEOUT_MILLIS})
+ * <li> "rv64", "startAtMain", "selfModifyingCode", "warningsAreErrors",
+ * "libraryCallInstructions": booleans (default false)
+ * <li> "pseudo": whether pseudo-instructions are allowed (default true)
+ * <li> "memoryConfiguration": memory configuration name, as for the mc option (default Default)
+ * <li> "registers": array of register names to report (default the integer registers and pc)
+ * </ul>
+ *
+ * <p>
+ * The response has "id", "reason" (a {@link Simulator.Reason} name, or ASSEMBLY_ERROR,
+ * SIMULATION_ERROR, TIMEOUT, INVALID_JOB or INTERNAL_ERROR), "exitCode", "stdout", "stderr" and "registers" (an
+ * object from register name to value), plus "error" and "warnings" with the RARS messages
+ * if there are any.
+ * </p>
+ *
+ * <p>
+ * Connections are served concurrently by a fixed pool of threads, but the jobs themselves
+ * run one at a time: the assembler and simulator keep their state (registers, memory, settings)
+ * in static fields, as explained for {@link Program}.  So that a program that never ends
+ * cannot hold up the jobs behind it, each job is limited to {@value #DEFAULT_MAX_STEPS} steps
+ * unless it asks otherwise, and is stopped with reason TIMEOUT once it has simulated for
+ * its time limit.
+ * </p>
+ */
+public class Server {
+    private static final int CONNECTION_THREADS = 8;
+    /**
+     * Step limit for jobs that do not give "maxSteps"
+     */
+    public static final int DEFAULT_MAX_STEPS = 10000000;
+    /**
+     * Time limit, in milliseconds, for jobs that do not give "timeoutMillis"
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+    // Guards all of the global simulator state used by a job.
+    private static final Object jobLock = new Object();
+    // Stops jobs that run past their time limit.
+    private static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RARS server timeouts");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Serves jobs from the input stream until it ends, writing responses to the output stream
+     * in the same order.
+     *
+     * @param in  where the jobs come from
+     * @param out where the responses go
+     * @throws IOException if reading or writing fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            writer.write(handle(line));
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback address and serves each with {@link #serve} on
+     * a pool of threads.  Does not return unless the server socket fails.
+     *
+     * @param port the TCP port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public void listen(int port) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(CONNECTION_THREADS);
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                final Socket socket = serverSocket.accept();
+                pool.execute(new Runnable() {
+                    public void run() {
+                        try (Socket s = socket) {
+                            serve(s.getInputStream(), s.getOutputStream());
+                        } catch (IOException e) {
+                            // the client went away; nothing to report to
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs one job.
+     *
+     * @param request the job, as a JSON object
+     * @return the response, as a JSON object on one line
+     */
+    public String handle(String request) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        Object id = null;
+        try {
+            Object job;
+            try {
+                job = Json.parse(request);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidJobException("invalid JSON: " + e.getMessage());
+            }
+            if (!(job instanceof Map)) {
+                throw new InvalidJobException("a job must be a JSON object");
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> fields = (Map<String, Object>) job;
+            id = fields.get("id");
+            response.put("id", id);
+            run(fields, response);
+        } catch (InvalidJobException e) {
+            response.clear();
+            response.put("id", id);
+            response.put("reason", "INVALID_JOB");
+            response.put("error", e.getMessage());
+        } catch (RuntimeException e) {
+            // A bug in RARS rather than in the job; report it so the client is not left waiting.
+            response.clear();
+            response.put("id", id);
+            response.put("reason", "INTERNAL_ERROR");
+            response.put("error", e.toString());
+        }
+        return Json.write(response);
+    }
+
+    private void run(Map<String, Object> job, Map<String, Object> response) throws InvalidJobException {
+        Options options = new Options();
+        options.pseudo = getBoolean(job, "pseudo", true);
+        options.warningsAreErrors = getBoolean(job, "warningsAreErrors", false);
+        options.startAtMain = getBoolean(job, "startAtMain", false);
+        options.selfModifyingCode = getBoolean(job, "selfModifyingCode", false);
+        options.libraryCallInstructions = getBoolean(job, "libraryCallInstructions", false);
+        long maxSteps = getLong(job, "maxSteps", DEFAULT_MAX_STEPS);
+        if (maxSteps > Integer.MAX_VALUE) {
+            throw new InvalidJobException("maxSteps must be at most " + Integer.MAX_VALUE);
+        }
+        options.maxSteps = (int) Math.max(maxSteps, -1);
+        long timeoutMillis = getLong(job, "timeoutMillis", DEFAULT_TIMEOUT_MILLIS);
+        if (timeoutMillis <= 0) timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        boolean rv64 = getBoolean(job, "rv64", false);
+        String source = getString(job, "source", null);
+        ArrayList<String> files = getStrings(job, "files");
+        String main = getString(job, "main", null);
+        String stdin = getString(job, "stdin", "");
+        ArrayList<String> args = getStrings(job, "args");
+        ArrayList<String> registers = getStrings(job, "registers");
+        String configName = getString(job, "memoryConfiguration", null);
+        MemoryConfiguration config = (configName == null) ? MemoryConfigurations.getDefaultConfiguration()
+                : MemoryConfigurations.getConfigurationByName(configName);
+        if (config == null) {
+            throw new InvalidJobException("invalid memory configuration " + configName);
+        }
+        if ((source == null) == (files == null || files.isEmpty())) {
+            throw new InvalidJobException("a job needs either source or files");
+        }
+
+        synchronized (jobLock) {
+            Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, rv64);
+            InstructionSet.rv64 = rv64;
+            Globals.instructionSet.populate();
+            MemoryConfigurations.setCurrentConfiguration(config);
+
+            Program program = new Program(options);
+            try {
+                ErrorList warnings;
+                if (source != null) {
+                    warnings = program.assembleString(source);
+                } else {
+                    warnings = program.assemble(files, (main == null) ? files.get(0) : main);
+                }
+                if (warnings != null && warnings.warningsOccurred()) {
+                    response.put("warnings", warnings.generateWarningReport());
+                }
+            } catch (AssemblyException e) {
+                response.put("reason", "ASSEMBLY_ERROR");
+                response.put("error", e.errors().generateErrorAndWarningReport());
+                return;
+            }
+            program.setup(args, stdin);
+            String reason;
+            JobTimer timer = new JobTimer();
+            ScheduledFuture<?> timeout = timeouts.schedule(timer, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                Simulator.Reason done;
+                do {
+                    done = program.simulate();
+                } while (done == Simulator.Reason.BREAKPOINT && !timer.isTimedOut());
+                reason = (timer.finish() && (done == Simulator.Reason.STOP || done == Simulator.Reason.BREAKPOINT))
+                        ? "TIMEOUT" : done.name();
+            } catch (SimulationException e) {
+                timer.finish();
+                reason = "SIMULATION_ERROR";
+                response.put("error", e.error().generateReport());
+            } finally {
+                timeout.cancel(false);
+            }
+            response.put("reason", reason);
+            response.put("exitCode", program.getExitCode());
+            response.put("stdout", program.getSTDOUT());
+            response.put("stderr", program.getSTDERR());
+            response.put("registers", registerValues(registers, rv64));
+        }
+    }
+
+    private static Map<String, Object> registerValues(ArrayList<String> names, boolean rv64) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        if (names == null) {
+            for (Register r : RegisterFile.getRegisters()) {
+                values.put(r.getName(), value(r, rv64));
+            }
+            values.put("pc", RegisterFile.getProgramCounter());
+            return values;
+        }
+        for (String name : names) {
+            Register r = RegisterFile.getRegister(name);
+            if (r == null) r = FloatingPointRegisterFile.getRegister(name);
+            if (r == null) r = ControlAndStatusRegisterFile.getRegister(name);
+            if (name.equals("pc")) {
+                values.put(name, RegisterFile.getProgramCounter());
+            } else if (r == null) {
+                values.put(name, null);
+            } else {
+                values.put(name, value(r, rv64));
+            }
+        }
+        return values;
+    }
+
+    private static Object value(Register r, boolean rv64) {
+        long value = r.getValueNoNotify();
+        return rv64 ? (Object) value : (Object) (int) value;
+    }
+
+    private static boolean getBoolean(Map<String, Object> job, String name, boolean defaultValue) throws InvalidJobException {
+        Object value = job.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Boolean)) throw new InvalidJobException(name + " must be true or false");
+        return (Boolean) value;
+    }
+
+    private static long getLong(Map<String, Object> job, String name, long defaultValue) throws InvalidJobException {
+        Object value = job.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Long)) throw new InvalidJobException(name + " must be an integer");
+        return (Long) value;
+    }
+
+    private static String getString(Map<String, Object> job, String name, String defaultValue) throws InvalidJobException {
+        Object value = job.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof String)) throw new InvalidJobException(name + " must be a string");
+        return (String) value;
+    }
+
+    private static ArrayList<String> getStrings(Map<String, Object> job, String name) throws InvalidJobException {
+        Object value = job.get(name);
+        if (value == null) return null;
+        if (!(value instanceof List)) throw new InvalidJobException(name + " must be an array of strings");
+        ArrayList<String> strings = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof String)) throw new InvalidJobException(name + " must be an array of strings");
+            strings.add((String) element);
+        }
+        return strings;
+    }
+
+    // Stops the simulator when a job's time is up, unless the job has already finished;
+    // after finish() it can no longer stop the job that runs next.
+    private static class JobTimer implements Runnable {
+        private boolean finished, timedOut;
+
+        public synchronized void run() {
+            if (!finished) {
+                timedOut = true;
+                Simulator.getInstance().stopExecution();
+            }
+        }
+
+        private synchronized boolean isTimedOut() {
+            return timedOut;
+        }
+
+        private synchronized boolean finish() {
+            finished = true;
+            return timedOut;
+        }
+    }
+
+    private static class InvalidJobException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private InvalidJobException(String message) {
+            super(message);
+        }
+    }
+}
@@ -7,11 +7,18 @@ import rars.riscv.BasicInstruction;
 import rars.riscv.ExtendedInstruction;
 import rars.riscv.Instruction;
 import rars.util.Binary;
+import rars.util.Metrics;
 import rars.util.SystemIO;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
 
 
 /*
@@ -65,6 +72,10 @@ public class Assembler {
     private AddressSpace dataAddress;
     private DataSegmentForwardReferences currentFileDataSegmentForwardReferences,
             accumulatedDataSegmentForwardReferences;
+    // First-pass results of each file from the most recent assemble, if they are kept
+    // (see keepFirstPasses), and the results being recorded for the current file.
+    private HashMap<RISCVprogram, FirstPass> firstPasses;
+    private FirstPass recording;
 
     /**
      * Get list of assembler errors and warnings
@@ -75,6 +86,19 @@ public class Assembler {
         return errors;
     }
 
+    /**
+     * Keep the first-pass results of each file, so that later assembles by this Assembler
+     * can skip the first pass of a file that is unchanged and starts at the same addresses.
+     * The statements of such a file are kept along with the tokens needed to take them
+     * through the second pass again.  Files are matched by RISCVprogram object, so an
+     * edited file must be read and tokenized into a new one.
+     */
+    void keepFirstPasses() {
+        if (firstPasses == null) {
+            firstPasses = new HashMap<>();
+        }
+    }
+
     /**
      * Parse and generate machine code for the given program. All source
      * files must have already been tokenized.
@@ -99,6 +123,7 @@ public class Assembler {
 
         if (tokenizedProgramFiles == null || tokenizedProgramFiles.size() == 0)
             return null;
+        long phaseStart = System.nanoTime();
         textAddress = new AddressSpace(Memory.textBaseAddress);
         dataAddress = new AddressSpace(Memory.dataBaseAddress);
         externAddress = Memory.externBaseAddress;
@@ -114,10 +139,28 @@ public class Assembler {
         // TO SECOND PASS. THIS ASSURES ALL SYMBOL TABLES ARE CORRECTLY BUILT.
         // THERE IS ONE GLOBAL SYMBOL TABLE (for identifiers declared .globl) PLUS
         // ONE LOCAL SYMBOL TABLE FOR EACH SOURCE FILE.
+        HashMap<RISCVprogram, FirstPass> previousFirstPasses = firstPasses;
+        if (firstPasses != null) {
+            firstPasses = new HashMap<>();
+        }
         for (RISCVprogram program : tokenizedProgramFiles) {
             if (errors.errorLimitExceeded())
                 break;
             this.fileCurrentlyBeingAssembled = program;
+            FirstPass previous = (previousFirstPasses == null) ? null : previousFirstPasses.get(program);
+            if (previous != null && previous.canRepeat()) {
+                // Same source at the same addresses: repeat its results instead of parsing it.
+                previous.repeat();
+                firstPasses.put(program, previous);
+                currentFileDataSegmentForwardReferences.resolve(program.getLocalSymbolTable());
+                accumulatedDataSegmentForwardReferences.add(currentFileDataSegmentForwardReferences);
+                currentFileDataSegmentForwardReferences.clear();
+                continue;
+            }
+            int messageCount = errors.getErrorMessages().size();
+            if (firstPasses != null) {
+                recording = new FirstPass();
+            }
             // List of labels declared ".globl". new list for each file assembled
             this.globalDeclarationList = new TokenList();
             // Parser begins by default in text segment until directed otherwise.
@@ -146,10 +189,8 @@ public class Assembler {
             for (int i = 0; i < tokenList.size(); i++) {
                 if (errors.errorLimitExceeded())
                     break;
-                for (Token t : tokenList.get(i)) {
-                    // record this token's original source program and line #. Differs from final, if .include used
-                    t.setOriginal(sourceLineList.get(i).getRISCVprogram(), sourceLineList.get(i).getLineNumber());
-                }
+                // record the tokens' original source program and line #. Differs from final, if .include used
+                tokenList.get(i).setOriginal(sourceLineList.get(i).getRISCVprogram(), sourceLineList.get(i).getLineNumber());
                 statements = this.parseLine(tokenList.get(i),
                         sourceLineList.get(i).getSource(),
                         sourceLineList.get(i).getLineNumber(),
@@ -165,6 +206,14 @@ public class Assembler {
             }
             // move ".globl" symbols from local symtab to global
             this.transferGlobals();
+            // Only a first pass without errors or warnings is kept to be repeated.
+            if (recording != null) {
+                if (errors.getErrorMessages().size() == messageCount && recording.repeatable) {
+                    recording.finish();
+                    firstPasses.put(program, recording);
+                }
+                recording = null;
+            }
             // Attempt to resolve forward label references that were discovered in operand fields
             // of data segment directives in current file. Those that are not resolved after this
             // call are either references to global labels not seen yet, or are undefined.
@@ -183,6 +232,7 @@ public class Assembler {
         accumulatedDataSegmentForwardReferences.resolve(Globals.symbolTable);
         accumulatedDataSegmentForwardReferences.generateErrorMessages(errors);
 
+        phaseStart = phaseEnd(Metrics.Phase.FIRST_PASS, phaseStart);
         // Throw collection of errors accumulated through the first pass.
         if (errors.errorsOccurred()) {
             throw new AssemblyException(errors);
@@ -191,104 +241,55 @@ public class Assembler {
             System.out.println("Assembler second pass begins");
         // SECOND PASS OF ASSEMBLER GENERATES BASIC ASSEMBLER THEN MACHINE CODE.
         // Generates basic assembler statements...
+        // Every statement already knows its address and all symbol tables are complete,
+        // so statements are independent of each other from here on.  Large programs are
+        // split into chunks that are processed on the common fork-join pool; each chunk
+        // collects its own errors, and the results are merged back in source order so
+        // that the ErrorList reads exactly as if the statements had been done one by one.
+        ArrayList<ProgramStatement> parsedStatements = new ArrayList<>();
         for (RISCVprogram program : tokenizedProgramFiles) {
-            if (errors.errorLimitExceeded())
-                break;
-            this.fileCurrentlyBeingAssembled = program;
-            ArrayList<ProgramStatement> parsedList = fileCurrentlyBeingAssembled.getParsedList();
-            for (ProgramStatement statement : parsedList) {
-                statement.buildBasicStatementFromBasicInstruction(errors);
-                if (errors.errorsOccurred()) {
-                    throw new AssemblyException(errors);
-                }
-                if (statement.getInstruction() instanceof BasicInstruction) {
-                    machineList.add(statement);
-                } else {
-                    // It is a pseudo-instruction:
-                    // 1. Fetch its basic instruction template list
-                    // 2. For each template in the list,
-                    // 2a. substitute operands from source statement
-                    // 2b. tokenize the statement generated by 2a.
-                    // 2d. call parseLine() to generate basic instrction
-                    // 2e. add returned programStatement to the list
-                    // The templates, and the instructions generated by filling
-                    // in the templates, are specified
-                    // in basic format (e.g. mnemonic register reference zero
-                    // already translated to x0).
-                    // So the values substituted into the templates need to be
-                    // in this format. Since those
-                    // values come from the original source statement, they need
-                    // to be translated before
-                    // substituting. The next method call will perform this
-                    // translation on the original
-                    // source statement. Despite the fact that the original
-                    // statement is a pseudo
-                    // instruction, this method performs the necessary
-                    // translation correctly.
-                    // TODO: consider making this recursive
-                    ExtendedInstruction inst = (ExtendedInstruction) statement.getInstruction();
-                    String basicAssembly = statement.getBasicAssemblyStatement();
-                    int sourceLine = statement.getSourceLine();
-                    TokenList theTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                            basicAssembly, errors, false);
-
-                    // ////////////////////////////////////////////////////////////////////////////
-                    // If we are using compact memory config and there is a compact expansion, use it
-                    ArrayList<String> templateList;
-                    templateList = inst.getBasicIntructionTemplateList();
-
-
-                    // subsequent ProgramStatement constructor needs the correct text segment address.
-                    textAddress.set(statement.getAddress());
-                    // Will generate one basic instruction for each template in the list.
-                    int PC = textAddress.get(); // Save the starting PC so that it can be used for PC relative stuff
-                    for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
-                        String instruction = ExtendedInstruction.makeTemplateSubstitutions(
-                                this.fileCurrentlyBeingAssembled,
-                                templateList.get(instrNumber), theTokenList, PC);
-
-                        // All substitutions have been made so we have generated
-                        // a valid basic instruction!
-                        if (Globals.debug)
-                            System.out.println("PSEUDO generated: " + instruction);
-                        // For generated instruction: tokenize, build program
-                        // statement, add to list.
-                        TokenList newTokenList = new Tokenizer().tokenizeLine(sourceLine,
-                                instruction, errors, false);
-                        ArrayList<Instruction> instrMatches = this.matchInstruction(newTokenList.get(0));
-                        Instruction instr = OperandFormat.bestOperandMatch(newTokenList,
-                                instrMatches);
-                        // Only first generated instruction is linked to original source
-                        ProgramStatement ps = new ProgramStatement(
-                                this.fileCurrentlyBeingAssembled,
-                                (instrNumber == 0) ? statement.getSource() : "", newTokenList,
-                                newTokenList, instr, textAddress.get(), statement.getSourceLine());
-                        textAddress.increment(Instruction.INSTRUCTION_LENGTH);
-                        ps.buildBasicStatementFromBasicInstruction(errors);
-                        machineList.add(ps);
-                    } // end of FOR loop, repeated for each template in list.
-                } // end of ELSE part for extended instruction.
-
-            } // end of assembler second pass.
+            parsedStatements.addAll(program.getParsedList());
         }
+        ArrayList<SecondPassChunk> secondPass = processInChunks(parsedStatements, this::generateBasicStatements);
+        boolean pendingErrors = false;
+        for (SecondPassChunk chunk : secondPass) {
+            if (pendingErrors) {
+                // The previous chunk ended on an expansion error.  Assembling sequentially
+                // would have built one more statement before noticing it.
+                chunk.mergeLeadInto(errors);
+                throw new AssemblyException(errors);
+            }
+            chunk.mergeInto(errors);
+            machineList.addAll(chunk.machineStatements);
+            if (chunk.stopped) {
+                throw new AssemblyException(errors);
+            }
+            pendingErrors = errors.errorsOccurred();
+        }
+        phaseStart = phaseEnd(Metrics.Phase.SECOND_PASS, phaseStart);
         if (Globals.debug)
             System.out.println("Code generation begins");
         ///////////// THIRD MAJOR STEP IS PRODUCE MACHINE CODE FROM ASSEMBLY //////////
         // Generates machine code statements from the list of basic assembler statements
-        // and writes the statement to memory.
-
-        for (ProgramStatement statement : machineList) {
-            if (errors.errorLimitExceeded())
-                break;
-            statement.buildMachineStatementFromBasicStatement(errors);
-            if (Globals.debug)
-                System.out.println(statement);
-            try {
-                Globals.memory.setStatement(statement.getAddress(), statement);
-            } catch (AddressErrorException e) {
-                Token t = statement.getOriginalTokenList().get(0);
-                errors.add(new ErrorMessage(t.getSourceProgram(), t.getSourceLine(), t
-                        .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
+        // and writes the statement to memory.  Encoding is done in chunks like the second
+        // pass; the (cheap) stores into memory are done here, in order.
+        ArrayList<CodeGenerationChunk> codeGeneration = processInChunks(machineList, this::generateMachineCode);
+        generation:
+        for (CodeGenerationChunk chunk : codeGeneration) {
+            for (int i = 0; i < chunk.statements.size(); i++) {
+                if (errors.errorLimitExceeded())
+                    break generation;
+                ProgramStatement statement = chunk.statements.get(i);
+                chunk.mergeInto(errors, i);
+                if (Globals.debug)
+                    System.out.println(statement);
+                try {
+                    Globals.memory.setStatement(statement.getAddress(), statement);
+                } catch (AddressErrorException e) {
+                    Token t = statement.getOriginalTokenList().get(0);
+                    errors.add(new ErrorMessage(t.getSourceProgram(), t.getSourceLine(), t
+                            .getStartPos(), "Invalid address for text segment: " + e.getAddress()));
+                }
             }
         }
         // Aug. 24, 2005 Ken Vollmar
@@ -306,12 +307,229 @@ public class Assembler {
         // but in case of duplicate I like having both statements handy for error message.
         Collections.sort(machineList);
         catchDuplicateAddresses(machineList, errors);
+        phaseEnd(Metrics.Phase.CODE_GENERATION, phaseStart);
         if (errors.errorsOccurred() || errors.warningsOccurred() && warningsAreErrors) {
             throw new AssemblyException(errors);
         }
         return machineList;
     } // assemble()
 
+    // Records the time since start for the phase; returns the start of the next one.
+    private static long phaseEnd(Metrics.Phase phase, long start) {
+        long end = System.nanoTime();
+        Metrics.assemblerPhase(phase, end - start);
+        return end;
+    }
+
+    /**
+     * Assemble one replacement source line in place of a basic instruction that has already
+     * been assembled at the given address.  The line is parsed in the text segment of its file,
+     * as the first pass would, and then taken through the second pass and code generation.
+     * Nothing is stored into memory.  Used by IncrementalAssembler, which only calls this for
+     * lines without labels or directives in files without macros.
+     *
+     * @param program                  the RISCVprogram containing the line
+     * @param tokens                   the tokens of the replacement line
+     * @param source                   the replacement line
+     * @param address                  text segment address of the statement being replaced
+     * @param extendedAssemblerEnabled A boolean value that if true permits use of extended (pseudo)
+     *                                 instructions in the source code.
+     * @return the assembled statement, or null if the line produced any error or warning or did
+     * not assemble into exactly one basic instruction.
+     */
+    ProgramStatement assembleReplacementLine(RISCVprogram program, TokenList tokens, SourceLine source,
+                                             int address, boolean extendedAssemblerEnabled) {
+        this.errors = new ErrorList();
+        this.fileCurrentlyBeingAssembled = program;
+        this.globalDeclarationList = new TokenList();
+        this.inDataSegment = false;
+        this.inMacroSegment = false;
+        this.textAddress = new AddressSpace(address);
+        this.dataAddress = new AddressSpace(Memory.dataBaseAddress);
+        tokens.setOriginal(source.getRISCVprogram(), source.getLineNumber());
+        ArrayList<ProgramStatement> statements = this.parseLine(tokens, source.getSource(),
+                source.getLineNumber(), extendedAssemblerEnabled);
+        if (statements == null || statements.size() != 1 || !this.errors.getErrorMessages().isEmpty()
+                || !(statements.get(0).getInstruction() instanceof BasicInstruction)
+                || textAddress.get() != address + Instruction.INSTRUCTION_LENGTH) {
+            return null;
+        }
+        ProgramStatement statement = statements.get(0);
+        statement.buildBasicStatementFromBasicInstruction(this.errors, true);
+        if (this.errors.getErrorMessages().isEmpty()) {
+            statement.buildMachineStatementFromBasicStatement(this.errors);
+        }
+        return (this.errors.getErrorMessages().isEmpty()) ? statement : null;
+    }
+
+    // Statements are handed to worker threads in chunks of this many.  Programs smaller
+    // than one chunk are processed in the calling thread.
+    private static final int CHUNK_SIZE = 2048;
+
+    // //////////////////////////////////////////////////////////////////////
+    // Applies the given work to consecutive chunks of the statement list, in parallel if
+    // there is more than one chunk, and returns the results in chunk order.
+    private static <T> ArrayList<T> processInChunks(ArrayList<ProgramStatement> statements,
+                                                    Function<List<ProgramStatement>, T> work) {
+        ArrayList<T> results = new ArrayList<>();
+        if (statements.size() <= CHUNK_SIZE) {
+            results.add(work.apply(statements));
+            return results;
+        }
+        ArrayList<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (int from = 0; from < statements.size(); from += CHUNK_SIZE) {
+            List<ProgramStatement> chunk = statements.subList(from, Math.min(from + CHUNK_SIZE, statements.size()));
+            tasks.add(ForkJoinPool.commonPool().submit(() -> work.apply(chunk)));
+        }
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Second pass over one chunk of parsed statements: builds the basic statement for each
+    // and expands pseudo-instructions into basic ones.  Stops at the first statement that
+    // leaves an error behind, as the sequential assembler did.
+    private SecondPassChunk generateBasicStatements(List<ProgramStatement> parsedList) {
+        SecondPassChunk chunk = new SecondPassChunk();
+        ErrorList errors = chunk.errors;
+        for (ProgramStatement statement : parsedList) {
+            statement.buildBasicStatementFromBasicInstruction(errors, firstPasses != null);
+            if (chunk.leadMessageCount < 0) {
+                chunk.leadMessageCount = errors.getErrorMessages().size();
+            }
+            if (errors.errorsOccurred()) {
+                chunk.stopped = true;
+                break;
+            }
+            if (statement.getInstruction() instanceof BasicInstruction) {
+                chunk.machineStatements.add(statement);
+            } else {
+                // It is a pseudo-instruction:
+                // 1. Fetch its basic instruction template list
+                // 2. For each template in the list,
+                // 2a. substitute operands from source statement
+                // 2b. tokenize the statement generated by 2a.
+                // 2d. call parseLine() to generate basic instrction
+                // 2e. add returned programStatement to the list
+                // The templates, and the instructions generated by filling
+                // in the templates, are specified
+                // in basic format (e.g. mnemonic register reference zero
+                // already translated to x0).
+                // So the values substituted into the templates need to be
+                // in this format. Since those
+                // values come from the original source statement, they need
+                // to be translated before
+                // substituting. The next method call will perform this
+                // translation on the original
+                // source statement. Despite the fact that the original
+                // statement is a pseudo
+                // instruction, this method performs the necessary
+                // translation correctly.
+                // TODO: consider making this recursive
+                ExtendedInstruction inst = (ExtendedInstruction) statement.getInstruction();
+                String basicAssembly = statement.getBasicAssemblyStatement();
+                int sourceLine = statement.getSourceLine();
+                TokenList theTokenList = new Tokenizer().tokenizeLine(sourceLine,
+                        basicAssembly, errors, false);
+
+                // ////////////////////////////////////////////////////////////////////////////
+                // If we are using compact memory config and there is a compact expansion, use it
+                ArrayList<String> templateList;
+                templateList = inst.getBasicIntructionTemplateList();
+
+                // subsequent ProgramStatement constructor needs the correct text segment address.
+                int address = statement.getAddress();
+                // Will generate one basic instruction for each template in the list.
+                int PC = address; // Save the starting PC so that it can be used for PC relative stuff
+                for (int instrNumber = 0; instrNumber < templateList.size(); instrNumber++) {
+                    // Precompiled templates are filled in directly; the rest are substituted
+                    // as text and tokenized.
+                    TokenList newTokenList = inst.expandTemplate(instrNumber,
+                            statement.getSourceProgram(), theTokenList, sourceLine, PC);
+                    Instruction instr = null;
+                    if (newTokenList != null) {
+                        instr = inst.getTemplateInstruction(instrNumber);
+                    } else {
+                        String instruction = ExtendedInstruction.makeTemplateSubstitutions(
+                                statement.getSourceProgram(),
+                                templateList.get(instrNumber), theTokenList, PC);
+                        newTokenList = new Tokenizer().tokenizeLine(sourceLine,
+                                instruction, errors, false);
+                    }
+
+                    // All substitutions have been made so we have generated
+                    // a valid basic instruction!
+                    if (Globals.debug)
+                        System.out.println("PSEUDO generated: " + newTokenList);
+                    if (instr == null) {
+                        ArrayList<Instruction> instrMatches = this.matchInstruction(newTokenList.get(0), errors);
+                        instr = OperandFormat.bestOperandMatch(newTokenList, instrMatches);
+                    }
+                    // Only first generated instruction is linked to original source
+                    ProgramStatement ps = new ProgramStatement(
+                            statement.getSourceProgram(),
+                            (instrNumber == 0) ? statement.getSource() : "", newTokenList,
+                            newTokenList, instr, address, statement.getSourceLine());
+                    address += Instruction.INSTRUCTION_LENGTH;
+                    ps.buildBasicStatementFromBasicInstruction(errors);
+                    chunk.machineStatements.add(ps);
+                } // end of FOR loop, repeated for each template in list.
+            } // end of ELSE part for extended instruction.
+        }
+        return chunk;
+    }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Builds the binary machine code for one chunk of basic statements, remembering which
+    // messages belong to which statement so they can be merged back in order.
+    private CodeGenerationChunk generateMachineCode(List<ProgramStatement> statements) {
+        CodeGenerationChunk chunk = new CodeGenerationChunk(statements);
+        for (int i = 0; i < statements.size(); i++) {
+            statements.get(i).buildMachineStatementFromBasicStatement(chunk.errors);
+            chunk.messageEnd[i] = chunk.errors.getErrorMessages().size();
+        }
+        return chunk;
+    }
+
+    private static class SecondPassChunk {
+        private final ErrorList errors = new ErrorList();
+        private final ArrayList<ProgramStatement> machineStatements = new ArrayList<>();
+        private int leadMessageCount = -1; // messages left by the first statement's basic statement
+        private boolean stopped;
+
+        private void mergeInto(ErrorList target) {
+            for (ErrorMessage message : errors.getErrorMessages()) {
+                target.add(message);
+            }
+        }
+
+        private void mergeLeadInto(ErrorList target) {
+            for (int i = 0; i < leadMessageCount; i++) {
+                target.add(errors.getErrorMessages().get(i));
+            }
+        }
+    }
+
+    private static class CodeGenerationChunk {
+        private final ErrorList errors = new ErrorList();
+        private final List<ProgramStatement> statements;
+        private final int[] messageEnd;
+
+        private CodeGenerationChunk(List<ProgramStatement> statements) {
+            this.statements = statements;
+            this.messageEnd = new int[statements.size()];
+        }
+
+        // Adds the messages produced while encoding the i'th statement of this chunk.
+        private void mergeInto(ErrorList target, int i) {
+            for (int m = (i == 0) ? 0 : messageEnd[i - 1]; m < messageEnd[i]; m++) {
+                target.add(errors.getErrorMessages().get(m));
+            }
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////
     // Will check for duplicate text addresses, which can happen inadvertantly when using
     // operand on .text directive. Will generate error message for each one that occurs.
@@ -475,7 +693,7 @@ public class Assembler {
         // is not
         // yet implemented.
         if (!this.inDataSegment) {
-            ArrayList<Instruction> instrMatches = this.matchInstruction(token);
+            ArrayList<Instruction> instrMatches = this.matchInstruction(token, this.errors);
             if (instrMatches == null)
                 return ret;
             // OK, we've got an operator match, let's check the operands.
@@ -544,13 +762,12 @@ public class Assembler {
         if (tokens.size() < 2) {
             return false;
         } else {
-            Token token = tokens.get(0);
             if (tokenListBeginsWithLabel(tokens)) {
-                if (token.getType() == TokenTypes.OPERATOR) {
+                if (tokens.getType(0) == TokenTypes.OPERATOR) {
                     // an instruction name was used as label (e.g. lw:), so change its token type
-                    token.setType(TokenTypes.IDENTIFIER);
+                    tokens.setType(0, TokenTypes.IDENTIFIER);
                 }
-                fileCurrentlyBeingAssembled.getLocalSymbolTable().addSymbol(token,
+                fileCurrentlyBeingAssembled.getLocalSymbolTable().addSymbol(tokens.get(0),
                         (this.inDataSegment) ? dataAddress.get() : textAddress.get(),
                         this.inDataSegment, this.errors);
                 return true;
@@ -736,6 +953,10 @@ public class Assembler {
             }
             int size = Binary.stringToInt(tokens.get(2).getValue());
             // If label already in global symtab, do nothing. If not, add it right now.
+            // What happens depends on the other files, so the first pass is not kept.
+            if (recording != null) {
+                recording.repeatable = false;
+            }
             if (Globals.symbolTable.getAddress(tokens.get(1).getValue()) == SymbolTable.NOT_FOUND) {
                 Globals.symbolTable.addSymbol(tokens.get(1), this.externAddress,
                         true, errors);
@@ -818,22 +1039,22 @@ public class Assembler {
     // //////////////////////////////////////////////////////////////////////////////////
     // Given token, find the corresponding Instruction object. If token was not
     // recognized as OPERATOR, there is a problem.
-    private ArrayList<Instruction> matchInstruction(Token token) {
+    private ArrayList<Instruction> matchInstruction(Token token, ErrorList errors) {
         if (token.getType() != TokenTypes.OPERATOR) {
             if (token.getSourceProgram().getLocalMacroPool()
                     .matchesAnyMacroName(token.getValue()))
-                this.errors.add(new ErrorMessage(token.getSourceProgram(), token
+                errors.add(new ErrorMessage(token.getSourceProgram(), token
                         .getSourceLine(), token.getStartPos(), "forward reference or invalid parameters for macro \""
                         + token.getValue() + "\""));
             else
-                this.errors.add(new ErrorMessage(token.getSourceProgram(), token
+                errors.add(new ErrorMessage(token.getSourceProgram(), token
                         .getSourceLine(), token.getStartPos(), "\"" + token.getValue()
                         + "\" is not a recognized operator"));
             return null;
         }
         ArrayList<Instruction> inst = Globals.instructionSet.matchOperator(token.getValue());
         if (inst == null) { // This should NEVER happen...
-            this.errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
+            errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(),
                     token.getStartPos(), "Internal Assembler error: \"" + token.getValue()
                     + "\" tokenized OPERATOR then not recognized"));
         }
@@ -974,7 +1195,7 @@ public class Assembler {
              */
             else {
                 try {
-                    Globals.memory.set(this.textAddress.get(), value, lengthInBytes);
+                    store(this.textAddress.get(), value, lengthInBytes);
                 } catch (AddressErrorException e) {
                     errors.add(new ErrorMessage(token.getSourceProgram(),
                             token.getSourceLine(), token.getStartPos(), "\""
@@ -989,12 +1210,17 @@ public class Assembler {
             if (this.inDataSegment) {
                 int value = fileCurrentlyBeingAssembled.getLocalSymbolTable()
                         .getAddressLocalOrGlobal(token.getValue());
+                int dataAddress;
                 if (value == SymbolTable.NOT_FOUND) {
                     // Record value 0 for now, then set up backpatch entry
-                    int dataAddress = writeToDataSegment(0, lengthInBytes, token, errors);
+                    dataAddress = writeToDataSegment(0, lengthInBytes, token, errors);
                     currentFileDataSegmentForwardReferences.add(dataAddress, lengthInBytes, token);
                 } else { // label already defined, so write its address
-                    writeToDataSegment(value, lengthInBytes, token, errors);
+                    dataAddress = writeToDataSegment(value, lengthInBytes, token, errors);
+                }
+                if (recording != null) {
+                    // looked up again whenever the first pass is repeated, as the label may have moved
+                    recording.labelReferences.add(dataAddress, lengthInBytes, token);
                 }
             } // Data segment check done previously, so this "else" will not be.
             // See 11/20/06 note above.
@@ -1135,8 +1361,7 @@ public class Assembler {
                     byte[] bytesOfChar = String.valueOf(theChar).getBytes(StandardCharsets.UTF_8);
                     try {
                         for (byte b : bytesOfChar) {
-                            Globals.memory.set(this.dataAddress.get(), b,
-                                    DataTypes.CHAR_SIZE);
+                            store(this.dataAddress.get(), b, DataTypes.CHAR_SIZE);
                             this.dataAddress.increment(DataTypes.CHAR_SIZE);
                         }
                     } catch (AddressErrorException e) {
@@ -1148,7 +1373,7 @@ public class Assembler {
                 }
                 if (direct == Directives.ASCIZ || direct == Directives.STRING) {
                     try {
-                        Globals.memory.set(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
+                        store(this.dataAddress.get(), 0, DataTypes.CHAR_SIZE);
                     } catch (AddressErrorException e) {
                         errors.add(new ErrorMessage(token.getSourceProgram(), token
                                 .getSourceLine(), token.getStartPos(), "\""
@@ -1182,7 +1407,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.set(this.dataAddress.get(), value, lengthInBytes);
+            store(this.dataAddress.get(), value, lengthInBytes);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1205,7 +1430,7 @@ public class Assembler {
             this.dataAddress.set(this.alignToBoundary(this.dataAddress.get(), lengthInBytes));
         }
         try {
-            Globals.memory.setDouble(this.dataAddress.get(), value);
+            storeDouble(this.dataAddress.get(), value);
         } catch (AddressErrorException e) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token
                     .getStartPos(), "\"" + this.dataAddress.get()
@@ -1215,6 +1440,25 @@ public class Assembler {
         this.dataAddress.increment(lengthInBytes);
     }
 
+    // //////////////////////////////////////////////////////////////////////////////////
+    // Stores a value into memory for the first pass, noting it in the first-pass results
+    // being recorded, if any.
+    private void store(int address, int value, int lengthInBytes) throws AddressErrorException {
+        Globals.memory.set(address, value, lengthInBytes);
+        if (recording != null) {
+            recording.stored(address, value, lengthInBytes);
+        }
+    }
+
+    private void storeDouble(int address, double value) throws AddressErrorException {
+        Globals.memory.setDouble(address, value);
+        if (recording != null) {
+            long bits = Double.doubleToLongBits(value);
+            recording.stored(address + 4, (int) (bits >> 32), 4);
+            recording.stored(address, (int) bits, 4);
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////////
     // If address is multiple of byte boundary, returns address. Otherwise, returns address
     // which is next higher multiple of the byte boundary. Used for aligning data segment.
@@ -1232,6 +1476,96 @@ public class Assembler {
         }
     }
 
+    // //////////////////////////////////////////////////////////////////////////
+    // The results of the first pass over one file, kept so that the pass can be repeated
+    // without parsing the file again.  They hold as long as the file starts at the same
+    // addresses in the segments it uses: its statements, local symbol table and macros stay
+    // in its RISCVprogram, and this records what it put into memory and the global symbol
+    // table.  Labels used as data are looked up again each time, as they may be defined in
+    // other files that have changed.  (Files using .extern are not kept, so the extern
+    // address does not change here.)
+    private class FirstPass {
+        private final int textStart, dataStart;
+        private int textEnd, dataEnd;
+        private boolean usesText, usesData;
+        // address, value and length of each store into memory
+        private int[] stores = new int[48];
+        private int storeCount;
+        private final DataSegmentForwardReferences labelReferences = new DataSegmentForwardReferences();
+        private final int globalStart;
+        private List<Symbol> globals;
+        private boolean repeatable = true;
+
+        private FirstPass() {
+            textStart = textAddress.get();
+            dataStart = dataAddress.get();
+            globalStart = Globals.symbolTable.getSize();
+        }
+
+        private void stored(int address, int value, int length) {
+            if (storeCount + 3 > stores.length) {
+                stores = Arrays.copyOf(stores, stores.length * 2);
+            }
+            stores[storeCount++] = address;
+            stores[storeCount++] = value;
+            stores[storeCount++] = length;
+        }
+
+        // Called once the file's globals have been moved to the global symbol table.
+        private void finish() {
+            textEnd = textAddress.get();
+            dataEnd = dataAddress.get();
+            ArrayList<Symbol> symbols = Globals.symbolTable.getAllSymbols();
+            globals = new ArrayList<>(symbols.subList(globalStart, symbols.size()));
+            usesText = textEnd != textStart;
+            usesData = dataEnd != dataStart;
+            symbols = fileCurrentlyBeingAssembled.getLocalSymbolTable().getAllSymbols();
+            symbols.addAll(globals);
+            for (Symbol symbol : symbols) {
+                if (symbol.getType()) {
+                    usesData = true;
+                } else {
+                    usesText = true;
+                }
+            }
+            stores = Arrays.copyOf(stores, storeCount);
+        }
+
+        // A file that would now declare a global another file already has is parsed again
+        // so that the error is reported as usual.
+        private boolean canRepeat() {
+            if (usesText && textStart != textAddress.get() || usesData && dataStart != dataAddress.get()) {
+                return false;
+            }
+            for (Symbol symbol : globals) {
+                if (Globals.symbolTable.getAddress(symbol.getName()) != SymbolTable.NOT_FOUND) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void repeat() {
+            for (int i = 0; i < storeCount; i += 3) {
+                try {
+                    Globals.memory.set(stores[i], stores[i + 1], stores[i + 2]);
+                } catch (AddressErrorException e) {
+                    // cannot happen, it was stored there before
+                }
+            }
+            for (Symbol symbol : globals) {
+                Globals.symbolTable.addSymbol(symbol);
+            }
+            currentFileDataSegmentForwardReferences.add(labelReferences);
+            if (usesText) {
+                textAddress.set(textEnd);
+            }
+            if (usesData) {
+                dataAddress.set(dataEnd);
+            }
+        }
+    }
+
     // Private wrapper around an int; used to be more complicated
     // TODO: evaluate if it makes sense to keep this
     private class AddressSpace {
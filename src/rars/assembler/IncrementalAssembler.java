@@ -0,0 +1,332 @@
+package rars.assembler;
+
+import rars.*;
+import rars.riscv.BasicInstruction;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
+import rars.riscv.hardware.MemoryConfigurations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Assembles a set of files repeatedly, as the IDE does each time Assemble is selected,
+ * redoing only as much work as the edits since the previous assemble require.
+ * <p>
+ * Files whose source (including any .include'd files) has not changed keep their
+ * tokenized RISCVprogram from the previous assemble.  If every edit replaces one basic
+ * instruction with another on the same line, or only touches comments, in files without
+ * .include, .eqv or macros, the replaced statements are assembled on their own and patched
+ * into the previous result and into memory, which is first restored to its state right after
+ * the previous assemble.
+ * <p>
+ * Anything else (added or removed lines, labels, directives, pseudo instructions, errors or
+ * warnings) takes all files through the assembler again, but the first pass is only done
+ * for the edited files and for files whose text, data or extern addresses have moved as a
+ * result.  The other files keep their statements, local symbol table and data from the
+ * previous assemble; the second pass and code generation are done for every file, since
+ * labels they refer to may have moved.
+ *
+ * @see RISCVprogram#prepareFilesForAssembly
+ */
+public class IncrementalAssembler {
+    // Tokenized program from the previous assemble for each file, by file name.
+    private HashMap<String, RISCVprogram> prepared = new HashMap<>();
+    // Keeps the first pass of each file, for the next full assemble.
+    private Assembler assembler;
+    private ArrayList<RISCVprogram> programsToAssemble;
+    private RISCVprogram leadProgram;
+    // Memory as it was right after the previous assemble, if that assemble was clean.
+    private Memory assembledMemory;
+    private boolean assembledMemoryValid;
+    private String configuration;
+    private ArrayList<ProgramStatement> patchedStatements;
+
+    /**
+     * Assemble the given files, reusing as much as possible from the previous call.  Arguments
+     * are as for RISCVprogram.prepareFilesForAssembly and RISCVprogram.assemble.
+     *
+     * @param filenames                ArrayList containing the source file name(s) in no particular order
+     * @param leadFilename             String containing name of source file that needs to go first
+     * @param exceptionHandler         String containing name of source file containing exception
+     *                                 handler, or null
+     * @param extendedAssemblerEnabled A boolean value - true means extended (pseudo) instructions
+     *                                 are permitted in source code
+     * @param warningsAreErrors        A boolean value - true means assembler warnings will be considered errors
+     * @return ErrorList containing nothing or only warnings (otherwise would have thrown exception).
+     * @throws AssemblyException Will throw exception if errors occurred while reading, tokenizing or assembling.
+     */
+    public ErrorList assemble(ArrayList<String> filenames, String leadFilename, String exceptionHandler,
+                              boolean extendedAssemblerEnabled, boolean warningsAreErrors) throws AssemblyException {
+        patchedStatements = null;
+        String newConfiguration = filenames + "|" + leadFilename + "|" + exceptionHandler + "|"
+                + extendedAssemblerEnabled + "|" + warningsAreErrors + "|"
+                + Globals.getSettings().getBooleanSetting(Settings.Bool.RV64_ENABLED) + "|"
+                + MemoryConfigurations.getCurrentConfiguration().getConfigurationIdentifier();
+        if (!newConfiguration.equals(configuration)) {
+            prepared.clear();
+            assembler = new Assembler();
+            assembler.keepFirstPasses();
+            assembledMemory = null;
+            assembledMemoryValid = false;
+            configuration = newConfiguration;
+        }
+        ArrayList<String> allFilenames = new ArrayList<>(filenames);
+        int leadFilePosition = 0;
+        if (exceptionHandler != null && exceptionHandler.length() > 0) {
+            allFilenames.add(0, exceptionHandler);
+            leadFilePosition = 1;
+        }
+        // Read every file, keeping the previous RISCVprogram for those that have not changed.
+        ArrayList<RISCVprogram> programs = new ArrayList<>();
+        ArrayList<RISCVprogram> edited = new ArrayList<>();   // previous program for each edited file
+        ArrayList<RISCVprogram> editedSource = new ArrayList<>();   // and the file just read
+        boolean patchable = assembledMemoryValid;
+        RISCVprogram lead = null;
+        for (String filename : allFilenames) {
+            RISCVprogram program = new RISCVprogram();
+            program.readSource(filename);
+            RISCVprogram previous = prepared.get(filename);
+            if (previous != null && sameSource(previous, program)) {
+                program = previous;
+            } else if (previous != null && previous.getSourceList().size() == program.getSourceList().size()) {
+                edited.add(previous);
+                editedSource.add(program);
+                program = previous; // until we know whether it can be patched
+            } else {
+                patchable = false; // new file, or lines added or removed
+            }
+            programs.add(program);
+            if (filename.equals(leadFilename)) {
+                lead = program;
+            }
+        }
+        if (patchable && orderForAssembly(programs, lead, leadFilePosition).equals(programsToAssemble)
+                && patch(edited, editedSource, extendedAssemblerEnabled)) {
+            return new ErrorList();
+        }
+        // Full assemble: the edited files are used as just read, and tokenized along with new ones.
+        for (int i = 0; i < programs.size(); i++) {
+            int edit = edited.indexOf(programs.get(i));
+            if (edit >= 0) {
+                programs.set(i, editedSource.get(edit));
+                if (allFilenames.get(i).equals(leadFilename)) {
+                    lead = editedSource.get(edit);
+                }
+            }
+        }
+        if (lead == null) {
+            lead = new RISCVprogram();
+        }
+        leadProgram = lead;
+        assembledMemoryValid = false;
+        for (int i = 0; i < programs.size(); i++) {
+            RISCVprogram program = programs.get(i);
+            if (program != prepared.get(allFilenames.get(i))) {
+                prepared.remove(allFilenames.get(i));
+                program.tokenize();
+                prepared.put(allFilenames.get(i), program);
+            }
+        }
+        programsToAssemble = orderForAssembly(programs, lead, leadFilePosition);
+        ErrorList warnings = lead.assemble(programsToAssemble, extendedAssemblerEnabled, warningsAreErrors, assembler);
+        if (!warnings.warningsOccurred()) {
+            // Only clean assembles are patched later, so no warnings need to be repeated.
+            if (assembledMemory == null || !assembledMemory.copyFrom(Globals.memory)) {
+                assembledMemory = new Memory();
+                assembledMemory.copyFrom(Globals.memory);
+            }
+            assembledMemoryValid = true;
+        }
+        return warnings;
+    }
+
+    /**
+     * Get the RISCVprogram for the lead file from the most recent assemble.
+     *
+     * @return the lead RISCVprogram, which holds the assembled machine statements.
+     */
+    public RISCVprogram getLeadProgram() {
+        return leadProgram;
+    }
+
+    /**
+     * Get the RISCVprogram objects assembled by the most recent assemble, in assembly order.
+     *
+     * @return ArrayList of RISCVprogram objects.
+     */
+    public ArrayList<RISCVprogram> getProgramsToAssemble() {
+        return programsToAssemble;
+    }
+
+    /**
+     * Find out whether the most recent assemble was done by patching the previous one.
+     *
+     * @return the statements that replaced earlier ones, or null if it was a full assemble.
+     */
+    public ArrayList<ProgramStatement> getPatchedStatements() {
+        return patchedStatements;
+    }
+
+    // The lead file goes first...except for exception handler
+    private static ArrayList<RISCVprogram> orderForAssembly(ArrayList<RISCVprogram> programs, RISCVprogram lead,
+                                                            int leadFilePosition) {
+        ArrayList<RISCVprogram> ordered = new ArrayList<>(programs);
+        if (ordered.remove(lead)) {
+            ordered.add(Math.min(leadFilePosition, ordered.size()), lead);
+        }
+        return ordered;
+    }
+
+    // True if the source just read is the same as the source (and included files) of the
+    // previously tokenized program.
+    private static boolean sameSource(RISCVprogram previous, RISCVprogram current) throws AssemblyException {
+        if (!previous.getSourceList().equals(current.getSourceList())) {
+            return false;
+        }
+        ArrayList<RISCVprogram> included = new ArrayList<>();
+        for (SourceLine line : previous.getSourceLineList()) {
+            RISCVprogram program = line.getRISCVprogram();
+            if (program != previous && !included.contains(program)) {
+                included.add(program);
+                RISCVprogram reread = new RISCVprogram();
+                try {
+                    reread.readSource(program.getFilename());
+                } catch (AssemblyException e) {
+                    return false;
+                }
+                if (!program.getSourceList().equals(reread.getSourceList())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Try to bring the previous assemble up to date by replacing single statements.
+    // Nothing is changed unless every edited line can be handled.
+    private boolean patch(ArrayList<RISCVprogram> edited, ArrayList<RISCVprogram> editedSource,
+                          boolean extendedAssemblerEnabled) {
+        ArrayList<Replacement> replacements = new ArrayList<>();
+        for (int i = 0; i < edited.size(); i++) {
+            RISCVprogram program = edited.get(i);
+            List<String> oldSource = program.getSourceList();
+            List<String> newSource = editedSource.get(i).getSourceList();
+            if (!isPatchable(program)) {
+                return false;
+            }
+            HashMap<Integer, ArrayList<ProgramStatement>> statementsByLine = new HashMap<>();
+            for (ProgramStatement statement : program.getParsedList()) {
+                statementsByLine.computeIfAbsent(statement.getSourceLine(), k -> new ArrayList<>()).add(statement);
+            }
+            for (int line = 0; line < newSource.size(); line++) {
+                if (oldSource.get(line).equals(newSource.get(line))) {
+                    continue;
+                }
+                Replacement replacement = new Replacement(program, line);
+                ErrorList errors = new ErrorList();
+                replacement.tokens = program.getTokenizer().tokenizeLine(line + 1, newSource.get(line), errors, false);
+                if (errors.errorsOccurred()) {
+                    return false;
+                }
+                replacement.source = new SourceLine(newSource.get(line), program, line + 1);
+                TokenList oldTokens = program.getTokenList().get(line);
+                ArrayList<ProgramStatement> oldStatements = statementsByLine.get(line + 1);
+                if (isCommentOnly(oldTokens) && isCommentOnly(replacement.tokens)) {
+                    replacements.add(replacement);
+                    continue;
+                }
+                if (oldStatements == null || oldStatements.size() != 1 || hasColon(oldTokens)
+                        || !(oldStatements.get(0).getInstruction() instanceof BasicInstruction)
+                        || !startsWithOperator(replacement.tokens) || hasColon(replacement.tokens)) {
+                    return false;
+                }
+                replacement.previous = oldStatements.get(0);
+                replacement.statement = new Assembler().assembleReplacementLine(program, replacement.tokens,
+                        replacement.source, replacement.previous.getAddress(), extendedAssemblerEnabled);
+                if (replacement.statement == null) {
+                    return false;
+                }
+                replacements.add(replacement);
+            }
+        }
+        // Everything checks out: restore memory, then apply the replacements.
+        patchedStatements = new ArrayList<>();
+        ArrayList<ProgramStatement> machineList = leadProgram.getMachineList();
+        for (Replacement replacement : replacements) {
+            RISCVprogram program = replacement.program;
+            program.getSourceList().set(replacement.line, replacement.source.getSource());
+            program.getSourceLineList().set(replacement.line, replacement.source);
+            program.getTokenList().set(replacement.line, replacement.tokens);
+            if (replacement.statement != null) {
+                ArrayList<ProgramStatement> parsedList = program.getParsedList();
+                parsedList.set(parsedList.indexOf(replacement.previous), replacement.statement);
+                machineList.set(machineList.indexOf(replacement.previous), replacement.statement);
+                try {
+                    assembledMemory.setStatement(replacement.statement.getAddress(), replacement.statement);
+                } catch (AddressErrorException e) {
+                    // cannot happen, the address was assembled into before
+                }
+                patchedStatements.add(replacement.statement);
+            }
+        }
+        Globals.memory.copyFrom(assembledMemory);
+        Memory.heapAddress = Memory.heapBaseAddress;
+        leadProgram.resetBackStepper();
+        return true;
+    }
+
+    // Files using .include, .eqv or macros are always assembled in full, since a line can
+    // then affect the meaning of other lines.
+    private static boolean isPatchable(RISCVprogram program) {
+        for (SourceLine line : program.getSourceLineList()) {
+            if (line.getRISCVprogram() != program) {
+                return false;
+            }
+        }
+        for (TokenList tokens : program.getTokenList()) {
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.getType(i) == TokenTypes.DIRECTIVE) {
+                    Directives directive = Directives.matchDirective(tokens.get(i).getValue());
+                    if (directive == Directives.EQV || directive == Directives.MACRO
+                            || directive == Directives.END_MACRO || directive == Directives.INCLUDE) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCommentOnly(TokenList tokens) {
+        return tokens.isEmpty() || (tokens.size() == 1 && tokens.get(0).getType() == TokenTypes.COMMENT);
+    }
+
+    private static boolean startsWithOperator(TokenList tokens) {
+        return !tokens.isEmpty() && tokens.get(0).getType() == TokenTypes.OPERATOR;
+    }
+
+    private static boolean hasColon(TokenList tokens) {
+        for (Token token : tokens) {
+            if (token.getType() == TokenTypes.COLON) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // One edited line and, unless it is only a comment change, the statement it becomes.
+    private static class Replacement {
+        final RISCVprogram program;
+        final int line; // zero-based index into the source list
+        TokenList tokens;
+        SourceLine source;
+        ProgramStatement previous, statement;
+
+        Replacement(RISCVprogram program, int line) {
+            this.program = program;
+            this.line = line;
+        }
+    }
+}
@@ -86,7 +86,9 @@ public class Symbol {
 
 
     /**
-     * Sets (replaces) the address of the the Symbol.
+     * Sets (replaces) the address of the the Symbol.  Symbols held in a SymbolTable
+     * should be moved with SymbolTable.fixSymbolTableAddress so it can keep its address
+     * index up to date.
      *
      * @param newAddress The revised address of the Symbol.
      **/
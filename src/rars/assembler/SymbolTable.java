@@ -5,6 +5,7 @@ import rars.ErrorMessage;
 import rars.Globals;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -45,6 +46,10 @@ public class SymbolTable {
     private static String startLabel = "main";
     private String filename;
     private ArrayList<Symbol> table;
+    // Indexes over table, kept in step with it by every method that changes it.  Symbols
+    // sharing an address are listed in table order.
+    private HashMap<String, Symbol> symbolsByName;
+    private HashMap<Integer, ArrayList<Symbol>> symbolsByAddress;
     // Note -1 is legal 32 bit address (0xFFFFFFFF) but it is the high address in
     // kernel address space so highly unlikely that any symbol will have this as
     // its associated address!
@@ -59,6 +64,8 @@ public class SymbolTable {
     public SymbolTable(String filename) {
         this.filename = filename;
         this.table = new ArrayList<>();
+        this.symbolsByName = new HashMap<>();
+        this.symbolsByAddress = new HashMap<>();
     }
 
     /**
@@ -75,13 +82,23 @@ public class SymbolTable {
         if (getSymbol(label) != null) {
             errors.add(new ErrorMessage(token.getSourceProgram(), token.getSourceLine(), token.getStartPos(), "label \"" + label + "\" already defined"));
         } else {
-            table.add(new Symbol(label, address, b));
+            Symbol symbol = new Symbol(label, address, b);
+            table.add(symbol);
+            symbolsByName.put(label, symbol);
+            addToAddressIndex(symbol);
             if (Globals.debug)
                 System.out.println("The symbol " + label + " with address " + address + " has been added to the " + this.filename + " symbol table.");
         }
     }
 
 
+    // Adds a symbol from an earlier assemble, known not to be in this table (see Assembler).
+    void addSymbol(Symbol symbol) {
+        table.add(symbol);
+        symbolsByName.put(symbol.getName(), symbol);
+        addToAddressIndex(symbol);
+    }
+
     /**
      * Removes a symbol from the Symbol table.  If not found, it does nothing.
      * This will rarely happen (only when variable is declared .globl after already
@@ -92,13 +109,12 @@ public class SymbolTable {
 
     public void removeSymbol(Token token) {
         String label = token.getValue();
-        for (int i = 0; i < table.size(); i++) {
-            if (table.get(i).getName().equals(label)) {
-                table.remove(i);
-                if (Globals.debug)
-                    System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
-                break;
-            }
+        Symbol symbol = symbolsByName.remove(label);
+        if (symbol != null) {
+            table.remove(symbol);
+            removeFromAddressIndex(symbol);
+            if (Globals.debug)
+                System.out.println("The symbol " + label + " has been removed from the " + this.filename + " symbol table.");
         }
     }
 
@@ -110,12 +126,8 @@ public class SymbolTable {
      * @return The memory address of the label given, or NOT_FOUND if not found in symbol table.
      **/
     public int getAddress(String s) {
-        for (Symbol sym : table) {
-            if (sym.getName().equals(s)) {
-                return sym.getAddress();
-            }
-        }
-        return NOT_FOUND;
+        Symbol sym = symbolsByName.get(s);
+        return (sym == null) ? NOT_FOUND : sym.getAddress();
     }
 
     /**
@@ -140,12 +152,7 @@ public class SymbolTable {
      **/
 
     public Symbol getSymbol(String s) {
-        for (Symbol sym : table) {
-            if (sym.getName().equals(s)) {
-                return sym;
-            }
-        }
-        return null;
+        return symbolsByName.get(s);
     }
 
     /**
@@ -162,12 +169,20 @@ public class SymbolTable {
         } catch (NumberFormatException e) {
             return null;
         }
-        for (Symbol sym : table) {
-            if (sym.getAddress() == address) {
-                return sym;
-            }
-        }
-        return null;
+        return getSymbolGivenAddress(address);
+    }
+
+    /**
+     * Produce Symbol object from symbol table that has the given address.  If several
+     * symbols share the address, the one added first is returned.
+     *
+     * @param address the address
+     * @return Symbol object having requested address, null if address not found in symbol table.
+     **/
+
+    public Symbol getSymbolGivenAddress(int address) {
+        ArrayList<Symbol> symbols = symbolsByAddress.get(address);
+        return (symbols == null) ? null : symbols.get(0);
     }
 
     /**
@@ -245,6 +260,8 @@ public class SymbolTable {
 
     public void clear() {
         table = new ArrayList<>();
+        symbolsByName = new HashMap<>();
+        symbolsByAddress = new HashMap<>();
     }
 
     /**
@@ -258,10 +275,41 @@ public class SymbolTable {
      */
 
     public void fixSymbolTableAddress(int originalAddress, int replacementAddress) {
-        Symbol label = getSymbolGivenAddress(Integer.toString(originalAddress));
-        while (label != null) {
+        if (originalAddress == replacementAddress) {
+            return;
+        }
+        ArrayList<Symbol> labels = symbolsByAddress.remove(originalAddress);
+        if (labels == null) {
+            return;
+        }
+        for (Symbol label : labels) {
             label.setAddress(replacementAddress);
-            label = getSymbolGivenAddress(Integer.toString(originalAddress));
+        }
+        ArrayList<Symbol> existing = symbolsByAddress.get(replacementAddress);
+        if (existing == null) {
+            symbolsByAddress.put(replacementAddress, labels);
+        } else {
+            existing.addAll(labels);
+            existing.sort((a, b) -> table.indexOf(a) - table.indexOf(b)); // back into table order
+        }
+    }
+
+    private void addToAddressIndex(Symbol symbol) {
+        ArrayList<Symbol> symbols = symbolsByAddress.get(symbol.getAddress());
+        if (symbols == null) {
+            symbols = new ArrayList<>(1);
+            symbolsByAddress.put(symbol.getAddress(), symbols);
+        }
+        symbols.add(symbol);
+    }
+
+    private void removeFromAddressIndex(Symbol symbol) {
+        ArrayList<Symbol> symbols = symbolsByAddress.get(symbol.getAddress());
+        if (symbols != null) {
+            symbols.remove(symbol);
+            if (symbols.isEmpty()) {
+                symbolsByAddress.remove(symbol.getAddress());
+            }
         }
     }
 
@@ -33,6 +33,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 /**
  * Represents one token in the input program.  Each Token carries, along with its
  * type and value, the position (line, column) in which its source appears in the program.
+ * Tokens do not change once made; a TokenList is changed by replacing them.
  *
  * @author Pete Sanderson
  * @version August 2003
@@ -40,10 +41,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class Token {
 
-    private TokenTypes type;
-    private String value;
-    private RISCVprogram sourceProgram;
-    private int sourceLine, sourcePos;
+    private final TokenTypes type;
+    private final String value;
+    private final RISCVprogram sourceProgram;
+    private final int sourceLine, sourcePos;
     // original program and line will differ from the above if token was defined in an included file
     private RISCVprogram originalProgram;
     private int originalSourceLine;
@@ -69,17 +70,21 @@ public class Token {
         this.originalSourceLine = line;
     }
 
-
     /**
-     * Set original program and line number for this token.
-     * Line number or both may change during pre-assembly as a result
-     * of the ".include" directive, and we need to keep the original
-     * for later reference (error messages, text segment display).
+     * Constructor for a token whose original program and line differ from the above,
+     * as they do for tokens of a file brought in by the ".include" directive.
      *
-     * @param origProgram    source program containing this token.
+     * @param type           The token type that this token has.
+     * @param value          The source value for this token
+     * @param sourceProgram  The RISCVprogram object containing this token
+     * @param line           The line number in source program in which this token appears.
+     * @param start          The starting position in that line number of this token's source value.
+     * @param origProgram    source program this token originally came from.
      * @param origSourceLine Line within that program of this token.
      **/
-    public void setOriginal(RISCVprogram origProgram, int origSourceLine) {
+    Token(TokenTypes type, String value, RISCVprogram sourceProgram, int line, int start,
+          RISCVprogram origProgram, int origSourceLine) {
+        this(type, value, sourceProgram, line, start);
         this.originalProgram = origProgram;
         this.originalSourceLine = origSourceLine;
     }
@@ -112,17 +117,6 @@ public class Token {
         return type;
     }
 
-    /**
-     * Set or modify token type.  Generally used to note that
-     * an identifier that matches an instruction name is
-     * actually being used as a label.
-     *
-     * @param type new TokenTypes for this token.
-     **/
-    public void setType(TokenTypes type) {
-        this.type = type;
-    }
-
     /**
      * Produces source code of this token.
      *
@@ -0,0 +1,102 @@
+package rars.assembler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Holds the source text of tokens in one shared character buffer.  A {@link TokenList}
+ * refers to the text of each of its tokens by offset and length into an arena, so a
+ * tokenized program keeps no String or Token object per token.
+ * <p>
+ * While a program is being tokenized its arena shares the text of repeated values
+ * (register names, operators, common operands), so each distinct value is stored once.
+ */
+final class TokenArena {
+
+    private char[] text;
+    private int length;
+    // offsets of the values already stored; null once the arena no longer shares values
+    private HashMap<String, Integer> offsets;
+
+    /**
+     * Creates an arena for a single line or list of tokens.
+     */
+    TokenArena() {
+        this(16, false);
+    }
+
+    /**
+     * Creates an arena.
+     *
+     * @param capacity    number of characters to reserve
+     * @param shareValues true to store each distinct value only once
+     */
+    TokenArena(int capacity, boolean shareValues) {
+        text = new char[Math.max(capacity, 16)];
+        offsets = shareValues ? new HashMap<>() : null;
+    }
+
+    /**
+     * Stores the text of a token value.
+     *
+     * @param value the token value
+     * @return offset of the value in this arena
+     */
+    int add(String value) {
+        if (offsets != null) {
+            Integer offset = offsets.get(value);
+            if (offset != null) {
+                return offset;
+            }
+        }
+        int offset = length;
+        if (length + value.length() > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, length + value.length()));
+        }
+        value.getChars(0, value.length(), text, length);
+        length += value.length();
+        if (offsets != null) {
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    /**
+     * Gets the text of a stored value.
+     *
+     * @param offset offset of the value, as returned by {@link #add(String)}
+     * @param count  length of the value
+     * @return the value as a new String
+     */
+    String get(int offset, int count) {
+        return new String(text, offset, count);
+    }
+
+    /**
+     * Checks whether a stored value has the given text.
+     *
+     * @param offset offset of the stored value
+     * @param count  length of the stored value
+     * @param value  text to compare with
+     * @return true if the stored value equals <code>value</code>
+     */
+    boolean matches(int offset, int count, String value) {
+        if (value.length() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (text[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops sharing values and releases unused space, once a program has been tokenized.
+     */
+    void trim() {
+        offsets = null;
+        text = Arrays.copyOf(text, length);
+    }
+}
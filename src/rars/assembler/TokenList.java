@@ -1,7 +1,10 @@
 package rars.assembler;
 
-import java.util.ArrayList;
+import rars.RISCVprogram;
+
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -41,19 +44,64 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class TokenList implements Cloneable, Iterable<Token> {
 
-    private ArrayList<Token> tokenList;
+    // A list is normally one line of source.  Each of its tokens is kept as three ints:
+    // the offset of its text in a TokenArena, its type and text length, and its start
+    // position; the program and line numbers are kept once for the whole list.  Token
+    // objects are made only when asked for, e.g. for error messages.  A list given tokens
+    // from more than one line (such as the .globl declarations of a file) keeps them as
+    // Token objects instead.  Clones share storage until one of them is changed.
+    private static final int FIELDS = 3;
+    private static final int[] NO_FIELDS = new int[0];
+    private static final int INITIAL_CAPACITY = 4;
+    private static final TokenTypes[] TYPES = TokenTypes.values();
+
+    private TokenArena arena;
+    private int[] fields;
+    private Token[] tokens; // non-null when this list keeps Token objects
+    private boolean shared; // storage is shared with a clone and must be copied before a change
+    private int size;
+    private RISCVprogram program, originalProgram;
+    private int line, originalLine;
     private String processedLine;// DPS 03-Jan-2013
 
     /**
      * Constructor for objects of class TokenList
      */
     public TokenList() {
-        tokenList = new ArrayList<>();
-        processedLine = ""; // DPS 03-Jan-2013
+        this(null, null, 0);
+    }
+
+    /**
+     * Constructor for the tokens of one source line.
+     *
+     * @param arena   arena holding the text of the tokens, or null to use one of its own
+     * @param program program containing the line
+     * @param line    line number in that program
+     */
+    TokenList(TokenArena arena, RISCVprogram program, int line) {
+        this.arena = arena;
+        this.fields = NO_FIELDS;
+        this.size = 0;
+        this.program = this.originalProgram = program;
+        this.line = this.originalLine = line;
+        this.processedLine = ""; // DPS 03-Jan-2013
     }
 
     public Iterator<Token> iterator() {
-        return tokenList.iterator();
+        return new Iterator<Token>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            public Token next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
     }
 
     /**
@@ -82,12 +130,31 @@ public class TokenList implements Cloneable, Iterable<Token> {
 
     /**
      * Returns requested token given position number (starting at 0).
+     * Changing the list afterwards does not change the token.
      *
      * @param pos Position in token list.
      * @return the requested token, or ArrayIndexOutOfBounds exception
      */
     public Token get(int pos) {
-        return tokenList.get(pos);
+        checkPosition(pos);
+        if (tokens != null) {
+            return tokens[pos];
+        }
+        int at = pos * FIELDS;
+        int length = fields[at + 1] & 0xFFFFFF;
+        return new Token(TYPES[fields[at + 1] >>> 24], arena.get(fields[at], length),
+                program, line, fields[at + 2], originalProgram, originalLine);
+    }
+
+    /**
+     * Returns the type of the token at a position, without making a Token.
+     *
+     * @param pos Position in token list.
+     * @return the type of that token
+     */
+    public TokenTypes getType(int pos) {
+        checkPosition(pos);
+        return (tokens != null) ? tokens[pos].getType() : TYPES[fields[pos * FIELDS + 1] >>> 24];
     }
 
     /**
@@ -98,7 +165,58 @@ public class TokenList implements Cloneable, Iterable<Token> {
      * @param replacement Replacement token
      */
     public void set(int pos, Token replacement) {
-        tokenList.set(pos, replacement);
+        checkPosition(pos);
+        if (tokens == null && !fromThisLine(replacement)) {
+            keepTokens();
+        }
+        prepareToChange(size);
+        if (tokens != null) {
+            tokens[pos] = replacement;
+        } else {
+            int at = pos * FIELDS;
+            String value = replacement.getValue();
+            if (!arena.matches(fields[at], fields[at + 1] & 0xFFFFFF, value)) {
+                fields[at] = arena.add(value);
+            }
+            fields[at + 1] = replacement.getType().ordinal() << 24 | value.length();
+            fields[at + 2] = replacement.getStartPos();
+        }
+    }
+
+    /**
+     * Set or modify the type of the token at a position.  Generally used to note that
+     * an identifier that matches an instruction name is actually being used as a label.
+     *
+     * @param pos  Position in token list.
+     * @param type new TokenTypes for that token.
+     */
+    public void setType(int pos, TokenTypes type) {
+        Token token = get(pos);
+        set(pos, new Token(type, token.getValue(), token.getSourceProgram(), token.getSourceLine(),
+                token.getStartPos(), token.getOriginalProgram(), token.getOriginalSourceLine()));
+    }
+
+    /**
+     * Set original program and line number for every token in this list.
+     * Line number or both may change during pre-assembly as a result
+     * of the ".include" directive, and we need to keep the original
+     * for later reference (error messages, text segment display).
+     *
+     * @param origProgram    source program containing these tokens.
+     * @param origSourceLine Line within that program of these tokens.
+     */
+    public void setOriginal(RISCVprogram origProgram, int origSourceLine) {
+        if (tokens == null) {
+            originalProgram = origProgram;
+            originalLine = origSourceLine;
+            return;
+        }
+        prepareToChange(size);
+        for (int i = 0; i < size; i++) {
+            Token token = tokens[i];
+            tokens[i] = new Token(token.getType(), token.getValue(), token.getSourceProgram(),
+                    token.getSourceLine(), token.getStartPos(), origProgram, origSourceLine);
+        }
     }
 
     /**
@@ -107,7 +225,7 @@ public class TokenList implements Cloneable, Iterable<Token> {
      * @return token count.
      */
     public int size() {
-        return tokenList.size();
+        return size;
     }
 
     /**
@@ -116,17 +234,70 @@ public class TokenList implements Cloneable, Iterable<Token> {
      * @param token Token object to be added.
      */
     public void add(Token token) {
-        tokenList.add(token);
+        if (size == 0 && tokens == null) {
+            // an empty list takes the program and line of its first token
+            program = token.getSourceProgram();
+            line = token.getSourceLine();
+            originalProgram = token.getOriginalProgram();
+            originalLine = token.getOriginalSourceLine();
+        } else if (tokens == null && !fromThisLine(token)) {
+            keepTokens();
+        }
+        prepareToChange(size + 1);
+        if (tokens != null) {
+            tokens[size++] = token;
+        } else {
+            add(token.getType(), token.getValue(), token.getStartPos());
+        }
+    }
+
+    /**
+     * Adds a token of this list's line to the end of the list.
+     *
+     * @param type  type of the token
+     * @param value source value of the token
+     * @param start starting position of the token in the line
+     */
+    void add(TokenTypes type, String value, int start) {
+        if (tokens != null) {
+            add(new Token(type, value, program, line, start, originalProgram, originalLine));
+            return;
+        }
+        prepareToChange(size + 1);
+        if (arena == null) {
+            arena = new TokenArena();
+        }
+        int at = size++ * FIELDS;
+        fields[at] = arena.add(value);
+        fields[at + 1] = type.ordinal() << 24 | value.length();
+        fields[at + 2] = start;
+    }
+
+    /**
+     * Releases unused space once the list is complete.
+     */
+    void trimToSize() {
+        if (tokens == null && !shared && fields.length > size * FIELDS) {
+            fields = (size == 0) ? NO_FIELDS : Arrays.copyOf(fields, size * FIELDS);
+        }
     }
 
     /**
-     * Removes Token object at specified list position. Uses ArrayList remove method.
+     * Removes Token object at specified list position.
      *
      * @param pos Position in token list.  Subsequent Tokens are shifted one position left.
      * @throws IndexOutOfBoundsException if <tt>pos</tt> is < 0 or >= <tt>size()</tt>
      */
     public void remove(int pos) {
-        tokenList.remove(pos);
+        checkPosition(pos);
+        prepareToChange(size);
+        if (tokens != null) {
+            System.arraycopy(tokens, pos + 1, tokens, pos, size - pos - 1);
+            tokens[size - 1] = null;
+        } else {
+            System.arraycopy(fields, (pos + 1) * FIELDS, fields, pos * FIELDS, (size - pos - 1) * FIELDS);
+        }
+        size--;
     }
 
     /**
@@ -135,7 +306,7 @@ public class TokenList implements Cloneable, Iterable<Token> {
      * @return <tt>true</tt> if list has no tokens, else <tt>false</tt>.
      */
     public boolean isEmpty() {
-        return tokenList.isEmpty();
+        return size == 0;
     }
 
     /**
@@ -147,7 +318,7 @@ public class TokenList implements Cloneable, Iterable<Token> {
 
     public String toString() {
         String stringified = "";
-        for (Token token : tokenList) {
+        for (Token token : this) {
             stringified += token.toString() + " ";
         }
         return stringified;
@@ -163,8 +334,8 @@ public class TokenList implements Cloneable, Iterable<Token> {
 
     public String toTypeString() {
         String stringified = "";
-        for (Token t : tokenList) {
-            stringified += t.getType().toString() + " ";
+        for (int i = 0; i < size; i++) {
+            stringified += getType(i).toString() + " ";
         }
         return stringified;
     }
@@ -174,16 +345,50 @@ public class TokenList implements Cloneable, Iterable<Token> {
      *
      * @return the cloned list.
      */
-    // Clones are a bit tricky.  super.clone() handles primitives (e.g. values) correctly
-    // but the ArrayList itself has to be cloned separately -- otherwise clone will have
-    // alias to original token list!!
+    // The clone shares this list's storage; whichever of the two is changed first
+    // copies it (see prepareToChange).
     public Object clone() {
         try {
             TokenList t = (TokenList) super.clone();
-            t.tokenList = new ArrayList<>(tokenList);
+            t.shared = this.shared = true;
             return t;
         } catch (CloneNotSupportedException e) {
             return null;
         }
     }
+
+    // Makes the storage this list's own, with room for at least the given number of tokens.
+    private void prepareToChange(int capacity) {
+        if (tokens != null) {
+            if (shared || capacity > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(capacity, shared ? size : Math.max(INITIAL_CAPACITY, size * 2)));
+            }
+        } else if (shared || capacity * FIELDS > fields.length) {
+            int grown = shared ? Math.max(capacity, size) : Math.max(INITIAL_CAPACITY, size * 2);
+            fields = Arrays.copyOf(fields, Math.max(capacity, grown) * FIELDS);
+        }
+        shared = false;
+    }
+
+    // Switches this list to keeping Token objects, for tokens of more than one line.
+    private void keepTokens() {
+        Token[] kept = new Token[Math.max(INITIAL_CAPACITY, size)];
+        for (int i = 0; i < size; i++) {
+            kept[i] = get(i);
+        }
+        tokens = kept;
+        fields = NO_FIELDS;
+        shared = false;
+    }
+
+    private boolean fromThisLine(Token token) {
+        return token.getSourceProgram() == program && token.getSourceLine() == line
+                && token.getOriginalProgram() == originalProgram && token.getOriginalSourceLine() == originalLine;
+    }
+
+    private void checkPosition(int pos) {
+        if (pos < 0 || pos >= size) {
+            throw new IndexOutOfBoundsException("Index: " + pos + ", Size: " + size);
+        }
+    }
 }
@@ -56,6 +56,9 @@ public class Tokenizer {
     private ErrorList errors;
     private RISCVprogram sourceRISCVprogram;
     private HashMap<String, String> equivalents; // DPS 11-July-2012
+    // Holds the text of the tokens of a whole program while it is tokenized.  Registers,
+    // mnemonics and common operands repeat on most lines, so each value is stored once.
+    private TokenArena arena;
     // The 8 escaped characters are: single quote, double quote, backslash, newline (linefeed),
     // tab, backspace, return, form feed.  The characters and their corresponding decimal codes:
     // TODO: potentially make this automatic
@@ -91,6 +94,7 @@ public class Tokenizer {
     public ArrayList<TokenList> tokenize(RISCVprogram p) throws AssemblyException {
         sourceRISCVprogram = p;
         equivalents = new HashMap<>(); // DPS 11-July-2012
+        arena = new TokenArena(1024, true);
         ArrayList<TokenList> tokenList = new ArrayList<>();
         //ArrayList source = p.getSourceList();
         ArrayList<SourceLine> source = processIncludes(p, new HashMap<>()); // DPS 9-Jan-2013
@@ -110,6 +114,8 @@ public class Tokenizer {
                 source.set(i, new SourceLine(currentLineTokens.getProcessedLine(), source.get(i).getRISCVprogram(), source.get(i).getLineNumber()));
             }
         }
+        arena.trim();
+        arena = null;
         if (errors.errorsOccurred()) {
             throw new AssemblyException(errors);
         }
@@ -273,7 +279,7 @@ public class Tokenizer {
      **/
     public TokenList tokenizeLine(RISCVprogram program, int lineNum, String theLine, boolean doEqvSubstitutes) {
         TokenTypes tokenType;
-        TokenList result = new TokenList();
+        TokenList result = new TokenList(arena, program, lineNum);
         if (theLine.length() == 0)
             return result;
         // will be faster to work with char arrays instead of strings
@@ -339,12 +345,12 @@ public class Tokenizer {
                         tokenStartPos = linePos + 1;
                         token[tokenPos++] = c;
                         if (line.length > linePos + 3 && line[linePos + 1] == 'I' && line[linePos + 2] == 'n' && line[linePos + 3] == 'f') {
-                            result.add(new Token(TokenTypes.REAL_NUMBER, "-Inf", program, lineNum, tokenStartPos));
+                            result.add(TokenTypes.REAL_NUMBER, "-Inf", tokenStartPos);
                             linePos += 3;
                             tokenPos = 0;
                             break;
                         }
-                        if (!((result.isEmpty() || result.get(result.size() - 1).getType() != TokenTypes.IDENTIFIER) &&
+                        if (!((result.isEmpty() || result.getType(result.size() - 1) != TokenTypes.IDENTIFIER) &&
                                 (line.length >= linePos + 2 && Character.isDigit(line[linePos + 1])))) {
                             // treat it as binary.....
                             this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
@@ -443,6 +449,7 @@ public class Tokenizer {
             this.processCandidateToken(token, program, lineNum, theLine, tokenPos, tokenStartPos, result);
             tokenPos = 0;
         }
+        result.trimToSize();
         if (doEqvSubstitutes) {
             result = processEqv(program, lineNum, theLine, result); // DPS 11-July-2012
         }
@@ -542,8 +549,7 @@ public class Tokenizer {
             errors.add(new ErrorMessage(program, line, tokenStartPos,
                     theLine + "\nInvalid language element: " + value));
         }
-        Token toke = new Token(type, value, program, line, tokenStartPos);
-        tokenList.add(toke);
+        tokenList.add(type, value, tokenStartPos);
     }
 
 
@@ -68,7 +68,7 @@ public class Documentation {
         InstructionSet.rv64 = false;
         Globals.instructionSet.populate();
 
-        ArrayList<Instruction> instructionList = Globals.instructionSet.getInstructionList();
+        ArrayList<Instruction> instructionList = new ArrayList<>(Globals.instructionSet.getInstructionList());
         instructionList.sort(Comparator.comparing(Instruction::getExampleFormat));
 
         StringBuilder output = new StringBuilder("| Example Usage | Description |\n|---------------|-------------|");
@@ -98,7 +98,7 @@ public class Documentation {
         InstructionSet.rv64 = true;
         Globals.instructionSet.populate();
 
-        ArrayList<Instruction> instructionList64 = Globals.instructionSet.getInstructionList();
+        ArrayList<Instruction> instructionList64 = new ArrayList<>(Globals.instructionSet.getInstructionList());
         instructionList64.sort(Comparator.comparing(Instruction::getExampleFormat));
         StringBuilder output = new StringBuilder("| Example Usage | Description |\n|---------------|-------------|");
         for (Instruction instr : instructionList64) {
@@ -47,6 +47,7 @@ public abstract class BasicInstruction extends Instruction {
 
     private int opcodeMask;  // integer with 1's where constants required (0/1 become 1, f/s/t become 0)
     private int opcodeMatch; // integer matching constants required (0/1 become 0/1, f/s/t become 0)
+    private int[][] operandFields; // per operand: {shift, width} pairs for each run of its bits, high order first
 
     /**
      * BasicInstruction constructor.
@@ -82,6 +83,33 @@ public abstract class BasicInstruction extends Instruction {
 
         this.opcodeMask = (int) Long.parseLong(this.operationMask.replaceAll("[01]", "1").replaceAll("[^01]", "0"), 2);
         this.opcodeMatch = (int) Long.parseLong(this.operationMask.replaceAll("[^1]", "0"), 2);
+        this.operandFields = new int[Instruction.operandMask.length][];
+        for (int i = 0; i < operandFields.length; i++) {
+            operandFields[i] = buildOperandField(Instruction.operandMask[i]);
+        }
+    }
+
+    // Walks the operation mask once to find the runs of bits belonging to the given
+    // operand so that decoding a binary statement needs only shifts and masks.
+    // Returns null if the operand does not appear in the mask.
+    private int[] buildOperandField(char mask) {
+        int[] runs = new int[Instruction.INSTRUCTION_LENGTH_BITS * 2];
+        int count = 0;
+        int i = 0;
+        while (i < operationMask.length()) {
+            if (operationMask.charAt(i) != mask) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < operationMask.length() && operationMask.charAt(i) == mask) i++;
+            runs[count++] = Instruction.INSTRUCTION_LENGTH_BITS - i; // shift of lowest bit in run
+            runs[count++] = i - start;                                // width of run
+        }
+        if (count == 0) return null;
+        int[] result = new int[count];
+        System.arraycopy(runs, 0, result, 0, count);
+        return result;
     }
 
     public BasicInstruction(String example, String description, BasicInstructionFormat instrFormat,
@@ -135,6 +163,35 @@ public abstract class BasicInstruction extends Instruction {
         return this.opcodeMatch;
     }
 
+    /**
+     * Determines whether the given operand has bits in the operation mask.
+     *
+     * @param operand operand position (0 for 'f', 1 for 's', ...)
+     * @return true if the operand is encoded in the binary statement
+     */
+    public boolean hasOperand(int operand) {
+        return operandFields[operand] != null;
+    }
+
+    /**
+     * Reads an operand from a binary statement of this instruction.  The bits belonging
+     * to the operand are concatenated in mask order and pushed to the right.
+     *
+     * @param operand         operand position (0 for 'f', 1 for 's', ...)
+     * @param binaryStatement the binary statement to read from
+     * @return the bits read pushed to the right, or 0 if the operand is not in the mask
+     */
+    public int extractOperand(int operand, int binaryStatement) {
+        int[] runs = operandFields[operand];
+        if (runs == null) return 0;
+        int out = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            int width = runs[i + 1];
+            out = (out << width) | ((binaryStatement >>> runs[i]) & (int) ((1L << width) - 1));
+        }
+        return out;
+    }
+
     /**
      * Method to simulate the execution of a specific MIPS basic instruction.
      *
@@ -1,12 +1,19 @@
 package rars.riscv;
 
+import rars.ErrorList;
+import rars.Globals;
 import rars.RISCVprogram;
 import rars.assembler.Symbol;
+import rars.assembler.Token;
 import rars.assembler.TokenList;
+import rars.assembler.TokenTypes;
+import rars.assembler.Tokenizer;
 import rars.util.Binary;
 
 import java.util.ArrayList;
 import java.util.StringTokenizer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 	/*
 Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
@@ -48,6 +55,15 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class ExtendedInstruction extends Instruction {
 
     private ArrayList<String> translationStrings;
+    // Precompiled form of each template, parallel to translationStrings.  Null entries
+    // (or a null list) mean that template has to go through makeTemplateSubstitutions.
+    private ArrayList<CompiledTemplate> compiledTemplates;
+
+    // Template markers in the order they are listed in makeTemplateSubstitutions.
+    private static final Pattern TEMPLATE_MARKER =
+            Pattern.compile("RG[1-9]|PCH[1-9]|PCL[1-9]|LH[1-9]|LL[1-9]|VH[1-9]|VL[1-9]|LI[A-E][1-9]|LAB");
+    private static final int LITERAL = 0, RG = 1, PCH = 2, PCL = 3, LH = 4, LL = 5, VH = 6, VL = 7,
+            LIA = 8, LIB = 9, LIC = 10, LID = 11, LIE = 12, LAB = 13;
 
     /**
      * Constructor for ExtendedInstruction.  No compact translation is provided.
@@ -208,6 +224,277 @@ public class ExtendedInstruction extends Instruction {
         return instruction;
     }
 
+    /**
+     * Tokenize each basic instruction template once so statements can later be expanded by filling
+     * in template slots instead of rewriting and re-tokenizing the template text.  Called by
+     * InstructionSet after all instructions are loaded, since both the tokenizer and the choice of
+     * generated instruction depend on the complete instruction set.  A template that uses its markers in a
+     * way the compiled form cannot reproduce exactly (e.g. a marker embedded in a longer word) is
+     * left uncompiled and will be handled by makeTemplateSubstitutions.
+     */
+    void compileTemplates() {
+        compiledTemplates = null;
+        if (translationStrings == null) {
+            return;
+        }
+        compiledTemplates = new ArrayList<>();
+        for (String template : translationStrings) {
+            compiledTemplates.add(compileTemplate(template));
+        }
+    }
+
+    /**
+     * Generate the tokens of one basic statement from a precompiled template.  Gives the same
+     * result as tokenizing the output of makeTemplateSubstitutions, including token positions.
+     *
+     * @param index     which template in the list returned by getBasicIntructionTemplateList
+     * @param program   the program containing the extended statement (for label lookup)
+     * @param tokenList a TokenList containing tokens from extended instruction.
+     * @param line      source line number to attach to generated tokens
+     * @param PC        address of the extended statement, for PC relative values
+     * @return the generated TokenList, or null if this template must go through makeTemplateSubstitutions
+     */
+    public TokenList expandTemplate(int index, RISCVprogram program, TokenList tokenList, int line, int PC) {
+        CompiledTemplate compiled = (compiledTemplates == null) ? null : compiledTemplates.get(index);
+        if (compiled == null) {
+            return null;
+        }
+        TokenList result = new TokenList();
+        int shift = 0; // how far substitutions have moved the rest of the line
+        for (int i = 0; i < compiled.tokens.length; i++) {
+            Token template = compiled.tokens[i];
+            String value;
+            TokenTypes type;
+            if (compiled.slots[i] == LITERAL) {
+                value = template.getValue();
+                type = template.getType();
+            } else {
+                value = fillSlot(compiled.slots[i], compiled.operands[i], program, tokenList, PC);
+                if (value == null || !isPlainTokenValue(value)) {
+                    return null;
+                }
+                type = TokenTypes.matchTokenType(value);
+                if (type == TokenTypes.ERROR) {
+                    return null;
+                }
+            }
+            // A leading sign only stays part of the number if the previous token is not an identifier.
+            char first = value.charAt(0);
+            if ((first == '-' || first == '+') && value.length() > 1 && i > 0) {
+                Token previous = result.get(result.size() - 1);
+                if (previous.getType() == TokenTypes.IDENTIFIER) {
+                    return null;
+                }
+            }
+            result.add(new Token(type, value, null, line, template.getStartPos() + shift));
+            if (compiled.slots[i] != LITERAL) {
+                shift += value.length() - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the basic instruction generated by a precompiled template, if it can be decided
+     * without looking at the operand values.
+     *
+     * @param index which template in the list returned by getBasicIntructionTemplateList
+     * @return the Instruction, or null if it has to be matched against the generated operands.
+     */
+    public Instruction getTemplateInstruction(int index) {
+        CompiledTemplate compiled = (compiledTemplates == null) ? null : compiledTemplates.get(index);
+        return (compiled == null) ? null : compiled.instruction;
+    }
+
+    // Replace each marker with a one character placeholder, tokenize the result and record which
+    // tokens are slots.  Returns null if the template cannot be compiled.
+    private static CompiledTemplate compileTemplate(String template) {
+        Matcher matcher = TEMPLATE_MARKER.matcher(template);
+        StringBuilder text = new StringBuilder();
+        ArrayList<int[]> slots = new ArrayList<>(); // {position, kind, operand}
+        boolean labelSeen = false;
+        String longMarker = null;
+        int copied = 0;
+        while (matcher.find()) {
+            if (!isTemplateDelimiter(template, matcher.start() - 1) || !isTemplateDelimiter(template, matcher.end())) {
+                return null;
+            }
+            String marker = matcher.group();
+            if (marker.equals("LAB")) {
+                if (labelSeen) {
+                    continue; // only the first one is substituted
+                }
+                labelSeen = true;
+            } else if (marker.startsWith("LI") && longMarker != null && !marker.equals(longMarker)) {
+                return null; // only the first of these is substituted
+            } else if (marker.startsWith("LI")) {
+                longMarker = marker;
+            }
+            text.append(template, copied, matcher.start());
+            slots.add(new int[]{text.length() + 1, markerKind(marker), marker.charAt(marker.length() - 1) - '0'});
+            text.append('0');
+            copied = matcher.end();
+        }
+        text.append(template, copied, template.length());
+
+        ErrorList errors = new ErrorList();
+        TokenList tokens = new Tokenizer().tokenizeLine(0, text.toString(), errors, false);
+        if (errors.errorsOccurred() || tokens.size() == 0 || tokens.get(0).getType() != TokenTypes.OPERATOR) {
+            return null;
+        }
+        CompiledTemplate compiled = new CompiledTemplate(tokens.size());
+        int next = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            compiled.tokens[i] = token;
+            if (next < slots.size() && token.getStartPos() == slots.get(next)[0]) {
+                if (!token.getValue().equals("0")) {
+                    return null;
+                }
+                compiled.slots[i] = slots.get(next)[1];
+                compiled.operands[i] = slots.get(next)[2];
+                next++;
+            }
+        }
+        if (next != slots.size()) {
+            return null; // a placeholder was merged into another token
+        }
+        ArrayList<Instruction> matches = Globals.instructionSet.matchOperator(tokens.get(0).getValue());
+        if (matches != null && matches.size() == 1) {
+            compiled.instruction = matches.get(0);
+        }
+        return compiled;
+    }
+
+    private static int markerKind(String marker) {
+        switch (marker.substring(0, marker.equals("LAB") ? 3 : marker.length() - 1)) {
+            case "RG":
+                return RG;
+            case "PCH":
+                return PCH;
+            case "PCL":
+                return PCL;
+            case "LH":
+                return LH;
+            case "LL":
+                return LL;
+            case "VH":
+                return VH;
+            case "VL":
+                return VL;
+            case "LIA":
+                return LIA;
+            case "LIB":
+                return LIB;
+            case "LIC":
+                return LIC;
+            case "LID":
+                return LID;
+            case "LIE":
+                return LIE;
+            default:
+                return LAB;
+        }
+    }
+
+    private static boolean isTemplateDelimiter(String template, int position) {
+        if (position < 0 || position >= template.length()) {
+            return true;
+        }
+        char c = template.charAt(position);
+        return c == ' ' || c == '\t' || c == ',' || c == '(' || c == ')';
+    }
+
+    // A substituted value must come back out of the tokenizer as a single token.
+    private static boolean isPlainTokenValue(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ' ' || c == '\t' || c == ',' || c == '(' || c == ')' || c == '#' || c == '"' || c == '\'' ||
+                    c == ':' || ((c == '-' || c == '+') && i > 0)) {
+                return false;
+            }
+        }
+        char first = value.charAt(0);
+        return !((first == '-' || first == '+') && (value.length() == 1 || !Character.isDigit(value.charAt(1))));
+    }
+
+    // Computes the same value makeTemplateSubstitutions would substitute for one marker,
+    // or null if that marker would be left in place.
+    private static String fillSlot(int kind, int op, RISCVprogram program, TokenList tokenList, int PC) {
+        if (kind == LAB) {
+            String label = tokenList.get(tokenList.size() - 1).getValue();
+            Symbol sym = program.getLocalSymbolTable().getSymbolGivenAddressLocalOrGlobal(label);
+            return (sym == null) ? null : sym.getName();
+        }
+        if (op >= tokenList.size()) {
+            return null;
+        }
+        String strValue = tokenList.get(op).getValue();
+        if (kind == RG) {
+            return strValue;
+        }
+        int val;
+        try {
+            val = Binary.stringToInt(strValue);
+        } catch (NumberFormatException e) {
+            if (kind < LIA) {
+                return null;
+            }
+            long lval;
+            try {
+                lval = Binary.stringToLong(strValue);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+            val = (int) (lval >> 32);
+            int vall = (int) lval;
+            switch (kind) {
+                case LIA:
+                    return String.valueOf((val >> 12) + Binary.bitValue(val, 11));
+                case LIB:
+                    return String.valueOf(val << 20 >> 20);
+                case LIC:
+                    return String.valueOf((vall >> 21) & 0x7FF);
+                case LID:
+                    return String.valueOf((vall >> 10) & 0x7FF);
+                default:
+                    return String.valueOf(vall & 0x3FF);
+            }
+        }
+        int relative = val - PC;
+        switch (kind) {
+            case PCH:
+                return String.valueOf((relative >> 12) + Binary.bitValue(relative, 11));
+            case PCL:
+                return String.valueOf(relative << 20 >> 20);
+            case LH:
+            case VH:
+                return String.valueOf((val >> 12) + Binary.bitValue(val, 11));
+            case LL:
+            case VL:
+                return String.valueOf(val << 20 >> 20);
+            default:
+                return null; // LIA..LIE are only substituted for 64 bit values
+        }
+    }
+
+    // A template tokenized once, with slots marking the tokens to fill in per statement.
+    private static class CompiledTemplate {
+        final Token[] tokens;
+        final int[] slots;
+        final int[] operands;
+        Instruction instruction;
+
+        CompiledTemplate(int size) {
+            tokens = new Token[size];
+            slots = new int[size];
+            operands = new int[size];
+        }
+    }
+
     // TODO: update these two methods to Java 1.8
     // Performs a String substitution.  Java 1.5 adds an overloaded String.replace method to
     // do this directly but I wanted to stay 1.4 compatible.
@@ -6,7 +6,8 @@ import rars.Settings;
 import rars.SimulationException;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.syscalls.*;
-import rars.util.FilenameFinder;
+import rars.util.ComponentRegistry;
+import rars.util.Metrics;
 import rars.util.SystemIO;
 
 import java.io.BufferedReader;
@@ -60,7 +61,18 @@ public class InstructionSet {
     public static boolean rv64 = Globals.getSettings().getBooleanSetting(Settings.Bool.RV64_ENABLED);
 
     private ArrayList<Instruction> instructionList;
-    private ArrayList<MatchMap> opcodeMatchMaps;
+    private DecodeTable decodeTable;
+    // Lookup structures over instructionList by lower case mnemonic, rebuilt by populate()
+    private HashMap<String, ArrayList<Instruction>> mnemonicIndex;
+    private MnemonicTrie mnemonicTrie;
+    // The structures above as built by populate() for RV32 [0] and RV64 [1], so switching
+    // between them does not build them again.
+    private final Tables[] isaTables = new Tables[2];
+
+    // Instruction classes and pseudo-instruction specifications do not depend on the ISA,
+    // so they are found and read once for all instruction sets.
+    private static ArrayList<Class<?>> basicInstructionClasses;
+    private static final HashMap<String, ArrayList<String[]>> pseudoInstructionSpecs = new HashMap<>();
 
     /**
      * Creates a new InstructionSet object.
@@ -81,14 +93,26 @@ public class InstructionSet {
     /**
      * Adds all instructions to the set.  A given extended instruction may have
      * more than one Instruction object, depending on how many formats it can have.
+     * The set built for each value of {@link #rv64} is kept, so calling this again
+     * only switches to it.
      *
      * @see Instruction
      * @see BasicInstruction
      * @see ExtendedInstruction
      */
     public void populate() {
+        Tables cached = isaTables[rv64 ? 1 : 0];
+        if (cached != null) {
+            instructionList = cached.instructionList;
+            decodeTable = cached.decodeTable;
+            mnemonicIndex = cached.mnemonicIndex;
+            mnemonicTrie = cached.mnemonicTrie;
+            return;
+        }
         /* Here is where the parade begins.  Every instruction is added to the set here.*/
-        instructionList.clear();
+        instructionList = new ArrayList<>();
+        mnemonicIndex = new HashMap<>();
+        mnemonicTrie = new MnemonicTrie();
         // ////////////////////////////////////   BASIC INSTRUCTIONS START HERE ////////////////////////////////
 
         addBasicInstructions();
@@ -104,38 +128,72 @@ public class InstructionSet {
         for (Instruction inst : instructionList) {
             inst.createExampleTokenList();
         }
+        // Pseudo-instruction templates are tokenized once here rather than for every use.
+        for (Instruction inst : instructionList) {
+            if (inst instanceof ExtendedInstruction) {
+                ((ExtendedInstruction) inst).compileTemplates();
+            }
+        }
 
-        HashMap<Integer, HashMap<Integer, BasicInstruction>> maskMap = new HashMap<>();
-        ArrayList<MatchMap> matchMaps = new ArrayList<>();
+        // Later instructions with the same mask and match replace earlier ones, as before.
+        LinkedHashMap<Long, BasicInstruction> basics = new LinkedHashMap<>();
         for (Instruction inst : instructionList) {
             if (inst instanceof BasicInstruction) {
                 BasicInstruction basic = (BasicInstruction) inst;
-                Integer mask = basic.getOpcodeMask();
-                Integer match = basic.getOpcodeMatch();
-                HashMap<Integer, BasicInstruction> matchMap = maskMap.get(mask);
-                if (matchMap == null) {
-                    matchMap = new HashMap<>();
-                    maskMap.put(mask, matchMap);
-                    matchMaps.add(new MatchMap(mask, matchMap));
-                }
-                matchMap.put(match, basic);
+                basics.put(((long) basic.getOpcodeMask() << 32) | (basic.getOpcodeMatch() & 0xFFFFFFFFL), basic);
             }
         }
-        Collections.sort(matchMaps);
-        this.opcodeMatchMaps = matchMaps;
+        ArrayList<BasicInstruction> candidates = new ArrayList<>(basics.values());
+        // Most specific masks are tried first, so that e.g. a fixed rs2 field wins over a register operand.
+        candidates.sort((a, b) -> {
+            int d = Integer.bitCount(b.getOpcodeMask()) - Integer.bitCount(a.getOpcodeMask());
+            return d != 0 ? d : a.getOpcodeMask() - b.getOpcodeMask();
+        });
+        this.decodeTable = DecodeTable.build(candidates, 0);
+        isaTables[rv64 ? 1 : 0] = new Tables(instructionList, decodeTable, mnemonicIndex, mnemonicTrie);
     }
 
+    /**
+     * Finds the basic instruction whose opcode bits match the given machine code.
+     *
+     * @param binaryInstr 32-bit machine code
+     * @return the matching BasicInstruction, or null if none matches
+     */
     public BasicInstruction findByBinaryCode(int binaryInstr) {
-        for (MatchMap map : this.opcodeMatchMaps) {
-            BasicInstruction ret = map.find(binaryInstr);
-            if (ret != null) return ret;
+        DecodeTable table = this.decodeTable;
+        while (table != null && table.leaf == null) {
+            table = table.children[(binaryInstr >>> table.shift) & table.fieldMask];
+        }
+        if (table == null) return null;
+        for (BasicInstruction inst : table.leaf) {
+            if ((binaryInstr & inst.getOpcodeMask()) == inst.getOpcodeMatch()) return inst;
         }
         return null;
     }
 
     private void addBasicInstructions() {
+        for (Class<?> clas : getBasicInstructionClasses()) {
+            try {
+                try {
+                    addInstruction((BasicInstruction) clas.newInstance());
+                } catch (NullPointerException ne) {
+                    if (ne.toString().contains("rv")) continue;
+                    throw ne;
+                }
+            } catch (Exception e) {
+                System.out.println("Error instantiating Instruction from class " + clas.getName() + ": " + e);
+                System.exit(0);
+            }
+        }
+    }
+
+    private static synchronized ArrayList<Class<?>> getBasicInstructionClasses() {
+        if (basicInstructionClasses != null) {
+            return basicInstructionClasses;
+        }
+        ArrayList<Class<?>> classes = new ArrayList<>();
         // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(this.getClass().getClassLoader(),
+        ArrayList<String> candidates = ComponentRegistry.getFilenameList(InstructionSet.class.getClassLoader(),
                 INSTRUCTIONS_DIRECTORY_PATH, CLASS_EXTENSION);
         HashSet<String> insts = new HashSet<>();
         for (String file : candidates) {
@@ -146,34 +204,66 @@ public class InstructionSet {
                 insts.add(file);
             }
             try {
-                // grab the class, make sure it implements Syscall, instantiate, add to list
+                // grab the class, make sure it is a concrete BasicInstruction
                 String syscallClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                Class clas = Class.forName(syscallClassName);
+                Class<?> clas = Class.forName(syscallClassName);
                 if (!BasicInstruction.class.isAssignableFrom(clas) ||
                         Modifier.isAbstract(clas.getModifiers()) ||
                         Modifier.isInterface(clas.getModifiers())) {
                     continue;
                 }
-                try {
-                    instructionList.add((BasicInstruction) clas.newInstance());
-                }catch (NullPointerException ne){
-                    if (ne.toString().contains("rv"))continue;
-                    throw ne;
-                }
+                classes.add(clas);
             } catch (Exception e) {
                 System.out.println("Error instantiating Instruction from file " + file + ": " + e);
                 System.exit(0);
             }
         }
+        basicInstructionClasses = classes;
+        return classes;
     }
+
+    // Adds to the instruction list and the mnemonic lookup structures.  Pseudo-instruction
+    // templates are checked against the instructions added before them, so the lookups
+    // have to be kept current while the list is being built.
+    private void addInstruction(Instruction inst) {
+        instructionList.add(inst);
+        String key = inst.getName().toLowerCase(Locale.ROOT);
+        ArrayList<Instruction> matches = mnemonicIndex.get(key);
+        if (matches == null) {
+            matches = new ArrayList<>();
+            mnemonicIndex.put(key, matches);
+        }
+        matches.add(inst);
+        mnemonicTrie.add(key, inst);
+    }
+
     /*  METHOD TO ADD PSEUDO-INSTRUCTIONS
     */
     private void addPseudoInstructions(String file) {
+        try {
+            for (String[] spec : getPseudoInstructionSpecs(file)) {
+                addInstruction(new ExtendedInstruction(spec[0], spec[1], spec[2]));
+            }
+        } catch (Exception e) {
+            System.out.println(
+                    "Internal Error: Invalid pseudo-instruction specification.");
+            System.exit(0);
+        }
+    }
+
+    // Reads the pseudo-instruction specifications in the given file as
+    // {pseudoOp, template, description} triples.
+    private static synchronized ArrayList<String[]> getPseudoInstructionSpecs(String file) {
+        ArrayList<String[]> specs = pseudoInstructionSpecs.get(file);
+        if (specs != null) {
+            return specs;
+        }
+        specs = new ArrayList<>();
         InputStream is = null;
         BufferedReader in = null;
         try {
             // leading "/" prevents package name being prepended to filepath.
-            is = this.getClass().getResourceAsStream(file);
+            is = InstructionSet.class.getResourceAsStream(file);
             in = new BufferedReader(new InputStreamReader(is));
         } catch (NullPointerException e) {
             System.out.println(
@@ -204,7 +294,7 @@ public class InstructionSet {
                             template = template + "\n";
                         }
                     }
-                    instructionList.add(new ExtendedInstruction(pseudoOp, template, description));
+                    specs.add(new String[]{pseudoOp, template, description});
                     //if (firstTemplate != null) System.out.println("\npseudoOp: "+pseudoOp+"\ndefault template:\n"+firstTemplate+"\ncompact template:\n"+template);
                 }
             }
@@ -218,27 +308,20 @@ public class InstructionSet {
                     "Internal Error: Invalid pseudo-instruction specification.");
             System.exit(0);
         }
-
+        pseudoInstructionSpecs.put(file, specs);
+        return specs;
     }
 
     /**
      * Given an operator mnemonic, will return the corresponding Instruction object(s)
-     * from the instruction set.  Uses straight linear search technique.
+     * from the instruction set.  Case-insensitive.  The returned list is shared and
+     * must not be modified.
      *
      * @param name operator mnemonic (e.g. addi, sw,...)
      * @return list of corresponding Instruction object(s), or null if not found.
      */
     public ArrayList<Instruction> matchOperator(String name) {
-        ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
-        for (Instruction inst : instructionList) {
-            if (inst.getName().equalsIgnoreCase(name)) {
-                if (matchingInstructions == null)
-                    matchingInstructions = new ArrayList<>();
-                matchingInstructions.add(inst);
-            }
-        }
-        return matchingInstructions;
+        return mnemonicIndex.get(name.toLowerCase(Locale.ROOT));
     }
 
 
@@ -246,24 +329,17 @@ public class InstructionSet {
     /**
      * Given a string, will return the Instruction object(s) from the instruction
      * set whose operator mnemonic prefix matches it.  Case-insensitive.  For example
-     * "s" will match "sw", "sh", "sb", etc.  Uses straight linear search technique.
+     * "s" will match "sw", "sh", "sb", etc.  The returned list is shared and must
+     * not be modified.
      *
      * @param name a string
      * @return list of matching Instruction object(s), or null if none match.
      */
     public ArrayList<Instruction> prefixMatchOperator(String name) {
-        ArrayList<Instruction> matchingInstructions = null;
-        // Linear search for now....
-        if (name != null) {
-            for (Instruction inst : instructionList) {
-                if (inst.getName().toLowerCase().startsWith(name.toLowerCase())) {
-                    if (matchingInstructions == null)
-                        matchingInstructions = new ArrayList<>();
-                    matchingInstructions.add(inst);
-                }
-            }
+        if (name == null) {
+            return null;
         }
-        return matchingInstructions;
+        return mnemonicTrie.find(name.toLowerCase(Locale.ROOT));
     }
 
    	/*
@@ -290,7 +366,12 @@ public class InstructionSet {
             if (!is_writing) {
                 SystemIO.flush(true);
             }
-            service.simulate(statement);
+            long start = System.nanoTime();
+            try {
+                service.simulate(statement);
+            } finally {
+                Metrics.syscall(number, System.nanoTime() - start);
+            }
             return;
         }
         throw new SimulationException(statement,
@@ -334,38 +415,100 @@ public class InstructionSet {
         RegisterFile.updateRegister(register, RegisterFile.getProgramCounter());
     }
 
-    private static class MatchMap implements Comparable<MatchMap> {
-        private int mask;
-        private int maskLength; // number of 1 bits in mask
-        private HashMap<Integer, BasicInstruction> matchMap;
-
-        public MatchMap(int mask, HashMap<Integer, BasicInstruction> matchMap) {
-            this.mask = mask;
-            this.matchMap = matchMap;
+    // The lookup structures for one instruction set.
+    private static class Tables {
+        private final ArrayList<Instruction> instructionList;
+        private final DecodeTable decodeTable;
+        private final HashMap<String, ArrayList<Instruction>> mnemonicIndex;
+        private final MnemonicTrie mnemonicTrie;
+
+        private Tables(ArrayList<Instruction> instructionList, DecodeTable decodeTable,
+                       HashMap<String, ArrayList<Instruction>> mnemonicIndex, MnemonicTrie mnemonicTrie) {
+            this.instructionList = instructionList;
+            this.decodeTable = decodeTable;
+            this.mnemonicIndex = mnemonicIndex;
+            this.mnemonicTrie = mnemonicTrie;
+        }
+    }
 
-            int k = 0;
-            int n = mask;
-            while (n != 0) {
-                k++;
-                n &= n - 1;
+    /*
+     * Prefix tree of lower case mnemonics.  Every node lists all instructions whose
+     * mnemonic starts with the prefix leading to it, in instruction list order.
+     */
+    private static class MnemonicTrie {
+        private HashMap<Character, MnemonicTrie> children = new HashMap<>();
+        private ArrayList<Instruction> instructions = new ArrayList<>();
+
+        private void add(String mnemonic, Instruction inst) {
+            MnemonicTrie node = this;
+            node.instructions.add(inst);
+            for (int i = 0; i < mnemonic.length(); i++) {
+                MnemonicTrie child = node.children.get(mnemonic.charAt(i));
+                if (child == null) {
+                    child = new MnemonicTrie();
+                    node.children.put(mnemonic.charAt(i), child);
+                }
+                node = child;
+                node.instructions.add(inst);
             }
-            this.maskLength = k;
         }
 
-        public boolean equals(Object o) {
-            return o instanceof MatchMap && mask == ((MatchMap) o).mask;
+        private ArrayList<Instruction> find(String prefix) {
+            MnemonicTrie node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return (node == null || node.instructions.isEmpty()) ? null : node.instructions;
         }
+    }
 
-        public int compareTo(MatchMap other) {
-            int d = other.maskLength - this.maskLength;
-            if (d == 0) d = this.mask - other.mask;
-            return d;
+    /*
+     * Decoding tree built by populate().  Each level indexes on one instruction field
+     * (opcode, then funct3, funct7 and rs2) until only a handful of candidates remain;
+     * those are kept in a leaf, ordered most specific mask first, and matched directly.
+     */
+    private static class DecodeTable {
+        // {shift, width} of opcode[6:0], funct3[14:12], funct7[31:25] and rs2[24:20]
+        private static final int[][] FIELDS = {{0, 7}, {12, 3}, {25, 7}, {20, 5}};
+        private static final int MAX_LEAF_SIZE = 4;
+
+        private int shift, fieldMask;
+        private DecodeTable[] children;
+        private BasicInstruction[] leaf;
+
+        private static DecodeTable build(List<BasicInstruction> candidates, int field) {
+            if (candidates.isEmpty()) return null;
+            // Skip fields which no candidate fixes completely; splitting on them would not narrow anything down.
+            while (field < FIELDS.length && (candidates.size() <= MAX_LEAF_SIZE && field > 0
+                    || !fixesField(candidates, field))) {
+                field++;
+            }
+            DecodeTable table = new DecodeTable();
+            if (field == FIELDS.length) {
+                table.leaf = candidates.toArray(new BasicInstruction[0]);
+                return table;
+            }
+            table.shift = FIELDS[field][0];
+            table.fieldMask = (1 << FIELDS[field][1]) - 1;
+            table.children = new DecodeTable[table.fieldMask + 1];
+            for (int value = 0; value <= table.fieldMask; value++) {
+                ArrayList<BasicInstruction> bucket = new ArrayList<>();
+                for (BasicInstruction inst : candidates) {
+                    int mask = (inst.getOpcodeMask() >>> table.shift) & table.fieldMask;
+                    int match = (inst.getOpcodeMatch() >>> table.shift) & table.fieldMask;
+                    if ((value & mask) == match) bucket.add(inst); // keeps specificity order
+                }
+                table.children[value] = build(bucket, field + 1);
+            }
+            return table;
         }
 
-        public BasicInstruction find(int instr) {
-            int match = instr & mask;
-            return matchMap.get(match);
+        private static boolean fixesField(List<BasicInstruction> candidates, int field) {
+            int mask = ((1 << FIELDS[field][1]) - 1) << FIELDS[field][0];
+            for (BasicInstruction inst : candidates) {
+                if ((inst.getOpcodeMask() & mask) == mask) return true;
+            }
+            return false;
         }
     }
 }
-
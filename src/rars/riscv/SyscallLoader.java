@@ -1,7 +1,7 @@
 package rars.riscv;
 
 import rars.Globals;
-import rars.util.FilenameFinder;
+import rars.util.ComponentRegistry;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -61,7 +61,7 @@ public class SyscallLoader {
     static {
         syscallList = new ArrayList<>();
         // grab all class files in the same directory as Syscall
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(SyscallLoader.class.getClassLoader(),
+        ArrayList<String> candidates = ComponentRegistry.getFilenameList(SyscallLoader.class.getClassLoader(),
                 SYSCALLS_DIRECTORY_PATH, CLASS_EXTENSION);
         HashSet<String> syscalls = new HashSet<>();
         for (String file : candidates) {
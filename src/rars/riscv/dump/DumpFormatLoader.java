@@ -1,6 +1,6 @@
 package rars.riscv.dump;
 
-import rars.util.FilenameFinder;
+import rars.util.ComponentRegistry;
 
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -50,7 +50,7 @@ public class DumpFormatLoader {
     static {
         formatList = new ArrayList<>();
         // grab all class files in the dump directory
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(DumpFormatLoader.class.getClassLoader(),
+        ArrayList<String> candidates = ComponentRegistry.getFilenameList(DumpFormatLoader.class.getClassLoader(),
                 DUMP_DIRECTORY_PATH, CLASS_EXTENSION);
         for (String file : candidates) {
             try {
@@ -6,7 +6,11 @@ import rars.Settings;
 import rars.SimulationException;
 import rars.riscv.Instruction;
 import rars.util.Binary;
+import rars.util.MemoryProfile;
+import rars.util.Metrics;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Observable;
 import java.util.Observer;
@@ -131,6 +135,9 @@ public class Memory extends Observable {
 
     private Collection<MemoryObservable> observables = getNewMemoryObserversCollection();
 
+    // Counts the program's accesses when set; see setProfile().
+    private MemoryProfile profile;
+
     // The data segment is allocated in blocks of 1024 ints (4096 bytes).  Each block is
     // referenced by a "block table" entry, and the table has 1024 entries.  The capacity
     // is thus 1024 entries * 4096 bytes = 4 MB.  Should be enough to cover most
@@ -199,6 +206,15 @@ public class Memory extends Observable {
     private static final int TEXT_BLOCK_TABLE_LENGTH = 1024; // Each entry of table points to a block.
     private ProgramStatement[][] textBlockTable;
 
+    // Statements decoded from raw binary (self-modifying code: stores into the text segment,
+    // or fetches from outside it) are kept in a small direct-mapped cache indexed by word
+    // address.  An entry is only reused if both its address and its binary code match, so
+    // a program that executes from the data segment or rewrites the same instruction does
+    // not construct and decode a new ProgramStatement on every fetch or store.
+
+    private static final int DECODE_CACHE_LENGTH = 4096; // must be a power of 2
+    private ProgramStatement[] decodeCache;
+
     // Set "top" address boundary to go with each "base" address.  This determines permissable
     // address range for user program.  Currently limit is 4MB, or 1024 * 1024 * 4 bytes based
     // on the table structures described above (except memory mapped IO, limited to 64KB by range).
@@ -235,9 +251,11 @@ public class Memory extends Observable {
             return false;
         }
 
+        int pages = 0;
         for(int i = 0; i < textBlockTable.length; i++){
             if(other.textBlockTable[i] != null){
                 textBlockTable[i] = other.textBlockTable[i].clone(); // TODO: potentially make ProgramStatement clonable
+                pages++;
             }else{
                 textBlockTable[i] = null;
             }
@@ -245,6 +263,7 @@ public class Memory extends Observable {
         for(int i = 0; i < dataBlockTable.length; i++){
             if(other.dataBlockTable[i] != null){
                 dataBlockTable[i] = other.dataBlockTable[i].clone();
+                pages++;
             }else{
                 dataBlockTable[i] = null;
             }
@@ -252,6 +271,7 @@ public class Memory extends Observable {
         for(int i = 0; i < stackBlockTable.length; i++){
             if(other.stackBlockTable[i] != null){
                 stackBlockTable[i] = other.stackBlockTable[i].clone();
+                pages++;
             }else{
                 stackBlockTable[i] = null;
             }
@@ -259,10 +279,12 @@ public class Memory extends Observable {
         for(int i = 0; i < memoryMapBlockTable.length; i++){
             if(other.memoryMapBlockTable[i] != null){
                 memoryMapBlockTable[i] = other.memoryMapBlockTable[i].clone();
+                pages++;
             }else{
                 memoryMapBlockTable[i] = null;
             }
         }
+        Metrics.memoryPagesCopied(pages);
         return true;
     }
 
@@ -329,6 +351,7 @@ public class Memory extends Observable {
         dataBlockTable = new int[BLOCK_TABLE_LENGTH][]; // array of null int[] references
         stackBlockTable = new int[BLOCK_TABLE_LENGTH][];
         memoryMapBlockTable = new int[MMIO_TABLE_LENGTH][];
+        decodeCache = new ProgramStatement[DECODE_CACHE_LENGTH];
         System.gc(); // call garbage collector on any Table memory just deallocated.
     }
 
@@ -375,6 +398,11 @@ public class Memory extends Observable {
 
     // Allocates blocks if necessary.
     public int set(int address, int value, int length) throws AddressErrorException {
+        return set(address, value, length, true);
+    }
+
+    // Does the real work, but includes option to NOT notify observers.
+    private int set(int address, int value, int length, boolean notify) throws AddressErrorException {
         int oldValue = 0;
         if (Globals.debug) System.out.println("memory[" + address + "] set to " + value + "(" + length + " bytes)");
         int relativeByteAddress;
@@ -410,7 +438,7 @@ public class Memory extends Observable {
                 mask <<= (address%4)*8;
                 value = (value&mask) | (oldValue&~mask);
                 oldValue = (oldValue&mask) >> (address%4);
-                setStatement((address/4)*4, new ProgramStatement(value, (address/4)*4));
+                setStatement((address/4)*4, decodeStatement(value, (address/4)*4));
             } else {
                 throw new AddressErrorException(
                         "Cannot write directly to text segment!",
@@ -425,7 +453,7 @@ public class Memory extends Observable {
             throw new AddressErrorException("address out of range ",
                     SimulationException.STORE_ACCESS_FAULT, address);
         }
-        notifyAnyObservers(AccessNotice.WRITE, address, length, value);
+        if (notify) notifyAnyObservers(AccessNotice.WRITE, address, length, value);
         return oldValue;
     }
 
@@ -461,7 +489,7 @@ public class Memory extends Observable {
                 if (oldStatement != null) {
                     oldValue = oldStatement.getBinaryStatement();
                 }
-                setStatement(address, new ProgramStatement(value, address));
+                setStatement(address, decodeStatement(value, address));
             } else {
                 throw new AddressErrorException(
                         "Cannot write directly to text segment!",
@@ -576,6 +604,62 @@ public class Memory extends Observable {
         return Double.longBitsToDouble(setDoubleWord(address,longValue));
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies a range of bytes from an array into memory, the lowest address
+     * getting the first byte.  Much faster than storing the bytes one at a time:
+     * the segment is looked up once per 4K page, and observers get one notice
+     * (see {@link MemoryAccessNotice#getLength()}) and back-stepping one step
+     * for the whole range.
+     *
+     * @param address Starting address of Memory to be set.  No alignment needed.
+     * @param bytes   Array holding the bytes to store.
+     * @param offset  Index in the array of the first byte to store.
+     * @param length  Number of bytes to store.
+     * @throws AddressErrorException If any address in the range is not writable.  Bytes before
+     *                               that address will have been stored.
+     **/
+    public void setBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        saveBytesForBackStep(address, length);
+        transferBytes(BULK_WRITE, address, bytes, null, offset, length, 0);
+        notifyAnyObserversOfRange(AccessNotice.WRITE, address, length);
+    }
+
+    /**
+     * Copies the remaining bytes of a buffer into memory, as {@link #setBytes(int, byte[], int, int)}
+     * does.  The buffer's position is advanced past the bytes stored.
+     *
+     * @param address Starting address of Memory to be set.  No alignment needed.
+     * @param buffer  Buffer holding the bytes to store.
+     * @throws AddressErrorException If any address in the range is not writable.
+     **/
+    public void setBytes(int address, ByteBuffer buffer) throws AddressErrorException {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            setBytes(address, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            setBytes(address, bytes, 0, length);
+        }
+    }
+
+    /**
+     * Stores the same byte value over a range of memory, like C's memset.
+     *
+     * @param address Starting address of Memory to be set.  No alignment needed.
+     * @param value   Value to store.  Only the low order 8 bits are used.
+     * @param length  Number of bytes to set.
+     * @throws AddressErrorException If any address in the range is not writable.
+     **/
+    public void fill(int address, int value, int length) throws AddressErrorException {
+        saveBytesForBackStep(address, length);
+        transferBytes(BULK_FILL, address, null, null, 0, length, value & 0xFF);
+        notifyAnyObserversOfRange(AccessNotice.WRITE, address, length);
+    }
+
 
     ////////////////////////////////////////////////////////////////////////////////
 
@@ -766,6 +850,24 @@ public class Memory extends Observable {
         return value;
     }
 
+    /**
+     * Copies a range of words into an array, raw as getRawWordOrNull() reads them,
+     * with words never referenced read as 0.  Observers are not notified, so a
+     * display can show a region of memory by reading all of it now and then instead
+     * of observing every store to it.  A 4K page of the data segment, stack or memory
+     * map is copied at once.
+     *
+     * @param address Starting address of the first word.  Must be word-aligned.
+     * @param words   Array to copy the words into.
+     * @param offset  Index in the array for the first word.
+     * @param count   Number of words to read.
+     * @throws AddressErrorException If address is not on word boundary or a word is out of range.
+     **/
+    public void getRawWords(int address, int[] words, int offset, int count) throws AddressErrorException {
+        checkLoadWordAligned(address);
+        transferBytes(BULK_READ_WORDS, address, null, words, offset, count * WORD_LENGTH_BYTES, 0);
+    }
+
     /**
      * Look for first "null" memory value in an address range.  For text segment (binary code), this
      * represents a word that does not contain an instruction.  Normally use this to find the end of
@@ -865,6 +967,61 @@ public class Memory extends Observable {
         return get(address, 1);
     }
 
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copies a range of memory into an array, the lowest address going to the
+     * first byte.  Much faster than reading the bytes one at a time: the segment is
+     * looked up once per 4K page, and observers get one notice for the whole range.
+     *
+     * @param address Starting address of Memory to be read.  No alignment needed.
+     * @param bytes   Array to copy the bytes into.
+     * @param offset  Index in the array for the first byte.
+     * @param length  Number of bytes to read.
+     * @throws AddressErrorException If any address in the range is not readable.
+     **/
+    public void getBytes(int address, byte[] bytes, int offset, int length) throws AddressErrorException {
+        transferBytes(BULK_READ, address, bytes, null, offset, length, 0);
+        notifyAnyObserversOfRange(AccessNotice.READ, address, length);
+    }
+
+    /**
+     * Fills the remaining space in a buffer from memory, as {@link #getBytes(int, byte[], int, int)}
+     * does.  The buffer's position is advanced past the bytes read.
+     *
+     * @param address Starting address of Memory to be read.  No alignment needed.
+     * @param buffer  Buffer to copy the bytes into.
+     * @throws AddressErrorException If any address in the range is not readable.
+     **/
+    public void getBytes(int address, ByteBuffer buffer) throws AddressErrorException {
+        int length = buffer.remaining();
+        if (buffer.hasArray()) {
+            getBytes(address, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+        } else {
+            byte[] bytes = new byte[length];
+            getBytes(address, bytes, 0, length);
+            buffer.put(bytes);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Finds the length of a null-terminated string, like C's strnlen.  Like
+     * getAddressOfFirstNull(), this only searches, so observers are not notified;
+     * the read of the string itself will notify them.
+     *
+     * @param address   Address of the first byte of the string.
+     * @param maxLength Largest number of bytes to look at.
+     * @return number of bytes before the first zero byte, or maxLength if there
+     * is no zero byte among the first maxLength bytes.
+     * @throws AddressErrorException If the search reaches an address that is not readable.
+     **/
+    public int strnlen(int address, int maxLength) throws AddressErrorException {
+        return transferBytes(BULK_FIND_NULL, address, null, null, 0, maxLength, 0);
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -907,7 +1064,26 @@ public class Memory extends Observable {
         if (inTextSegment(address))
             return readProgramStatement(address, textBaseAddress, textBlockTable, notify);
         else
-            return new ProgramStatement(get(address, WORD_LENGTH_BYTES), address);
+            return decodeStatement(get(address, WORD_LENGTH_BYTES, notify), address);
+    }
+
+    /**
+     * Returns a ProgramStatement for the given binary code at the given address, reusing
+     * a previously decoded one if the same word was last decoded at that address.
+     *
+     * @param binaryStatement the 32-bit machine code
+     * @param address         the (word-aligned) address the statement is located at
+     * @return a ProgramStatement decoded from binaryStatement
+     */
+    private ProgramStatement decodeStatement(int binaryStatement, int address) {
+        int index = (address >> 2) & (DECODE_CACHE_LENGTH - 1);
+        ProgramStatement statement = decodeCache[index];
+        if (statement == null || statement.getAddress() != address
+                || statement.getBinaryStatement() != binaryStatement) {
+            statement = new ProgramStatement(binaryStatement, address);
+            decodeCache[index] = statement;
+        }
+        return statement;
     }
 
 
@@ -1070,6 +1246,17 @@ public class Memory extends Observable {
         }
     }
 
+    /**
+     * Count every access the program makes from now on, as observers are notified
+     * of them, in the given profile.  Unlike an observer, this costs no notice
+     * objects, so the whole address space can be watched.
+     *
+     * @param profile where to count the accesses, or null to stop counting
+     */
+    public void setProfile(MemoryProfile profile) {
+        this.profile = profile;
+    }
+
     /**
      * Remove all memory observers
      */
@@ -1121,6 +1308,11 @@ public class Memory extends Observable {
             return (address >= lowAddress && address <= highAddress - 1 + WORD_LENGTH_BYTES);
         }
 
+        // true if any byte of the range is in the observed range
+        public boolean match(int address, int length) {
+            return (address + length - 1 >= lowAddress && address <= highAddress - 1 + WORD_LENGTH_BYTES);
+        }
+
         public void notifyObserver(MemoryAccessNotice notice) {
             this.setChanged();
             this.notifyObservers(notice);
@@ -1150,13 +1342,186 @@ public class Memory extends Observable {
     // The "|| Globals.getGui()==null" is a hack added 19 July 2012 DPS.  IF simulation
     // is from command mode, Globals.program is null but still want ability to observe.
     private void notifyAnyObservers(int type, int address, int length, int value) {
+        if (profile != null) {
+            profile.record(type, address, length);
+        }
         if ((Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0) {
             for (MemoryObservable mo : observables) {
                 if (mo.match(address)) {
                     mo.notifyObserver(new MemoryAccessNotice(type, address, length, value));
+                    Metrics.memoryNotification();
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // Like notifyAnyObservers, for an access to a range of bytes by the bulk methods.
+    // Observers whose range overlaps any of it get a single notice with the whole
+    // length.  There is no single value for a range, so the notice carries 0.
+    private void notifyAnyObserversOfRange(int type, int address, int length) {
+        if (profile != null && length > 0) {
+            profile.record(type, address, length);
+        }
+        if (length > 0 && (Globals.program != null || Globals.getGui() == null) && this.observables.size() > 0) {
+            for (MemoryObservable mo : observables) {
+                if (mo.match(address, length)) {
+                    mo.notifyObserver(new MemoryAccessNotice(type, address, length, 0));
+                    Metrics.memoryNotification();
+                }
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //
+    // The work behind setBytes, fill, getBytes, strnlen and getRawWords.  Walks the
+    // range one page at a time: the segment is looked up and the range checked once,
+    // then transferBytesInBlock does the bytes of that page.  The text segment is the
+    // exception; with self-modifying code enabled it goes through get and set one
+    // byte at a time, since instructions are not stored as bytes.
+    // BULK_READ_WORDS copies whole words, raw, into words[offset...], starting on a
+    // word boundary; the length is still in bytes.  Its text segment words are the
+    // binary statements, or 0 where there are none, with or without self-modifying code.
+    // Returns the number of bytes done, which for BULK_FIND_NULL is the number
+    // before the first zero byte.
+    //
+    private static final int BULK_READ = 0;
+    private static final int BULK_WRITE = 1;
+    private static final int BULK_FILL = 2;
+    private static final int BULK_FIND_NULL = 3;
+    private static final int BULK_READ_WORDS = 4;
+    private static final int BLOCK_LENGTH_BYTES = BLOCK_LENGTH_WORDS * WORD_LENGTH_BYTES;
+
+    private int transferBytes(int op, int address, byte[] bytes, int[] words, int offset, int length, int fill)
+            throws AddressErrorException {
+        boolean store = (op == BULK_WRITE || op == BULK_FILL);
+        int done = 0;
+        while (done < length) {
+            int current = address + done;
+            int[][] blockTable;
+            int relativeWordAddress, bytesInBlock;
+            if (inDataSegment(current)) {
+                int relativeByteAddress = current - dataSegmentBaseAddress;
+                blockTable = dataBlockTable;
+                relativeWordAddress = relativeByteAddress >> 2;
+                bytesInBlock = BLOCK_LENGTH_BYTES - relativeByteAddress % BLOCK_LENGTH_BYTES;
+            } else if (current > stackLimitAddress && current <= stackBaseAddress) {
+                // Stack words are numbered backward from the base, but the bytes within
+                // a word are in the same order as in the data segment (see the comments
+                // in storeOrFetchBytesInTable).  Going up in address goes down in block.
+                // A word read takes all of the word at stackBaseAddress, as getRawWordOrNull does.
+                blockTable = stackBlockTable;
+                relativeWordAddress = (stackBaseAddress - (current & ~3)) >> 2;
+                bytesInBlock = Math.min((relativeWordAddress % BLOCK_LENGTH_WORDS + 1) * WORD_LENGTH_BYTES - (current & 3),
+                        stackBaseAddress - current + ((op == BULK_READ_WORDS) ? WORD_LENGTH_BYTES : 1));
+            } else if (current >= memoryMapBaseAddress && current < memoryMapLimitAddress) {
+                int relativeByteAddress = current - memoryMapBaseAddress;
+                blockTable = memoryMapBlockTable;
+                relativeWordAddress = relativeByteAddress >> 2;
+                bytesInBlock = BLOCK_LENGTH_BYTES - relativeByteAddress % BLOCK_LENGTH_BYTES;
+            } else if (inTextSegment(current)) {
+                if (op == BULK_READ_WORDS) {
+                    Integer value = getRawWordOrNull(current);
+                    words[offset + done / WORD_LENGTH_BYTES] = (value == null) ? 0 : value;
+                    done += WORD_LENGTH_BYTES;
+                    continue;
                 }
+                // get and set throw if self-modifying code is not enabled.
+                if (op == BULK_READ) {
+                    bytes[offset + done] = (byte) get(current, 1, false);
+                } else if (op == BULK_FIND_NULL) {
+                    if (get(current, 1, false) == 0) return done;
+                } else {
+                    set(current, (op == BULK_FILL) ? fill : bytes[offset + done], 1, false);
+                }
+                done++;
+                continue;
+            } else {
+                throw new AddressErrorException("address out of range ",
+                        store ? SimulationException.STORE_ACCESS_FAULT : SimulationException.LOAD_ACCESS_FAULT, current);
+            }
+            int count = Math.min(bytesInBlock, length - done);
+            int transferred = transferBytesInBlock(op, blockTable, relativeWordAddress, current & 3,
+                    blockTable == stackBlockTable, bytes, words,
+                    (op == BULK_READ_WORDS) ? offset + done / WORD_LENGTH_BYTES : offset + done, count, fill);
+            done += transferred;
+            if (transferred < count) {
+                break; // found the null
+            }
+        }
+        return done;
+    }
+
+    // Records the bytes a bulk write is about to replace, as one back step.  If
+    // the range runs into an address that cannot be read, only the bytes before it
+    // are recorded; the write will fail at that same address.
+    private void saveBytesForBackStep(int address, int length) {
+        if (length <= 0 || !Globals.getSettings().getBackSteppingEnabled()) {
+            return;
+        }
+        byte[] old = new byte[length];
+        try {
+            transferBytes(BULK_READ, address, old, null, 0, length, 0);
+        } catch (AddressErrorException e) {
+            old = Arrays.copyOf(old, e.getAddress() - address);
+        }
+        Globals.program.getBackStepper().addMemoryRestoreBytes(address, old);
+    }
+
+    // Does count bytes of a bulk operation, all of which are in one block.  An
+    // unallocated block reads as zeros, and is allocated when stored into.
+    // For BULK_READ_WORDS, offset is an index into words rather than bytes.
+    private synchronized int transferBytesInBlock(int op, int[][] blockTable, int relativeWordAddress,
+                                                  int byteInWord, boolean backward, byte[] bytes, int[] words,
+                                                  int offset, int count, int fill) {
+        int blockNumber = relativeWordAddress / BLOCK_LENGTH_WORDS;
+        int offsetInBlock = relativeWordAddress % BLOCK_LENGTH_WORDS;
+        int[] block = blockTable[blockNumber];
+        if (op == BULK_READ_WORDS) {
+            int wordCount = count / WORD_LENGTH_BYTES;
+            if (block == null) {
+                Arrays.fill(words, offset, offset + wordCount, 0);
+            } else if (!backward) {
+                System.arraycopy(block, offsetInBlock, words, offset, wordCount);
+            } else {
+                for (int i = 0; i < wordCount; i++) {
+                    words[offset + i] = block[offsetInBlock - i];
+                }
+            }
+            return count;
+        }
+        if (block == null) {
+            if (op == BULK_READ) {
+                Arrays.fill(bytes, offset, offset + count, (byte) 0);
+                return count;
+            } else if (op == BULK_FIND_NULL) {
+                return 0;
+            }
+            block = blockTable[blockNumber] = new int[BLOCK_LENGTH_WORDS];
+            Metrics.memoryPagesAllocated(1);
+        }
+        for (int i = 0; i < count; i++) {
+            int shift = (byteOrder == LITTLE_ENDIAN) ? byteInWord << 3 : (3 - byteInWord) << 3;
+            int word = block[offsetInBlock];
+            switch (op) {
+                case BULK_READ:
+                    bytes[offset + i] = (byte) (word >> shift);
+                    break;
+                case BULK_FIND_NULL:
+                    if (((word >> shift) & 0xFF) == 0) return i;
+                    break;
+                default:
+                    int value = (op == BULK_FILL) ? fill : bytes[offset + i];
+                    block[offsetInBlock] = (word & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+            }
+            if (++byteInWord == WORD_LENGTH_BYTES) {
+                byteInWord = 0;
+                offsetInBlock += backward ? -1 : 1;
             }
         }
+        return count;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -1219,9 +1584,10 @@ public class Memory extends Observable {
             block = relativeWordAddress / BLOCK_LENGTH_WORDS;  // Block number
             offset = relativeWordAddress % BLOCK_LENGTH_WORDS; // Word within that block
             if (blockTable[block] == null) {
-                if (op == STORE)
+                if (op == STORE) {
                     blockTable[block] = new int[BLOCK_LENGTH_WORDS];
-                else
+                    Metrics.memoryPagesAllocated(1);
+                } else
                     return 0;
             }
             if (byteOrder == LITTLE_ENDIAN) bytePositionInMemory = 3 - bytePositionInMemory;
@@ -1254,6 +1620,7 @@ public class Memory extends Observable {
         if (blockTable[block] == null) {
             // First time writing to this block, so allocate the space.
             blockTable[block] = new int[BLOCK_LENGTH_WORDS];
+            Metrics.memoryPagesAllocated(1);
         }
         oldValue = blockTable[block][offset];
         blockTable[block][offset] = value;
@@ -1317,6 +1684,7 @@ public class Memory extends Observable {
             if (blockTable[block] == null) {
                 // No instructions are stored in this block, so allocate the block.
                 blockTable[block] = new ProgramStatement[BLOCK_LENGTH_WORDS];
+                Metrics.memoryPagesAllocated(1);
             }
             blockTable[block][offset] = statement;
         }
@@ -71,7 +71,9 @@ public class MemoryAccessNotice extends AccessNotice {
     }
 
     /**
-     * Fetch the length in bytes of the access operation (4,2,1).
+     * Fetch the length in bytes of the access operation (4,2,1).  Bulk operations
+     * such as Memory.setBytes() send one notice for the whole range, so the length
+     * can be anything, and the value is then 0.
      */
     public int getLength() {
         return length;
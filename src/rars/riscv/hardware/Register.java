@@ -46,6 +46,8 @@ public class Register extends Observable {
     // are the only methods here used by the register collection
     // (RegisterFile, ControlAndStatusRegisterFile, FloatingPointRegisterFile) methods.
     private volatile long value;
+    // set by setValue, cleared by takeWritten
+    private boolean written;
 
     /**
      * Creates a new register with specified name, number, and value.
@@ -128,10 +130,25 @@ public class Register extends Observable {
     public synchronized long setValue(long val) {
         long old = value;
         value = val;
+        written = true;
         notifyAnyObservers(AccessNotice.WRITE);
         return old;
     }
 
+    /**
+     * Tells whether the register has been written by <tt>setValue()</tt> since the last
+     * call, and starts over.  This lets a display find the registers that were written
+     * without observing them, which would cost a notice for every read and write.
+     *
+     * @return true if written since the last call
+     */
+
+    public synchronized boolean takeWritten() {
+        boolean wasWritten = written;
+        written = false;
+        return wasWritten;
+    }
+
     /**
      * Sets the value of the register to the val passed to it. This should only
      * be used to update registers not related to the current instruction.
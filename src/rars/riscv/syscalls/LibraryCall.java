@@ -0,0 +1,83 @@
+package rars.riscv.syscalls;
+
+import rars.Globals;
+import rars.Settings;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.ControlAndStatusRegisterFile;
+
+/**
+ * Helpers shared by the syscalls that do C library routines (Memcpy, Memset, Strlen, ...)
+ * in Java rather than in simulated instructions.
+ */
+public class LibraryCall {
+    // Large copies are done in pieces of this size, so a bad length runs into an
+    // address error rather than allocating a huge buffer.
+    private static final int CHUNK_LENGTH = 64 * 1024;
+
+    /**
+     * Makes a library call look as expensive as the RISC-V loop it replaces: if the
+     * LIBRARY_CALL_INSTRUCTIONS setting is on, the given number of instructions is added
+     * to cycle and instret, as if each had been executed.
+     *
+     * @param instructions number of instructions the equivalent loop would take
+     */
+    public static void countInstructions(long instructions) {
+        if (instructions <= 0 || !Globals.getSettings().getBooleanSetting(Settings.Bool.LIBRARY_CALL_INSTRUCTIONS)) {
+            return;
+        }
+        ControlAndStatusRegisterFile.updateRegisterBackdoor("cycle",
+                ControlAndStatusRegisterFile.getValueNoNotify("cycle") + instructions);
+        ControlAndStatusRegisterFile.updateRegisterBackdoor("instret",
+                ControlAndStatusRegisterFile.getValueNoNotify("instret") + instructions);
+    }
+
+    /**
+     * Copies memory like C's memmove: the ranges may overlap.  If part of either range
+     * cannot be accessed, bytes are copied up to the bad address (in the order a byte by
+     * byte loop would copy them) before the error is thrown.
+     *
+     * @param destination address to copy to
+     * @param source      address to copy from
+     * @param length      number of bytes, unsigned
+     * @throws AddressErrorException if either range runs into an address that cannot be accessed
+     */
+    public static void copy(int destination, int source, long length) throws AddressErrorException {
+        byte[] buffer = new byte[(int) Math.min(length, CHUNK_LENGTH)];
+        // Copy backward if the destination starts inside the source, so that no source byte
+        // is overwritten before it is read.
+        boolean backward = destination != source
+                && ((destination - source) & 0xFFFFFFFFL) < length;
+        long done = 0;
+        while (done < length) {
+            int count = (int) Math.min(length - done, CHUNK_LENGTH);
+            long start = backward ? length - done - count : done;
+            try {
+                Globals.memory.getBytes(source + (int) start, buffer, 0, count);
+            } catch (AddressErrorException e) {
+                // Copy what a forward loop would have before reaching the bad address
+                int good = e.getAddress() - (source + (int) start);
+                if (!backward && good > 0) {
+                    Globals.memory.setBytes(destination + (int) start, buffer, 0, good);
+                }
+                throw e;
+            }
+            Globals.memory.setBytes(destination + (int) start, buffer, 0, count);
+            done += count;
+        }
+    }
+
+    /**
+     * Sets memory to one byte value, like C's memset.
+     *
+     * @param address first address to set
+     * @param value   the value; only the low order byte is used
+     * @param length  number of bytes, unsigned
+     * @throws AddressErrorException if the range runs into an address that cannot be written.
+     *                               Bytes before it will have been set.
+     */
+    public static void fill(int address, int value, long length) throws AddressErrorException {
+        for (long done = 0; done < length; done += CHUNK_LENGTH) {
+            Globals.memory.fill(address + (int) done, value, (int) Math.min(length - done, CHUNK_LENGTH));
+        }
+    }
+}
@@ -7,7 +7,6 @@ import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.RegisterFile;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 
 /*
 Copyright (c) 2003-2017,  Pete Sanderson,Benjamin Landers and Kenneth Vollmar
@@ -59,24 +58,17 @@ public class NullString {
      */
     public static String get(ProgramStatement statement, String reg) throws ExitingException {
         int byteAddress = RegisterFile.getValue(reg);
-        ArrayList<Byte> utf8BytesList = new ArrayList<>(); // Need an array to hold bytes
+        byte[] utf8Bytes;
+        int size;
         try {
-            utf8BytesList.add((byte) Globals.memory.getByte(byteAddress));
-            while (utf8BytesList.get(utf8BytesList.size() - 1) != 0) // until null terminator
-            {
-                byteAddress++;
-                utf8BytesList.add((byte) Globals.memory.getByte(byteAddress));
-            }
+            // The search stops with an exception at the end of the segment if there is no terminator
+            size = Globals.memory.strnlen(byteAddress, Integer.MAX_VALUE - 1);
+            utf8Bytes = new byte[size + 1]; // read the null terminator too, as the program would
+            Globals.memory.getBytes(byteAddress, utf8Bytes, 0, size + 1);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
 
-        int size = utf8BytesList.size() - 1;    //size - 1 so we dont include the null terminator in the utf8Bytes array
-        byte[] utf8Bytes = new byte[size];  
-        for (int i = 0; i < size; i++){ 
-            utf8Bytes[i] = utf8BytesList.get(i);
-        }
-
-        return new String(utf8Bytes, StandardCharsets.UTF_8);
+        return new String(utf8Bytes, 0, size, StandardCharsets.UTF_8);
     }
 }
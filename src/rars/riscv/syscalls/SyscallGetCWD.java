@@ -8,6 +8,7 @@ import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.RegisterFile;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /*
 Copyright (c) 20017,  Benjamin Landers
@@ -56,11 +57,8 @@ public class SyscallGetCWD extends AbstractSyscall {
             return;
         }
         try {
-            for (int index = 0; index < utf8BytesList.length; index++) {
-                Globals.memory.setByte(buf + index,
-                        utf8BytesList[index]);
-            }
-            Globals.memory.setByte(buf + utf8BytesList.length, 0);
+            // copyOf adds the null terminator
+            Globals.memory.setBytes(buf, Arrays.copyOf(utf8BytesList, utf8BytesList.length + 1), 0, utf8BytesList.length + 1);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
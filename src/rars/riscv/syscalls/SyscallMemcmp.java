@@ -0,0 +1,71 @@
+package rars.riscv.syscalls;
+
+import rars.ExitingException;
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.RegisterFile;
+
+/**
+ * Compares two buffers, like C's memcmp, without simulating the loop.
+ */
+public class SyscallMemcmp extends AbstractSyscall {
+    // two lbu, bne, three addi and bnez for each byte compared
+    private static final int LOOP_INSTRUCTIONS_PER_BYTE = 7;
+    private static final int CHUNK_LENGTH = 4096;
+
+    public SyscallMemcmp() {
+        super("Memcmp", "Compares two buffers byte by byte, as unsigned bytes",
+                "a0 = address of the first buffer<br>a1 = address of the second buffer<br>a2 = number of bytes to compare",
+                "a0 = 0 if the buffers are equal, otherwise the first differing byte of the first buffer " +
+                        "minus that of the second");
+    }
+
+    public void simulate(ProgramStatement statement) throws ExitingException {
+        int first = RegisterFile.getValue("a0");
+        int second = RegisterFile.getValue("a1");
+        long length = RegisterFile.getValue("a2") & 0xFFFFFFFFL;
+        byte[] firstBytes = new byte[(int) Math.min(length, CHUNK_LENGTH)];
+        byte[] secondBytes = new byte[firstBytes.length];
+        int result = 0;
+        long compared = 0;
+        try {
+            // Compare a chunk at a time, so memory past the first difference is not read
+            while (compared < length && result == 0) {
+                int count = (int) Math.min(length - compared, CHUNK_LENGTH);
+                // The loop reads both bytes before comparing them, so it compares up to the
+                // first bad address in either buffer, and faults only if it gets there
+                AddressErrorException fault = null;
+                try {
+                    Globals.memory.getBytes(first + (int) compared, firstBytes, 0, count);
+                } catch (AddressErrorException e) {
+                    fault = e;
+                    count = e.getAddress() - (first + (int) compared);
+                    Globals.memory.getBytes(first + (int) compared, firstBytes, 0, count);
+                }
+                try {
+                    Globals.memory.getBytes(second + (int) compared, secondBytes, 0, count);
+                } catch (AddressErrorException e) {
+                    fault = e;
+                    count = e.getAddress() - (second + (int) compared);
+                    Globals.memory.getBytes(second + (int) compared, secondBytes, 0, count);
+                }
+                for (int i = 0; i < count; i++) {
+                    compared++;
+                    if (firstBytes[i] != secondBytes[i]) {
+                        result = (firstBytes[i] & 0xFF) - (secondBytes[i] & 0xFF);
+                        break;
+                    }
+                }
+                if (result == 0 && fault != null) {
+                    throw fault;
+                }
+            }
+        } catch (AddressErrorException e) {
+            throw new ExitingException(statement, e);
+        }
+        RegisterFile.updateRegister("a0", result);
+        LibraryCall.countInstructions(compared * LOOP_INSTRUCTIONS_PER_BYTE);
+    }
+}
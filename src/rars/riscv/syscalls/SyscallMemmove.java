@@ -0,0 +1,34 @@
+package rars.riscv.syscalls;
+
+import rars.ExitingException;
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.RegisterFile;
+
+/**
+ * Copies memory between buffers that may overlap, like C's memmove, without simulating the loop.
+ * This is the same as {@link SyscallMemcpy}, which handles overlap too; C programs ported to RARS
+ * use both names.
+ */
+public class SyscallMemmove extends AbstractSyscall {
+    // A compare to pick the direction, then lb, sb, three addi and bnez for each byte
+    private static final int LOOP_INSTRUCTIONS_PER_BYTE = 6;
+
+    public SyscallMemmove() {
+        super("Memmove", "Copies bytes from one buffer to another. The buffers may overlap",
+                "a0 = address of the destination<br>a1 = address of the source<br>a2 = number of bytes to copy",
+                "a0 = address of the destination");
+    }
+
+    public void simulate(ProgramStatement statement) throws ExitingException {
+        long length = RegisterFile.getValue("a2") & 0xFFFFFFFFL;
+        try {
+            LibraryCall.copy(RegisterFile.getValue("a0"), RegisterFile.getValue("a1"), length);
+        } catch (AddressErrorException e) {
+            throw new ExitingException(statement, e);
+        }
+        LibraryCall.countInstructions(1 + length * LOOP_INSTRUCTIONS_PER_BYTE);
+    }
+}
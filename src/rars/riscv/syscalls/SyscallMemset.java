@@ -0,0 +1,33 @@
+package rars.riscv.syscalls;
+
+import rars.ExitingException;
+import rars.ProgramStatement;
+import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.RegisterFile;
+
+/**
+ * Fills memory with a byte value, like C's memset, without simulating the loop.
+ */
+public class SyscallMemset extends AbstractSyscall {
+    // sb, two addi and bnez for each byte
+    private static final int LOOP_INSTRUCTIONS_PER_BYTE = 4;
+
+    public SyscallMemset() {
+        super("Memset", "Sets every byte of a buffer to the same value",
+                "a0 = address of the buffer<br>a1 = the value (low order byte is used)<br>a2 = number of bytes to set",
+                "a0 = address of the buffer");
+    }
+
+    public void simulate(ProgramStatement statement) throws ExitingException {
+        int address = RegisterFile.getValue("a0");
+        int value = RegisterFile.getValue("a1");
+        long length = RegisterFile.getValue("a2") & 0xFFFFFFFFL;
+        try {
+            LibraryCall.fill(address, value, length);
+        } catch (AddressErrorException e) {
+            throw new ExitingException(statement, e);
+        }
+        LibraryCall.countInstructions(length * LOOP_INSTRUCTIONS_PER_BYTE);
+    }
+}
@@ -36,9 +36,10 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 
 public class SyscallOpen extends AbstractSyscall {
     public SyscallOpen() {
-        super("Open", "Opens a file from a path <br>Only supported flags (a1) are read-only (0), write-only (1) and" +
-                        " write-append (9). write-only flag creates file if it does not exist, so it is technically" +
-                        " write-create.  write-append will start writing at end of existing file.",
+        super("Open", "Opens a file from a path <br>Only supported flags (a1) are read-only (0), write-only (1)," +
+                        " write-append (9), read-write (2) and read-write-append (10). The writing flags create the file" +
+                        " if it does not exist, so they are technically write-create.  write-only empties an existing file;" +
+                        " the append flags will start writing at end of existing file.",
                 "a0 = Null terminated string for the path <br>a1 = flags", "a0 = the file decriptor or -1 if an error occurred");
     }
 
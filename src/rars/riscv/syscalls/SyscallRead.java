@@ -45,7 +45,6 @@ public class SyscallRead extends AbstractSyscall {
 
     public void simulate(ProgramStatement statement) throws ExitingException {
         int byteAddress = RegisterFile.getValue("a1"); // destination of characters read from file
-        int index = 0;
         int length = RegisterFile.getValue("a2");
         byte myBuffer[] = new byte[length]; // specified length
         // Call to SystemIO.xxxx.read(xxx,xxx,xxx)  returns actual length
@@ -57,9 +56,8 @@ public class SyscallRead extends AbstractSyscall {
 
         // copy bytes from returned buffer into memory
         try {
-            while (index < retLength) {
-                Globals.memory.setByte(byteAddress++,
-                        myBuffer[index++]);
+            if (retLength > 0) {
+                Globals.memory.setBytes(byteAddress, myBuffer, 0, retLength);
             }
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
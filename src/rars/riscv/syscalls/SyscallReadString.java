@@ -9,6 +9,7 @@ import rars.riscv.hardware.RegisterFile;
 import rars.util.SystemIO;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -68,16 +69,16 @@ public class SyscallReadString extends AbstractSyscall {
         byte[] utf8BytesList = inputString.getBytes(StandardCharsets.UTF_8);
         // TODO: allow for utf-8 encoded strings
         int stringLength = Math.min(maxLength, utf8BytesList.length);
+        // The string, then a newline if there is room, then the null byte; stored all at once
+        byte[] buffer = Arrays.copyOf(utf8BytesList, stringLength + 2);
+        if (stringLength < maxLength) {
+            buffer[stringLength] = '\n';
+            stringLength++;
+        }
+        buffer[stringLength] = 0;
+        if (addNullByte) stringLength++;
         try {
-            for (int index = 0; index < stringLength; index++) {
-                Globals.memory.setByte(buf + index,
-                        utf8BytesList[index]);
-            }
-            if (stringLength < maxLength) {
-                Globals.memory.setByte(buf + stringLength, '\n');
-                stringLength++;
-            }
-            if (addNullByte) Globals.memory.setByte(buf + stringLength, 0);
+            Globals.memory.setBytes(buf, buffer, 0, stringLength);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
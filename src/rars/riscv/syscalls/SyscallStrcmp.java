@@ -0,0 +1,58 @@
+package rars.riscv.syscalls;
+
+import rars.ExitingException;
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.RegisterFile;
+
+/**
+ * Compares two null-terminated strings, like C's strcmp, without simulating the loop.
+ */
+public class SyscallStrcmp extends AbstractSyscall {
+    // two lbu, bne, beqz and two addi for each byte compared
+    private static final int LOOP_INSTRUCTIONS_PER_BYTE = 6;
+
+    public SyscallStrcmp() {
+        super("Strcmp", "Compares two null-terminated strings, as unsigned bytes",
+                "a0 = address of the first string<br>a1 = address of the second string",
+                "a0 = 0 if the strings are equal, otherwise the first differing byte of the first string " +
+                        "minus that of the second");
+    }
+
+    public void simulate(ProgramStatement statement) throws ExitingException {
+        int first = RegisterFile.getValue("a0");
+        int second = RegisterFile.getValue("a1");
+        int result = 0;
+        int compared = 0;
+        try {
+            // The loop looks at no more than the first string and its terminator
+            int limit = Globals.memory.strnlen(first, Integer.MAX_VALUE - 1) + 1;
+            int length;
+            AddressErrorException fault = null;
+            try {
+                length = Math.min(limit, Globals.memory.strnlen(second, limit) + 1);
+            } catch (AddressErrorException e) {
+                // The loop compares up to the bad address, and faults only if it gets there
+                fault = e;
+                length = e.getAddress() - second;
+            }
+            byte[] firstBytes = new byte[length];
+            byte[] secondBytes = new byte[length];
+            Globals.memory.getBytes(first, firstBytes, 0, length);
+            Globals.memory.getBytes(second, secondBytes, 0, length);
+            while (compared < length && result == 0) {
+                result = (firstBytes[compared] & 0xFF) - (secondBytes[compared] & 0xFF);
+                compared++;
+            }
+            if (result == 0 && fault != null) {
+                throw fault;
+            }
+        } catch (AddressErrorException e) {
+            throw new ExitingException(statement, e);
+        }
+        RegisterFile.updateRegister("a0", result);
+        LibraryCall.countInstructions((long) compared * LOOP_INSTRUCTIONS_PER_BYTE);
+    }
+}
@@ -0,0 +1,35 @@
+package rars.riscv.syscalls;
+
+import rars.ExitingException;
+import rars.Globals;
+import rars.ProgramStatement;
+import rars.riscv.AbstractSyscall;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.RegisterFile;
+
+/**
+ * Finds the length of a null-terminated string, like C's strlen, without simulating the loop.
+ */
+public class SyscallStrlen extends AbstractSyscall {
+    // lbu, addi and bnez for each byte, including the null
+    private static final int LOOP_INSTRUCTIONS_PER_BYTE = 3;
+
+    public SyscallStrlen() {
+        super("Strlen", "Finds the length of a null-terminated string",
+                "a0 = address of the string", "a0 = number of bytes before the terminating null");
+    }
+
+    public void simulate(ProgramStatement statement) throws ExitingException {
+        int address = RegisterFile.getValue("a0");
+        int length;
+        try {
+            length = Globals.memory.strnlen(address, Integer.MAX_VALUE - 1);
+            // strnlen only searches; read the string so observers see the access the loop would make
+            Globals.memory.getBytes(address, new byte[length + 1], 0, length + 1);
+        } catch (AddressErrorException e) {
+            throw new ExitingException(statement, e);
+        }
+        RegisterFile.updateRegister("a0", length);
+        LibraryCall.countInstructions((length + 1L) * LOOP_INSTRUCTIONS_PER_BYTE);
+    }
+}
@@ -56,16 +56,10 @@ public class SyscallWrite extends AbstractSyscall {
             RegisterFile.updateRegister("a0", -1);
             return;
         }
-        int index = 0;
         byte myBuffer[] = new byte[reqLength];
         try {
-            byte b = (byte) Globals.memory.getByte(byteAddress);
-            while (index < reqLength) // Stop at requested length. Null bytes are included.
-            {
-                myBuffer[index++] = b;
-                byteAddress++;
-                b = (byte) Globals.memory.getByte(byteAddress);
-            }
+            // Null bytes are included.
+            Globals.memory.getBytes(byteAddress, myBuffer, 0, reqLength);
         } catch (AddressErrorException e) {
             throw new ExitingException(statement, e);
         }
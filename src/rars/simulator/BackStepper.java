@@ -6,6 +6,7 @@ import rars.riscv.hardware.ControlAndStatusRegisterFile;
 import rars.riscv.hardware.FloatingPointRegisterFile;
 import rars.riscv.hardware.RegisterFile;
 import rars.riscv.Instruction;
+import rars.util.Metrics;
 
 /*
 Copyright (c) 2003-2006,  Pete Sanderson and Kenneth Vollmar
@@ -49,6 +50,7 @@ public class BackStepper {
         MEMORY_RESTORE_WORD,
         MEMORY_RESTORE_HALF,
         MEMORY_RESTORE_BYTE,
+        MEMORY_RESTORE_BYTES,
         REGISTER_RESTORE,
         PC_RESTORE,
         CONTROL_AND_STATUS_REGISTER_RESTORE,
@@ -151,6 +153,9 @@ public class BackStepper {
                         case MEMORY_RESTORE_BYTE:
                             Globals.memory.setByte(step.param1, (int)step.param2);
                             break;
+                        case MEMORY_RESTORE_BYTES:
+                            Globals.memory.setBytes(step.param1, step.bytes, 0, step.bytes.length);
+                            break;
                         case REGISTER_RESTORE:
                             RegisterFile.updateRegister(step.param1, step.param2);
                             break;
@@ -246,6 +251,17 @@ public class BackStepper {
         return value;
     }
 
+    /**
+     * Add a new "back step" (the undo action) to the stack.  The action here
+     * is to restore a range of memory bytes, as written by Memory.setBytes() or fill().
+     *
+     * @param address The first affected memory address.
+     * @param bytes   The "restore" values to be stored there.
+     */
+    public void addMemoryRestoreBytes(int address, byte[] bytes) {
+        backSteps.push(Action.MEMORY_RESTORE_BYTES, pc(), address, bytes);
+    }
+
     /**
      * Add a new "back step" (the undo action) to the stack.  The action here
      * is to restore a register file register value.
@@ -336,6 +352,7 @@ public class BackStepper {
         private ProgramStatement ps;   // statement whose action is being "undone" here
         private int param1;  // first parameter required by that action
         private long param2;  // optional second parameter required by that action
+        private byte[] bytes; // contents to restore for MEMORY_RESTORE_BYTES
 
         // it is critical that BackStep object get its values by calling this method
         // rather than assigning to individual members, because of the technique used
@@ -359,6 +376,7 @@ public class BackStepper {
             }
             param1 = parm1;
             param2 = parm2;
+            bytes = null;
          /*				
             System.out.println("backstep PUSH: action "+action+" pc "+rars.util.Binary.intToHexString(pc)+
          		                   " source "+((ps==null)? "none":ps.getSource())+
@@ -417,6 +435,12 @@ public class BackStepper {
             // We'll re-use existing objects rather than create/discard each time.
             // Must use assign() method rather than series of assignment statements!
             stack[top].assign(act, programCounter, parm1, parm2);
+            Metrics.backStepPush();
+        }
+
+        private synchronized void push(Action act, int programCounter, int parm1, byte[] bytes) {
+            push(act, programCounter, parm1, 0);
+            stack[top].bytes = bytes;
         }
 
         private synchronized void push(Action act, int programCounter, int parm1) {
@@ -0,0 +1,142 @@
+package rars.simulator;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Runs device events at a given point on a timeline measured in instructions executed.
+ * A device such as an MMIO tool schedules an action some number of instructions from now
+ * rather than observing every instruction fetch and counting them itself; the simulator
+ * compares one number after each instruction and only does any more work when an event
+ * is due.  Because time is counted in instructions, a device behaves the same way on
+ * every run of a program, however fast it runs.
+ * <p>
+ * The timeline keeps counting across runs and resets of the program, so an event scheduled
+ * before a pause still happens after the same number of instructions once running resumes.
+ * Events with the same time happen in the order they were scheduled.  Actions are run in
+ * the simulator thread, after the instruction that made them due, and without holding
+ * Globals.memoryAndRegistersLock; they must take it themselves to change memory.
+ *
+ * @see Simulator#getDeviceScheduler()
+ */
+public class DeviceScheduler {
+    private static class Event implements Comparable<Event> {
+        final long time, sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public int compareTo(Event other) {
+            if (time != other.time) return (time < other.time) ? -1 : 1;
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long scheduled = 0;
+    // now is only advanced by the simulator thread, so it can compare it against nextEventAt
+    // without synchronizing.  Both are volatile: other threads read now to schedule events
+    // (a long is not read atomically otherwise), and the simulator sees their events in time.
+    volatile long now = 0;
+    volatile long nextEventAt = Long.MAX_VALUE;
+
+    DeviceScheduler() {
+    }
+
+    /**
+     * @return the current time: the number of instructions executed so far
+     */
+    public synchronized long getTime() {
+        return now;
+    }
+
+    /**
+     * Schedules an action to run after the given number of further instructions.  If it is
+     * zero or negative, the action runs after the instruction now executing.
+     *
+     * @param instructions how many instructions from now the action should run
+     * @param action       what to do then
+     */
+    public synchronized void schedule(long instructions, Runnable action) {
+        scheduleAt(now + Math.max(instructions, 0), action);
+    }
+
+    /**
+     * Schedules an action to run once the timeline reaches a given time.  If that time has
+     * already passed, the action runs after the instruction now executing.
+     *
+     * @param time   the time, in instructions executed, at which the action should run
+     * @param action what to do then
+     */
+    public synchronized void scheduleAt(long time, Runnable action) {
+        Event event = new Event(time, scheduled++, action);
+        events.add(event);
+        if (events.peek() == event) {
+            nextEventAt = time;
+        }
+    }
+
+    /**
+     * Removes every scheduled run of an action that has not happened yet.
+     *
+     * @param action the action passed to schedule or scheduleAt
+     * @return true if there were any to remove
+     */
+    public synchronized boolean cancel(Runnable action) {
+        boolean removed = false;
+        for (Iterator<Event> i = events.iterator(); i.hasNext(); ) {
+            if (i.next().action == action) {
+                i.remove();
+                removed = true;
+            }
+        }
+        updateNextEventAt();
+        return removed;
+    }
+
+    /**
+     * Runs, in order, every action whose time has come.  Called by the simulator when now
+     * reaches nextEventAt.  Actions scheduled by those actions for the same time run too.
+     */
+    void runDue() {
+        Event event;
+        while ((event = takeDue()) != null) {
+            event.action.run();
+        }
+    }
+
+    /**
+     * Moves the timeline forward to the next event and runs it, along with any others due then.
+     * The simulator does this while it waits for an interrupt, as nothing else would happen
+     * in the meantime.
+     *
+     * @return false if there was no event to run
+     */
+    boolean runNext() {
+        synchronized (this) {
+            if (events.isEmpty()) return false;
+            now = Math.max(now, events.peek().time);
+        }
+        runDue();
+        return true;
+    }
+
+    private synchronized Event takeDue() {
+        Event event = events.peek();
+        if (event == null || event.time > now) {
+            return null;
+        }
+        events.poll();
+        updateNextEventAt();
+        return event;
+    }
+
+    private void updateNextEventAt() {
+        Event event = events.peek();
+        nextEventAt = (event == null) ? Long.MAX_VALUE : event.time;
+    }
+}
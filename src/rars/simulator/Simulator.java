@@ -5,6 +5,7 @@ import rars.riscv.hardware.*;
 import rars.riscv.BasicInstruction;
 import rars.riscv.Instruction;
 import rars.util.Binary;
+import rars.util.Metrics;
 import rars.util.SystemIO;
 import rars.venus.run.RunSpeedPanel;
 
@@ -52,6 +53,7 @@ public class Simulator extends Observable {
     private SimThread simulatorThread;
     private static Simulator simulator = null;  // Singleton object
     private static Runnable interactiveGUIUpdater = null;
+    private final DeviceScheduler deviceScheduler = new DeviceScheduler();
 
     /**
      * various reasons for simulate to end...
@@ -89,6 +91,16 @@ public class Simulator extends Observable {
         }
     }
 
+    /**
+     * Returns the scheduler that devices use to do things after a number of instructions
+     * rather than counting instructions themselves.
+     *
+     * @return the DeviceScheduler driven by this simulator
+     */
+    public DeviceScheduler getDeviceScheduler() {
+        return deviceScheduler;
+    }
+
     /**
      * Simulate execution of given source program (in this thread).  It must have already been assembled.
      *
@@ -100,11 +112,13 @@ public class Simulator extends Observable {
      **/
 
     public Reason simulate(int pc, int maxSteps, int[] breakPoints) throws SimulationException {
-        simulatorThread = new SimThread(pc, maxSteps, breakPoints);
-        simulatorThread.run(); // Just call run, this is a blocking method
-        SimulationException pe = simulatorThread.pe;
-        boolean done = simulatorThread.done;
-        Reason out = simulatorThread.constructReturnReason;
+        // Kept locally too, as stopExecution() from another thread clears simulatorThread
+        SimThread thread = new SimThread(pc, maxSteps, breakPoints);
+        simulatorThread = thread;
+        thread.run(); // Just call run, this is a blocking method
+        SimulationException pe = thread.pe;
+        boolean done = thread.done;
+        Reason out = thread.constructReturnReason;
         if (done) SystemIO.resetFiles(); // close any files opened in the process of simulating
         this.simulatorThread = null;
         if (pe != null) {
@@ -202,6 +216,7 @@ public class Simulator extends Observable {
         private SimulationException pe;
         private volatile boolean stop = false;
         private Reason constructReturnReason;
+        private long retired, startTime; // for Metrics
 
         /**
          * SimThread constructor.  Receives all the information it needs to simulate execution.
@@ -232,6 +247,8 @@ public class Simulator extends Observable {
         }
 
         private void startExecution() {
+            retired = 0;
+            startTime = System.nanoTime();
             Simulator.getInstance().notifyObserversOfExecution(new SimulatorNotice(SimulatorNotice.SIMULATOR_START,
                     maxSteps,(Globals.getGui() != null || Globals.runSpeedPanelExists)?RunSpeedPanel.getInstance().getRunSpeed():RunSpeedPanel.UNLIMITED_SPEED,
                     pc, null, pe, done));
@@ -240,6 +257,7 @@ public class Simulator extends Observable {
         private void stopExecution(boolean done, Reason reason) {
             this.done = done;
             this.constructReturnReason = reason;
+            Metrics.simulationRun(retired, System.nanoTime() - startTime);
             SystemIO.flush(true);
             if (done) SystemIO.resetFiles(); // close any files opened in the process of simulating
             Simulator.getInstance().notifyObserversOfExecution(new SimulatorNotice(SimulatorNotice.SIMULATOR_STOP,
@@ -387,7 +405,6 @@ public class Simulator extends Observable {
             // Volatile variable initialized false but can be set true by the main thread.
             // Used to stop or pause a running program.  See stopSimulation() above.
             while (!stop) {
-                SystemIO.flush(false);
                 // Perform the RISCV instruction in synchronized block.  If external threads agree
                 // to access memory and registers only through synchronized blocks on same
                 // lock variable, then full (albeit heavy-handed) protection of memory and
@@ -521,6 +538,7 @@ public class Simulator extends Observable {
                     Globals.memoryAndRegistersLock.unlock();
                 }
 
+                retired++;
                 // Update cycle(h) and instret(h)
                 long cycle = ControlAndStatusRegisterFile.getValueNoNotify("cycle"),
                          instret = ControlAndStatusRegisterFile.getValueNoNotify("instret"),
@@ -528,6 +546,10 @@ public class Simulator extends Observable {
                 ControlAndStatusRegisterFile.updateRegisterBackdoor("cycle",cycle+1);
                 ControlAndStatusRegisterFile.updateRegisterBackdoor("instret",instret+1);
                 ControlAndStatusRegisterFile.updateRegisterBackdoor("time",time);
+                // Let devices do whatever they scheduled for this point; usually nothing is due
+                if (++deviceScheduler.now >= deviceScheduler.nextEventAt) {
+                    deviceScheduler.runDue();
+                }
 
                 //     Return if we've reached a breakpoint.
                 if (ebreak || (breakPoints != null) &&
@@ -538,6 +560,10 @@ public class Simulator extends Observable {
 
                 // Wait if WFI ran
                 if (waiting) {
+                    // Nothing else happens until an interrupt, so skip ahead to any device events that may raise one
+                    while (!(InterruptController.externalPending() || InterruptController.timerPending()) && !stop
+                            && deviceScheduler.runNext()) {
+                    }
                     if (!(InterruptController.externalPending() || InterruptController.timerPending())) {
                         synchronized (this) {
                             try {
@@ -556,6 +582,7 @@ public class Simulator extends Observable {
                 if (interactiveGUIUpdater != null && maxSteps != 1 &&
                         RunSpeedPanel.getInstance().getRunSpeed() < RunSpeedPanel.UNLIMITED_SPEED) {
                     SwingUtilities.invokeLater(interactiveGUIUpdater);
+                    Metrics.guiUpdatePost();
                 }
                 if (Globals.getGui() != null || Globals.runSpeedPanelExists) { // OR added by DPS 24 July 2008 to enable speed control by stand-alone tool
                     if (maxSteps != 1 &&
@@ -574,12 +601,10 @@ public class Simulator extends Observable {
 
     private class UpdateGUI implements Runnable {
         public void run() {
-            if (Globals.getGui().getRegistersPane().getSelectedComponent() ==
-                    Globals.getGui().getMainPane().getExecutePane().getRegistersWindow()) {
-                Globals.getGui().getMainPane().getExecutePane().getRegistersWindow().updateRegisters();
-            } else {
-                Globals.getGui().getMainPane().getExecutePane().getFloatingPointWindow().updateRegisters();
-            }
+            // Only the registers written since the last update are formatted and repainted.
+            Globals.getGui().getMainPane().getExecutePane().getRegistersWindow().updateChangedRegisters();
+            Globals.getGui().getMainPane().getExecutePane().getFloatingPointWindow().updateChangedRegisters();
+            Globals.getGui().getMainPane().getExecutePane().getControlAndStatusWindow().updateChangedRegisters();
             Globals.getGui().getMainPane().getExecutePane().getDataSegmentWindow().updateValues();
             Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().setCodeHighlighting(true);
             Globals.getGui().getMainPane().getExecutePane().getTextSegmentWindow().highlightStepAtPC();
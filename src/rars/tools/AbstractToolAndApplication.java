@@ -8,6 +8,7 @@ import rars.riscv.hardware.*;
 import rars.simulator.Simulator;
 import rars.simulator.SimulatorNotice;
 import rars.util.FilenameFinder;
+import rars.util.RarsFileFilter;
 import rars.venus.run.RunSpeedPanel;
 
 import javax.swing.*;
@@ -349,7 +350,7 @@ public abstract class AbstractToolAndApplication extends JFrame implements Tool,
                             fileChooser.setSelectedFile(mostRecentlyOpenedFile);
                         }
                         // DPS 13 June 2007.  The next 4 lines add file filter to file chooser.
-                        FileFilter defaultFileFilter = FilenameFinder.getFileFilter(Globals.fileExtensions, "Assembler Files", true);
+                        FileFilter defaultFileFilter = new RarsFileFilter(Globals.fileExtensions, "Assembler Files", true);
                         fileChooser.addChoosableFileFilter(defaultFileFilter);
                         fileChooser.addChoosableFileFilter(fileChooser.getAcceptAllFileFilter());
                         fileChooser.setFileFilter(defaultFileFilter);
@@ -1,6 +1,8 @@
 package rars.tools;
 
+import rars.Globals;
 import rars.riscv.hardware.AccessNotice;
+import rars.riscv.hardware.AddressErrorException;
 import rars.riscv.hardware.Memory;
 import rars.riscv.hardware.MemoryAccessNotice;
 
@@ -9,6 +11,9 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.Observable;
 
 /*
@@ -53,6 +58,7 @@ public class BitmapDisplay extends AbstractToolAndApplication {
     // Major GUI components
     private JComboBox<String> visualizationUnitPixelWidthSelector, visualizationUnitPixelHeightSelector,
             visualizationPixelWidthSelector, visualizationPixelHeightSelector, displayBaseAddressSelector;
+    private JCheckBox scanMemorySelector;
     private Graphics drawingArea;
     private JPanel canvas;
     private JPanel results;
@@ -87,7 +93,14 @@ public class BitmapDisplay extends AbstractToolAndApplication {
     private int defaultBaseAddressIndex;
     private int baseAddress;
 
-    private Grid theGrid;
+    private volatile Grid theGrid;
+
+    // The display is redrawn from a timer at about the refresh rate of a monitor rather
+    // than after every store, so a program can write the whole display between frames.
+    private static final int FRAME_MILLISECONDS = 16;
+    private Timer frameTimer;
+    // Whether to read the whole display memory every frame instead of observing stores to it.
+    private volatile boolean scanMemory = false;
 
     /**
      * Simple constructor, likely used to run a stand-alone bitmap display tool.
@@ -133,6 +146,9 @@ public class BitmapDisplay extends AbstractToolAndApplication {
      * "Assemble and Run" button on a Rars-based app.
      */
     protected void addAsObserver() {
+        if (scanMemory) {
+            return; // the display memory is read every frame instead
+        }
         int highAddress = baseAddress + theGrid.getRows() * theGrid.getColumns() * Memory.WORD_LENGTH_BYTES;
         // Special case: baseAddress<0 means we're in kernel memory (0x80000000 and up) and most likely
         // in memory map address space (0xffff0000 and up).  In this case, we need to make sure the high address
@@ -166,6 +182,20 @@ public class BitmapDisplay extends AbstractToolAndApplication {
     //  the abstract superclass.
     //////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Overrides the inherited method, which calls updateDisplay() after every notice.
+     * Here a notice only records which units were written; the frame timer copies them
+     * from memory and repaints them.
+     *
+     * @param resource     the attached resource
+     * @param accessNotice AccessNotice information provided by the resource
+     */
+    public void update(Observable resource, Object accessNotice) {
+        if (((AccessNotice) accessNotice).accessIsFromRISCV()) {
+            processRISCVUpdate(resource, (AccessNotice) accessNotice);
+        }
+    }
+
     /**
      * Update display when the connected program accesses (data) memory.
      *
@@ -201,6 +231,24 @@ public class BitmapDisplay extends AbstractToolAndApplication {
     protected void initializePostGUI() {
         theGrid = createNewGrid();
         updateBaseAddress();
+        if (frameTimer != null) {
+            frameTimer.stop();
+        }
+        frameTimer = new Timer(FRAME_MILLISECONDS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                showFrame();
+            }
+        });
+        frameTimer.start();
+    }
+
+    /**
+     * Stops the frame timer when the tool/app is closed.
+     */
+    protected void performSpecialClosingDuties() {
+        if (frameTimer != null) {
+            frameTimer.stop();
+        }
     }
 
 
@@ -244,6 +292,11 @@ public class BitmapDisplay extends AbstractToolAndApplication {
                         "by the program, its position in the display will be rendered in the\n" +
                         "color that its value represents.\n" +
                         "\n" +
+                        "The display is redrawn up to 60 times a second.  Select \"Scan\n" +
+                        "memory each frame\" to have it read the whole display memory\n" +
+                        "for each frame rather than watch every store to it, which is\n" +
+                        "faster for programs that redraw most of a large display.\n" +
+                        "\n" +
                         "Version 1.0 is very basic and was constructed from the Memory\n" +
                         "Reference Visualization tool's code.  Feel free to improve it and\n" +
                         "send your code for consideration in the next release.\n" +
@@ -348,6 +401,20 @@ public class BitmapDisplay extends AbstractToolAndApplication {
                     }
                 });
 
+        scanMemorySelector = new JCheckBox("Scan memory each frame", scanMemory);
+        scanMemorySelector.setToolTipText("Read the whole display memory for each frame instead of observing stores to it");
+        scanMemorySelector.addActionListener(
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        scanMemory = scanMemorySelector.isSelected();
+                        // Observe the display memory only when not scanning it.
+                        if (connectButton != null && connectButton.isConnected()) {
+                            deleteAsObserver();
+                            addAsObserver();
+                        }
+                    }
+                });
+
         // ALL COMPONENTS FOR "ORGANIZATION" SECTION
 
         JPanel unitWidthInPixelsRow = getPanelWithBorderLayout();
@@ -375,6 +442,10 @@ public class BitmapDisplay extends AbstractToolAndApplication {
         baseAddressRow.add(new JLabel("Base address for display "), BorderLayout.WEST);
         baseAddressRow.add(displayBaseAddressSelector, BorderLayout.EAST);
 
+        JPanel scanMemoryRow = getPanelWithBorderLayout();
+        scanMemoryRow.setBorder(emptyBorder);
+        scanMemoryRow.add(scanMemorySelector, BorderLayout.WEST);
+
 
         // Lay 'em out in the grid...
         organization.add(unitWidthInPixelsRow);
@@ -382,6 +453,7 @@ public class BitmapDisplay extends AbstractToolAndApplication {
         organization.add(widthInPixelsRow);
         organization.add(heightInPixelsRow);
         organization.add(baseAddressRow);
+        organization.add(scanMemoryRow);
         return organization;
     }
 
@@ -460,16 +532,21 @@ public class BitmapDisplay extends AbstractToolAndApplication {
         return new Grid(rows, columns);
     }
 
-    // Given memory address, update color for the corresponding grid element.
+    // Given memory address, record that the corresponding grid elements were written.
+    // The words are read from memory when the next frame is shown.
     private void updateColorForAddress(MemoryAccessNotice notice) {
-        int address = notice.getAddress();
-        int offset = (address - baseAddress) / Memory.WORD_LENGTH_BYTES;
+        int offset = notice.getAddress() - baseAddress;
+        theGrid.markWritten(Math.floorDiv(offset, Memory.WORD_LENGTH_BYTES),
+                Math.floorDiv(offset + notice.getLength() - 1, Memory.WORD_LENGTH_BYTES));
+    }
 
-        try {
-            theGrid.setElement(offset / theGrid.getColumns(), offset % theGrid.getColumns(),
-                    Memory.getInstance().getWord(address / Memory.WORD_LENGTH_BYTES * Memory.WORD_LENGTH_BYTES));
-        } catch (Exception e) {
-            // If address is out of range for display, do nothing.
+    // Called by the frame timer.  Brings the grid up to date with memory and repaints
+    // the part of the canvas that changed.
+    private void showFrame() {
+        Rectangle changed = theGrid.update(scanMemory && isObserving());
+        if (changed != null) {
+            canvas.repaint(changed.x * unitPixelWidth, changed.y * unitPixelHeight,
+                    changed.width * unitPixelWidth, changed.height * unitPixelHeight);
         }
     }
 
@@ -490,32 +567,34 @@ public class BitmapDisplay extends AbstractToolAndApplication {
             paintGrid(g, theGrid);
         }
 
-        // Paint the color codes.
+        // Paint the color codes: the image, one pixel per unit, scaled up to the unit size.
         private void paintGrid(Graphics g, Grid grid) {
-            int upperLeftX = 0, upperLeftY = 0;
-            for (int i = 0; i < grid.getRows(); i++) {
-                for (int j = 0; j < grid.getColumns(); j++) {
-                    g.setColor(grid.getElementFast(i, j));
-                    g.fillRect(upperLeftX, upperLeftY, unitPixelWidth, unitPixelHeight);
-                    upperLeftX += unitPixelWidth;   // faster than multiplying
-                }
-                // get ready for next row...
-                upperLeftX = 0;
-                upperLeftY += unitPixelHeight;     // faster than multiplying
-            }
+            g.drawImage(grid.image, 0, 0, grid.getColumns() * unitPixelWidth, grid.getRows() * unitPixelHeight, null);
+            // Don't leave the frame in a buffer of the window system.
+            Toolkit.getDefaultToolkit().sync();
         }
     }
 
 
     ////////////////////////////////////////////////////////////////////////
-    // Represents grid of colors
+    // Represents grid of colors as an image with one pixel per grid element, whose
+    // pixels are in an int array in the same order as the words of the display memory.
+    // The simulator thread only records the range of elements written; the frame timer
+    // copies their words from memory into the pixels.
     private class Grid {
 
-        Color[][] grid;
+        BufferedImage image;
+        int[] pixels;
         int rows, columns;
+        // Words read from memory, before they are compared with the pixels.
+        private int[] words;
+        // Range of elements written since the last frame; empty if first > last.
+        private int firstWritten, lastWritten;
 
         private Grid(int rows, int columns) {
-            grid = new Color[rows][columns];
+            image = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            words = new int[rows * columns];
             this.rows = rows;
             this.columns = columns;
             reset();
@@ -529,36 +608,68 @@ public class BitmapDisplay extends AbstractToolAndApplication {
             return columns;
         }
 
-        // Returns value in given grid element; null if row or column is out of range.
-        private Color getElement(int row, int column) {
-            return (row >= 0 && row <= rows && column >= 0 && column <= columns) ? grid[row][column] : null;
-        }
-
-        // Returns value in given grid element without doing any row/column index checking.
-        // Is faster than getElement but will throw array index out of bounds exception if
-        // parameter values are outside the bounds of the grid.
-        private Color getElementFast(int row, int column) {
-            return grid[row][column];
-        }
-
-        // Set the grid element.
-        private void setElement(int row, int column, int color) {
-            grid[row][column] = new Color(color);
+        // Record that elements first to last were written; they need not be in the grid.
+        private synchronized void markWritten(int first, int last) {
+            first = Math.max(first, 0);
+            last = Math.min(last, rows * columns - 1);
+            if (first <= last) {
+                firstWritten = Math.min(firstWritten, first);
+                lastWritten = Math.max(lastWritten, last);
+            }
         }
 
-        // Set the grid element.
-        private void setElement(int row, int column, Color color) {
-            grid[row][column] = color;
+        // Read the elements written since the last call, or all of them if scanning, from
+        // memory.  Returns the rectangle of elements that changed color, or null if none did.
+        private Rectangle update(boolean scan) {
+            int first, last;
+            synchronized (this) {
+                first = scan ? 0 : firstWritten;
+                last = scan ? rows * columns - 1 : lastWritten;
+                firstWritten = Integer.MAX_VALUE;
+                lastWritten = -1;
+            }
+            if (first > last) {
+                return null;
+            }
+            int count = last - first + 1;
+            try {
+                Globals.memory.getRawWords(baseAddress + first * Memory.WORD_LENGTH_BYTES, words, 0, count);
+            } catch (AddressErrorException e) {
+                // The display runs off the end of memory; show what there is of it.
+                count = (e.getAddress() - baseAddress) / Memory.WORD_LENGTH_BYTES - first;
+                try {
+                    Globals.memory.getRawWords(baseAddress + first * Memory.WORD_LENGTH_BYTES, words, 0, Math.max(count, 0));
+                } catch (AddressErrorException again) {
+                    return null;
+                }
+            }
+            int firstChanged = -1, lastChanged = -1;
+            for (int i = 0; i < count; i++) {
+                int color = words[i] & 0xFFFFFF;
+                if (pixels[first + i] != color) {
+                    pixels[first + i] = color;
+                    if (firstChanged < 0) {
+                        firstChanged = first + i;
+                    }
+                    lastChanged = first + i;
+                }
+            }
+            if (firstChanged < 0) {
+                return null;
+            }
+            int firstRow = firstChanged / columns, lastRow = lastChanged / columns;
+            if (firstRow == lastRow) {
+                return new Rectangle(firstChanged % columns, firstRow, lastChanged - firstChanged + 1, 1);
+            }
+            return new Rectangle(0, firstRow, columns, lastRow - firstRow + 1);
         }
 
         // Just set all grid elements to black.
-        private void reset() {
-            for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    grid[i][j] = Color.BLACK;
-                }
-            }
+        private synchronized void reset() {
+            Arrays.fill(pixels, 0);
+            firstWritten = Integer.MAX_VALUE;
+            lastWritten = -1;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package rars.tools;
 
 import rars.Globals;
 import rars.riscv.hardware.*;
+import rars.simulator.Simulator;
 import rars.util.Binary;
 
 import javax.swing.*;
@@ -39,9 +40,15 @@ public class DigitalLabSim extends AbstractToolAndApplication {
     private static boolean KeyboardInterruptOnOff = false;
     // Counter
     private static int CounterValueMax = 40;
-    private static int CounterValue = CounterValueMax;
     private static boolean CounterInterruptOnOff = false;
     private static InterruptCounter interruptCounterPanel;
+    // Scheduled with the simulator every N instructions while the counter is enabled
+    private final Runnable counterInterrupt = new Runnable() {
+        public void run() {
+            InterruptController.registerTimerInterrupt(EXTERNAL_INTERRUPT_TIMER);
+            scheduleCounterInterrupt();
+        }
+    };
 
     public DigitalLabSim(String title, String heading) {
         super(title, heading);
@@ -68,7 +75,11 @@ public class DigitalLabSim extends AbstractToolAndApplication {
 
     protected void addAsObserver() {
         addAsObserver(IN_ADRESS_DISPLAY_1, IN_ADRESS_DISPLAY_1);
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+    }
+
+    protected void deleteAsObserver() {
+        super.deleteAsObserver();
+        Simulator.getInstance().getDeviceScheduler().cancel(counterInterrupt);
     }
 
     public void update(Observable ressource, Object accessNotice) {
@@ -83,16 +94,6 @@ public class DigitalLabSim extends AbstractToolAndApplication {
             updateHexaKeyboard(value);
         else if (address == IN_ADRESS_COUNTER)
             updateInterruptCounter(value);
-        if (CounterInterruptOnOff) {
-            if (CounterValue > 0) {
-                CounterValue--;
-            } else {
-                CounterValue = interruptCounterPanel.getCounterValueMax();
-                InterruptController.registerTimerInterrupt(EXTERNAL_INTERRUPT_TIMER);
-            }
-            interruptCounterPanel.setCounterValueDisplay("Counter value = "+ CounterValue);
-        }
-
     }
 
     protected void reset() {
@@ -373,16 +374,22 @@ public class DigitalLabSim extends AbstractToolAndApplication {
     /* ....................Hexa Keyboard end here................................... */
 /* ....................Timer start here................................... */
     public void updateInterruptCounter(char value) {
+        Simulator.getInstance().getDeviceScheduler().cancel(counterInterrupt);
         if (value != 0) {
             CounterInterruptOnOff = true;
-            CounterValue = interruptCounterPanel.getCounterValueMax();
-            interruptCounterPanel.setCounterValueDisplay("Counter value = "+Integer.toString(CounterValue));
+            scheduleCounterInterrupt();
+            interruptCounterPanel.setCounterValueDisplay("Counter is enabled");
         } else {
             CounterInterruptOnOff = false;
             interruptCounterPanel.setCounterValueDisplay("Counter is disabled");
         }
     }
 
+    // The counter counts down from N to 0 and interrupts on the instruction after that.
+    private void scheduleCounterInterrupt() {
+        Simulator.getInstance().getDeviceScheduler().schedule(interruptCounterPanel.getCounterValueMax() + 1, counterInterrupt);
+    }
+
     public class InterruptCounter extends JPanel {
         private JLabel label1;
         private JLabel label2;
@@ -453,7 +460,7 @@ public class DigitalLabSim extends AbstractToolAndApplication {
 
         public void resetInterruptCounter() {
             CounterInterruptOnOff = false;
-            CounterValue = CounterValueMax;
+            Simulator.getInstance().getDeviceScheduler().cancel(counterInterrupt);
             valueMaxField.setText(Integer.toString(CounterValueMax));
         }
 
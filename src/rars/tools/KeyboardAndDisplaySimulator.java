@@ -2,6 +2,8 @@ package rars.tools;
 
 import rars.Globals;
 import rars.riscv.hardware.*;
+import rars.simulator.DeviceScheduler;
+import rars.simulator.Simulator;
 import rars.util.Binary;
 import rars.venus.util.AbstractFontSettingDialog;
 
@@ -94,11 +96,13 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
     public static int RECEIVER_DATA;       // keyboard character in low-order byte
     public static int TRANSMITTER_CONTROL; // display Ready in low-order bit
     public static int TRANSMITTER_DATA;    // display character in low-order byte
-    // These are used to track instruction counts to simulate driver delay of Transmitter Data
-    private boolean countingInstructions;
-    private int instructionCount;
-    private int transmitDelayInstructionCountLimit;
-    private int currentDelayInstructionLimit;
+    // Driver delay of Transmitter Data is simulated by scheduling the end of the delay
+    // on the simulator's instruction count timeline.
+    private final Runnable transmitterReady = new Runnable() {
+        public void run() {
+            finishTransmitDelay();
+        }
+    };
 
     // Should the transmitted character be displayed before the transmitter delay period?
     // If not, hold onto it and print at the end of delay period.
@@ -196,11 +200,19 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
         // Use the Globals.memory.addObserver() methods instead of inherited method to achieve this.
         addAsObserver(RECEIVER_DATA, RECEIVER_DATA);
         addAsObserver(TRANSMITTER_DATA, TRANSMITTER_DATA);
-        // We want to be notified of each instruction execution, because instruction count is the
-        // basis for delay in re-setting (literally) the TRANSMITTER_CONTROL register.  SPIM does
-        // this too.  This simulates the time required for the display unit to process the
-        // TRANSMITTER_DATA.
-        addAsObserver(Memory.textBaseAddress, Memory.textLimitAddress);
+        // Instruction count is the basis for delay in re-setting (literally) the TRANSMITTER_CONTROL
+        // register.  SPIM does this too.  This simulates the time required for the display unit to
+        // process the TRANSMITTER_DATA.  Rather than observing every instruction fetch, the end of
+        // the delay is scheduled with the simulator when the character is written.
+    }
+
+    /**
+     * Also cancels any transmitter delay in progress, so it does not finish after disconnecting.
+     */
+    @Override
+    protected void deleteAsObserver() {
+        super.deleteAsObserver();
+        initializeTransmitDelaySimulator();
     }
 
     /**
@@ -245,33 +257,27 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
         // The program has just written (stored) the transmitter (display) data register.  If transmitter
         // Ready bit is clear, device is not ready yet so ignore this event -- serves 'em right for not checking!
         // If transmitter Ready bit is set, then clear it to indicate the display device is processing the character.
-        // Also start an intruction counter that will simulate the delay of the slower
+        // Also schedule the end of a delay, in instructions executed, that simulates the slower
         // display device processing the character.
         if (isReadyBitSet(TRANSMITTER_CONTROL) && notice.getAddress() == TRANSMITTER_DATA && notice.getAccessType() == AccessNotice.WRITE) {
             updateMMIOControl(TRANSMITTER_CONTROL, readyBitCleared(TRANSMITTER_CONTROL));
             intWithCharacterToDisplay = notice.getValue();
             if (!displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
-            this.countingInstructions = true;
-            this.instructionCount = 0;
-            this.transmitDelayInstructionCountLimit = generateDelay();
-        }
-        // We have been notified of an instruction execution.
-        // If we are in transmit delay period, increment instruction count and if limit
-        // has been reached, set the transmitter Ready flag to indicate the program
-        // can write another character to the transmitter data register.  If the Interrupt-Enabled
-        // bit had been set by the program, generate an interrupt!
-        if (this.countingInstructions &&
-                notice.getAccessType() == AccessNotice.READ && Memory.inTextSegment(notice.getAddress())) {
-            this.instructionCount++;
-            if (this.instructionCount >= this.transmitDelayInstructionCountLimit) {
-                if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
-                this.countingInstructions = false;
-                int updatedTransmitterControl = readyBitSet(TRANSMITTER_CONTROL);
-                updateMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
-                if (updatedTransmitterControl != 1) {
-                    InterruptController.registerExternalInterrupt(EXTERNAL_INTERRUPT_DISPLAY);
-                }
-            }
+            DeviceScheduler scheduler = Simulator.getInstance().getDeviceScheduler();
+            scheduler.cancel(transmitterReady);
+            scheduler.schedule(generateDelay(), transmitterReady);
+        }
+    }
+
+    // The transmit delay period is over.  Set the transmitter Ready flag to indicate the program
+    // can write another character to the transmitter data register.  If the Interrupt-Enabled
+    // bit had been set by the program, generate an interrupt!
+    private void finishTransmitDelay() {
+        if (displayAfterDelay) displayCharacter(intWithCharacterToDisplay);
+        int updatedTransmitterControl = readyBitSet(TRANSMITTER_CONTROL);
+        updateMMIOControl(TRANSMITTER_CONTROL, updatedTransmitterControl);
+        if (updatedTransmitterControl != 1) {
+            InterruptController.registerExternalInterrupt(EXTERNAL_INTERRUPT_DISPLAY);
         }
     }
 
@@ -611,12 +617,6 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
         displayOptions = new JPanel();
         delayTechniqueChooser = new JComboBox<>(delayTechniques);
         delayTechniqueChooser.setToolTipText("Technique for determining simulated transmitter device processing delay");
-        delayTechniqueChooser.addActionListener(
-                new ActionListener() {
-                    public void actionPerformed(ActionEvent e) {
-                        transmitDelayInstructionCountLimit = generateDelay();
-                    }
-                });
         delayLengthPanel = new DelayLengthPanel();
         displayAfterDelayCheckBox = new JCheckBox("DAD", true);
         displayAfterDelayCheckBox.setToolTipText("Display After Delay: if checked, transmitter data not displayed until after delay");
@@ -743,11 +743,9 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
 
     /////////////////////////////////////////////////////////////////////
     // Transmit delay is simulated by counting instruction executions.
-    // Here we simly initialize (or reset) the variables.
+    // Here we simply cancel any delay in progress.
     private void initializeTransmitDelaySimulator() {
-        this.countingInstructions = false;
-        this.instructionCount = 0;
-        this.transmitDelayInstructionCountLimit = this.generateDelay();
+        Simulator.getInstance().getDeviceScheduler().cancel(transmitterReady);
     }
 
 
@@ -837,7 +835,6 @@ public class KeyboardAndDisplaySimulator extends AbstractToolAndApplication {
                 JSlider source = (JSlider) e.getSource();
                 if (!source.getValueIsAdjusting()) {
                     delayLengthIndex = source.getValue();
-                    transmitDelayInstructionCountLimit = generateDelay();
                 } else {
                     sliderLabel.setText(setLabel(source.getValue()));
                 }
@@ -0,0 +1,108 @@
+package rars.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+
+/**
+ * Lists the class files that make up the instruction, syscall, dump format and tool
+ * packages.  The list is written into the jar by build-jar.sh (Components.txt, one
+ * path per line, e.g. rars/riscv/instructions/ADD.class), so startup does not need
+ * to open the jar and walk its entries.  If there is no list, or the directory is
+ * also found somewhere else on the classpath (for example tools in another jar),
+ * it searches the classpath with FilenameFinder as before.
+ *
+ * @see FilenameFinder
+ */
+public class ComponentRegistry {
+    private static final String REGISTRY_FILE = "Components.txt";
+
+    private static boolean loaded = false;
+    private static String registryRoot;
+    private static HashMap<String, ArrayList<String>> registry;
+
+    /**
+     * Gives the names of the files with the given extension in a directory on
+     * the classpath, in the same form as
+     * {@link FilenameFinder#getFilenameList(ClassLoader, String, String)}.
+     *
+     * @param classLoader   class loader to use
+     * @param directoryPath directory to search, with "/" separators and no leading or
+     *                      trailing "/" (e.g. rars/tools)
+     * @param fileExtension extension of the files wanted, without the "."
+     * @return array list of matching file names.  If none, list is empty.
+     */
+    public static synchronized ArrayList<String> getFilenameList(ClassLoader classLoader,
+                                                                 String directoryPath,
+                                                                 String fileExtension) {
+        if (!loaded) {
+            load(classLoader);
+            loaded = true;
+        }
+        if (registry == null || !onlyInRegistryRoot(classLoader, directoryPath)) {
+            return FilenameFinder.getFilenameList(classLoader, directoryPath, fileExtension);
+        }
+        ArrayList<String> filenameList = new ArrayList<>();
+        ArrayList<String> files = registry.get(directoryPath);
+        if (files != null) {
+            String suffix = "." + fileExtension.toLowerCase();
+            for (String file : files) {
+                if (file.toLowerCase().endsWith(suffix)) {
+                    filenameList.add(file);
+                }
+            }
+        }
+        return filenameList;
+    }
+
+    private static void load(ClassLoader classLoader) {
+        URL url = classLoader.getResource(REGISTRY_FILE);
+        if (url == null) {
+            return;
+        }
+        HashMap<String, ArrayList<String>> entries = new HashMap<>();
+        try (InputStream is = url.openStream();
+             BufferedReader in = new BufferedReader(new InputStreamReader(is, "UTF-8"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                int slash = line.lastIndexOf('/');
+                if (line.isEmpty() || line.startsWith("#") || slash < 0) {
+                    continue;
+                }
+                String directory = line.substring(0, slash);
+                ArrayList<String> files = entries.get(directory);
+                if (files == null) {
+                    files = new ArrayList<>();
+                    entries.put(directory, files);
+                }
+                files.add(line.substring(slash + 1));
+            }
+        } catch (IOException e) {
+            return;
+        }
+        String location = url.toString();
+        registryRoot = location.substring(0, location.length() - REGISTRY_FILE.length());
+        registry = entries;
+    }
+
+    // The list only describes the jar or directory it was built into.
+    private static boolean onlyInRegistryRoot(ClassLoader classLoader, String directoryPath) {
+        try {
+            Enumeration<URL> urls = classLoader.getResources(directoryPath);
+            while (urls.hasMoreElements()) {
+                if (!urls.nextElement().toString().startsWith(registryRoot)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package rars.util;
 
-import javax.swing.filechooser.FileFilter;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
@@ -117,9 +116,8 @@ public class FilenameFinder {
                         filenameList.addAll(getListFromJar(extractJarFilename(f.toString()), directoryPath, fileExtension));
                     }
                 } else {  // have array of File objects; convert to names and add to list
-                    FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
                     for (File file : files) {
-                        if (filter.accept(file)) {
+                        if (accept(file, fileExtension)) {
                             filenameList.add(file.getName());
                         }
                     }
@@ -191,9 +189,8 @@ public class FilenameFinder {
         File directory = new File(directoryPath);
         if (directory.isDirectory()) {
             File[] allFiles = directory.listFiles();
-            FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
             for (File file : allFiles) {
-                if (filter.accept(file)) {
+                if (accept(file, fileExtension)) {
                     filenameList.add(file.getAbsolutePath());
                 }
             }
@@ -241,10 +238,9 @@ public class FilenameFinder {
     public static ArrayList<String> getFilenameList(ArrayList<String> nameList, String fileExtension) {
         fileExtension = checkFileExtension(fileExtension);
         ArrayList<String> filenameList = new ArrayList<>();
-        FileFilter filter = getFileFilter(fileExtension, "", NO_DIRECTORIES);
         for (String name : nameList) {
             File file = new File(name);
-            if (filter.accept(file)) {
+            if (accept(file, fileExtension)) {
                 filenameList.add(file.getAbsolutePath());
             }
         }
@@ -296,34 +292,6 @@ public class FilenameFinder {
         return ext;
     }
 
-    /**
-     * Get a FileFilter that will filter files based on the given list of filename extensions.
-     *
-     * @param extensions        ArrayList of Strings, each string is acceptable filename extension.
-     * @param description       String containing description to be added in parentheses after list of extensions.
-     * @param acceptDirectories boolean value true if directories are accepted by the filter, false otherwise.
-     * @return a FileFilter object that accepts files with given extensions, and directories if so indicated.
-     */
-
-    public static FileFilter getFileFilter(ArrayList<String> extensions, String description, boolean acceptDirectories) {
-        return new RarsFileFilter(extensions, description, acceptDirectories);
-    }
-
-    /**
-     * Get a FileFilter that will filter files based on the given filename extension.
-     *
-     * @param extension         String containing acceptable filename extension.
-     * @param description       String containing description to be added in parentheses after list of extensions.
-     * @param acceptDirectories boolean value true if directories are accepted by the filter, false otherwise.
-     * @return a FileFilter object that accepts files with given extensions, and directories if so indicated.
-     */
-
-    public static FileFilter getFileFilter(String extension, String description, boolean acceptDirectories) {
-        ArrayList<String> extensions = new ArrayList<>();
-        extensions.add(extension);
-        return new RarsFileFilter(extensions, description, acceptDirectories);
-    }
-
     /**
      * Determine if given filename ends with given extension.
      *
@@ -383,64 +351,29 @@ public class FilenameFinder {
     }
 
 
-    ///////////////////////////////////////////////////////////////////////////
-    //  FileFilter subclass to be instantiated by the getFileFilter method above.
-    //  This extends javax.swing.filechooser.FileFilter
-
-    private static class RarsFileFilter extends FileFilter {
-
-        private ArrayList<String> extensions;
-        private String fullDescription;
-        private boolean acceptDirectories;
-
-        private RarsFileFilter(ArrayList<String> extensions, String description, boolean acceptDirectories) {
-            this.extensions = extensions;
-            this.fullDescription = buildFullDescription(description, extensions);
-            this.acceptDirectories = acceptDirectories;
+    // The test made by RarsFileFilter, kept here so that searching for files does not
+    // need Swing.  Accepts directories only if asked to, and otherwise files whose
+    // extension is in the list (or any extension, if the list has MATCH_ALL_EXTENSIONS).
+    static boolean accept(File file, ArrayList<String> extensions, boolean acceptDirectories) {
+        if (file.isDirectory()) {
+            return acceptDirectories;
         }
-
-        // User provides descriptive phrase to be parenthesized.
-        // We will attach it to description of the extensions.  For example, if the extensions
-        // given are s and asm and the description is "Assembler Programs" the full description
-        // generated here will be "Assembler Programs (*.s; *.asm)"
-        private String buildFullDescription(String description, ArrayList<String> extensions) {
-            String result = (description == null) ? "" : description;
-            if (extensions.size() > 0) {
-                result += "  (";
-            }
-            for (int i = 0; i < extensions.size(); i++) {
-                String extension = extensions.get(i);
-                if (extension != null && extension.length() > 0) {
-                    result += ((i == 0) ? "" : "; ") + "*" + ((extension.charAt(0) == '.') ? "" : ".") + extension;
+        String fileExtension = getExtension(file);
+        if (fileExtension != null) {
+            for (String ext : extensions) {
+                String extension = checkFileExtension(ext);
+                if (extension.equals(MATCH_ALL_EXTENSIONS) ||
+                        fileExtension.equals(extension)) {
+                    return true;
                 }
             }
-            if (extensions.size() > 0) {
-                result += ")";
-            }
-            return result;
-        }
-
-        // required by the abstract superclass
-        public String getDescription() {
-            return this.fullDescription;
         }
+        return false;
+    }
 
-        // required by the abstract superclass.
-        public boolean accept(File file) {
-            if (file.isDirectory()) {
-                return acceptDirectories;
-            }
-            String fileExtension = getExtension(file);
-            if (fileExtension != null) {
-                for (String ext : extensions) {
-                    String extension = checkFileExtension(ext);
-                    if (extension.equals(MATCH_ALL_EXTENSIONS) ||
-                            fileExtension.equals(extension)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
-        }
+    private static boolean accept(File file, String fileExtension) {
+        ArrayList<String> extensions = new ArrayList<>();
+        extensions.add(fileExtension);
+        return accept(file, extensions, NO_DIRECTORIES);
     }
 }
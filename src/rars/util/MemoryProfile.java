@@ -0,0 +1,314 @@
+package rars.util;
+
+import rars.assembler.Symbol;
+import rars.riscv.hardware.AccessNotice;
+import rars.riscv.hardware.Memory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Counts the reads and writes of simulated memory in each 64 byte line, over the
+ * whole address space: text (instruction fetches included), data, heap, stack and
+ * memory mapped I/O.  Memory calls {@link #record} for every access a program makes
+ * once the profile is given to {@link Memory#setProfile}; the counts of each 4K page
+ * are kept in one long array, so an access costs a lookup of its page (usually the
+ * same as the last one) and an increment.  Only the pages used get arrays.
+ * <p>
+ * With a decay interval, all counts are halved every that many accesses, so the
+ * results lean toward what the program did last.
+ * <p>
+ * Given the program's data labels ({@link #setLabels}), it also counts the accesses
+ * to each label: to the bytes from the label up to the next one.  An access is
+ * credited to every label whose bytes it touches, so labels sharing a line are
+ * told apart.  Finding the label is a binary search over their addresses.
+ * <p>
+ * The results can be written as CSV, with the label totals and with each line named
+ * after the data label at or before it, and as a PNG heat map.  Neither needs a display, so the
+ * profile works from the command line ("memprofile" option).  Like the simulator,
+ * a profile is meant for one thread at a time.
+ */
+public final class MemoryProfile {
+    /**
+     * Number of bytes in the unit counted, like a cache line
+     */
+    public static final int LINE_BYTES = 64;
+    private static final int LINE_SHIFT = 6;
+    private static final int PAGE_SHIFT = 12;
+    private static final int LINES_PER_PAGE = 1 << (PAGE_SHIFT - LINE_SHIFT);
+    private static final String[] SEGMENT_NAMES = {"text", "mmio", "stack", "heap", "data", "other"};
+
+    // Page number to counts: reads of line i at [2i], writes at [2i+1].
+    private final HashMap<Integer, long[]> pages = new HashMap<>();
+    // Most accesses are to the same page as the last one.
+    private int lastPage;
+    private long[] lastCounts;
+    // Data labels sorted by address, their addresses and segments, and their counts:
+    // reads of label i at [2i], writes at [2i+1].
+    private ArrayList<Symbol> labels = new ArrayList<>();
+    private int[] labelAddresses = new int[0];
+    private int[] labelSegments = new int[0];
+    private long[] labelCounts = new long[0];
+    private final long decayInterval;
+    private long accessesUntilDecay;
+
+    /**
+     * Creates a profile that keeps all counts.
+     */
+    public MemoryProfile() {
+        this(0);
+    }
+
+    /**
+     * @param decayInterval number of accesses after which all counts are halved, or 0 to keep them
+     */
+    public MemoryProfile(long decayInterval) {
+        this.decayInterval = decayInterval;
+        this.accessesUntilDecay = decayInterval;
+    }
+
+    /**
+     * Sets the data labels whose accesses are counted from now on, replacing any
+     * given before and their counts.
+     *
+     * @param symbols the data labels of the program
+     */
+    public void setLabels(List<Symbol> symbols) {
+        labels = sortedLabels(symbols);
+        labelAddresses = new int[labels.size()];
+        labelSegments = new int[labels.size()];
+        for (int i = 0; i < labels.size(); i++) {
+            labelAddresses[i] = labels.get(i).getAddress();
+            labelSegments[i] = segment(labelAddresses[i]);
+        }
+        labelCounts = new long[2 * labels.size()];
+    }
+
+    /**
+     * Counts one access.  An access that spans lines, as the bulk transfers do, counts
+     * once for each line, and once for each label whose bytes it touches.
+     *
+     * @param type    AccessNotice.READ or AccessNotice.WRITE
+     * @param address first byte accessed
+     * @param length  number of bytes accessed
+     */
+    public void record(int type, int address, int length) {
+        int which = (type == AccessNotice.WRITE) ? 1 : 0;
+        long last = (Integer.toUnsignedLong(address) + Math.max(length, 1) - 1) >>> LINE_SHIFT;
+        for (long line = Integer.toUnsignedLong(address) >>> LINE_SHIFT; line <= last && line < (1L << (32 - LINE_SHIFT)); line++) {
+            countsForPage((int) (line >>> (PAGE_SHIFT - LINE_SHIFT)))[(int) (line % LINES_PER_PAGE) * 2 + which]++;
+        }
+        if (labelAddresses.length > 0) {
+            recordLabels(which, address, length);
+        }
+        if (decayInterval > 0 && --accessesUntilDecay == 0) {
+            accessesUntilDecay = decayInterval;
+            for (long[] counts : pages.values()) {
+                halve(counts);
+            }
+            halve(labelCounts);
+        }
+    }
+
+    private void recordLabels(int which, int address, int length) {
+        long end = Integer.toUnsignedLong(address) + Math.max(length, 1); // exclusive
+        int first = labelAt(labelAddresses, address);
+        // The label the access starts in, unless its bytes ended with its segment
+        if (first >= 0 && labelSegments[first] == segment(address)) {
+            labelCounts[2 * first + which]++;
+        }
+        // and any labels that start within the access
+        for (int i = first + 1; i < labelAddresses.length && Integer.toUnsignedLong(labelAddresses[i]) < end; i++) {
+            labelCounts[2 * i + which]++;
+        }
+    }
+
+    private static void halve(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] >>>= 1;
+        }
+    }
+
+    private long[] countsForPage(int page) {
+        if (lastCounts == null || page != lastPage) {
+            long[] counts = pages.get(page);
+            if (counts == null) {
+                counts = new long[LINES_PER_PAGE * 2];
+                pages.put(page, counts);
+            }
+            lastPage = page;
+            lastCounts = counts;
+        }
+        return lastCounts;
+    }
+
+    /**
+     * Forgets all counts.
+     */
+    public void clear() {
+        pages.clear();
+        Arrays.fill(labelCounts, 0);
+        lastCounts = null;
+        accessesUntilDecay = decayInterval;
+    }
+
+    /**
+     * Writes the counts as CSV with the columns kind, address, segment, label, reads
+     * and writes.  First come the totals of each data label given to {@link #setLabels},
+     * then for each page used its totals followed by its lines that were accessed.
+     * Lines are labelled with the data label at or before them, plus an offset.
+     *
+     * @param file where to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(File file) throws IOException {
+        StringBuilder rows = new StringBuilder();
+        for (int page : sortedPages()) {
+            long[] counts = pages.get(page);
+            long pageReads = 0, pageWrites = 0;
+            for (int line = 0; line < LINES_PER_PAGE; line++) {
+                pageReads += counts[2 * line];
+                pageWrites += counts[2 * line + 1];
+            }
+            int pageAddress = page << PAGE_SHIFT;
+            appendRow(rows, "page", pageAddress, "", pageReads, pageWrites);
+            for (int line = 0; line < LINES_PER_PAGE; line++) {
+                long reads = counts[2 * line], writes = counts[2 * line + 1];
+                if (reads == 0 && writes == 0) {
+                    continue;
+                }
+                int address = pageAddress + line * LINE_BYTES;
+                int label = labelAt(labelAddresses, address);
+                String name = "";
+                if (label >= 0 && labelSegments[label] == segment(address)) {
+                    Symbol symbol = labels.get(label);
+                    name = (address == symbol.getAddress()) ? symbol.getName()
+                            : symbol.getName() + "+" + (address - symbol.getAddress());
+                }
+                appendRow(rows, "line", address, name, reads, writes);
+            }
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("kind,address,segment,label,reads,writes\n");
+            StringBuilder labelRows = new StringBuilder();
+            for (int i = 0; i < labels.size(); i++) {
+                appendRow(labelRows, "label", labelAddresses[i], labels.get(i).getName(), labelCounts[2 * i], labelCounts[2 * i + 1]);
+            }
+            out.write(labelRows.toString());
+            out.write(rows.toString());
+        }
+    }
+
+    private static void appendRow(StringBuilder rows, String kind, int address, String label, long reads, long writes) {
+        rows.append(kind).append(',').append(Binary.intToHexString(address)).append(',')
+                .append(segmentName(address)).append(',').append(label).append(',')
+                .append(reads).append(',').append(writes).append('\n');
+    }
+
+    /**
+     * Draws the counts as a heat map: a row of 64 cells for each page used, in address
+     * order, a cell for each line.  The color goes from black through red and yellow
+     * to white with the logarithm of the reads plus writes, so lines used a few times
+     * still show next to the hottest.
+     *
+     * @param file where to write the PNG image
+     * @throws IOException if the file cannot be written
+     */
+    public void writePng(File file) throws IOException {
+        ArrayList<Integer> sortedPages = sortedPages();
+        long max = 1;
+        for (long[] counts : pages.values()) {
+            for (int line = 0; line < LINES_PER_PAGE; line++) {
+                max = Math.max(max, counts[2 * line] + counts[2 * line + 1]);
+            }
+        }
+        int cellWidth = 8;
+        // Keep the image a reasonable size however many pages were used.
+        int cellHeight = Math.max(1, Math.min(8, 4096 / Math.max(1, sortedPages.size())));
+        BufferedImage image = new BufferedImage(LINES_PER_PAGE * cellWidth,
+                Math.max(1, sortedPages.size() * cellHeight), BufferedImage.TYPE_INT_RGB);
+        double scale = Math.log1p(max);
+        for (int row = 0; row < sortedPages.size(); row++) {
+            long[] counts = pages.get(sortedPages.get(row));
+            for (int line = 0; line < LINES_PER_PAGE; line++) {
+                long count = counts[2 * line] + counts[2 * line + 1];
+                int color = heatColor(count == 0 ? 0 : Math.log1p(count) / scale);
+                for (int y = row * cellHeight; y < (row + 1) * cellHeight; y++) {
+                    for (int x = line * cellWidth; x < (line + 1) * cellWidth; x++) {
+                        image.setRGB(x, y, color);
+                    }
+                }
+            }
+        }
+        if (!ImageIO.write(image, "png", file)) {
+            throw new IOException("no PNG writer");
+        }
+    }
+
+    // Black at 0, then red, yellow and white at 1.
+    private static int heatColor(double heat) {
+        if (heat <= 0) {
+            return 0;
+        }
+        int level = (int) Math.round(Math.min(heat, 1) * 3 * 255);
+        int red = Math.min(level, 255);
+        int green = Math.min(Math.max(level - 255, 0), 255);
+        int blue = Math.max(level - 510, 0);
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    private ArrayList<Integer> sortedPages() {
+        ArrayList<Integer> sorted = new ArrayList<>(pages.keySet());
+        Collections.sort(sorted); // page numbers are unsigned, but 20 bits
+        return sorted;
+    }
+
+    private static ArrayList<Symbol> sortedLabels(List<Symbol> labels) {
+        ArrayList<Symbol> sorted = new ArrayList<>(labels);
+        Collections.sort(sorted, new Comparator<Symbol>() {
+            public int compare(Symbol a, Symbol b) {
+                return Integer.compareUnsigned(a.getAddress(), b.getAddress());
+            }
+        });
+        return sorted;
+    }
+
+    // Index of the last label at or before the address; -1 if none.
+    private static int labelAt(int[] addresses, int address) {
+        int low = 0, high = addresses.length - 1, found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(addresses[middle], address) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    // The part of the address space the address is in, as an index into SEGMENT_NAMES.
+    private static int segment(int address) {
+        if (Memory.inTextSegment(address)) {
+            return 0;
+        } else if (Memory.inMemoryMapSegment(address)) {
+            return 1;
+        } else if (address > Memory.stackLimitAddress && address <= Memory.stackBaseAddress) {
+            return 2;
+        } else if (address >= Memory.heapBaseAddress && address < Memory.dataSegmentLimitAddress) {
+            return 3;
+        } else if (Memory.inDataSegment(address)) {
+            return 4;
+        }
+        return 5;
+    }
+
+    // The part of the address space the address is in, as named in the CSV.
+    private static String segmentName(int address) {
+        return SEGMENT_NAMES[segment(address)];
+    }
+}
@@ -0,0 +1,257 @@
+package rars.util;
+
+import rars.riscv.AbstractSyscall;
+import rars.riscv.SyscallLoader;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts where RARS spends its time: instructions retired, syscalls, memory observer
+ * notices, lock contention, back-stepping, GUI updates, assembler phases and memory
+ * pages.  The counters are {@link LongAdder}s, which are striped so threads do not
+ * contend on them; the simulator counts instructions in its own thread and adds them
+ * once per run.  The totals can be read through JMX (see {@link #registerMBean()}) or
+ * printed with {@link #report()}, as the "metrics" command line option does.
+ */
+public final class Metrics implements MetricsMXBean {
+    /**
+     * The phases of the assembler that are timed separately.
+     */
+    public enum Phase {
+        TOKENIZE, FIRST_PASS, SECOND_PASS, CODE_GENERATION
+    }
+
+    private static final LongAdder instructionsRetired = new LongAdder();
+    private static final LongAdder simulationNanos = new LongAdder();
+    private static final LongAdder memoryNotifications = new LongAdder();
+    private static final LongAdder lockContentions = new LongAdder();
+    private static final LongAdder lockWaitNanos = new LongAdder();
+    private static final LongAdder backStepPushes = new LongAdder();
+    private static final LongAdder guiUpdatePosts = new LongAdder();
+    private static final LongAdder memoryPagesAllocated = new LongAdder();
+    private static final LongAdder memoryPagesCopied = new LongAdder();
+    private static final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private static final ConcurrentHashMap<Integer, LongAdder[]> syscalls = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    private static boolean registered = false;
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as rars:type=Metrics so they
+     * can be watched with JConsole or any other JMX client.  Only done on request, as
+     * starting the platform MBean server slows startup.
+     */
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName("rars:type=Metrics"));
+            registered = true;
+        } catch (JMException e) {
+            // Metrics are not worth failing over; the report still works.
+        }
+    }
+
+    /**
+     * Records one run of the simulator loop.
+     *
+     * @param instructions number of instructions completed
+     * @param nanos        time the run took
+     */
+    public static void simulationRun(long instructions, long nanos) {
+        instructionsRetired.add(instructions);
+        simulationNanos.add(nanos);
+    }
+
+    /**
+     * Records one syscall.
+     *
+     * @param number service number
+     * @param nanos  time the syscall took
+     */
+    public static void syscall(int number, long nanos) {
+        LongAdder[] counters = syscalls.get(number);
+        if (counters == null) {
+            LongAdder[] created = {new LongAdder(), new LongAdder()};
+            counters = syscalls.putIfAbsent(number, created);
+            if (counters == null) counters = created;
+        }
+        counters[0].increment();
+        counters[1].add(nanos);
+    }
+
+    public static void memoryNotification() {
+        memoryNotifications.increment();
+    }
+
+    public static void backStepPush() {
+        backStepPushes.increment();
+    }
+
+    public static void guiUpdatePost() {
+        guiUpdatePosts.increment();
+    }
+
+    public static void memoryPagesAllocated(int pages) {
+        memoryPagesAllocated.add(pages);
+    }
+
+    public static void memoryPagesCopied(int pages) {
+        memoryPagesCopied.add(pages);
+    }
+
+    public static void assemblerPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * A ReentrantLock that counts how often, and for how long, threads have to wait
+     * for it.  Used for Globals.memoryAndRegistersLock.
+     */
+    public static class ContentionCountingLock extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void lock() {
+            if (!tryLock()) {
+                long start = System.nanoTime();
+                super.lock();
+                lockContentions.increment();
+                lockWaitNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return all of the metrics as readable text, one per line
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        long instructions = instructionsRetired.sum();
+        long nanos = simulationNanos.sum();
+        report.append("Instructions retired: ").append(instructions).append('\n');
+        report.append(String.format("Simulation time: %.3f ms (%.0f instructions/s)%n", nanos / 1e6, perSecond(instructions, nanos)));
+        for (Map.Entry<Integer, LongAdder[]> entry : new TreeMap<>(syscalls).entrySet()) {
+            AbstractSyscall service = SyscallLoader.findSyscall(entry.getKey());
+            report.append(String.format("Syscall %d (%s): %d calls, %.3f ms%n", entry.getKey(),
+                    (service == null) ? "?" : service.getName(),
+                    entry.getValue()[0].sum(), entry.getValue()[1].sum() / 1e6));
+        }
+        report.append("Memory observer notifications: ").append(memoryNotifications.sum()).append('\n');
+        report.append(String.format("Memory and registers lock: %d contentions, %.3f ms waiting%n",
+                lockContentions.sum(), lockWaitNanos.sum() / 1e6));
+        report.append("Back-step pushes: ").append(backStepPushes.sum()).append('\n');
+        report.append("GUI update posts: ").append(guiUpdatePosts.sum()).append('\n');
+        for (Phase phase : Phase.values()) {
+            report.append(String.format("Assembler %s: %.3f ms%n", phase.name().toLowerCase().replace('_', ' '),
+                    phaseNanos[phase.ordinal()].sum() / 1e6));
+        }
+        report.append("Memory pages allocated: ").append(memoryPagesAllocated.sum()).append('\n');
+        report.append("Memory pages copied: ").append(memoryPagesCopied.sum()).append('\n');
+        return report.toString();
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return (nanos == 0) ? 0 : count * 1e9 / nanos;
+    }
+
+    public long getInstructionsRetired() {
+        return instructionsRetired.sum();
+    }
+
+    public long getSimulationNanos() {
+        return simulationNanos.sum();
+    }
+
+    public double getInstructionsPerSecond() {
+        return perSecond(instructionsRetired.sum(), simulationNanos.sum());
+    }
+
+    public Map<String, Long> getSyscallCounts() {
+        return syscallTotals(0);
+    }
+
+    public Map<String, Long> getSyscallNanos() {
+        return syscallTotals(1);
+    }
+
+    private static Map<String, Long> syscallTotals(int which) {
+        Map<String, Long> totals = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder[]> entry : syscalls.entrySet()) {
+            totals.put(entry.getKey().toString(), entry.getValue()[which].sum());
+        }
+        return totals;
+    }
+
+    public long getMemoryNotifications() {
+        return memoryNotifications.sum();
+    }
+
+    public long getLockContentions() {
+        return lockContentions.sum();
+    }
+
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    public long getBackStepPushes() {
+        return backStepPushes.sum();
+    }
+
+    public long getGuiUpdatePosts() {
+        return guiUpdatePosts.sum();
+    }
+
+    public Map<String, Long> getAssemblerPhaseNanos() {
+        Map<String, Long> totals = new TreeMap<>();
+        for (Phase phase : Phase.values()) {
+            totals.put(phase.name(), phaseNanos[phase.ordinal()].sum());
+        }
+        return totals;
+    }
+
+    public long getMemoryPagesAllocated() {
+        return memoryPagesAllocated.sum();
+    }
+
+    public long getMemoryPagesCopied() {
+        return memoryPagesCopied.sum();
+    }
+
+    public String getReport() {
+        return report();
+    }
+
+    public void reset() {
+        instructionsRetired.reset();
+        simulationNanos.reset();
+        memoryNotifications.reset();
+        lockContentions.reset();
+        lockWaitNanos.reset();
+        backStepPushes.reset();
+        guiUpdatePosts.reset();
+        memoryPagesAllocated.reset();
+        memoryPagesCopied.reset();
+        for (LongAdder phase : phaseNanos) {
+            phase.reset();
+        }
+        syscalls.clear();
+    }
+}
@@ -0,0 +1,85 @@
+package rars.util;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link Metrics}, registered as rars:type=Metrics.
+ * All counts are totals since the JVM started or since {@link #reset()}.
+ */
+public interface MetricsMXBean {
+    /**
+     * @return the number of instructions the simulator has completed
+     */
+    long getInstructionsRetired();
+
+    /**
+     * @return wall clock time spent in the simulator loop, in nanoseconds
+     */
+    long getSimulationNanos();
+
+    /**
+     * @return instructions retired per second of simulation
+     */
+    double getInstructionsPerSecond();
+
+    /**
+     * @return number of calls of each syscall, by service number
+     */
+    Map<String, Long> getSyscallCounts();
+
+    /**
+     * @return time spent in each syscall, by service number, in nanoseconds
+     */
+    Map<String, Long> getSyscallNanos();
+
+    /**
+     * @return number of notices sent to memory observers
+     */
+    long getMemoryNotifications();
+
+    /**
+     * @return number of times memoryAndRegistersLock was already held when wanted
+     */
+    long getLockContentions();
+
+    /**
+     * @return time spent waiting for memoryAndRegistersLock, in nanoseconds
+     */
+    long getLockWaitNanos();
+
+    /**
+     * @return number of entries pushed on the back-step stack
+     */
+    long getBackStepPushes();
+
+    /**
+     * @return number of updates posted from the simulator to the GUI thread
+     */
+    long getGuiUpdatePosts();
+
+    /**
+     * @return time spent in each phase of the assembler, in nanoseconds
+     */
+    Map<String, Long> getAssemblerPhaseNanos();
+
+    /**
+     * @return number of 4K memory pages allocated for simulated memory
+     */
+    long getMemoryPagesAllocated();
+
+    /**
+     * @return number of 4K memory pages copied from another Memory, as when the state after
+     * an assemble is restored; these are not counted as allocated
+     */
+    long getMemoryPagesCopied();
+
+    /**
+     * @return all of the above as readable text
+     */
+    String getReport();
+
+    /**
+     * Sets all counts back to zero.
+     */
+    void reset();
+}
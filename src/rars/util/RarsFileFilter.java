@@ -0,0 +1,92 @@
+package rars.util;
+
+import javax.swing.filechooser.FileFilter;
+import java.io.File;
+import java.util.ArrayList;
+
+/*
+Copyright (c) 2003-2008,  Pete Sanderson and Kenneth Vollmar
+
+Developed by Pete Sanderson (psanderson@otterbein.edu)
+and Kenneth Vollmar (kenvollmar@missouristate.edu)
+
+Permission is hereby granted, free of charge, to any person obtaining 
+a copy of this software and associated documentation files (the 
+"Software"), to deal in the Software without restriction, including 
+without limitation the rights to use, copy, modify, merge, publish, 
+distribute, sublicense, and/or sell copies of the Software, and to 
+permit persons to whom the Software is furnished to do so, subject 
+to the following conditions:
+
+The above copyright notice and this permission notice shall be 
+included in all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, 
+EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF 
+MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR 
+ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF 
+CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION 
+WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+
+(MIT license, http://www.opensource.org/licenses/mit-license.html)
+ */
+
+/**
+ * FileFilter for the file choosers, accepting files with the given filename extensions.
+ * It was part of FilenameFinder, which is used in command mode and so should not
+ * need Swing.
+ *
+ * @author Pete Sanderson
+ * @version October 2006
+ */
+public class RarsFileFilter extends FileFilter {
+
+    private ArrayList<String> extensions;
+    private String fullDescription;
+    private boolean acceptDirectories;
+
+    /**
+     * Get a FileFilter that will filter files based on the given list of filename extensions.
+     *
+     * @param extensions        ArrayList of Strings, each string is acceptable filename extension.
+     * @param description       String containing description to be added in parentheses after list of extensions.
+     * @param acceptDirectories boolean value true if directories are accepted by the filter, false otherwise.
+     */
+    public RarsFileFilter(ArrayList<String> extensions, String description, boolean acceptDirectories) {
+        this.extensions = extensions;
+        this.fullDescription = buildFullDescription(description, extensions);
+        this.acceptDirectories = acceptDirectories;
+    }
+
+    // User provides descriptive phrase to be parenthesized.
+    // We will attach it to description of the extensions.  For example, if the extensions
+    // given are s and asm and the description is "Assembler Programs" the full description
+    // generated here will be "Assembler Programs (*.s; *.asm)"
+    private String buildFullDescription(String description, ArrayList<String> extensions) {
+        String result = (description == null) ? "" : description;
+        if (extensions.size() > 0) {
+            result += "  (";
+        }
+        for (int i = 0; i < extensions.size(); i++) {
+            String extension = extensions.get(i);
+            if (extension != null && extension.length() > 0) {
+                result += ((i == 0) ? "" : "; ") + "*" + ((extension.charAt(0) == '.') ? "" : ".") + extension;
+            }
+        }
+        if (extensions.size() > 0) {
+            result += ")";
+        }
+        return result;
+    }
+
+    // required by the abstract superclass
+    public String getDescription() {
+        return this.fullDescription;
+    }
+
+    // required by the abstract superclass.
+    public boolean accept(File file) {
+        return FilenameFinder.accept(file, extensions, acceptDirectories);
+    }
+}
@@ -4,8 +4,14 @@ import rars.Globals;
 import rars.Settings;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 	/*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -51,7 +57,7 @@ public class SystemIO {
      */
     public static final int SYSCALL_BUFSIZE = 128;
     /**
-     * Maximum number of files that can be open
+     * Initial size of the file descriptor table; it grows when more files are open
      */
     public static final int SYSCALL_MAXFILES = 32;
     /**
@@ -76,6 +82,28 @@ public class SystemIO {
     private static final int STDOUT = 1;
     private static final int STDERR = 2;
 
+    /**
+     * When console output (STDOUT and STDERR outside the GUI) is written through.
+     * Whatever the policy, it is also written when the buffer is full, before
+     * reading from STDIN, when the program ends and on {@link #flushConsole()}.
+     */
+    public enum Buffering {
+        /** write through on every syscall */
+        NONE,
+        /** write through when a newline is output */
+        LINE,
+        /** write through only when one of the above requires it */
+        FULL
+    }
+
+    private static final int CONSOLE_BUFSIZE = 64 * 1024;
+    private static Buffering buffering = Buffering.FULL;
+    // Output for STDOUT or STDERR (consoleFd) not yet written through.  There is one
+    // buffer for both, which is written out before switching, so they stay in order.
+    private static final byte[] consoleBuffer = new byte[CONSOLE_BUFSIZE];
+    private static int consoleCount = 0;
+    private static int consoleFd = STDOUT;
+
     /**
      * Implements syscall to read an integer value.
      * Client is responsible for catching NumberFormatException.
@@ -93,6 +121,7 @@ public class SystemIO {
     private static String readStringInternal(String init, String prompt, int maxlength) {
         String input = init;
         if (Globals.getGui() == null) {
+            flushConsole(); // so any prompt is seen
             try {
                 input = getInputReader().readLine();
                 if (input == null)
@@ -140,9 +169,9 @@ public class SystemIO {
      */
     public static void printString(String string) {
         if (Globals.getGui() == null) {
+            byte[] bytes = string.getBytes();
             try {
-                SystemIO.getOutputWriter().write(string);
-                SystemIO.getOutputWriter().flush();
+                writeConsole(STDOUT, bytes, bytes.length);
             } catch (IOException e){
             }
         } else {
@@ -223,25 +252,23 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for writing";
             return -1;
         }
-        // retrieve FileOutputStream from storage
-        OutputStream outputStream = (OutputStream) FileIOData.getStreamInUse(fd);
         try {
-            // Oct. 9 2005 Ken Vollmar
-            // Observation: made a call to outputStream.write(myBuffer, 0, lengthRequested)
-            //     with myBuffer containing 6(ten) 32-bit-words <---> 24(ten) bytes, where the
-            //     words are MIPS integers with values such that many of the bytes are ZEROES.
-            //     The effect is apparently that the write stops after encountering a zero-valued
-            //     byte. (The method write does not return a value and so this can't be verified
-            //     by the return value.)
-            // Writes up to lengthRequested bytes of data to this output stream from an array of bytes.
-            // outputStream.write(myBuffer, 0, lengthRequested); // write is a void method -- no verification value returned
-
-            // Oct. 9 2005 Ken Vollmar  Force the write statement to write exactly
-            // the number of bytes requested, even though those bytes include many ZERO values.
-            for (int ii = 0; ii < lengthRequested; ii++) {
-                outputStream.write(myBuffer[ii]);
+            if (lengthRequested > myBuffer.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (fd == STDOUT || fd == STDERR) {
+                writeConsole(fd, myBuffer, lengthRequested);
+            } else {
+                // retrieve FileChannel from storage
+                FileChannel channel = (FileChannel) FileIOData.getStreamInUse(fd);
+                if (FileIOData.fdAppending(fd)) {
+                    channel.position(channel.size());
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(myBuffer, 0, lengthRequested);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
             }
-            outputStream.flush();// DPS 7-Jan-2013
         } catch (IOException e) {
             fileErrorString = "IO Exception on write of file with fd " + fd;
             return -1;
@@ -284,11 +311,21 @@ public class SystemIO {
             fileErrorString = "File descriptor " + fd + " is not open for reading";
             return -1;
         }
-        // retrieve FileInputStream from storage
-        InputStream InputStream = (InputStream) FileIOData.getStreamInUse(fd);
+        if (fd == STDIN) {
+            flushConsole(); // so any prompt is seen
+        }
+        // retrieve FileChannel (or STDIN's InputStream) from storage
+        Closeable stream = FileIOData.getStreamInUse(fd);
         try {
-            // Reads up to lengthRequested bytes of data from this Input stream into an array of bytes.
-            retValue = InputStream.read(myBuffer, 0, lengthRequested);
+            // Reads up to lengthRequested bytes of data into an array of bytes.
+            if (stream instanceof FileChannel) {
+                if (lengthRequested > myBuffer.length) {
+                    throw new IndexOutOfBoundsException();
+                }
+                retValue = ((FileChannel) stream).read(ByteBuffer.wrap(myBuffer, 0, lengthRequested));
+            } else {
+                retValue = ((InputStream) stream).read(myBuffer, 0, lengthRequested);
+            }
             // This method will return -1 upon EOF, but our spec says that negative
             // value represents an error, so we return 0 for EOF.  DPS 10-July-2008.
             if (retValue == -1) {
@@ -307,7 +344,7 @@ public class SystemIO {
 
 
     /**
-     * Read bytes from file.
+     * Set the position of a file for the next read or write.
      *
      * @param fd     file descriptor
      * @param offset where in the file to seek to
@@ -315,24 +352,15 @@ public class SystemIO {
      * @return -1 on error
      */
     public static int seek(int fd, int offset, int base) {
-        if (!FileIOData.fdInUse(fd, 0)) // Check the existence of the "read" fd
+        if (!FileIOData.fdInUse(fd, 0) && !FileIOData.fdInUse(fd, O_WRONLY)) // Check the existence of the fd
         {
-            fileErrorString = "File descriptor " + fd + " is not open for reading";
+            fileErrorString = "File descriptor " + fd + " is not open";
             return -1;
         }
-        if (fd < 0 || fd >= SYSCALL_MAXFILES) return -1;
         Object stream = FileIOData.getStreamInUse(fd);
-        if (stream == null) return -1;
-        FileChannel channel;
+        if (!(stream instanceof FileChannel)) return -1; // STDIN, STDOUT and STDERR
+        FileChannel channel = (FileChannel) stream;
         try {
-            if (stream instanceof FileInputStream) {
-                channel = ((FileInputStream) stream).getChannel();
-            } else if (stream instanceof FileOutputStream) {
-                channel = ((FileOutputStream) stream).getChannel();
-            } else {
-                return -1;
-            }
-
             if (base == SEEK_SET) {
                 offset += 0;
             } else if (base == SEEK_CUR) {
@@ -353,22 +381,21 @@ public class SystemIO {
     }
 
     /**
-     * Open a file for either reading or writing. Note that read/write flag is NOT
-     * IMPLEMENTED.  Also note that file permission modes are also NOT IMPLEMENTED.
+     * Open a file for reading, writing or both.  Note that file permission modes
+     * are NOT IMPLEMENTED.
      *
      * @param filename string containing filename
-     * @param flags    0 for read, 1 for write
-     * @return file descriptor in the range 0 to SYSCALL_MAXFILES-1, or -1 if error
+     * @param flags    0 for read, 1 for write, 9 for write-append, 2 for read and write
+     *                 (10 with append)
+     * @return file descriptor, or -1 if error
      * @author Ken Vollmar
      */
     public static int openFile(String filename, int flags) {
         // Internally, a "file descriptor" is an index into a table
-        // of the filename, flag, and the File???putStream associated with
+        // of the filename, flag, and the FileChannel associated with
         // that file descriptor.
 
         int retValue = -1;
-        FileInputStream inputStream;
-        FileOutputStream outputStream;
         int fdToUse;
 
         // Check internal plausibility of opening this file
@@ -384,26 +411,30 @@ public class SystemIO {
             String parent = new File(Globals.program.getFilename()).getParent();
             filepath = new File(parent, filename);
         }
-        if (flags == O_RDONLY) // Open for reading only
-        {
-            try {
-                // Set up input stream from disk file
-                inputStream = new FileInputStream(filepath);
-                FileIOData.setStreamInUse(fdToUse, inputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
-                fileErrorString = "File " + filename + " not found, open for input.";
-                retValue = -1;
+        ArrayList<OpenOption> options = new ArrayList<>();
+        if (flags == O_RDONLY) {
+            options.add(StandardOpenOption.READ);
+        } else {
+            // Writing creates the file; write-only (but not read-write) starts it empty.
+            // Appending is done by writeToFile, as a channel cannot both read and APPEND.
+            if ((flags & O_RDWR) != 0) options.add(StandardOpenOption.READ);
+            options.add(StandardOpenOption.WRITE);
+            options.add(StandardOpenOption.CREATE);
+            if (flags == O_WRONLY) {
+                options.add(StandardOpenOption.TRUNCATE_EXISTING);
             }
-        } else if ((flags & O_WRONLY) != 0) // Open for writing only
-        {
-            // Set up output stream to disk file
-            try {
-                outputStream = new FileOutputStream(filepath, ((flags & O_APPEND) != 0));
-                FileIOData.setStreamInUse(fdToUse, outputStream); // Save stream for later use
-            } catch (FileNotFoundException e) {
-                fileErrorString = "File " + filename + " not found, open for output.";
-                retValue = -1;
+        }
+        try {
+            FileChannel channel = FileChannel.open(filepath.toPath(), options.toArray(new OpenOption[0]));
+            FileIOData.setStreamInUse(fdToUse, channel); // Save channel for later use
+        } catch (IOException | IllegalArgumentException | UnsupportedOperationException | SecurityException e) {
+            if (e instanceof NoSuchFileException) {
+                fileErrorString = "File " + filename + " not found, open for " + ((flags == O_RDONLY) ? "input." : "output.");
+            } else {
+                fileErrorString = "File " + filename + " could not be opened: " + e.getMessage();
             }
+            FileIOData.close(fdToUse); // give back the descriptor
+            retValue = -1;
         }
         return retValue; // return the "file descriptor"
 
@@ -446,54 +477,97 @@ public class SystemIO {
         }
         return FileIOData.inputReader;
     }
-    private static BufferedWriter getOutputWriter(){
-        if (FileIOData.outputWriter==null){
-            FileIOData.outputWriter=new BufferedWriter(new OutputStreamWriter(System.out));
+
+    /**
+     * Sets how console output is buffered.  The default, FULL, suits output going to
+     * a file or pipe, or captured by the API; LINE suits an interactive terminal.
+     *
+     * @param policy the new buffering policy
+     */
+    public static void setBuffering(Buffering policy) {
+        flushConsole();
+        buffering = policy;
+    }
+
+    /**
+     * Writes through any buffered console output.
+     */
+    public static synchronized void flushConsole() {
+        try {
+            writeConsoleBuffer();
+        } catch (IOException e) {
+            consoleCount = 0; // nowhere to write it
         }
-        return FileIOData.outputWriter;
     }
 
-    // The GUI doesn't handle lots of small messages well so I added this hacky way of buffering
-    // Currently it checks to flush every instruction run
-    private static String buffer = "";
-    private static long lasttime = 0;
-    private static void print2Gui(String output){
-        long time = System.currentTimeMillis();
-        if (time > lasttime) {
-            Globals.getGui().getMessagesPane().postRunMessage(buffer+output);
-            buffer = "";
-            lasttime = time + 100;
-        } else {
-            buffer += output;
+    // Buffers output for STDOUT or STDERR, and writes it through as the policy says.
+    private static synchronized void writeConsole(int fd, byte[] bytes, int length) throws IOException {
+        if (fd != consoleFd) {
+            writeConsoleBuffer();
+            consoleFd = fd;
+        }
+        if (consoleCount + length > CONSOLE_BUFSIZE) {
+            writeConsoleBuffer();
+        }
+        if (length > CONSOLE_BUFSIZE) {
+            OutputStream out = (OutputStream) FileIOData.getStreamInUse(fd);
+            out.write(bytes, 0, length);
+            out.flush();
+            return;
+        }
+        System.arraycopy(bytes, 0, consoleBuffer, consoleCount, length);
+        consoleCount += length;
+        if (buffering == Buffering.NONE) {
+            writeConsoleBuffer();
+        } else if (buffering == Buffering.LINE) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    writeConsoleBuffer();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void writeConsoleBuffer() throws IOException {
+        if (consoleCount == 0) {
+            return;
         }
+        int count = consoleCount;
+        consoleCount = 0;
+        OutputStream out = (OutputStream) FileIOData.getStreamInUse(consoleFd);
+        out.write(consoleBuffer, 0, count);
+        out.flush();
+    }
+
+    // The Messages pane collects output and shows it a frame at a time, so this
+    // costs the simulator thread no more than adding to a queue.
+    private static void print2Gui(String output){
+        Globals.getGui().getMessagesPane().postRunMessage(output);
     }
+
     /**
      * Flush stdout cache
-     * Makes sure that messages don't get stuck in the print2Gui buffer for too long.
+     * If forced, console output is written through.  Output to the GUI needs no
+     * flushing; it is shown within a frame.
      */
     public static void flush(boolean force) {
-        long time = System.currentTimeMillis();
-        if (buffer != "" && (force || time > lasttime)){
-            Globals.getGui().getMessagesPane().postRunMessage(buffer);
-            buffer = "";
-            lasttime = time + 100;
+        if (force) {
+            flushConsole();
         }
     }
 
     public static Data swapData(Data in){
+        flushConsole(); // to the streams it was written for
         Data temp = new Data(false);
         temp.fileNames = FileIOData.fileNames;
         temp.fileFlags = FileIOData.fileFlags;
         temp.streams = FileIOData.streams;
         temp.inputReader = FileIOData.inputReader;
-        temp.outputWriter = FileIOData.outputWriter;
-        temp.errorWriter = FileIOData.errorWriter;
         FileIOData.fileNames = in.fileNames;
         FileIOData.fileFlags = in.fileFlags;
         FileIOData.streams = in.streams;
         FileIOData.inputReader = in.inputReader;
-        FileIOData.outputWriter = in.outputWriter;
-        FileIOData.errorWriter = in.errorWriter;
         return temp;
     }
 
@@ -502,8 +576,6 @@ public class SystemIO {
         private int[] fileFlags; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
         public Closeable[] streams;
         public BufferedReader inputReader;
-        public BufferedWriter outputWriter;
-        public BufferedWriter errorWriter;
         public Data(boolean generate){
             if(generate) {
                 fileNames = new String[SYSCALL_MAXFILES];
@@ -527,8 +599,6 @@ public class SystemIO {
             this.streams[STDOUT]=out;
             this.streams[STDERR]=err;
             this.inputReader=new BufferedReader(new InputStreamReader(in));
-            this.outputWriter=new BufferedWriter(new OutputStreamWriter(out));
-            this.errorWriter=new BufferedWriter(new OutputStreamWriter(err));
         }
     }
 
@@ -541,28 +611,14 @@ public class SystemIO {
         private static int[] fileFlags = new int[SYSCALL_MAXFILES]; // The flags of this file, 0=READ, 1=WRITE. Invalid if this file descriptor is not in use.
         private static Closeable[] streams = new Closeable[SYSCALL_MAXFILES]; // The streams in use, associated with the filenames
         public static BufferedReader inputReader;
-        public static BufferedWriter outputWriter;
-        public static BufferedWriter errorWriter;
 
         // Reset all file information. Closes any open files and resets the arrays
         private static void resetFiles() {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
+            for (int i = 0; i < fileNames.length; i++) {
                 close(i);
             }
-            if (outputWriter!=null){
-                try {
-                    outputWriter.close();
-                    outputWriter=null;
-                } catch (IOException e){
-                }
-            }
-            if (errorWriter!=null){
-                try {
-                    errorWriter.close();
-                    errorWriter=null;
-                } catch (IOException e){
-                }
-            }
+            // Only written through, never closed: STDOUT is usually System.out.
+            flushConsole();
             setupStdio();
         }
 
@@ -595,7 +651,7 @@ public class SystemIO {
 
         // Determine whether a given filename is already in use.
         private static boolean filenameInUse(String requestedFilename) {
-            for (int i = 0; i < SYSCALL_MAXFILES; i++) {
+            for (int i = 0; i < fileNames.length; i++) {
                 if (fileNames[i] != null
                         && fileNames[i].equals(requestedFilename)) {
                     return true;
@@ -608,36 +664,37 @@ public class SystemIO {
 
         // Determine whether a given fd is already in use with the given flag.
         private static boolean fdInUse(int fd, int flag) {
-            if (fd < 0 || fd >= SYSCALL_MAXFILES) {
+            if (fd < 0 || fd >= fileNames.length || fileNames[fd] == null) {
                 return false;
-            } else if (fileNames[fd] != null && fileFlags[fd] == 0 && flag == 0) {  // O_RDONLY read-only
-                return true;
-            } else if (fileNames[fd] != null && ((fileFlags[fd] & flag & O_WRONLY) == O_WRONLY)) {  // O_WRONLY write-only
-                return true;
+            } else if (flag == 0) {  // reading: O_RDONLY or O_RDWR
+                return fileFlags[fd] == O_RDONLY || (fileFlags[fd] & O_RDWR) != 0;
+            } else if ((flag & O_WRONLY) != 0) {  // writing: O_WRONLY or O_RDWR
+                return (fileFlags[fd] & (O_WRONLY | O_RDWR)) != 0;
             }
             return false;
 
         }
 
+        // Determine whether writes to a given fd go at the end of the file.
+        private static boolean fdAppending(int fd) {
+            return (fileFlags[fd] & O_APPEND) != 0;
+        }
+
         // Close the file with file descriptor fd. No errors are recoverable -- if the user's
         // made an error in the call, it will come back to him.
         private static void close(int fd) {
             // Can't close STDIN, STDOUT, STDERR, or invalid fd
-            if (fd <= STDERR || fd >= SYSCALL_MAXFILES)
+            if (fd <= STDERR || fd >= fileNames.length)
                 return;
 
             fileNames[fd] = null;
             // All this code will be executed only if the descriptor is open.
             if (streams[fd] != null) {
-                int keepFlag = fileFlags[fd];
-                Object keepStream = streams[fd];
+                Closeable keepStream = streams[fd];
                 fileFlags[fd] = -1;
                 streams[fd] = null;
                 try {
-                    if (keepFlag == O_RDONLY)
-                        ((FileInputStream) keepStream).close();
-                    else
-                        ((FileOutputStream) keepStream).close();
+                    keepStream.close();
                 } catch (IOException ioe) {
                     // not concerned with this exception
                 }
@@ -648,7 +705,7 @@ public class SystemIO {
 
         // Attempt to open a new file with the given flag, using the lowest available file descriptor.
         // Check that filename is not in use, flag is reasonable, and there is an available file descriptor.
-        // Return: file descriptor in 0...(SYSCALL_MAXFILES-1), or -1 if error
+        // Return: file descriptor, or -1 if error.  The table grows if it is full.
         private static int nowOpening(String filename, int flag) {
             int i = 0;
             if (filenameInUse(filename)) {
@@ -656,20 +713,23 @@ public class SystemIO {
                 return -1;
             }
 
-            if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND)) // Only read and write are implemented
+            if (flag != O_RDONLY && flag != O_WRONLY && flag != (O_WRONLY | O_APPEND)
+                    && flag != O_RDWR && flag != (O_RDWR | O_APPEND)) // Only read and write are implemented
             {
                 fileErrorString = "File name " + filename + " has unknown requested opening flag";
                 return -1;
             }
 
-            while (fileNames[i] != null && i < SYSCALL_MAXFILES) {
+            while (i < fileNames.length && fileNames[i] != null) {
                 i++;
             } // Attempt to find available file descriptor
 
-            if (i >= SYSCALL_MAXFILES) // no available file descriptors
+            if (i >= fileNames.length) // no available file descriptors, so make more
             {
-                fileErrorString = "File name " + filename + " exceeds maximum open file limit of " + SYSCALL_MAXFILES;
-                return -1;
+                int size = fileNames.length * 2;
+                fileNames = Arrays.copyOf(fileNames, size);
+                fileFlags = Arrays.copyOf(fileFlags, size);
+                streams = Arrays.copyOf(streams, size);
             }
 
             // Must be OK -- put filename in table
@@ -20,6 +20,8 @@ import java.awt.event.*;
 import java.util.Date;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /*
 Copyright (c) 2003-2013,  Pete Sanderson and Kenneth Vollmar
@@ -86,10 +88,21 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
     private int addressRow, addressColumn, addressRowFirstAddress;
     private Settings settings;
 
-    private int firstAddress;
+    // volatile because memory writes are checked against it in the simulator thread
+    private volatile int firstAddress;
     private int homeAddress;
     private boolean userOrKernelMode;
 
+    // Memory writes observed during a timed or stepped run are only recorded, in the
+    // simulator thread: one bit per displayed word, plus the address of the latest
+    // write for highlighting.  memoryWriteTimer shows them from the GUI thread at most
+    // about 30 times a second, re-reading only the words written.
+    private static final int MEMORY_WRITE_REFRESH_MILLISECONDS = 33;
+    private final AtomicLongArray writtenWords = new AtomicLongArray((MEMORY_CHUNK_SIZE / BYTES_PER_VALUE + 63) / 64);
+    private final AtomicBoolean memoryWritten = new AtomicBoolean(false);
+    private volatile int lastWriteAddress;
+    private final Timer memoryWriteTimer;
+
     // The combo box replaced the row of buttons when number of buttons expanded to 7!
     // We'll keep the button objects however and manually invoke their action listeners
     // when the corresponding combo box item is selected.  DPS 22-Nov-2006
@@ -118,6 +131,12 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         firstAddress = homeAddress;  // first address to display at any given time
         userOrKernelMode = USER_MODE;
         addressHighlighting = false;
+        memoryWriteTimer = new Timer(MEMORY_WRITE_REFRESH_MILLISECONDS,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        showMemoryWrites();
+                    }
+                });
         contentPane = this.getContentPane();
         tablePanel = new JPanel(new GridLayout(1, 2, 10, 0));
         JPanel features = new JPanel();
@@ -511,37 +530,36 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         for (int row = 0; row < NUMBER_OF_ROWS; row++) {
             ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatUnsignedInteger(address, addressBase), row, ADDRESS_COLUMN);
             for (int column = 1; column < NUMBER_OF_COLUMNS; column++) {
-                try {
-                    ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase), row, column);
-                } catch (AddressErrorException aee) {
-                    // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
-                    // self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
-                    // read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by
-                    // temporarily enabling the setting as "non persistent" so it won't write through to the registry.
-                    if (Memory.inTextSegment(address)) {
-                        int displayValue = 0;
-                        if (!Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)) {
-                            Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, true);
-                            try {
-                                displayValue = Globals.memory.getWordNoNotify(address);
-                            } catch (AddressErrorException e) {
-                                // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
-                            }
-                            Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, false);
-                        }
-                        ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(displayValue, valueBase), row, column);
-                    }
-                    // Bug Fix: the following line of code disappeared during the release 4.4 mods, but is essential to
-                    // display values of 0 for valid MIPS addresses that are outside the MARS simulated address space.  Such
-                    // addresses cause an AddressErrorException.  Prior to 4.4, they performed this line of code unconditionally.
-                    // With 4.4, I added the above IF statement to work with the text segment but inadvertently removed this line!
-                    // Now it becomes the "else" part, executed when not in text segment.  DPS 8-July-2014.
-                    else {
-                        ((DataTableModel) dataModel).setDisplayAndModelValueAt(NumberDisplayBaseChooser.formatNumber(0, valueBase), row, column);
+                ((DataTableModel) dataModel).setDisplayAndModelValueAt(formatWord(address, valueBase), row, column);
+                address += BYTES_PER_VALUE;
+            }
+        }
+    }
+
+    // Formats the memory word at the given address for display.
+    private String formatWord(int address, int valueBase) {
+        try {
+            return NumberDisplayBaseChooser.formatNumber(Globals.memory.getWordNoNotify(address), valueBase);
+        } catch (AddressErrorException aee) {
+            // Bit of a hack here.  Memory will throw an exception if you try to read directly from text segment when the
+            // self-modifying code setting is disabled.  This is a good thing if it is the executing MIPS program trying to
+            // read.  But not a good thing if it is the DataSegmentDisplay trying to read.  I'll trick Memory by
+            // temporarily enabling the setting as "non persistent" so it won't write through to the registry.
+            int displayValue = 0;
+            if (Memory.inTextSegment(address)) {
+                if (!Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED)) {
+                    Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, true);
+                    try {
+                        displayValue = Globals.memory.getWordNoNotify(address);
+                    } catch (AddressErrorException e) {
+                        // Still got an exception?  Doesn't seem possible but if we drop through it will write default value 0.
                     }
+                    Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.SELF_MODIFYING_CODE_ENABLED, false);
                 }
-                address += BYTES_PER_VALUE;
             }
+            // Bug Fix: a value of 0 must be displayed for valid MIPS addresses that are outside the MARS simulated
+            // address space.  Such addresses cause an AddressErrorException.  DPS 8-July-2014.
+            return NumberDisplayBaseChooser.formatNumber(displayValue, valueBase);
         }
     }
 
@@ -818,10 +836,18 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
                 if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
                     Memory.getInstance().addObserver(this);
                     addressHighlighting = true;
+                    memoryWriteTimer.start();
                 }
             } else {
-                // Simulated MIPS execution stops.  Stop responding.
+                // Simulated MIPS execution stops.  Stop responding, once the last writes are shown.
                 Memory.getInstance().deleteObserver(this);
+                memoryWriteTimer.stop();
+                SwingUtilities.invokeLater(
+                        new Runnable() {
+                            public void run() {
+                                showMemoryWrites();
+                            }
+                        });
             }
         } else if (observable == settings) {
             // Suspended work in progress. Intended to disable combobox item for text segment. DPS 9-July-2013.
@@ -832,14 +858,70 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
         } else if (obj instanceof MemoryAccessNotice) {            // NOTE: observable != Memory.getInstance() because Memory class delegates notification duty.
             MemoryAccessNotice access = (MemoryAccessNotice) obj;
             if (access.getAccessType() == AccessNotice.WRITE) {
-                int address = access.getAddress();
-                // Use the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class below.
-                this.highlightCellForAddress(address);
+                // Only recorded here; see showMemoryWrites().
+                markWritten(access.getAddress(), access.getLength());
+                lastWriteAddress = access.getAddress();
+                memoryWritten.set(true);
             }
         }
     }
 
+    // Sets the bits of the displayed words that overlap a write.  Called in the
+    // simulator thread.  If the display moves meanwhile, some other words get re-read
+    // for nothing, which does no harm.
+    private void markWritten(int address, int length) {
+        int first = firstAddress;
+        long from = Math.max((long) address, first);
+        long to = Math.min((long) address + Math.max(length, 1), (long) first + MEMORY_CHUNK_SIZE);
+        for (long word = (from - first) / BYTES_PER_VALUE; word <= (to - 1 - first) / BYTES_PER_VALUE && from < to; word++) {
+            int index = (int) word;
+            long bit = 1L << (index & 63);
+            long bits;
+            do {
+                bits = writtenWords.get(index >> 6);
+            } while ((bits & bit) == 0 && !writtenWords.compareAndSet(index >> 6, bits, bits | bit));
+        }
+    }
+
+    // Shows the memory writes recorded since the last time: moves the display to the
+    // latest one, if it is not in view, and highlights it (the same highlighting
+    // technique as for Text Segment -- see AddressCellRenderer class below); otherwise
+    // re-reads just the words written.  Called in the GUI thread.
+    private void showMemoryWrites() {
+        if (!memoryWritten.getAndSet(false) || tablePanel.getComponentCount() == 0) {
+            return;
+        }
+        int address = lastWriteAddress;
+        int offset = address - firstAddress;
+        if (offset < 0 || offset >= MEMORY_CHUNK_SIZE) {
+            for (int i = 0; i < writtenWords.length(); i++) {
+                writtenWords.set(i, 0);
+            }
+            highlightCellForAddress(address); // displays the whole new range
+            return;
+        }
+        DataTableModel dataModel = (DataTableModel) dataTable.getModel();
+        int valueBase = getValueDisplayFormat();
+        for (int i = 0; i < writtenWords.length(); i++) {
+            long bits = writtenWords.getAndSet(i, 0);
+            while (bits != 0) {
+                int word = i * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                dataModel.setDisplayAndModelValueAt(formatWord(firstAddress + word * BYTES_PER_VALUE, valueBase),
+                        word / VALUES_PER_ROW, word % VALUES_PER_ROW + 1);
+            }
+        }
+        int row = offset / BYTES_PER_ROW;
+        int column = offset % BYTES_PER_ROW / BYTES_PER_VALUE + 1;
+        if (addressHighlighting && addressColumn >= 0 && addressColumn < NUMBER_OF_COLUMNS && addressRow >= 0 && addressRow < NUMBER_OF_ROWS) {
+            dataModel.fireTableCellUpdated(addressRow, addressColumn); // old highlight
+        }
+        addressRow = row;
+        addressColumn = column;
+        addressRowFirstAddress = firstAddress + row * BYTES_PER_ROW;
+        dataModel.fireTableCellUpdated(row, column);
+    }
+
     private void updateRowHeight() {
         if (dataTable == null) {
             return;
@@ -981,6 +1063,9 @@ public class DataSegmentWindow extends JInternalFrame implements Observer {
          * Update cell contents in table model.  Does not affect MIPS memory.
          */
         private void setDisplayAndModelValueAt(Object value, int row, int col) {
+            if (value.equals(data[row][col])) {
+                return; // nothing to repaint
+            }
             data[row][col] = value;
             fireTableCellUpdated(row, col);
         }
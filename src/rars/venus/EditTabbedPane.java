@@ -5,7 +5,7 @@ import rars.Globals;
 import rars.RISCVprogram;
 import rars.Settings;
 import rars.riscv.hardware.RegisterFile;
-import rars.util.FilenameFinder;
+import rars.util.RarsFileFilter;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -555,7 +555,7 @@ public class EditTabbedPane extends JTabbedPane {
             // Note: add sequence is significant - last one added becomes default.
             fileFilterList = new ArrayList<>();
             fileFilterList.add(fileChooser.getAcceptAllFileFilter());
-            fileFilterList.add(FilenameFinder.getFileFilter(Globals.fileExtensions, "Assembler Files", true));
+            fileFilterList.add(new RarsFileFilter(Globals.fileExtensions, "Assembler Files", true));
             fileFilterCount = 0; // this will trigger fileChooser file filter load in next line
             setChoosableFileFilters();
         }
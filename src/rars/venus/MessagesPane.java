@@ -3,20 +3,20 @@ package rars.venus;
 import rars.ErrorList;
 import rars.Globals;
 import rars.simulator.Simulator;
+import rars.util.Metrics;
+import rars.venus.util.ConsoleText;
+import rars.venus.util.ConsoleView;
 
 import javax.swing.*;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.NavigationFilter;
-import javax.swing.text.Position.Bias;
-import javax.swing.undo.UndoableEdit;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
 Copyright (c) 2003-2010,  Pete Sanderson and Kenneth Vollmar
@@ -53,17 +53,31 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
  **/
 
 public class MessagesPane extends JTabbedPane {
-    JTextArea assemble, run;
+    JTextArea assemble;
+    ConsoleView run;
     private JPanel assembleTab, runTab;
     // These constants are designed to keep scrolled contents of the
-    // two message areas from becoming overwhelmingly large (which
+    // Messages area from becoming overwhelmingly large (which
     // seems to slow things down as new text is appended).  Once it
     // reaches MAXIMUM_SCROLLED_CHARACTERS in length then cut off
     // the first NUMBER_OF_CHARACTERS_TO_CUT characters.  The latter
-    // must obviously be smaller than the former.
+    // must obviously be smaller than the former.  The Run I/O console
+    // keeps all of its text, but only MAXIMUM_SCROLLED_CHARACTERS of it
+    // in memory; see ConsoleText.
     public static final int MAXIMUM_SCROLLED_CHARACTERS = Globals.maximumMessageCharacters;
     public static final int NUMBER_OF_CHARACTERS_TO_CUT = Globals.maximumMessageCharacters / 10; // 10%
 
+    // Run messages are not appended one at a time: postRunMessage only queues them,
+    // and a Swing timer appends what has been queued once per frame, at most
+    // RUN_MESSAGE_CHARACTERS_PER_FRAME characters at a time.  The timer only runs
+    // while there is something to show.
+    private static final int RUN_MESSAGE_FRAME_MILLISECONDS = 40; // 25 frames per second
+    private static final int RUN_MESSAGE_CHARACTERS_PER_FRAME = 1 << 20;
+    private final ConcurrentLinkedQueue<String> pendingRunMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean runMessageTimerStarted = new AtomicBoolean(false);
+    private final Timer runMessageTimer;
+    private String lastRunFind = "";
+
     /**
      * Constructor for the class, sets up two fresh tabbed text areas for program feedback.
      **/
@@ -72,9 +86,15 @@ public class MessagesPane extends JTabbedPane {
         super();
         this.setMinimumSize(new Dimension(0, 0));
         assemble = new JTextArea();
-        run = new JTextArea();
+        run = new ConsoleView(new ConsoleText(MAXIMUM_SCROLLED_CHARACTERS, Globals.runIOHistoryFile));
+        runMessageTimer = new Timer(RUN_MESSAGE_FRAME_MILLISECONDS,
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        showPendingRunMessages(RUN_MESSAGE_CHARACTERS_PER_FRAME);
+                    }
+                });
+        runMessageTimer.setInitialDelay(0);
         assemble.setEditable(false);
-        run.setEditable(false);
         // Set both text areas to mono font.  For assemble
         // pane, will make messages more readable.  For run
         // pane, will allow properly aligned "text graphics"
@@ -164,11 +184,33 @@ public class MessagesPane extends JTabbedPane {
         runTabClearButton.addActionListener(
                 new ActionListener() {
                     public void actionPerformed(ActionEvent e) {
-                        run.setText("");
+                        run.clear();
                     }
                 });
+        JButton runTabFindButton = new JButton("Find");
+        runTabFindButton.setToolTipText("Find text in the Run I/O area, including output scrolled off long ago");
+        runTabFindButton.addActionListener(
+                new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        Object found = JOptionPane.showInputDialog(MessagesPane.this, "Find:", "Find in Run I/O",
+                                JOptionPane.QUESTION_MESSAGE, null, null, lastRunFind);
+                        if (found != null && !found.toString().isEmpty()) {
+                            lastRunFind = found.toString();
+                            if (!run.find(lastRunFind)) {
+                                JOptionPane.showMessageDialog(MessagesPane.this, "\"" + lastRunFind + "\" not found",
+                                        "Find in Run I/O", JOptionPane.INFORMATION_MESSAGE);
+                            }
+                        }
+                    }
+                });
+        Box runTabButtons = Box.createVerticalBox();
+        runTabButtons.add(Box.createVerticalGlue());
+        runTabButtons.add(createBoxForButton(runTabClearButton));
+        runTabButtons.add(Box.createVerticalStrut(6));
+        runTabButtons.add(createBoxForButton(runTabFindButton));
+        runTabButtons.add(Box.createVerticalGlue());
         runTab = new JPanel(new BorderLayout());
-        runTab.add(createBoxForButton(runTabClearButton), BorderLayout.WEST);
+        runTab.add(runTabButtons, BorderLayout.WEST);
         runTab.add(new JScrollPane(run, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
                 ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED), BorderLayout.CENTER);
 
@@ -272,7 +314,7 @@ public class MessagesPane extends JTabbedPane {
      *
      * @return runtime message text component
      */
-    public JTextArea getRunTextArea() {
+    public ConsoleView getRunTextArea() {
         return run;
     }
 
@@ -302,31 +344,50 @@ public class MessagesPane extends JTabbedPane {
      *
      * @param message String to append to runtime display text
      */
-    // The work of this method is done by "invokeLater" because
-    // its JTextArea is maintained by the main event thread
-    // but also used, via this method, by the execution thread for
-    // "print" syscalls. "invokeLater" schedules the code to be
-    // run under the event-processing thread no matter what.
-    // DPS, 23 Aug 2005.
+    // Its JTextArea is maintained by the main event thread but also used, via
+    // this method, by the execution thread for "print" syscalls.  The message is
+    // only queued here; runMessageTimer appends it under the event-processing
+    // thread, together with whatever else was posted during the same frame, so
+    // the execution thread never waits for the GUI.
     public void postRunMessage(String message) {
-        final String mess = message;
-        SwingUtilities.invokeLater(
-                new Runnable() {
-                    public void run() {
-                        setSelectedComponent(runTab);
-                        run.append(mess);
-                        // can do some crude cutting here.  If the document gets "very large",
-                        // let's cut off the oldest text. This will limit scrolling but the limit
-                        // can be set reasonably high.
-                        if (run.getDocument().getLength() > MAXIMUM_SCROLLED_CHARACTERS) {
-                            try {
-                                run.getDocument().remove(0, NUMBER_OF_CHARACTERS_TO_CUT);
-                            } catch (BadLocationException ble) {
-                                // only if NUMBER_OF_CHARACTERS_TO_CUT > MAXIMUM_SCROLLED_CHARACTERS
-                            }
+        if (message.isEmpty()) {
+            return;
+        }
+        pendingRunMessages.add(message);
+        startRunMessageTimer();
+    }
+
+    private void startRunMessageTimer() {
+        if (runMessageTimerStarted.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(
+                    new Runnable() {
+                        public void run() {
+                            runMessageTimer.start();
                         }
-                    }
-                });
+                    });
+        }
+    }
+
+    // Appends queued run messages, up to about maxCharacters of them (but always
+    // whole messages), in one append to the console.  Must be called from the GUI thread.
+    private void showPendingRunMessages(int maxCharacters) {
+        StringBuilder text = new StringBuilder();
+        String message;
+        while (text.length() < maxCharacters && (message = pendingRunMessages.poll()) != null) {
+            text.append(message);
+        }
+        if (text.length() == 0) {
+            // Stop until the next message; check again in case one came after the poll.
+            runMessageTimer.stop();
+            runMessageTimerStarted.set(false);
+            if (!pendingRunMessages.isEmpty()) {
+                startRunMessageTimer();
+            }
+            return;
+        }
+        setSelectedComponent(runTab);
+        run.append(text.toString());
+        Metrics.guiUpdatePost();
     }
 
     /**
@@ -405,72 +466,21 @@ public class MessagesPane extends JTabbedPane {
     // Written by Ricardo Fern�ndez Pascual [rfernandez@ditec.um.es] December 2009.
     class Asker implements Runnable {
         ArrayBlockingQueue<String> resultQueue = new ArrayBlockingQueue<>(1);
-        int initialPos;
         int maxLen;
+        volatile String typed = "";
 
         Asker(int maxLen) {
             this.maxLen = maxLen;
-            // initialPos will be set in run()
         }
 
-        final DocumentListener listener =
-                new DocumentListener() {
-                    public void insertUpdate(final DocumentEvent e) {
-                        EventQueue.invokeLater(
-                                new Runnable() {
-                                    public void run() {
-                                        try {
-                                            String inserted = e.getDocument().getText(e.getOffset(), e.getLength());
-                                            int i = inserted.indexOf('\n');
-                                            if (i >= 0) {
-                                                int offset = e.getOffset() + i;
-                                                if (offset + 1 == e.getDocument().getLength()) {
-                                                    returnResponse();
-                                                } else {
-                                                    // remove the '\n' and put it at the end
-                                                    e.getDocument().remove(offset, 1);
-                                                    e.getDocument().insertString(e.getDocument().getLength(), "\n", null);
-                                                    // insertUpdate will be called again, since we have inserted the '\n' at the end
-                                                }
-                                            } else if (maxLen >= 0 && e.getDocument().getLength() - initialPos >= maxLen) {
-                                                returnResponse();
-                                            }
-                                        } catch (BadLocationException ex) {
-                                            returnResponse();
-                                        }
-                                    }
-                                });
-                    }
-
-                    public void removeUpdate(final DocumentEvent e) {
-                        EventQueue.invokeLater(
-                                new Runnable() {
-                                    public void run() {
-                                        if ((e.getDocument().getLength() < initialPos || e.getOffset() < initialPos) && e instanceof UndoableEdit) {
-                                            ((UndoableEdit) e).undo();
-                                            run.setCaretPosition(e.getOffset() + e.getLength());
-                                        }
-                                    }
-                                });
-                    }
-
-                    public void changedUpdate(DocumentEvent e) {
-                    }
-                };
-        final NavigationFilter navigationFilter =
-                new NavigationFilter() {
-                    public void moveDot(FilterBypass fb, int dot, Bias bias) {
-                        if (dot < initialPos) {
-                            dot = Math.min(initialPos, run.getDocument().getLength());
+        final ConsoleView.InputListener listener =
+                new ConsoleView.InputListener() {
+                    public void inputChanged(String input) {
+                        typed = input;
+                        if (input.endsWith("\n") || (maxLen >= 0 && input.length() >= maxLen)) {
+                            run.endInput();
+                            returnResponse();
                         }
-                        fb.moveDot(dot, bias);
-                    }
-
-                    public void setDot(FilterBypass fb, int dot, Bias bias) {
-                        if (dot < initialPos) {
-                            dot = Math.min(initialPos, run.getDocument().getLength());
-                        }
-                        fb.setDot(dot, bias);
                     }
                 };
         final Simulator.StopListener stopListener =
@@ -481,13 +491,10 @@ public class MessagesPane extends JTabbedPane {
                 };
 
         public void run() { // must be invoked from the GUI thread
+            // Output the program printed before asking has to come before the input.
+            showPendingRunMessages(Integer.MAX_VALUE);
             selectRunMessageTab();
-            run.setEditable(true);
-            run.requestFocusInWindow();
-            run.setCaretPosition(run.getDocument().getLength());
-            initialPos = run.getCaretPosition();
-            run.setNavigationFilter(navigationFilter);
-            run.getDocument().addDocumentListener(listener);
+            run.startInput(listener);
             Simulator.getInstance().addStopListener(stopListener);
         }
 
@@ -495,24 +502,15 @@ public class MessagesPane extends JTabbedPane {
             EventQueue.invokeLater(
                     new Runnable() {
                         public void run() {
-                            run.getDocument().removeDocumentListener(listener);
-                            run.setEditable(false);
-                            run.setNavigationFilter(null);
-                            run.setCaretPosition(run.getDocument().getLength());
+                            run.endInput();
                             Simulator.getInstance().removeStopListener(stopListener);
                         }
                     });
         }
 
         void returnResponse() {
-            try {
-                int p = Math.min(initialPos, run.getDocument().getLength());
-                int l = Math.min(run.getDocument().getLength() - p, maxLen >= 0 ? maxLen : Integer.MAX_VALUE);
-                resultQueue.offer(run.getText(p, l));
-            } catch (BadLocationException ex) {
-                // this cannot happen
-                resultQueue.offer("");
-            }
+            String response = typed;
+            resultQueue.offer(response.substring(0, Math.min(response.length(), maxLen >= 0 ? maxLen : Integer.MAX_VALUE)));
         }
 
         String response() {
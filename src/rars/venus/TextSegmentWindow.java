@@ -55,7 +55,12 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     private static final int PROGRAM_ARGUMENT_TEXTFIELD_COLUMNS = 40;
     private JTable table;
     private JScrollPane tableScroller;
-    private Object[][] data;
+    /* The table cells are not stored; the model formats them from these when they are
+     * shown, and keeps only the most recently used (see TextTableModel).
+     */
+    private ProgramStatement[] statements;   // index is table model row
+    private boolean[] breakpoints;           // index is table model row
+    private int addressBase;
     /* Maintain an int array of code addresses in parallel with ADDRESS_COLUMN,
      * to speed model-row -> text-address mapping.  Maintain a Hashtable of
      * (text-address, model-row) pairs to speed text-address -> model-row mapping.
@@ -65,7 +70,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
     private int[] intAddresses;      // index is table model row, value is text address
     private Hashtable<Integer, Integer> addressRows;   // key is text address, value is table model row
-    private Hashtable<Integer, ModifiedCode> executeMods;   // key is table model row, value is original code, basic, source.
+    private Hashtable<Integer, ModifiedCode> executeMods;   // key is table model row, value is original code.
+    private Hashtable<Integer, String> modifiedCode;   // key is table model row, value is code shown instead of the original
+    private int sourceLineDigits;    // width of the line numbers shown in the source column
     private Container contentPane;
     private TextTableModel tableModel;
     private Font tableCellFont = new Font("Monospaced", Font.PLAIN, 12);
@@ -82,6 +89,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     private static final int SOURCE_COLUMN = 4;
 
     private static final Font monospacedPlain12Point = new Font("Monospaced", Font.PLAIN, 12);
+    // How many formatted cells the table model keeps; a few screens' worth.
+    private static final int FORMATTED_CELL_CACHE_SIZE = 4096;
     // The following is displayed in the Basic and Source columns if existing code is overwritten using self-modifying code feature
     private static final String modifiedCodeMarker = " ------ ";
 
@@ -109,14 +118,16 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      * Should convert the lines of code over to the table rows and columns.
      **/
     public void setupTable() {
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
+        addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
         codeHighlighting = true;
         breakpointsEnabled = true;
         ArrayList<ProgramStatement> sourceStatementList = Globals.program.getMachineList();
-        data = new Object[sourceStatementList.size()][columnNames.length];
-        intAddresses = new int[data.length];
-        addressRows = new Hashtable<>(data.length);
-        executeMods = new Hashtable<>(data.length);
+        statements = sourceStatementList.toArray(new ProgramStatement[0]);
+        breakpoints = new boolean[statements.length];
+        intAddresses = new int[statements.length];
+        addressRows = new Hashtable<>(statements.length);
+        executeMods = new Hashtable<>();
+        modifiedCode = new Hashtable<>();
         // Get highest source line number to determine #leading spaces so line numbers will vertically align
         // In multi-file situation, this will not necessarily be the last line b/c sourceStatementList contains
         // source lines from all files.  DPS 3-Oct-10
@@ -127,32 +138,13 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                 maxSourceLineNumber = statement.getSourceLine();
             }
         }
-        int sourceLineDigits = ("" + maxSourceLineNumber).length();
-        int leadingSpaces = 0;
-        int lastLine = -1;
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            ProgramStatement statement = sourceStatementList.get(i);
-            intAddresses[i] = statement.getAddress();
+        sourceLineDigits = ("" + maxSourceLineNumber).length();
+        for (int i = 0; i < statements.length; i++) {
+            intAddresses[i] = statements[i].getAddress();
             addressRows.put(intAddresses[i], i);
-            data[i][BREAK_COLUMN] = false;
-            data[i][ADDRESS_COLUMN] = NumberDisplayBaseChooser.formatUnsignedInteger(statement.getAddress(), addressBase);
-            data[i][CODE_COLUMN] = NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
-            data[i][BASIC_COLUMN] = statement.getPrintableBasicAssemblyStatement();
-            String sourceString = "";
-            if (!statement.getSource().equals("")) {
-                leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
-                String lineNumber = "          ".substring(0, leadingSpaces)
-                        + statement.getSourceLine() + ": ";
-                if (statement.getSourceLine() == lastLine)
-                    lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
-                sourceString = lineNumber
-                        + rars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
-            }
-            data[i][SOURCE_COLUMN] = sourceString;
-            lastLine = statement.getSourceLine();
         }
         contentPane.removeAll();
-        tableModel = new TextTableModel(data);
+        tableModel = new TextTableModel();
         if (tableModelListener != null) {
             tableModel.addTableModelListener(tableModelListener);
             tableModel.fireTableDataChanged();// initialize listener
@@ -193,6 +185,78 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
     }
 
+    /**
+     * Method to be called when an assemble replaced some statements of the program
+     * without changing its layout (see IncrementalAssembler).  Updates their rows in place
+     * instead of rebuilding the table, so breakpoints are kept.
+     *
+     * @param statements the replacement statements, each at the address of the one it replaces
+     */
+    public void updateStatements(ArrayList<ProgramStatement> statements) {
+        // Rows being replaced must not have their old code restored (that would store it to memory).
+        for (ProgramStatement statement : statements) {
+            Integer row = addressRows.get(statement.getAddress());
+            if (row != null) {
+                executeMods.remove(row);
+                modifiedCode.remove(row);
+            }
+        }
+        resetModifiedSourceCode();
+        for (ProgramStatement statement : statements) {
+            Integer row = addressRows.get(statement.getAddress());
+            if (row == null) {
+                continue;
+            }
+            this.statements[row] = statement;
+            tableModel.rowChanged(row);
+            if (row + 1 < this.statements.length) {
+                tableModel.rowChanged(row + 1); // its line number depends on this one
+            }
+        }
+    }
+
+    // Formats a cell of the table from the statement in its row, or from the code
+    // that replaced it if self-modifying code wrote to it.
+    private String formatCell(int row, int column) {
+        ProgramStatement statement = statements[row];
+        switch (column) {
+            case ADDRESS_COLUMN:
+                return NumberDisplayBaseChooser.formatUnsignedInteger(intAddresses[row], addressBase);
+            case CODE_COLUMN:
+                String code = modifiedCode.get(row);
+                return (code != null) ? code : NumberDisplayBaseChooser.formatNumber(statement.getBinaryStatement(), 16);
+            case BASIC_COLUMN:
+                if (executeMods.containsKey(row)) {
+                    // make a ProgramStatement from the new code to get its basic code
+                    try {
+                        return new ProgramStatement(rars.util.Binary.stringToInt(formatCell(row, CODE_COLUMN)),
+                                intAddresses[row]).getPrintableBasicAssemblyStatement();
+                    } catch (NumberFormatException e) { // should never happen but just in case...
+                        return "";
+                    }
+                }
+                return statement.getPrintableBasicAssemblyStatement();
+            default:
+                if (executeMods.containsKey(row)) {
+                    return modifiedCodeMarker;
+                }
+                return formatSource(statement, (row > 0) ? statements[row - 1].getSourceLine() : -1);
+        }
+    }
+
+    // Source column text: line number (blank if the previous row came from the same line) and source.
+    private String formatSource(ProgramStatement statement, int lastLine) {
+        if (statement.getSource().equals("")) {
+            return "";
+        }
+        int leadingSpaces = sourceLineDigits - ("" + statement.getSourceLine()).length();
+        String lineNumber = "          ".substring(0, leadingSpaces)
+                + statement.getSourceLine() + ": ";
+        if (statement.getSourceLine() == lastLine)
+            lineNumber = "          ".substring(0, sourceLineDigits) + "  ";
+        return lineNumber + rars.util.EditorFont.substituteSpacesForTabs(statement.getSource());
+    }
+
     ////////////  Support for program arguments added DPS 17-July-2008 //////////////
 
     /**
@@ -246,13 +310,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void updateCodeAddresses() {
         if (contentPane.getComponentCount() == 0)
             return; // ignore if no content to change
-        int addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
-        int address;
-        String formattedAddress;
-        for (int i = 0; i < intAddresses.length; i++) {
-            formattedAddress = NumberDisplayBaseChooser.formatUnsignedInteger(intAddresses[i], addressBase);
-            table.getModel().setValueAt(formattedAddress, i, ADDRESS_COLUMN);
-        }
+        addressBase = Globals.getGui().getMainPane().getExecutePane().getAddressDisplayBase();
+        tableModel.columnChanged(ADDRESS_COLUMN);
     }
 
     /**
@@ -262,26 +321,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void updateBasicStatements() {
         if (contentPane.getComponentCount() == 0)
             return; // ignore if no content to change
-        ArrayList<ProgramStatement> sourceStatementList = Globals.program.getMachineList();
-        for (int i = 0; i < sourceStatementList.size(); i++) {
-            // Loop has been extended to cover self-modifying code.  If code at this memory location has been
-            // modified at runtime, construct a ProgramStatement from the current address and binary code
-            // then display its basic code.  DPS 11-July-2013
-            if (executeMods.get(i) == null) { // not modified, so use original logic.
-                ProgramStatement statement = sourceStatementList.get(i);
-                table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-            } else {
-                try {
-                    ProgramStatement statement = new ProgramStatement(
-                            rars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, CODE_COLUMN)),
-                            rars.util.Binary.stringToInt((String) table.getModel().getValueAt(i, ADDRESS_COLUMN))
-                    );
-                    table.getModel().setValueAt(statement.getPrintableBasicAssemblyStatement(), i, BASIC_COLUMN);
-                } catch (NumberFormatException e) { // should never happen but just in case...
-                    table.getModel().setValueAt("", i, BASIC_COLUMN);
-                }
-            }
-        }
+        // Rows whose code was modified at runtime show the basic code of the new code;
+        // see formatCell().  DPS 11-July-2013
+        tableModel.columnChanged(BASIC_COLUMN);
     }
 
 
@@ -323,8 +365,6 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                 int address = access.getAddress();
                 int value = access.getValue();
                 String strValue = rars.util.Binary.intToHexString(access.getValue());
-                String strBasic = modifiedCodeMarker;
-                String strSource = modifiedCodeMarker;
                 // Translate the address into table model row and modify the values in that row accordingly.
                 int row = 0;
                 try {
@@ -338,26 +378,18 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                     if (tableModel.getValueAt(row, CODE_COLUMN).equals(strValue)) {
                         return;
                     }
-                    mc = new ModifiedCode(
-                            row,
-                            tableModel.getValueAt(row, CODE_COLUMN),
-                            tableModel.getValueAt(row, BASIC_COLUMN),
-                            tableModel.getValueAt(row, SOURCE_COLUMN)
-                    );
+                    mc = new ModifiedCode(row, tableModel.getValueAt(row, CODE_COLUMN));
                     executeMods.put(row, mc);
-                    // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                    strBasic = new ProgramStatement(value, address).getPrintableBasicAssemblyStatement();
+                    modifiedCode.put(row, strValue);
                 } else {
-                    // If restored to original value, restore the basic and source
+                    // If restored to original value, the original basic and source are shown again.
                     // This will be the case upon backstepping.
                     if (mc.getCode().equals(strValue)) {
-                        strBasic = (String) mc.getBasic();
-                        strSource = (String) mc.getSource();
                         // remove from executeMods since we are back to original
                         executeMods.remove(row);
+                        modifiedCode.remove(row);
                     } else {
-                        // make a ProgramStatement and get basic code to display in BASIC_COLUMN
-                        strBasic = new ProgramStatement(value, address).getPrintableBasicAssemblyStatement();
+                        modifiedCode.put(row, strValue);
                     }
                 }
                 // For the code column, we don't want to do the following:
@@ -368,12 +400,9 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                 // this: (1) change to memory cell causes setValueAt() to be automatically be
                 // called.  (2) it updates the memory cell which in turn notifies us which invokes
                 // the update() method - the method we're in right now.  All we need to do here is
-                // update the table model then notify the controller/view to update its display.
-                data[row][CODE_COLUMN] = strValue;
-                tableModel.fireTableCellUpdated(row, CODE_COLUMN);
-                // The other columns do not present a problem since they are not editable by user.
-                tableModel.setValueAt(strBasic, row, BASIC_COLUMN);
-                tableModel.setValueAt(strSource, row, SOURCE_COLUMN);
+                // record the new code then notify the controller/view to update its display;
+                // the basic and source columns follow from it (see formatCell()).
+                tableModel.rowChanged(row);
                 // Let's update the value displayed in the DataSegmentWindow too.  But it only observes memory while
                 // the MIPS program is running, and even then only in timed or step mode.  There are good reasons
                 // for that.  So we'll pretend to be Memory observable and send it a fake memory write update.
@@ -393,13 +422,13 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
     public void resetModifiedSourceCode() {
         if (executeMods != null && !executeMods.isEmpty()) {
-            for (Enumeration<ModifiedCode> elements = executeMods.elements(); elements.hasMoreElements(); ) {
-                ModifiedCode mc = elements.nextElement();
+            for (ModifiedCode mc : new ArrayList<>(executeMods.values())) {
+                // stores the original code back to memory
                 tableModel.setValueAt(mc.getCode(), mc.getRow(), CODE_COLUMN);
-                tableModel.setValueAt(mc.getBasic(), mc.getRow(), BASIC_COLUMN);
-                tableModel.setValueAt(mc.getSource(), mc.getRow(), SOURCE_COLUMN);
+                executeMods.remove(mc.getRow());
+                modifiedCode.remove(mc.getRow());
+                tableModel.rowChanged(mc.getRow());
             }
-            executeMods.clear();
         }
     }
 
@@ -419,8 +448,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
     public int getBreakpointCount() {
         int breakpointCount = 0;
-        for (Object[] data : data) {
-            if ((Boolean) data[BREAK_COLUMN]) {
+        for (boolean breakpoint : breakpoints) {
+            if (breakpoint) {
                 breakpointCount++;
             }
         }
@@ -440,8 +469,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
         int[] breakpoints = new int[breakpointCount];
         breakpointCount = 0;
-        for (int i = 0; i < data.length; i++) {
-            if ((Boolean) data[i][BREAK_COLUMN]) {
+        for (int i = 0; i < this.breakpoints.length; i++) {
+            if (this.breakpoints[i]) {
                 breakpoints[breakpointCount++] = intAddresses[i];
             }
         }
@@ -455,7 +484,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
     public void clearAllBreakpoints() {
         for (int i = 0; i < tableModel.getRowCount(); i++) {
-            if ((Boolean) data[i][BREAK_COLUMN]) {
+            if (breakpoints[i]) {
                 // must use this method to assure display updated and listener notified
                 tableModel.setValueAt(false, i, BREAK_COLUMN);
             }
@@ -490,7 +519,14 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
      */
 
     public void highlightStepAtAddress(int address) {
+        Integer previousRow = addressRows.get(highlightAddress);
         highlightAddress = address;
+        // Highlighting is done by the column's cell renderer, so only the previously
+        // highlighted row and the new one need repainting.  The repaint manager merges
+        // the requests of several steps made before the next paint.
+        if (previousRow != null) {
+            repaintRow(previousRow);
+        }
         // Scroll if necessary to assure highlighted row is visible.
         int row = 0;
         try {
@@ -499,15 +535,15 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             return;
         }
         table.scrollRectToVisible(table.getCellRect(row, 0, true));
-        // Trigger highlighting, which is done by the column's cell renderer.
-        // IMPLEMENTATION NOTE: Pretty crude implementation; mark all rows
-        // as changed so assure that the previously highlighted row is
-        // unhighlighted.  Would be better to keep track of previous row
-        // then fire two events: one for it and one for the new row.
-        table.tableChanged(new TableModelEvent(tableModel));
+        repaintRow(row);
         //this.inDelaySlot = false;// Added 25 June 2007
     }
 
+    private void repaintRow(int row) {
+        Rectangle rowRect = table.getCellRect(row, 0, true);
+        table.repaint(0, rowRect.y, table.getWidth(), rowRect.height);
+    }
+
     /**
      * Used to enable or disable source code highlighting.  If true (normally while
      * stepping through execution) then MIPS statement at current program counter
@@ -534,8 +570,8 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
     public void unhighlightAllSteps() {
         boolean saved = this.getCodeHighlighting();
         this.setCodeHighlighting(false);
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BASIC_COLUMN));
-        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, SOURCE_COLUMN));
+        table.tableChanged(new TableModelEvent(tableModel, 0, statements.length - 1, BASIC_COLUMN));
+        table.tableChanged(new TableModelEvent(tableModel, 0, statements.length - 1, SOURCE_COLUMN));
         this.setCodeHighlighting(saved);
     }
 
@@ -666,21 +702,26 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
 
     /**
-     * Inner class to implement the Table model for this JTable.
+     * Inner class to implement the Table model for this JTable.  Cells are formatted by
+     * formatCell() when the table asks for them, which is only for the rows it shows,
+     * and the last FORMATTED_CELL_CACHE_SIZE of them are kept.  So a program of any size
+     * costs the same to display, and changing the display base only clears the cache.
      */
     class TextTableModel extends AbstractTableModel {
-        Object[][] data;
-
-        public TextTableModel(Object[][] d) {
-            data = d;
-        }
+        // key is row * column count + column.  Also locks the cache, since self-modifying
+        // code changes rows from the simulator thread.
+        private final Map<Integer, String> formatted = new LinkedHashMap<Integer, String>(256, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                return size() > FORMATTED_CELL_CACHE_SIZE;
+            }
+        };
 
         public int getColumnCount() {
             return columnNames.length;
         }
 
         public int getRowCount() {
-            return data.length;
+            return statements.length;
         }
 
         public String getColumnName(int col) {
@@ -688,7 +729,40 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         }
 
         public Object getValueAt(int row, int col) {
-            return data[row][col];
+            if (col == BREAK_COLUMN) {
+                return breakpoints[row];
+            }
+            Integer key = row * columnNames.length + col;
+            synchronized (formatted) {
+                String value = formatted.get(key);
+                if (value == null) {
+                    value = formatCell(row, col);
+                    formatted.put(key, value);
+                }
+                return value;
+            }
+        }
+
+        /*
+         * The cells of a row have to be formatted again.
+         */
+        void rowChanged(int row) {
+            synchronized (formatted) {
+                for (int col = 0; col < columnNames.length; col++) {
+                    formatted.remove(row * columnNames.length + col);
+                }
+            }
+            fireTableRowsUpdated(row, row);
+        }
+
+        /*
+         * The cells of a column have to be formatted again.
+         */
+        void columnChanged(int col) {
+            synchronized (formatted) {
+                formatted.clear();
+            }
+            fireTableChanged(new TableModelEvent(this, 0, statements.length - 1, col));
         }
 
         /*
@@ -698,7 +772,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
          * rather than a check box.
          */
         public Class getColumnClass(int c) {
-            return getValueAt(0, c).getClass();
+            return (c == BREAK_COLUMN) ? Boolean.class : String.class;
         }
 
         /*
@@ -718,30 +792,26 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
          */
         @Override
         public void setValueAt(Object value, int row, int col) {
-            if (col != CODE_COLUMN) {
-                data[row][col] = value;
+            if (col == BREAK_COLUMN) {
+                breakpoints[row] = (Boolean) value;
                 fireTableCellUpdated(row, col);
                 return;
             }
+            if (col != CODE_COLUMN) {
+                return; // the other columns follow from the code
+            }
             // Handle changes in the Code column.
             int val = 0;
-            int address = 0;
-            if (value.equals(data[row][col]))
+            int address = intAddresses[row];
+            if (value.equals(getValueAt(row, col)))
                 return;
             try {
                 val = rars.util.Binary.stringToInt((String) value);
             } catch (NumberFormatException nfe) {
-                data[row][col] = "INVALID";
-                fireTableCellUpdated(row, col);
+                modifiedCode.put(row, "INVALID");
+                rowChanged(row);
                 return;
             }
-            // calculate address from row and column
-            try {
-                address = rars.util.Binary.stringToInt((String) data[row][ADDRESS_COLUMN]);
-            } catch (NumberFormatException nfe) {
-                // can't really happen since memory addresses are completely under
-                // the control of my software.
-            }
             //  Assures that if changed during MIPS program execution, the update will
             //  occur only between instructions.
             Globals.memoryAndRegistersLock.lock();
@@ -767,7 +837,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
             for (int i = 0; i < numRows; i++) {
                 System.out.print("    row " + i + ":");
                 for (int j = 0; j < numCols; j++) {
-                    System.out.print("  " + data[i][j]);
+                    System.out.print("  " + getValueAt(i, j));
                 }
                 System.out.println();
             }
@@ -777,13 +847,11 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
 
     private class ModifiedCode {
         private Integer row;
-        private Object code, basic, source;
+        private Object code;
 
-        private ModifiedCode(Integer row, Object code, Object basic, Object source) {
+        private ModifiedCode(Integer row, Object code) {
             this.row = row;
             this.code = code;
-            this.basic = basic;
-            this.source = source;
         }
 
         private Integer getRow() {
@@ -793,14 +861,6 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
         private Object getCode() {
             return this.code;
         }
-
-        private Object getBasic() {
-            return this.basic;
-        }
-
-        private Object getSource() {
-            return this.source;
-        }
     }
 
     /*  a custom table cell renderer that we'll use to highlight the current line of
@@ -1035,7 +1095,7 @@ public class TextSegmentWindow extends JInternalFrame implements Observer {
                         JCheckBox check = ((JCheckBox) ((DefaultCellEditor) table.getCellEditor(0, index)).getComponent());
                         breakpointsEnabled = !breakpointsEnabled;
                         check.setEnabled(breakpointsEnabled);
-                        table.tableChanged(new TableModelEvent(tableModel, 0, data.length - 1, BREAK_COLUMN));
+                        table.tableChanged(new TableModelEvent(tableModel, 0, statements.length - 1, BREAK_COLUMN));
                     }
                 }
 
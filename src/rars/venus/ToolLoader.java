@@ -1,9 +1,11 @@
 package rars.venus;
 
 import rars.tools.Tool;
-import rars.util.FilenameFinder;
+import rars.util.ComponentRegistry;
 
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import java.awt.event.KeyEvent;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -63,24 +65,49 @@ public class ToolLoader {
      * or any problems accessing those tools, it returns null.  A qualifying tool
      * must be a class in the Tools package that implements Tool, must be compiled
      * into a .class file, and its .class file must be in the same Tools folder as
-     * Tool.class.
+     * Tool.class.  The tools are not loaded until the menu is first opened.
      *
-     * @return a Tools JMenu if qualifying tool classes are found, otherwise null
+     * @return a Tools JMenu if candidate tool classes are found, otherwise null
      */
     public static JMenu buildToolsMenu() {
-        JMenu menu = null;
-        ArrayList<Tool> toolList = loadTools();
-        if (!toolList.isEmpty()) {
-            menu = new JMenu(TOOLS_MENU_NAME);
-            menu.setMnemonic(KeyEvent.VK_T);
-            // traverse array list and build menu
-            for (Tool tool : toolList) {
-                menu.add(new ToolAction(tool));
-            }
+        ArrayList<String> candidates = findCandidates();
+        if (candidates.isEmpty()) {
+            return null;
         }
+        final JMenu menu = new JMenu(TOOLS_MENU_NAME);
+        menu.setMnemonic(KeyEvent.VK_T);
+        menu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                menu.removeMenuListener(this);
+                // traverse array list and build menu
+                for (Tool tool : loadTools(candidates)) {
+                    menu.add(new ToolAction(tool));
+                }
+            }
+
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
         return menu;
     }
 
+    // Names of the class files in the tools folder, other than the Tool interface.
+    private static ArrayList<String> findCandidates() {
+        ArrayList<String> candidates = new ArrayList<>();
+        HashSet<String> tools = new HashSet<>();
+        for (String file : ComponentRegistry.getFilenameList(ToolLoader.class.getClassLoader(),
+                TOOLS_DIRECTORY_PATH, CLASS_EXTENSION)) {
+            // Do not add class if already encountered (happens if run in MARS development directory)
+            if (!file.equals(TOOL_INTERFACE) && tools.add(file)) {
+                candidates.add(file);
+            }
+        }
+        return candidates;
+    }
+
     /*
      *  Dynamically loads MarsTools into an ArrayList.  This method is adapted from
      *  the loadGameControllers() method in Bret Barker's GameServer class.
@@ -100,10 +127,8 @@ public class ToolLoader {
      *  as a ZipFile, get the ZipEntry enumeration, find the class files in the tools
      *  folder, then continue as before.
      */
-    private static ArrayList<Tool> loadTools() {
+    private static ArrayList<Tool> loadTools(ArrayList<String> candidates) {
         ArrayList<Tool> toolList = new ArrayList<>();
-        ArrayList<String> candidates = FilenameFinder.getFilenameList(ToolLoader.class.getClassLoader(),
-                TOOLS_DIRECTORY_PATH, CLASS_EXTENSION);
         // Add any tools stored externally, as listed in Config.properties file.
         // This needs some work, because rars.Globals.getExternalTools() returns
         // whatever is in the properties file entry.  Since the class file will
@@ -111,29 +136,20 @@ public class ToolLoader {
         // it correctly.  Not sure how to create a Class object given an absolute
         // pathname.
         //candidates.addAll(rars.Globals.getExternalTools());  // this by itself is not enough...
-        HashSet<String> tools = new HashSet<>();
         for (String file : candidates) {
-            // Do not add class if already encountered (happens if run in MARS development directory)
-            if (tools.contains(file)) {
-                continue;
-            } else {
-                tools.add(file);
-            }
-            if (!file.equals(TOOL_INTERFACE)) {
-                try {
-                    // grab the class, make sure it implements Tool, instantiate, add to menu
-                    String toolClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
-                    Class clas = Class.forName(toolClassName);
-                    if (!Tool.class.isAssignableFrom(clas) ||
-                            Modifier.isAbstract(clas.getModifiers()) ||
-                            Modifier.isInterface(clas.getModifiers())) {
-                        continue;
-                    }
-
-                    toolList.add((Tool) clas.newInstance());
-                } catch (Exception e) {
-                    System.out.println("Error instantiating Tool from file " + file + ": " + e);
+            try {
+                // grab the class, make sure it implements Tool, instantiate, add to menu
+                String toolClassName = CLASS_PREFIX + file.substring(0, file.indexOf(CLASS_EXTENSION) - 1);
+                Class clas = Class.forName(toolClassName);
+                if (!Tool.class.isAssignableFrom(clas) ||
+                        Modifier.isAbstract(clas.getModifiers()) ||
+                        Modifier.isInterface(clas.getModifiers())) {
+                    continue;
                 }
+
+                toolList.add((Tool) clas.newInstance());
+            } catch (Exception e) {
+                System.out.println("Error instantiating Tool from file " + file + ": " + e);
             }
         }
         return toolList;
@@ -85,7 +85,7 @@ public class VenusUI extends JFrame {
     private JMenuItem runGo, runStep, runBackstep, runReset, runAssemble, runStop, runPause, runClearBreakpoints, runToggleBreakpoints;
     private JCheckBoxMenuItem settingsLabel, settingsPopupInput, settingsValueDisplayBase, settingsAddressDisplayBase,
             settingsExtended, settingsAssembleOnOpen, settingsAssembleAll, settingsAssembleOpen, settingsWarningsAreErrors,
-            settingsStartAtMain, settingsProgramArguments, settingsSelfModifyingCode, settingsRV64, settingsDeriveCurrentWorkingDirectory;
+            settingsStartAtMain, settingsProgramArguments, settingsSelfModifyingCode, settingsLibraryCallInstructions, settingsRV64, settingsDeriveCurrentWorkingDirectory;
     private JMenuItem settingsExceptionHandler, settingsEditor, settingsHighlighting, settingsMemoryConfiguration;
     private JMenuItem helpHelp, helpAbout;
 
@@ -110,7 +110,8 @@ public class VenusUI extends JFrame {
             settingsExtendedAction, settingsAssembleOnOpenAction, settingsAssembleOpenAction, settingsAssembleAllAction,
             settingsWarningsAreErrorsAction, settingsStartAtMainAction, settingsProgramArgumentsAction,
             settingsExceptionHandlerAction, settingsEditorAction, settingsHighlightingAction, settingsMemoryConfigurationAction,
-            settingsSelfModifyingCodeAction, settingsRV64Action, settingsDeriveCurrentWorkingDirectoryAction;
+            settingsSelfModifyingCodeAction, settingsLibraryCallInstructionsAction, settingsRV64Action,
+            settingsDeriveCurrentWorkingDirectoryAction;
     private Action helpHelpAction, helpAboutAction;
 
 
@@ -461,6 +462,9 @@ public class VenusUI extends JFrame {
             settingsSelfModifyingCodeAction = new SettingsAction("Self-modifying code",
                     "If set, the program can write and branch to both text and data segments.",
                     Settings.Bool.SELF_MODIFYING_CODE_ENABLED);
+            settingsLibraryCallInstructionsAction = new SettingsAction("Count instructions of library syscalls",
+                    "If set, the memory and string syscalls add the instructions of the equivalent RISC-V loop to cycle and instret.",
+                    Settings.Bool.LIBRARY_CALL_INSTRUCTIONS);
 
             // TODO: review this
             settingsRV64Action = new SettingsAction("64 bit",
@@ -627,6 +631,8 @@ public class VenusUI extends JFrame {
         settingsExtended.setSelected(Globals.getSettings().getBooleanSetting(Settings.Bool.EXTENDED_ASSEMBLER_ENABLED));
         settingsSelfModifyingCode = new JCheckBoxMenuItem(settingsSelfModifyingCodeAction);
         settingsSelfModifyingCode.setSelected(Globals.getSettings().getBooleanSetting(Settings.Bool.SELF_MODIFYING_CODE_ENABLED));
+        settingsLibraryCallInstructions = new JCheckBoxMenuItem(settingsLibraryCallInstructionsAction);
+        settingsLibraryCallInstructions.setSelected(Globals.getSettings().getBooleanSetting(Settings.Bool.LIBRARY_CALL_INSTRUCTIONS));
         settingsRV64 = new JCheckBoxMenuItem(settingsRV64Action);
         settingsRV64.setSelected(Globals.getSettings().getBooleanSetting(Settings.Bool.RV64_ENABLED));
         settingsDeriveCurrentWorkingDirectory = new JCheckBoxMenuItem(settingsDeriveCurrentWorkingDirectoryAction);
@@ -663,6 +669,7 @@ public class VenusUI extends JFrame {
         settings.addSeparator();
         settings.add(settingsExtended);
         settings.add(settingsSelfModifyingCode);
+        settings.add(settingsLibraryCallInstructions);
         settings.add(settingsRV64);
         settings.addSeparator();
         settings.add(settingsEditor);
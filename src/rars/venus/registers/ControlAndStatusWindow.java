@@ -43,14 +43,6 @@ public class ControlAndStatusWindow extends RegisterBlockWindow {
         }
     }
 
-    protected void beginObserving() {
-        ControlAndStatusRegisterFile.addRegistersObserver(this);
-    }
-
-    protected void endObserving() {
-        ControlAndStatusRegisterFile.deleteRegistersObserver(this);
-    }
-
     public void resetRegisters() {
         ControlAndStatusRegisterFile.resetRegisters();
     }
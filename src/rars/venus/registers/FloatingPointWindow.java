@@ -56,14 +56,6 @@ public class FloatingPointWindow extends RegisterBlockWindow {
         }
     }
 
-    protected void beginObserving() {
-        FloatingPointRegisterFile.addRegistersObserver(this);
-    }
-
-    protected void endObserving() {
-        FloatingPointRegisterFile.deleteRegistersObserver(this);
-    }
-
     protected void resetRegisters() {
         FloatingPointRegisterFile.resetRegisters();
     }
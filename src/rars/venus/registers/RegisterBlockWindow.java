@@ -2,9 +2,7 @@ package rars.venus.registers;
 
 import rars.Globals;
 import rars.Settings;
-import rars.riscv.hardware.AccessNotice;
 import rars.riscv.hardware.Register;
-import rars.riscv.hardware.RegisterAccessNotice;
 import rars.simulator.Simulator;
 import rars.simulator.SimulatorNotice;
 import rars.util.Binary;
@@ -61,6 +59,8 @@ public abstract class RegisterBlockWindow extends JPanel implements Observer {
     private boolean highlighting;
     private int highlightRow;
     private Register[] registers;
+    // Whether the registers written are to be shown when the simulator stops.
+    private volatile boolean showingWrites;
 
     private static final int NAME_COLUMN = 0;
     private static final int NUMBER_COLUMN = 1;
@@ -97,10 +97,6 @@ public abstract class RegisterBlockWindow extends JPanel implements Observer {
 
     protected abstract String formatRegister(Register value, int base);
 
-    protected abstract void beginObserving();
-
-    protected abstract void endObserving();
-
     protected abstract void resetRegisters();
     /**
      * Sets up the data for the window.
@@ -157,28 +153,63 @@ public abstract class RegisterBlockWindow extends JPanel implements Observer {
     }
 
     /**
-     * Highlight the row corresponding to the given register.
-     *
-     * @param register Register object corresponding to row to be selected.
+     * Show the registers written since the last call, or since the simulator started, and
+     * highlight one of them.  Called after every step of a timed or stepped run, so rather
+     * than observing each register, which would post a notice for every read and write,
+     * the window collects a bit for each register written and refreshes only those rows.
      */
-    private void highlightCellForRegister(Register register) {
+    public void updateChangedRegisters() {
+        long written = 0; // bit i is row i; no register block has more than 64 registers
         for (int i = 0; i < registers.length; i++) {
-            if (registers[i] == register) {
-                this.highlightRow = i;
-                table.tableChanged(new TableModelEvent(table.getModel()));
-                return;
+            if (registers[i].takeWritten()) {
+                written |= 1L << i;
             }
         }
-        this.highlightRow = -1;
+        if (written == 0) {
+            return;
+        }
+        RegTableModel model = (RegTableModel) table.getModel();
+        int valueBase = Globals.getGui().getMainPane().getExecutePane().getValueDisplayBase();
+        int row = -1;
+        for (long rest = written; rest != 0; rest &= rest - 1) {
+            int i = Long.numberOfTrailingZeros(rest);
+            model.setDisplayAndModelValueAt(formatRegister(registers[i], valueBase), i, VALUE_COLUMN);
+            // The pc (which has no number) is written by every instruction, so it is not highlighted.
+            if (row == -1 && registers[i].getNumber() != -1) {
+                row = i;
+            }
+        }
+        if (row != -1) {
+            // Uses the same highlighting technique as for Text Segment -- see
+            // AddressCellRenderer class in DataSegmentWindow.java.
+            this.highlighting = true;
+            highlightRow(row);
+            Globals.getGui().getRegistersPane().setSelectedComponent(this);
+        }
+    }
+
+    /**
+     * Highlight the given row, repainting it and the row highlighted before.
+     *
+     * @param row the row to highlight
+     */
+    private void highlightRow(int row) {
+        int previousRow = this.highlightRow;
+        this.highlightRow = row;
+        RegTableModel model = (RegTableModel) table.getModel();
+        if (previousRow >= 0 && previousRow < registers.length) {
+            model.fireTableRowsUpdated(previousRow, previousRow);
+        }
+        model.fireTableRowsUpdated(row, row);
     }
 
     /**
      * Required by Observer interface.  Called when notified by an Observable that we are registered with.
      * Observables include:
      * The Simulator object, which lets us know when it starts and stops running
-     * A register object, which lets us know of register operations
-     * The Simulator keeps us informed of when simulated MIPS execution is active.
-     * This is the only time we care about register operations.
+     * The Settings, which let us know when fonts may have changed
+     * The registers written while the simulator runs are found by updateChangedRegisters(),
+     * which the simulator calls after each step of a timed run.
      *
      * @param observable The Observable object who is notifying us
      * @param obj        Auxiliary object with additional information.
@@ -187,28 +218,26 @@ public abstract class RegisterBlockWindow extends JPanel implements Observer {
         if (observable == rars.simulator.Simulator.getInstance()) {
             SimulatorNotice notice = (SimulatorNotice) obj;
             if (notice.getAction() == SimulatorNotice.SIMULATOR_START) {
-                // Simulated MIPS execution starts.  Respond to memory changes if running in timed
-                // or stepped mode.
+                // Simulated execution starts.  Show register writes if running in timed
+                // or stepped mode, counting only those from now on.
                 if (notice.getRunSpeed() != RunSpeedPanel.UNLIMITED_SPEED || notice.getMaxSteps() == 1) {
-                    beginObserving();
+                    for (Register register : registers) {
+                        register.takeWritten();
+                    }
+                    showingWrites = true;
                     this.highlighting = true;
                 }
-            } else {
-                // Simulated MIPS execution stops.  Stop responding.
-                endObserving();
+            } else if (showingWrites) {
+                // Simulated execution stops.  Show the writes of the last step.
+                showingWrites = false;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        updateChangedRegisters();
+                    }
+                });
             }
         } else if (observable == settings) {
             updateRowHeight();
-        } else if (obj instanceof RegisterAccessNotice) {
-            // NOTE: each register is a separate Observable
-            RegisterAccessNotice access = (RegisterAccessNotice) obj;
-            if (access.getAccessType() == AccessNotice.WRITE) {
-                // Uses the same highlighting technique as for Text Segment -- see
-                // AddressCellRenderer class in DataSegmentWindow.java.
-                this.highlighting = true;
-                this.highlightCellForRegister((Register) observable);
-                Globals.getGui().getRegistersPane().setSelectedComponent(this);
-            }
         }
     }
 
@@ -342,6 +371,9 @@ public abstract class RegisterBlockWindow extends JPanel implements Observer {
          * Update cell contents in table model.
          */
         private void setDisplayAndModelValueAt(Object value, int row, int col) {
+            if (value.equals(data[row][col])) {
+                return; // nothing to repaint
+            }
             data[row][col] = value;
             fireTableCellUpdated(row, col);
         }
@@ -70,14 +70,6 @@ public class RegistersWindow extends RegisterBlockWindow {
         }
     }
 
-    protected void beginObserving() {
-        RegisterFile.addRegistersObserver(this);
-    }
-
-    protected void endObserving() {
-        RegisterFile.deleteRegistersObserver(this);
-    }
-
     protected void resetRegisters() {
         RegisterFile.resetRegisters();
     }
@@ -1,6 +1,7 @@
 package rars.venus.run;
 
 import rars.*;
+import rars.assembler.IncrementalAssembler;
 import rars.riscv.hardware.*;
 import rars.util.FilenameFinder;
 import rars.util.SystemIO;
@@ -46,6 +47,7 @@ WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 public class RunAssembleAction extends GuiAction {
 
     private static ArrayList<RISCVprogram> programsToAssemble;
+    private static final IncrementalAssembler incrementalAssembler = new IncrementalAssembler();
     private static boolean extendedAssemblerEnabled;
     private static boolean warningsAreErrors;
     // Threshold for adding filename to printed message of files being assembled.
@@ -83,7 +85,6 @@ public class RunAssembleAction extends GuiAction {
                 mainUI.getEditor().save();
             }
             try {
-                Globals.program = new RISCVprogram();
                 ArrayList<String> filesToAssemble;
                 if (Globals.getSettings().getBooleanSetting(Settings.Bool.ASSEMBLE_ALL)) {// setting calls for multiple file assembly
                     filesToAssemble = FilenameFinder.getFilenameList(
@@ -107,11 +108,20 @@ public class RunAssembleAction extends GuiAction {
                         Globals.getSettings().getExceptionHandler().length() > 0) {
                     exceptionHandler = Globals.getSettings().getExceptionHandler();
                 }
-                programsToAssemble = Globals.program.prepareFilesForAssembly(filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler);
-                messagesPane.postMessage(buildFileNameList(name + ": assembling ", programsToAssemble));
+                messagesPane.postMessage(buildFileNameList(name + ": assembling ",
+                        filesToAssemble, FileStatus.getFile().getPath(), exceptionHandler));
+                // Files and lines that have not changed since the last assemble are not redone.
                 // added logic to receive any warnings and output them.... DPS 11/28/06
-                ErrorList warnings = Globals.program.assemble(programsToAssemble, extendedAssemblerEnabled,
-                        warningsAreErrors);
+                ErrorList warnings;
+                try {
+                    warnings = incrementalAssembler.assemble(filesToAssemble, FileStatus.getFile().getPath(),
+                            exceptionHandler, extendedAssemblerEnabled, warningsAreErrors);
+                } finally {
+                    if (incrementalAssembler.getLeadProgram() != null) {
+                        Globals.program = incrementalAssembler.getLeadProgram();
+                    }
+                    programsToAssemble = incrementalAssembler.getProgramsToAssemble();
+                }
                 if (warnings.warningsOccurred()) {
                     messagesPane.postMessage(warnings.generateWarningReport());
                 }
@@ -125,7 +135,11 @@ public class RunAssembleAction extends GuiAction {
                 ControlAndStatusRegisterFile.resetRegisters();
                 InterruptController.reset();
 
-                executePane.getTextSegmentWindow().setupTable();
+                if (incrementalAssembler.getPatchedStatements() != null) {
+                    executePane.getTextSegmentWindow().updateStatements(incrementalAssembler.getPatchedStatements());
+                } else {
+                    executePane.getTextSegmentWindow().setupTable();
+                }
                 executePane.getDataSegmentWindow().setupTable();
                 executePane.getDataSegmentWindow().highlightCellForAddress(Memory.dataBaseAddress);
                 executePane.getDataSegmentWindow().clearHighlighting();
@@ -175,12 +189,26 @@ public class RunAssembleAction extends GuiAction {
 
     // Handy little utility for building comma-separated list of filenames
     // while not letting line length get out of hand.
-    private String buildFileNameList(String preamble, ArrayList<RISCVprogram> programList) {
+    // Files are listed in assembly order: exception handler, lead file, then the rest.
+    private String buildFileNameList(String preamble, ArrayList<String> filenames, String leadFilename,
+                                     String exceptionHandler) {
+        ArrayList<String> fileList = new ArrayList<>();
+        if (exceptionHandler != null) {
+            fileList.add(exceptionHandler);
+        }
+        if (filenames.contains(leadFilename)) {
+            fileList.add(leadFilename);
+        }
+        for (String filename : filenames) {
+            if (!filename.equals(leadFilename)) {
+                fileList.add(filename);
+            }
+        }
         String result = preamble;
         int lineLength = result.length();
-        for (int i = 0; i < programList.size(); i++) {
-            String filename = programList.get(i).getFilename();
-            result += filename + ((i < programList.size() - 1) ? ", " : "");
+        for (int i = 0; i < fileList.size(); i++) {
+            String filename = fileList.get(i);
+            result += filename + ((i < fileList.size() - 1) ? ", " : "");
             lineLength += filename.length();
             if (lineLength > LINE_LENGTH_LIMIT) {
                 result += "\n";
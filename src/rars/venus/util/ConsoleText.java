@@ -0,0 +1,413 @@
+package rars.venus.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text shown by a {@link ConsoleView}: append-only, kept in chunks of
+ * {@link #CHUNK_LENGTH} characters.  Only the newest chunks are kept in memory.
+ * Older ones are written to a temporary file, if spilling is on, and read back
+ * (a few at a time) when they are looked at; otherwise they are dropped, and
+ * the text then starts at {@link #getStart()} rather than 0.  The file holds
+ * at most {@link #SPILL_FACTOR} times as much as memory does; beyond that the
+ * oldest text in it is dropped and its space used again.
+ * <p>
+ * Positions are offsets from the start of everything ever appended (since the
+ * last {@link #clear()}), and lines are numbered the same way, so neither
+ * changes when old text is spilled or dropped.  Only the number of line breaks
+ * in each chunk is kept; lines are found by scanning the one chunk they are in.
+ * <p>
+ * Not thread safe; the console uses it from the GUI thread only.
+ */
+public class ConsoleText {
+    public static final int CHUNK_LENGTH = 1 << 16;
+    /**
+     * Tabs stop every TAB_SIZE columns, as in a terminal.
+     */
+    public static final int TAB_SIZE = 8;
+    /**
+     * How many times the memory limit may be kept in the temporary file.
+     */
+    public static final int SPILL_FACTOR = 128;
+    private static final int CACHED_CHUNKS = 4;
+
+    private static class Chunk {
+        final long start;
+        final long linesBefore; // line breaks before this chunk
+        int length;
+        int lineBreaks;
+        char[] text; // null while it is in the file only
+
+        Chunk(long start, long linesBefore) {
+            this.start = start;
+            this.linesBefore = linesBefore;
+            this.text = new char[CHUNK_LENGTH];
+        }
+    }
+
+    private final int maxChunksInMemory;
+    private final int maxChunksInFile;
+    private boolean spill;
+    private final ArrayList<Chunk> chunks = new ArrayList<>();
+    private int firstChunkInMemory; // index of the oldest chunk not yet spilled
+    private long droppedChunks;
+    private long lineBreaks;
+    private int column;
+    private int maxColumns;
+    private RandomAccessFile file;
+    private final Map<Chunk, char[]> cache = new LinkedHashMap<Chunk, char[]>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Chunk, char[]> eldest) {
+            return size() > CACHED_CHUNKS;
+        }
+    };
+
+    /**
+     * @param memoryLimit about how many characters to keep in memory
+     * @param spill       whether to write older text to a temporary file rather than drop it
+     */
+    public ConsoleText(int memoryLimit, boolean spill) {
+        this.maxChunksInMemory = Math.max(2, memoryLimit / CHUNK_LENGTH);
+        this.maxChunksInFile = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                (long) memoryLimit * SPILL_FACTOR / CHUNK_LENGTH));
+        this.spill = spill;
+        chunks.add(new Chunk(0, 0));
+    }
+
+    /**
+     * Removes all of the text.  Offsets and line numbers start again at 0.
+     */
+    public void clear() {
+        chunks.clear();
+        cache.clear();
+        chunks.add(new Chunk(0, 0));
+        firstChunkInMemory = 0;
+        droppedChunks = 0;
+        lineBreaks = 0;
+        column = 0;
+        maxColumns = 0;
+        if (file != null) {
+            try {
+                file.setLength(0);
+            } catch (IOException e) {
+                closeFile();
+            }
+        }
+    }
+
+    /**
+     * Adds text to the end.
+     *
+     * @param s the text to add
+     */
+    public void append(CharSequence s) {
+        int i = 0;
+        while (i < s.length()) {
+            Chunk last = chunks.get(chunks.size() - 1);
+            if (last.length == CHUNK_LENGTH) {
+                last = new Chunk(last.start + CHUNK_LENGTH, last.linesBefore + last.lineBreaks);
+                chunks.add(last);
+                limitMemory();
+            }
+            int n = Math.min(s.length() - i, CHUNK_LENGTH - last.length);
+            for (int j = 0; j < n; j++) {
+                char c = s.charAt(i + j);
+                last.text[last.length + j] = c;
+                if (c == '\n') {
+                    last.lineBreaks++;
+                    lineBreaks++;
+                    column = 0;
+                } else {
+                    column = nextColumn(column, c);
+                    if (column > maxColumns) maxColumns = column;
+                }
+            }
+            last.length += n;
+            i += n;
+        }
+    }
+
+    /**
+     * @param column the column a character is in
+     * @param c      the character
+     * @return the column of the character after it
+     */
+    public static int nextColumn(int column, char c) {
+        return (c == '\t') ? (column / TAB_SIZE + 1) * TAB_SIZE : column + 1;
+    }
+
+    private void limitMemory() {
+        while (chunks.size() - firstChunkInMemory > maxChunksInMemory) {
+            if (spill && firstChunkInMemory == maxChunksInFile) {
+                // The file is full: drop its oldest chunk, whose space goes to the next.
+                cache.remove(chunks.remove(0));
+                droppedChunks++;
+                firstChunkInMemory--;
+            }
+            Chunk oldest = chunks.get(firstChunkInMemory);
+            if (spill && writeToFile(oldest)) {
+                oldest.text = null;
+                firstChunkInMemory++;
+            } else {
+                // Drop the oldest chunk.  If spilling stopped, chunks still in the
+                // file go first; they take no memory but cannot be read any more.
+                cache.remove(chunks.remove(0));
+                droppedChunks++;
+                if (firstChunkInMemory > 0) firstChunkInMemory--;
+            }
+        }
+    }
+
+    private boolean writeToFile(Chunk chunk) {
+        try {
+            if (file == null) {
+                File f = File.createTempFile("rars", ".runio");
+                f.deleteOnExit();
+                file = new RandomAccessFile(f, "rw");
+            }
+            ByteBuffer bytes = ByteBuffer.allocate(chunk.length * 2);
+            bytes.asCharBuffer().put(chunk.text, 0, chunk.length);
+            long position = filePosition(chunk);
+            while (bytes.hasRemaining()) {
+                position += file.getChannel().write(bytes, position);
+            }
+            return true;
+        } catch (IOException e) {
+            // No room for it; drop old text from now on instead.
+            spill = false;
+            closeFile();
+            return false;
+        }
+    }
+
+    // Where a chunk is kept in the file.  The chunks in the file are consecutive and
+    // no more than maxChunksInFile, so they can go round in that many places.
+    private long filePosition(Chunk chunk) {
+        return (chunk.start / CHUNK_LENGTH % maxChunksInFile) * CHUNK_LENGTH * 2;
+    }
+
+    private void closeFile() {
+        try {
+            if (file != null) file.close();
+        } catch (IOException e) {
+            // nothing more to do with it
+        }
+        file = null;
+    }
+
+    private char[] textOf(Chunk chunk) {
+        if (chunk.text != null) {
+            return chunk.text;
+        }
+        char[] text = cache.get(chunk);
+        if (text == null) {
+            text = new char[chunk.length];
+            if (file == null) {
+                // the file is gone; show blanks for what was in it
+                Arrays.fill(text, ' ');
+                return text;
+            }
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate(chunk.length * 2);
+                long position = filePosition(chunk);
+                while (bytes.hasRemaining()) {
+                    int n = file.getChannel().read(bytes, position + bytes.position());
+                    if (n < 0) break;
+                }
+                bytes.flip();
+                bytes.asCharBuffer().get(text, 0, bytes.remaining() / 2);
+            } catch (IOException e) {
+                Arrays.fill(text, ' ');
+            }
+            cache.put(chunk, text);
+        }
+        return text;
+    }
+
+    /**
+     * @return offset of the first character still available
+     */
+    public long getStart() {
+        return chunks.get(0).start;
+    }
+
+    /**
+     * @return offset just past the last character
+     */
+    public long getLength() {
+        Chunk last = chunks.get(chunks.size() - 1);
+        return last.start + last.length;
+    }
+
+    /**
+     * @return number of the first line still available (all of it, or its end)
+     */
+    public long getFirstLine() {
+        return chunks.get(0).linesBefore;
+    }
+
+    /**
+     * @return number of lines; the last one is empty if the text ends with a line break
+     */
+    public long getLineCount() {
+        return lineBreaks + 1;
+    }
+
+    /**
+     * @return the widest line, in columns, with tabs expanded
+     */
+    public int getMaxColumns() {
+        return maxColumns;
+    }
+
+    /**
+     * @return the column just past the end of the text
+     */
+    public int getLastColumn() {
+        return column;
+    }
+
+    // Index in chunks of the chunk holding offset, which must be available.
+    private int chunkIndex(long offset) {
+        return (int) Math.min(offset / CHUNK_LENGTH - droppedChunks, chunks.size() - 1);
+    }
+
+    /**
+     * @param line a line number
+     * @return offset of the start of the line, or of the first available character of it
+     */
+    public long getLineStart(long line) {
+        if (line <= getFirstLine()) {
+            return getStart();
+        }
+        if (line > lineBreaks) {
+            return getLength();
+        }
+        // the last chunk with a line break before the line
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunks.get(mid).linesBefore < line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Chunk chunk = chunks.get(low);
+        char[] text = textOf(chunk);
+        long breaks = line - chunk.linesBefore;
+        for (int i = 0; i < chunk.length; i++) {
+            if (text[i] == '\n' && --breaks == 0) {
+                return chunk.start + i + 1;
+            }
+        }
+        return getLength(); // not reached
+    }
+
+    /**
+     * @param line a line number
+     * @return offset of the line break ending the line, or the length for the last line
+     */
+    public long getLineEnd(long line) {
+        return (line >= lineBreaks) ? getLength() : getLineStart(line + 1) - 1;
+    }
+
+    /**
+     * @param offset an available offset
+     * @return number of the line it is in
+     */
+    public long getLineOfOffset(long offset) {
+        if (offset >= getLength()) {
+            return lineBreaks;
+        }
+        offset = Math.max(offset, getStart());
+        Chunk chunk = chunks.get(chunkIndex(offset));
+        char[] text = textOf(chunk);
+        long line = chunk.linesBefore;
+        int end = (int) (offset - chunk.start);
+        for (int i = 0; i < end; i++) {
+            if (text[i] == '\n') line++;
+        }
+        return line;
+    }
+
+    /**
+     * @param start offset of the first character
+     * @param end   offset just past the last character
+     * @return the text between them that is available
+     */
+    public String getText(long start, long end) {
+        start = Math.max(start, getStart());
+        end = Math.min(end, getLength());
+        if (start >= end) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder((int) Math.min(end - start, Integer.MAX_VALUE - 8));
+        for (int c = chunkIndex(start); c < chunks.size() && start < end; c++) {
+            Chunk chunk = chunks.get(c);
+            int from = (int) (start - chunk.start);
+            int to = (int) Math.min(chunk.length, end - chunk.start);
+            text.append(textOf(chunk), from, to - from);
+            start = chunk.start + to;
+        }
+        return text.toString();
+    }
+
+    /**
+     * Finds a character, searching forward.
+     *
+     * @param c    the character to find
+     * @param from offset to start looking at
+     * @return offset of the first one at or after from, or -1 if none
+     */
+    public long indexOf(char c, long from) {
+        from = Math.max(from, getStart());
+        for (int k = chunkIndex(from); k < chunks.size() && from < getLength(); k++) {
+            Chunk chunk = chunks.get(k);
+            char[] text = textOf(chunk);
+            for (int i = (int) (from - chunk.start); i < chunk.length; i++) {
+                if (text[i] == c) {
+                    return chunk.start + i;
+                }
+            }
+            from = chunk.start + chunk.length;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds text, searching forward.  Matches may span chunks, including spilled ones.
+     *
+     * @param s    the text to find
+     * @param from offset to start looking at
+     * @return offset of the first match at or after from, or -1 if none
+     */
+    public long indexOf(String s, long from) {
+        if (s.isEmpty()) {
+            return -1;
+        }
+        from = Math.max(from, getStart());
+        // Carry the end of each chunk over to the next in case a match spans them.
+        String carry = "";
+        long carryStart = from;
+        for (int c = chunkIndex(from); c < chunks.size() && from < getLength(); c++) {
+            Chunk chunk = chunks.get(c);
+            int begin = (int) Math.max(0, from - chunk.start);
+            String text = carry + new String(textOf(chunk), begin, chunk.length - begin);
+            int i = text.indexOf(s);
+            if (i >= 0) {
+                return carryStart + i;
+            }
+            int keep = Math.min(text.length(), s.length() - 1);
+            carry = text.substring(text.length() - keep);
+            carryStart = chunk.start + chunk.length - keep;
+        }
+        return -1;
+    }
+}
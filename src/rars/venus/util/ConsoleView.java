@@ -0,0 +1,395 @@
+package rars.venus.util;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.*;
+import java.io.IOException;
+
+/**
+ * A console for the Run I/O tab that can hold millions of lines.  The text is
+ * kept in a {@link ConsoleText}, and only the lines that can be seen are drawn;
+ * nothing is laid out ahead of time, so appending costs the same however much
+ * there is.  The font is monospaced, so the size of the view follows from the
+ * number of lines and the width of the widest one.
+ * <p>
+ * The text can be selected with the mouse (shift-click extends) or with ctrl-A,
+ * copied with ctrl-C and searched with {@link #find}, all over the whole history.
+ * While input is wanted ({@link #startInput}) typed and pasted characters
+ * are collected after the end of the text and reported to an {@link InputListener}.
+ * <p>
+ * Must only be used from the GUI thread.
+ */
+public final class ConsoleView extends JComponent implements Scrollable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Told about each change of the input being typed.
+     */
+    public interface InputListener {
+        /**
+         * @param input everything typed since input was started, including a
+         *              final '\n' if return was pressed
+         */
+        void inputChanged(String input);
+    }
+
+    // Lines wider than this are cut off on screen, but still copied and searched.
+    private static final int MAX_COLUMNS = 1 << 16;
+    // Copying more than this to the clipboard is not likely to be wanted.
+    private static final int MAX_COPY_CHARACTERS = 1 << 26;
+
+    private final ConsoleText text;
+    private long selectionStart, selectionEnd; // selectionStart may be after selectionEnd
+    private StringBuilder input;
+    private InputListener inputListener;
+    private int lineHeight, charWidth, ascent;
+
+    /**
+     * @param text where the text is kept
+     */
+    public ConsoleView(ConsoleText text) {
+        this.text = text;
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        setBackground(UIManager.getColor("TextArea.background"));
+        setForeground(UIManager.getColor("TextArea.foreground"));
+        setOpaque(true);
+        setFocusable(true);
+        setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
+        MouseAdapter mouse = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
+                long offset = offsetAt(e.getPoint());
+                if (!e.isShiftDown()) {
+                    selectionStart = offset;
+                }
+                selectionEnd = offset;
+                repaint();
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                selectionEnd = offsetAt(e.getPoint());
+                scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addKeyListener(new KeyAdapter() {
+            public void keyTyped(KeyEvent e) {
+                if (input != null && !e.isControlDown() && !e.isAltDown() && !e.isMetaDown()) {
+                    type(String.valueOf(e.getKeyChar()));
+                }
+            }
+        });
+        int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, menuMask), "copy");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_A, menuMask), "selectAll");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_V, menuMask), "paste");
+        getActionMap().put("copy", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                copy();
+            }
+        });
+        getActionMap().put("selectAll", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                selectionStart = text.getStart();
+                selectionEnd = text.getLength();
+                repaint();
+            }
+        });
+        getActionMap().put("paste", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                paste();
+            }
+        });
+    }
+
+    public void setFont(Font font) {
+        super.setFont(font);
+        FontMetrics metrics = getFontMetrics(font);
+        lineHeight = metrics.getHeight();
+        charWidth = metrics.charWidth('m');
+        ascent = metrics.getAscent();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Adds text at the end, and scrolls to it if the end was showing.
+     *
+     * @param s the text to add
+     */
+    public void append(String s) {
+        boolean atEnd = isEndVisible();
+        text.append(s);
+        textChanged(atEnd);
+    }
+
+    /**
+     * Removes all of the text.
+     */
+    public void clear() {
+        text.clear();
+        selectionStart = selectionEnd = 0;
+        textChanged(true);
+    }
+
+    private void textChanged(boolean scrollToEnd) {
+        revalidate();
+        repaint();
+        if (scrollToEnd) {
+            // after the scroll pane has taken the new size
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    scrollToEnd();
+                }
+            });
+        }
+    }
+
+    private boolean isEndVisible() {
+        Rectangle visible = getVisibleRect();
+        return visible.y + visible.height >= getPreferredSize().height - lineHeight;
+    }
+
+    private void scrollToEnd() {
+        Rectangle visible = getVisibleRect();
+        scrollRectToVisible(new Rectangle(visible.x, getPreferredSize().height - lineHeight, 1, lineHeight));
+    }
+
+    /**
+     * Starts collecting typed characters at the end of the text.
+     *
+     * @param listener told about every change to the input
+     */
+    public void startInput(InputListener listener) {
+        input = new StringBuilder();
+        inputListener = listener;
+        requestFocusInWindow();
+        textChanged(true);
+    }
+
+    /**
+     * Stops collecting input, and adds what was typed to the text.
+     */
+    public void endInput() {
+        if (input != null) {
+            String typed = input.toString();
+            input = null;
+            inputListener = null;
+            append(typed);
+        }
+    }
+
+    private void type(String typed) {
+        for (int i = 0; i < typed.length() && input != null; i++) {
+            char c = typed.charAt(i);
+            if (c == '\b') {
+                if (input.length() > 0) input.setLength(input.length() - 1);
+            } else if (c == '\n' || c == '\t' || c >= ' ' && c != 127) {
+                input.append(c);
+            } else {
+                continue;
+            }
+            textChanged(true);
+            // The listener may end the input, which stops the rest being typed.
+            inputListener.inputChanged(input.toString());
+        }
+    }
+
+    private void copy() {
+        long start = Math.min(selectionStart, selectionEnd);
+        long end = Math.min(Math.max(selectionStart, selectionEnd), start + MAX_COPY_CHARACTERS);
+        if (start < end) {
+            StringSelection selection = new StringSelection(text.getText(start, end));
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+        }
+    }
+
+    private void paste() {
+        if (input == null) {
+            return;
+        }
+        try {
+            Object pasted = Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
+            type((String) pasted);
+        } catch (UnsupportedFlavorException | IOException | IllegalStateException e) {
+            // nothing to paste
+        }
+    }
+
+    /**
+     * Finds text after the selection, going back to the start if it is not found
+     * there, and selects and shows it.
+     *
+     * @param s the text to find
+     * @return whether it was found
+     */
+    public boolean find(String s) {
+        long offset = text.indexOf(s, Math.max(selectionStart, selectionEnd));
+        if (offset < 0) {
+            offset = text.indexOf(s, text.getStart());
+        }
+        if (offset < 0) {
+            return false;
+        }
+        selectionStart = offset;
+        selectionEnd = offset + s.length();
+        long line = text.getLineOfOffset(offset);
+        int column = columnOf(line, offset);
+        scrollRectToVisible(new Rectangle(column * charWidth, lineY(line),
+                s.length() * charWidth, lineHeight));
+        repaint();
+        return true;
+    }
+
+    // Lines shown, counting the first (maybe partly dropped) one.
+    private long visibleLines() {
+        return text.getLineCount() - text.getFirstLine();
+    }
+
+    private int lineY(long line) {
+        return (int) Math.min((line - text.getFirstLine()) * lineHeight, Integer.MAX_VALUE - lineHeight);
+    }
+
+    private int columnOf(long line, long offset) {
+        long start = text.getLineStart(line);
+        String chars = text.getText(start, Math.min(offset, start + MAX_COLUMNS));
+        int column = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            column = ConsoleText.nextColumn(column, chars.charAt(i));
+        }
+        return column;
+    }
+
+    private long offsetAt(Point p) {
+        long line = text.getFirstLine() + Math.max(0, p.y) / lineHeight;
+        if (line >= text.getLineCount()) {
+            return text.getLength();
+        }
+        long start = text.getLineStart(line);
+        long end = text.getLineEnd(line);
+        int wanted = Math.max(0, (p.x + charWidth / 2) / charWidth);
+        String chars = text.getText(start, Math.min(end, start + Math.min(wanted, MAX_COLUMNS)));
+        int column = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            int next = ConsoleText.nextColumn(column, chars.charAt(i));
+            if (next > wanted) {
+                return start + i;
+            }
+            column = next;
+        }
+        return start + chars.length();
+    }
+
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setFont(getFont());
+        long firstLine = text.getFirstLine() + clip.y / lineHeight;
+        long lastLine = Math.min(text.getLineCount() - 1, text.getFirstLine() + (clip.y + clip.height) / lineHeight);
+        int lastColumn = Math.min(MAX_COLUMNS, (clip.x + clip.width) / charWidth + 1);
+        long selectionLow = Math.max(Math.min(selectionStart, selectionEnd), text.getStart());
+        long selectionHigh = Math.max(selectionStart, selectionEnd);
+        Color selectionColor = UIManager.getColor("TextArea.selectionBackground");
+        char[] line = new char[lastColumn + ConsoleText.TAB_SIZE];
+        long start = text.getLineStart(firstLine);
+        for (long l = firstLine; l <= lastLine; l++) {
+            long end = text.indexOf('\n', start);
+            if (end < 0) end = text.getLength();
+            String chars = text.getText(start, Math.min(end, start + lastColumn));
+            int y = lineY(l);
+            // the part of the selection in this line, counting its line break
+            long selectedFrom = Math.max(selectionLow, start);
+            long selectedTo = Math.min(selectionHigh, end + 1);
+            int fromColumn = -1, toColumn = -1;
+            int column = 0;
+            int i = 0;
+            for (; i < chars.length() && column < lastColumn; i++) {
+                if (start + i == selectedFrom) fromColumn = column;
+                if (start + i == selectedTo) toColumn = column;
+                char c = chars.charAt(i);
+                int next = ConsoleText.nextColumn(column, c);
+                char shown = (c < ' ') ? ' ' : c;
+                while (column < next) {
+                    line[column++] = shown;
+                    shown = ' ';
+                }
+            }
+            if (selectedFrom < selectedTo) {
+                long looked = start + i;
+                if (fromColumn < 0) fromColumn = (selectedFrom <= looked) ? column : lastColumn + 1;
+                if (toColumn < 0) {
+                    if (selectedTo <= looked) toColumn = column;
+                    else toColumn = (looked == end) ? column + 1 : lastColumn + 1; // just the line break, or off to the right
+                }
+                g.setColor(selectionColor);
+                g.fillRect(fromColumn * charWidth, y, (toColumn - fromColumn) * charWidth, lineHeight);
+            }
+            g.setColor(getForeground());
+            g.drawChars(line, 0, Math.min(column, lastColumn), 0, y + ascent);
+            if (l == text.getLineCount() - 1 && input != null) {
+                paintInput(g, column, y);
+            }
+            start = end + 1;
+        }
+    }
+
+    // Input goes after the end of the text, and may go on to more lines.
+    private void paintInput(Graphics g, int column, int y) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '\n') {
+                column = 0;
+                y += lineHeight;
+                continue;
+            }
+            int next = ConsoleText.nextColumn(column, c);
+            if (c != '\t') {
+                g.drawChars(new char[]{c}, 0, 1, column * charWidth, y + ascent);
+            }
+            column = next;
+        }
+        if (hasFocus()) {
+            g.fillRect(column * charWidth, y, 1, lineHeight);
+        }
+    }
+
+    public Dimension getPreferredSize() {
+        long lines = visibleLines() + (input == null ? 0 : 1);
+        int columns = Math.min(MAX_COLUMNS, Math.max(text.getMaxColumns(),
+                text.getLastColumn() + (input == null ? 0 : input.length())) + 1);
+        return new Dimension(columns * charWidth,
+                (int) Math.min(lines * lineHeight, Integer.MAX_VALUE - lineHeight));
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL) ? lineHeight : charWidth;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+                ? Math.max(lineHeight, visible.height - lineHeight) : visible.width;
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getHeight() > getPreferredSize().height;
+    }
+}
@@ -0,0 +1,371 @@
+import rars.*;
+import rars.api.Options;
+import rars.api.Program;
+import rars.riscv.InstructionSet;
+import rars.riscv.hardware.Memory;
+import rars.simulator.Simulator;
+import rars.util.SystemIO;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput benchmarks for the hot paths of RARS: the simulator loop, memory access,
+ * instruction decoding, the assembler and console syscalls.  Run from the repository
+ * root with bench.sh after building rars.jar:
+ *
+ * <pre>
+ *   ./bench.sh [-o results.json] [-w warmups] [-i iterations] [-t seconds] [regex]
+ * </pre>
+ *
+ * Each benchmark is run for a number of timed iterations after some warmup iterations,
+ * and its score is the mean number of operations per second.  The results are written
+ * as JSON (one object per benchmark, shaped like JMH's) so runs from two versions can
+ * be compared.
+ */
+public class Benchmark {
+    private interface Op {
+        void run() throws Exception;
+    }
+
+    private static final int ADDRESSES = 1024;
+    // Results go here so the JIT can not drop the work being measured.
+    private static volatile long sink;
+
+    private static int warmups = 3, iterations = 5;
+    private static long iterationNanos = 1000000000L;
+    private static Pattern filter = null;
+    private static final StringBuilder json = new StringBuilder();
+
+    public static void main(String[] args) throws Exception {
+        String output = "bench.json";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-o")) {
+                output = args[++i];
+            } else if (args[i].equals("-w")) {
+                warmups = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-i")) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t")) {
+                iterationNanos = (long) (Double.parseDouble(args[++i]) * 1e9);
+            } else {
+                filter = Pattern.compile(args[i]);
+            }
+        }
+        Globals.initialize();
+        Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED, false);
+        InstructionSet.rv64 = false;
+        Globals.instructionSet.populate();
+
+        json.append('[');
+        simulatorBenchmarks();
+        memoryBenchmarks();
+        decodeBenchmarks();
+        assemblerBenchmarks();
+        syscallBenchmarks();
+        json.append("\n]\n");
+
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(output), "UTF-8")) {
+            w.write(json.toString());
+        }
+        System.out.println("Results written to " + output);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Simulator: one operation is one complete run of a program (or suite).
+
+    private static void simulatorBenchmarks() throws Exception {
+        Options opt = new Options();
+        opt.startAtMain = true;
+        final Program loop = new Program(opt);
+        loop.assembleString(loopProgram(10000));
+        bench("simulate.loop", 1, new Op() {
+            public void run() throws Exception {
+                simulate(loop, "");
+            }
+        });
+
+        final Program bottles = new Program(opt);
+        bottles.assemble(new ArrayList<>(Arrays.asList("examples/bottles.s", "examples/printf.s",
+                "examples/printnum.s", "examples/printstr.s")), "examples/bottles.s");
+        bench("simulate.examples.bottles", 1, new Op() {
+            public void run() throws Exception {
+                simulate(bottles, "");
+            }
+        });
+
+        final ArrayList<Program> suite = new ArrayList<>();
+        File[] tests = new File("test/riscv-tests").listFiles();
+        if (tests != null) {
+            Arrays.sort(tests);
+            for (File test : tests) {
+                if (test.getName().endsWith(".s")) {
+                    Program p = new Program(opt);
+                    p.assemble(test.getPath());
+                    suite.add(p);
+                }
+            }
+        }
+        bench("simulate.riscvTests", 1, new Op() {
+            public void run() throws Exception {
+                for (Program p : suite) {
+                    simulate(p, "");
+                }
+            }
+        });
+    }
+
+    private static void simulate(Program p, String stdin) throws SimulationException {
+        p.setup(null, stdin);
+        Simulator.Reason reason = p.simulate();
+        if (reason != Simulator.Reason.NORMAL_TERMINATION) {
+            throw new IllegalStateException("program ended with " + reason);
+        }
+        sink += p.getExitCode();
+    }
+
+    // A counting loop with arithmetic, loads, stores and branches in its body.
+    private static String loopProgram(int count) {
+        return ".data\nbuf: .space 64\n.text\nmain:\n" +
+                "  li t0, " + count + "\n" +
+                "  la t1, buf\n" +
+                "  li t2, 0\n" +
+                "loop:\n" +
+                "  add t2, t2, t0\n" +
+                "  andi t3, t0, 15\n" +
+                "  slli t3, t3, 2\n" +
+                "  add t4, t1, t3\n" +
+                "  sw t2, 0(t4)\n" +
+                "  lw t5, 0(t4)\n" +
+                "  xor t2, t2, t5\n" +
+                "  addi t0, t0, -1\n" +
+                "  bnez t0, loop\n" +
+                "  li a0, 0\n" +
+                "  li a7, 93\n" +
+                "  ecall\n";
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Memory: one operation is one access, by size and segment.
+
+    private static void memoryBenchmarks() throws Exception {
+        final Memory memory = new Memory();
+        Memory old = Memory.swapInstance(memory);
+        String[] segments = {"data", "heap", "stack"};
+        int[] bases = {Memory.dataSegmentBaseAddress, Memory.heapBaseAddress, Memory.stackPointer - 8 * ADDRESSES};
+        for (int s = 0; s < segments.length; s++) {
+            final int base = bases[s];
+            String segment = segments[s];
+            bench("memory.setByte." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    for (int i = 0; i < ADDRESSES; i++) memory.setByte(base + i, i);
+                }
+            });
+            bench("memory.getByte." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    long sum = 0;
+                    for (int i = 0; i < ADDRESSES; i++) sum += memory.getByte(base + i);
+                    sink += sum;
+                }
+            });
+            bench("memory.setHalf." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    for (int i = 0; i < ADDRESSES; i++) memory.setHalf(base + 2 * i, i);
+                }
+            });
+            bench("memory.getHalf." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    long sum = 0;
+                    for (int i = 0; i < ADDRESSES; i++) sum += memory.getHalf(base + 2 * i);
+                    sink += sum;
+                }
+            });
+            bench("memory.setWord." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    for (int i = 0; i < ADDRESSES; i++) memory.setWord(base + 4 * i, i);
+                }
+            });
+            bench("memory.getWord." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    long sum = 0;
+                    for (int i = 0; i < ADDRESSES; i++) sum += memory.getWord(base + 4 * i);
+                    sink += sum;
+                }
+            });
+            bench("memory.setDoubleWord." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    for (int i = 0; i < ADDRESSES; i++) memory.setDoubleWord(base + 8 * i, i);
+                }
+            });
+            bench("memory.getDoubleWord." + segment, ADDRESSES, new Op() {
+                public void run() throws Exception {
+                    long sum = 0;
+                    for (int i = 0; i < ADDRESSES; i++) sum += memory.getDoubleWord(base + 8 * i);
+                    sink += sum;
+                }
+            });
+        }
+        Memory.swapInstance(old);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Decoding: one operation is one machine word.
+
+    private static void decodeBenchmarks() throws Exception {
+        Program p = new Program(new Options());
+        p.assembleString(mixedSource(200));
+        p.setup(null, "");
+        final ArrayList<Integer> found = new ArrayList<>();
+        for (int address = Memory.textBaseAddress; ; address += 4) {
+            Integer word = p.getMemory().getRawWordOrNull(address);
+            if (word == null) break;
+            found.add(word);
+        }
+        final int[] words = new int[found.size()];
+        for (int i = 0; i < words.length; i++) words[i] = found.get(i);
+        final int textBase = Memory.textBaseAddress;
+
+        bench("instructionSet.findByBinaryCode", words.length, new Op() {
+            public void run() {
+                long sum = 0;
+                for (int word : words) sum += Globals.instructionSet.findByBinaryCode(word).hashCode();
+                sink += sum;
+            }
+        });
+        bench("programStatement.fromBinary", words.length, new Op() {
+            public void run() {
+                long sum = 0;
+                for (int i = 0; i < words.length; i++) {
+                    sum += new ProgramStatement(words[i], textBase + 4 * i).getBinaryStatement();
+                }
+                sink += sum;
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Assembler: one operation is assembling one source.
+
+    private static void assemblerBenchmarks() throws Exception {
+        final Program p = new Program(new Options());
+        final String small = mixedSource(10), large = mixedSource(2000);
+        bench("assembler.small", 1, new Op() {
+            public void run() throws Exception {
+                p.assembleString(small);
+            }
+        });
+        bench("assembler.large", 1, new Op() {
+            public void run() throws Exception {
+                p.assembleString(large);
+            }
+        });
+    }
+
+    // Blocks of basic and pseudo-instructions, labels and data, about 16 lines each.
+    private static String mixedSource(int blocks) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < blocks; i++) {
+            source.append(".data\n")
+                    .append("d").append(i).append(": .word ").append(i).append(", ").append(-i).append('\n')
+                    .append("s").append(i).append(": .asciz \"block ").append(i).append("\"\n")
+                    .append(".text\n")
+                    .append("l").append(i).append(":\n")
+                    .append("  la t0, d").append(i).append('\n')
+                    .append("  lw t1, 0(t0)\n")
+                    .append("  lw t2, 4(t0)\n")
+                    .append("  add t3, t1, t2\n")
+                    .append("  li t4, ").append(i * 4099).append('\n')
+                    .append("  sub t5, t4, t3\n")
+                    .append("  sw t5, 0(t0)\n")
+                    .append("  slli t6, t5, 3\n")
+                    .append("  mul a0, t6, t1\n")
+                    .append("  fcvt.s.w ft0, a0\n")
+                    .append("  fadd.s ft1, ft0, ft0\n")
+                    .append("  beqz a0, l").append(i).append('\n')
+                    .append("  bgt a0, t1, l").append(i).append('\n');
+        }
+        return source.toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Console syscalls: one operation is one print or read through SystemIO.
+
+    private static void syscallBenchmarks() throws Exception {
+        final int lines = 100;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < lines; i++) input.append(i * 7).append('\n');
+        final byte[] inputBytes = input.toString().getBytes("UTF-8");
+
+        SystemIO.Data old = SystemIO.swapData(new SystemIO.Data(new ByteArrayInputStream(new byte[0]), out, err));
+        bench("syscall.printString", lines, new Op() {
+            public void run() {
+                for (int i = 0; i < lines; i++) SystemIO.printString("Hello, world\n");
+                sink += out.size();
+                out.reset();
+            }
+        });
+        bench("syscall.readInteger", lines, new Op() {
+            public void run() {
+                SystemIO.swapData(new SystemIO.Data(new ByteArrayInputStream(inputBytes), out, err));
+                long sum = 0;
+                for (int i = 0; i < lines; i++) sum += SystemIO.readInteger(5);
+                sink += sum;
+            }
+        });
+        SystemIO.swapData(old);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Runs the warmup and timed iterations, and reports the result.
+
+    private static void bench(String name, int opsPerCall, Op op) throws Exception {
+        if (filter != null && !filter.matcher(name).find()) {
+            return;
+        }
+        for (int i = 0; i < warmups; i++) {
+            iteration(op, opsPerCall);
+        }
+        double[] scores = new double[iterations];
+        double mean = 0;
+        for (int i = 0; i < iterations; i++) {
+            scores[i] = iteration(op, opsPerCall);
+            mean += scores[i];
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        // Half width of a rough 95% confidence interval
+        double error = (iterations > 1) ? 1.96 * Math.sqrt(variance / (iterations - 1)) / Math.sqrt(iterations) : Double.NaN;
+
+        System.out.println(String.format(Locale.ROOT, "%-36s %16.1f +- %12.1f ops/s", name, mean, error));
+        json.append((json.length() > 1) ? ",\n" : "\n");
+        json.append(String.format(Locale.ROOT,
+                "  {\"benchmark\": \"%s\", \"mode\": \"thrpt\", \"rarsVersion\": \"%s\", \"jdkVersion\": \"%s\", " +
+                        "\"warmupIterations\": %d, \"measurementIterations\": %d, \"iterationTime\": \"%.3f s\", " +
+                        "\"primaryMetric\": {\"score\": %.3f, \"scoreError\": %s, \"scoreUnit\": \"ops/s\", \"rawData\": [[",
+                name, Globals.version, System.getProperty("java.version"),
+                warmups, iterations, iterationNanos / 1e9, mean,
+                Double.isNaN(error) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", error)));
+        for (int i = 0; i < scores.length; i++) {
+            json.append((i == 0) ? "" : ", ").append(String.format(Locale.ROOT, "%.3f", scores[i]));
+        }
+        json.append("]]}}");
+    }
+
+    // Calls the operation until the iteration time is up; returns operations per second.
+    private static double iteration(Op op, int opsPerCall) throws Exception {
+        long calls = 0;
+        long start = System.nanoTime(), elapsed;
+        do {
+            op.run();
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return calls * (double) opsPerCall * 1e9 / elapsed;
+    }
+}
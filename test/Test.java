@@ -1,20 +1,29 @@
 import rars.*;
 import rars.api.Options;
 import rars.api.Program;
+import rars.api.Server;
+import rars.assembler.IncrementalAssembler;
+import rars.assembler.Symbol;
 import rars.riscv.*;
+import rars.riscv.hardware.AddressErrorException;
+import rars.riscv.hardware.Memory;
 import rars.simulator.Simulator;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 
 public class Test {
+    private static Options opt;
+
     public static void main(String[] args){
         Globals.initialize();
         Globals.getSettings().setBooleanSettingNonPersistent(Settings.Bool.RV64_ENABLED,false);
         InstructionSet.rv64 = false;
         Globals.instructionSet.populate();
-        Options opt = new Options();
+        opt = new Options();
         opt.startAtMain = true;
         opt.maxSteps = 1000;
         Program p = new Program(opt);
@@ -35,6 +44,8 @@ public class Test {
                 }
             }
         }
+        // fileio.s writes this file and has no syscall to remove it
+        new File("fileio_test.tmp").delete();
         if(riscv_tests == null){
             System.out.println("./test/riscv-tests doesn't exist");
             return;
@@ -73,10 +84,13 @@ public class Test {
         System.out.println(total);
         checkBinary();
         checkPsuedo();
+        checkServer();
+        checkIncremental();
     }
     public static String run(String path, Program p){
         int[] errorlines = null;
         String stdin = "", stdout = "", stderr ="";
+        boolean libraryCallInstructions = false;
         // TODO: better config system
         // This is just a temporary solution that should work for the tests I want to write
         try {
@@ -95,6 +109,8 @@ public class Test {
                     stdout = line.replaceFirst("#stdout:", "").replaceAll("\\\\n","\n");
                 } else if (line.startsWith("#stderr:")) {
                     stderr = line.replaceFirst("#stderr:", "").replaceAll("\\\\n","\n");
+                } else if (line.startsWith("#lc")) {
+                    libraryCallInstructions = true;
                 }
                 line = br.readLine();
             }
@@ -109,6 +125,7 @@ public class Test {
                 return "Expected asssembly error, but successfully assembled " + path;
             }
             p.setup(null,stdin);
+            opt.libraryCallInstructions = libraryCallInstructions;
             Simulator.Reason r = p.simulate();
             if(r != Simulator.Reason.NORMAL_TERMINATION){
                 return "Ended abnormally while executing " + path;
@@ -279,4 +296,139 @@ public class Test {
         // Updated to 10: because fsrmi and fsflagsi were removed
         if(skips != 10) System.out.println("Unexpected number of psuedo-instructions skipped.");
     }
+
+    public static void checkServer(){
+        // One job per line in, one response per line out, in the same order.  The endless
+        // loops must be stopped so that the job after them is still answered.
+        String[][] jobs = {
+                {"{\"id\":1,\"source\":\"li a0, 72\\nli a7, 11\\necall\\nli a0, 42\\nli a7, 93\\necall\"}",
+                        "{\"id\":1,\"reason\":\"NORMAL_TERMINATION\",\"exitCode\":42,\"stdout\":\"H\""},
+                {"{\"id\":2,\"source\":\"loop: j loop\",\"maxSteps\":1000}",
+                        "{\"id\":2,\"reason\":\"MAX_STEPS\""},
+                {"{\"id\":3,\"source\":\"loop: j loop\",\"maxSteps\":0,\"timeoutMillis\":200}",
+                        "{\"id\":3,\"reason\":\"TIMEOUT\""},
+                {"{\"id\":4,\"source\":\"nop\",\"maxSteps\":4294967296}",
+                        "{\"id\":4,\"reason\":\"INVALID_JOB\""},
+                {"{\"id\":5,\"source\":\"li a0, 42\\nli a7, 93\\necall\",\"registers\":[\"a0\"]}",
+                        "{\"id\":5,\"reason\":\"NORMAL_TERMINATION\",\"exitCode\":42,\"stdout\":\"\",\"stderr\":\"\",\"registers\":{\"a0\":42}}"},
+        };
+        StringBuilder input = new StringBuilder();
+        for (String[] job : jobs) {
+            input.append(job[0]).append('\n');
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            new Server().serve(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)), output);
+        } catch (IOException e) {
+            System.out.println("Server failed: " + e);
+            return;
+        }
+        String[] responses = new String(output.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        if (responses.length != jobs.length) {
+            System.out.println("Server gave " + responses.length + " responses to " + jobs.length + " jobs");
+            return;
+        }
+        for (int i = 0; i < jobs.length; i++) {
+            if (!responses[i].startsWith(jobs[i][1])) {
+                System.out.println("Server response was wrong for " + jobs[i][0] + "\n Expected \"" + jobs[i][1] + "...\" got \"" + responses[i] + "\"");
+            }
+        }
+    }
+
+    public static void checkIncremental(){
+        // Three files assembled by IncrementalAssembler and edited in turn: each result must
+        // be the same as assembling the edited files from scratch.
+        String a = ".data\nptr: .word cval, fn, local\nlocal: .word 5\n.text\n.globl main\n"
+                + "main: la t1, cval\n  lw t0, 0(t1)\n  jal ra, fn\n  li a7, 10\n  ecall\n";
+        String b = ".text\n.globl fn\nfn: add a0, a0, a0\n  slli a0, a0, 1\n  la t2, cval\n  ret\n";
+        String c = ".eqv SIZE, 7\n.data\n.globl cval\npad: .byte 1\ncval: .word SIZE, fn\n"
+                + ".text\ncfn: li t0, SIZE\n  j fn\n";
+        String[][] edits = {
+                {a, b, c},
+                // an instruction replaced, so its statement is patched in
+                {a, b.replace("slli a0, a0, 1", "srai a0, a0, 2"), c},
+                // a line added, so c moves: a keeps its first pass, b and c are parsed again
+                {a, b.replace("ret", "addi a0, a0, 1\n  ret"), c},
+                // an .eqv changed, which can change other lines, so c is assembled again in full
+                {a, b.replace("ret", "addi a0, a0, 1\n  ret"), c.replace("SIZE, 7", "SIZE, 8")},
+        };
+        String[] names = {"a.s", "b.s", "c.s"};
+        File dir;
+        try {
+            dir = Files.createTempDirectory("rars").toFile();
+        } catch (IOException e) {
+            System.out.println("Incremental assemble failed: " + e);
+            return;
+        }
+        ArrayList<String> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(new File(dir, name).getPath());
+        }
+        IncrementalAssembler incremental = new IncrementalAssembler();
+        ArrayList<ProgramStatement> previousParsedList = null;
+        try {
+            for (int step = 0; step < edits.length; step++) {
+                for (int i = 0; i < names.length; i++) {
+                    Files.write(new File(files.get(i)).toPath(), edits[step][i].getBytes(StandardCharsets.UTF_8));
+                }
+                incremental.assemble(new ArrayList<>(files), files.get(0), null, true, false);
+                ArrayList<RISCVprogram> programs = incremental.getProgramsToAssemble();
+                String result = describeAssembly(incremental.getLeadProgram(), programs);
+                boolean patched = incremental.getPatchedStatements() != null;
+                boolean replayed = programs.get(0).getParsedList() == previousParsedList;
+                previousParsedList = programs.get(0).getParsedList();
+
+                RISCVprogram lead = new RISCVprogram();
+                ArrayList<RISCVprogram> fullPrograms = lead.prepareFilesForAssembly(new ArrayList<>(files), files.get(0), null);
+                lead.assemble(fullPrograms, true, false);
+                String expected = describeAssembly(lead, fullPrograms);
+
+                if (!result.equals(expected)) {
+                    System.out.println("Incremental assemble " + step + " was wrong\n Expected \"" + expected + "\" got \"" + result + "\"");
+                }
+                if (patched != (step == 1)) {
+                    System.out.println("Incremental assemble " + step + (patched ? " was" : " was not") + " patched");
+                }
+                if (replayed != (step >= 1)) {
+                    System.out.println("Incremental assemble " + step + (replayed ? " did not parse" : " parsed") + " the unchanged lead file");
+                }
+            }
+        } catch (AssemblyException ae) {
+            System.out.println("Incremental assemble failed: " + ae.errors().generateErrorAndWarningReport());
+        } catch (IOException | AddressErrorException e) {
+            System.out.println("Incremental assemble failed: " + e);
+        } finally {
+            for (String file : files) {
+                new File(file).delete();
+            }
+            dir.delete();
+        }
+    }
+
+    // The machine code and data in memory, and the global and local symbol tables.
+    private static String describeAssembly(RISCVprogram lead, ArrayList<RISCVprogram> programs) throws AddressErrorException {
+        StringBuilder description = new StringBuilder("text:");
+        int textEnd = Memory.textBaseAddress + 4 * lead.getMachineList().size();
+        for (int address = Memory.textBaseAddress; address < textEnd; address += 4) {
+            ProgramStatement statement = Globals.memory.getStatementNoNotify(address);
+            description.append(' ').append(statement == null ? "-" : Integer.toHexString(statement.getBinaryStatement()));
+        }
+        description.append("\ndata:");
+        for (int address = Memory.dataBaseAddress; address < Memory.dataBaseAddress + 64; address += 4) {
+            description.append(' ').append(Integer.toHexString(Globals.memory.getWordNoNotify(address)));
+        }
+        description.append("\nglobals:");
+        appendSymbols(description, Globals.symbolTable.getAllSymbols());
+        for (RISCVprogram program : programs) {
+            description.append("\n").append(new File(program.getFilename()).getName()).append(':');
+            appendSymbols(description, program.getLocalSymbolTable().getAllSymbols());
+        }
+        return description.toString();
+    }
+
+    private static void appendSymbols(StringBuilder description, ArrayList<Symbol> symbols) {
+        for (Symbol symbol : symbols) {
+            description.append(' ').append(symbol.getName()).append('=').append(Integer.toHexString(symbol.getAddress()));
+        }
+    }
 }
@@ -0,0 +1,112 @@
+.globl main
+.data
+name:   .asciz "fileio_test.tmp"
+abc:    .ascii "abc"
+de:     .ascii "de"
+f:      .ascii "f"
+buffer: .space 8
+expect: .ascii "abcdef"
+.text
+main:
+	# Start with an empty file
+	la a0, name
+	li a1, 1
+	li a7, 1024
+	ecall
+	bltz a0, failure
+	li a7, 57
+	ecall
+
+	# Read-write: write, seek back and read it again
+	la a0, name
+	li a1, 2
+	li a7, 1024
+	ecall
+	bltz a0, failure
+	mv s0, a0
+	la a1, abc
+	li a2, 3
+	li a7, 64
+	ecall
+	li t0, 3
+	bne a0, t0, failure
+	mv a0, s0
+	li a1, 0
+	li a2, 0
+	li a7, 62
+	ecall
+	bnez a0, failure
+	mv a0, s0
+	la a1, buffer
+	li a2, 8
+	li a7, 63
+	ecall
+	li t0, 3
+	bne a0, t0, failure
+	mv a0, s0
+	li a7, 57
+	ecall
+
+	# Read-write-append: writes go at the end even after seeking to the start
+	la a0, name
+	li a1, 10
+	li a7, 1024
+	ecall
+	bltz a0, failure
+	mv s0, a0
+	la a1, de
+	li a2, 2
+	li a7, 64
+	ecall
+	li t0, 2
+	bne a0, t0, failure
+	mv a0, s0
+	li a1, 0
+	li a2, 0
+	li a7, 62
+	ecall
+	bnez a0, failure
+	mv a0, s0
+	la a1, f
+	li a2, 1
+	li a7, 64
+	ecall
+	li t0, 1
+	bne a0, t0, failure
+	mv a0, s0
+	li a1, 0
+	li a2, 0
+	li a7, 62
+	ecall
+	bnez a0, failure
+	mv a0, s0
+	la a1, buffer
+	li a2, 8
+	li a7, 63
+	ecall
+	li t0, 6
+	bne a0, t0, failure
+	mv a0, s0
+	li a7, 57
+	ecall
+
+	# The file holds "abcdef"
+	la t0, buffer
+	la t1, expect
+	li t2, 6
+compare:
+	lbu t3, 0(t0)
+	lbu t4, 0(t1)
+	bne t3, t4, failure
+	addi t0, t0, 1
+	addi t1, t1, 1
+	addi t2, t2, -1
+	bnez t2, compare
+success:
+	li a0, 42
+	li a7, 93
+	ecall
+failure:
+	li a0, 0
+	li a7, 93
+	ecall
@@ -0,0 +1,164 @@
+#lc
+.globl main
+.data
+hello:  .asciz "hello world"
+abc:    .asciz "abc"
+abd:    .asciz "abd"
+ab:     .asciz "ab"
+buffer: .ascii "abcdef"
+        .space 10
+.text
+main:
+	# Memset fills the range and nothing past it; the loop is 4 instructions a byte
+	la a0, buffer
+	addi a0, a0, 6
+	li a1, 'x'
+	li a2, 8
+	li a7, 1102
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 34
+	bne t0, t1, failure
+	la t0, buffer
+	lbu t1, 6(t0)
+	li t2, 'x'
+	bne t1, t2, failure
+	lbu t1, 13(t0)
+	bne t1, t2, failure
+	lbu t1, 14(t0)
+	bnez t1, failure
+
+	# Memcpy into an overlapping later range copies as if through a temporary buffer
+	la a0, buffer
+	addi a0, a0, 2
+	la a1, buffer
+	li a2, 4
+	li a7, 1100
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 26
+	bne t0, t1, failure
+	la t0, buffer
+	addi t0, t0, 2
+	bne a0, t0, failure
+	# buffer is now "ababcd"
+	la t0, buffer
+	lbu t1, 2(t0)
+	li t2, 'a'
+	bne t1, t2, failure
+	lbu t1, 5(t0)
+	li t2, 'd'
+	bne t1, t2, failure
+
+	# Memmove into an overlapping earlier range
+	la a0, buffer
+	la a1, buffer
+	addi a1, a1, 2
+	li a2, 4
+	li a7, 1101
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 27
+	bne t0, t1, failure
+	# buffer is now "abcdcd"
+	la t0, buffer
+	lbu t1, 2(t0)
+	li t2, 'c'
+	bne t1, t2, failure
+	lbu t1, 3(t0)
+	li t2, 'd'
+	bne t1, t2, failure
+
+	# Zero lengths touch no memory, so even address 0 is fine
+	li a0, 0
+	li a1, 0
+	li a2, 0
+	li a7, 1100
+	ecall
+	li a0, 0
+	li a1, 0
+	li a2, 0
+	li a7, 1102
+	ecall
+	li a0, 0
+	li a1, 0
+	li a2, 0
+	li a7, 1103
+	ecall
+	bnez a0, failure
+
+	# Memcmp returns the difference of the first differing bytes
+	la a0, abc
+	la a1, abd
+	li a2, 3
+	li a7, 1103
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 23
+	bne t0, t1, failure
+	li t1, -1
+	bne a0, t1, failure
+	la a0, abc
+	la a1, abd
+	li a2, 2
+	li a7, 1103
+	ecall
+	bnez a0, failure
+
+	# Strlen
+	la a0, hello
+	li a7, 1104
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 38
+	bne t0, t1, failure
+	li t1, 11
+	bne a0, t1, failure
+
+	# Strcmp, including a string that is a prefix of the other
+	la a0, abc
+	la a1, abd
+	li a7, 1105
+	rdinstret s2
+	ecall
+	rdinstret s3
+	sub t0, s3, s2
+	li t1, 20
+	bne t0, t1, failure
+	li t1, -1
+	bne a0, t1, failure
+	la a0, abd
+	la a1, abc
+	li a7, 1105
+	ecall
+	li t1, 1
+	bne a0, t1, failure
+	la a0, ab
+	la a1, abc
+	li a7, 1105
+	ecall
+	li t1, -99
+	bne a0, t1, failure
+	la a0, abc
+	la a1, abc
+	li a7, 1105
+	ecall
+	bnez a0, failure
+success:
+	li a0, 42
+	li a7, 93
+	ecall
+failure:
+	li a0, 0
+	li a7, 93
+	ecall